@@ -0,0 +1,23 @@
+package merchant_manager.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+/**
+ * Pool the autocomplete prefix indexes are loaded on, so the first lookup of a field is answered by the
+ * database instead of waiting for its values to be read. A field has at most one load queued at a time.
+ */
+@Configuration
+public class AutocompleteConfig {
+
+    @Bean
+    public ThreadPoolTaskExecutor autocompleteLoadExecutor(DynamicRecordProperties dynamicRecordProperties) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(dynamicRecordProperties.getAutocompleteLoadThreads());
+        executor.setMaxPoolSize(dynamicRecordProperties.getAutocompleteLoadThreads());
+        executor.setThreadNamePrefix("autocomplete-load-");
+        executor.setWaitForTasksToCompleteOnShutdown(false);
+        return executor;
+    }
+}
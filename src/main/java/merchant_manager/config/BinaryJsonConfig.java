@@ -0,0 +1,30 @@
+package merchant_manager.config;
+
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+
+/**
+ * Serves any JSON endpoint as Smile (Accept: application/x-jackson-smile) or CBOR (Accept: application/cbor).
+ * Meant for the read-heavy grid endpoints our dashboards poll (dynamic records, generic data, template columns).
+ * Both mappers come from the same builder as the JSON one, so modules and spring.jackson.* settings match.
+ * JSON stays the default for every other Accept header.
+ */
+@Configuration
+public class BinaryJsonConfig {
+
+    @Bean
+    public MappingJackson2SmileHttpMessageConverter smileHttpMessageConverter(ObjectProvider<Jackson2ObjectMapperBuilder> builder) {
+        return new MappingJackson2SmileHttpMessageConverter(builder.getObject().factory(new SmileFactory()).build());
+    }
+
+    @Bean
+    public MappingJackson2CborHttpMessageConverter cborHttpMessageConverter(ObjectProvider<Jackson2ObjectMapperBuilder> builder) {
+        return new MappingJackson2CborHttpMessageConverter(builder.getObject().factory(new CBORFactory()).build());
+    }
+}
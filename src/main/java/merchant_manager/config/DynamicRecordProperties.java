@@ -0,0 +1,53 @@
+package merchant_manager.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@ConfigurationProperties(prefix = "dynamic-records")
+@Data
+public class DynamicRecordProperties {
+
+    private String queryEngine = "sql"; // "sql" (single native statement over EAV), "document" (dynamic_record table) or "legacy" (in-memory ID pipeline)
+
+    private boolean filterOrderHeader = false; // debug aid: send the applied filter order and per-field selectivity as X-Filter-Order
+
+    private int resultCacheMaxEntries = 256; // 0 disables the result cache
+
+    private long resultCacheMaxRecordIds = 2_000_000; // total IDs held across all entries (8 bytes each)
+
+    private int importThreads = 2; // bulk imports running at once
+
+    private int importQueueCapacity = 8; // imports waiting for a thread; more are rejected
+
+    private int importBatchSize = 2_000; // file rows written per transaction
+
+    private long autocompleteMaxValues = 2_000_000; // values held across all autocomplete indexes; least recently used fields are dropped first
+
+    private int autocompleteLoadThreads = 1; // autocomplete indexes loaded at once, each holding a database connection
+
+    private int tombstoneRetentionDays = 30; // deletions kept for delta syncs; older watermarks must reload everything
+
+    private int queryJobThreads = 4; // asynchronous queries running at once, each holding a database connection
+
+    private int queryJobQueueCapacity = 32; // asynchronous queries waiting for a thread; more are rejected
+
+    private int queryJobsPerUser = 2; // queued or running asynchronous queries one user may have
+
+    private long queryJobResultTtlMinutes = 15; // results of a finished asynchronous query are kept this long
+
+    private int queryJobMaxRows = 10_000; // generic-data rows buffered per asynchronous query
+
+    public boolean isLegacyEngine() {
+        return "legacy".equalsIgnoreCase(queryEngine);
+    }
+
+    public boolean isDocumentEngine() {
+        return "document".equalsIgnoreCase(queryEngine);
+    }
+
+    public boolean isResultCacheEnabled() {
+        return resultCacheMaxEntries > 0;
+    }
+}
@@ -0,0 +1,24 @@
+package merchant_manager.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+/**
+ * Bounded pool the asynchronous dynamic record and generic-data queries run on, so slow saved views
+ * do not hold Tomcat threads and cannot take every database connection. Jobs beyond the queue are rejected.
+ */
+@Configuration
+public class QueryJobConfig {
+
+    @Bean
+    public ThreadPoolTaskExecutor queryJobExecutor(DynamicRecordProperties dynamicRecordProperties) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(dynamicRecordProperties.getQueryJobThreads());
+        executor.setMaxPoolSize(dynamicRecordProperties.getQueryJobThreads());
+        executor.setQueueCapacity(dynamicRecordProperties.getQueryJobQueueCapacity());
+        executor.setThreadNamePrefix("query-job-");
+        executor.setWaitForTasksToCompleteOnShutdown(false);
+        return executor;
+    }
+}
@@ -0,0 +1,25 @@
+package merchant_manager.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+/**
+ * Bounded pool the bulk record imports run on, so large files are parsed and written off the request thread
+ * and a burst of uploads cannot take every database connection. Uploads beyond the queue are rejected.
+ */
+@Configuration
+public class RecordImportConfig {
+
+    @Bean
+    public ThreadPoolTaskExecutor recordImportExecutor(DynamicRecordProperties dynamicRecordProperties) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(dynamicRecordProperties.getImportThreads());
+        executor.setMaxPoolSize(dynamicRecordProperties.getImportThreads());
+        executor.setQueueCapacity(dynamicRecordProperties.getImportQueueCapacity());
+        executor.setThreadNamePrefix("record-import-");
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(60);
+        return executor;
+    }
+}
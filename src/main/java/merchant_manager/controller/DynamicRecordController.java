@@ -2,6 +2,7 @@ package merchant_manager.controller;
 
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.headers.Header;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
@@ -10,12 +11,30 @@ import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
+import merchant_manager.config.DynamicRecordProperties;
+import merchant_manager.models.DTO.AutocompleteSuggestionDTO;
+import merchant_manager.models.DTO.DynamicRecordsColumnarPageDTO;
+import merchant_manager.models.DTO.DynamicRecordAggregationsDTO;
+import merchant_manager.models.DTO.DynamicRecordAggregationsRequestDTO;
+import merchant_manager.models.DTO.DynamicRecordChangesDTO;
+import merchant_manager.models.DTO.DynamicRecordFacetsDTO;
+import merchant_manager.models.DTO.DynamicRecordFacetsRequestDTO;
+import merchant_manager.models.DTO.DynamicRecordsCountDTO;
+import merchant_manager.models.DTO.DynamicRecordsCursorPageDTO;
 import merchant_manager.models.DTO.DynamicRecordsPageDTO;
 import merchant_manager.models.DTO.DynamicRecordsRequestDTO;
 import merchant_manager.models.DTO.DynamicRecordsSimplePageDTO;
+import merchant_manager.service.implementation.DynamicRecordAutocompleteServiceImp;
 import merchant_manager.service.implementation.DynamicRecordServiceImp;
+import merchant_manager.util.ColumnarPageEncoder;
+import merchant_manager.util.XlsxExportWriter;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.util.List;
 
 @RestController
 @RequestMapping("/api/dynamic-records")
@@ -27,29 +46,263 @@ import org.springframework.web.bind.annotation.*;
 @RequiredArgsConstructor
 public class DynamicRecordController {
 
+    private static final String FILTER_ORDER_HEADER = "X-Filter-Order";
+
     private final DynamicRecordServiceImp dynamicRecordService;
+    private final DynamicRecordAutocompleteServiceImp dynamicRecordAutocompleteService;
+    private final DynamicRecordProperties dynamicRecordProperties;
 
     @PostMapping("/query-simple")
     @Operation(
             summary = "Query dynamic records (without columns)",
             description = "Retrieves dynamic records for a template with optional filtering, sorting, and pagination. " +
                          "This API transforms EAV (Entity-Attribute-Value) data into a grid format suitable for display. " +
-                         "Fetch column definitions separately using GET /api/template-forms-default/template/{id} for better performance."
+                         "Fetch column definitions separately using GET /api/template-forms-default/template/{id} for better performance. " +
+                         "countMode controls the total: 'exact' (default) counts every match, 'estimate' uses the query planner's estimate, " +
+                         "'none' only reports hasNext. The response's countMode tells how totalRecords was obtained; " +
+                         "fetch the exact total later with POST /api/dynamic-records/count. " +
+                         "Set fields to the keys of the visible columns to receive only those values. " +
+                         "filterGroup nests conditions for saved views, e.g. {\"operator\":\"OR\",\"filters\":[..],\"groups\":[..]}: " +
+                         "AND, OR, or NOT (records failing the AND of its conditions); it is ANDed with filters and runs in the same query. " +
+                         "sort lists several keys, most significant first, e.g. [{\"fieldKey\":\"volume\",\"direction\":\"DESC\"},{\"fieldKey\":\"name\"}]; " +
+                         "NUMBER and DATE fields sort by value, records without a value sort lowest. sortBy/sortDirection still work for one key."
+    )
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Records successfully retrieved",
+                    content = {
+                            @Content(mediaType = "application/json",
+                                    schema = @Schema(implementation = DynamicRecordsSimplePageDTO.class)),
+                            @Content(mediaType = ColumnarPageEncoder.MEDIA_TYPE,
+                                    schema = @Schema(implementation = DynamicRecordsColumnarPageDTO.class))
+                    },
+                    headers = @Header(name = FILTER_ORDER_HEADER,
+                            description = "Filters in the order they were applied, with estimated selectivity; " +
+                                          "only sent when dynamic-records.filter-order-header is enabled")),
+            @ApiResponse(responseCode = "400", description = "Invalid request parameters, or size not between 1 and 1000"),
+            @ApiResponse(responseCode = "401", description = "Unauthorized"),
+            @ApiResponse(responseCode = "404", description = "Template not found")
+    })
+    public ResponseEntity<?> getDynamicRecordsSimple(
+            @Parameter(description = "Request containing template ID, filters, and pagination settings", required = true)
+            @Valid @RequestBody DynamicRecordsRequestDTO request,
+            @Parameter(description = "'columnar' lists column keys once and returns values as per-column arrays " +
+                                     "(same as Accept: " + ColumnarPageEncoder.MEDIA_TYPE + ")", required = false)
+            @RequestParam(required = false) String format,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept
+    ) {
+        DynamicRecordsSimplePageDTO response = dynamicRecordService.getDynamicRecordsSimple(request);
+        boolean columnar = ColumnarPageEncoder.FORMAT.equalsIgnoreCase(format)
+                || (accept != null && accept.contains(ColumnarPageEncoder.MEDIA_TYPE));
+        if (columnar) {
+            return okWithFilterOrder(response.getFilterOrder())
+                    .contentType(MediaType.parseMediaType(ColumnarPageEncoder.MEDIA_TYPE))
+                    .body(ColumnarPageEncoder.encode(response, request.getFields()));
+        }
+        return okWithFilterOrder(response.getFilterOrder()).body(response);
+    }
+
+    @PostMapping("/query-cursor")
+    @Operation(
+            summary = "Query dynamic records with cursor pagination",
+            description = "Retrieves dynamic records using keyset pagination for infinite scrolling. " +
+                         "Leave 'after' empty for the first page, then send the returned nextCursor as 'after' to get the next one. " +
+                         "The cursor is only valid for the same sort keys and directions. page is ignored and no total is computed."
     )
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Records successfully retrieved",
                     content = @Content(mediaType = "application/json",
-                            schema = @Schema(implementation = DynamicRecordsSimplePageDTO.class))),
+                            schema = @Schema(implementation = DynamicRecordsCursorPageDTO.class)),
+                    headers = @Header(name = FILTER_ORDER_HEADER,
+                            description = "Filters in the order they were applied, with estimated selectivity; " +
+                                          "only sent when dynamic-records.filter-order-header is enabled")),
+            @ApiResponse(responseCode = "400", description = "Invalid request parameters or cursor, or size not between 1 and 1000"),
+            @ApiResponse(responseCode = "401", description = "Unauthorized"),
+            @ApiResponse(responseCode = "404", description = "Template not found")
+    })
+    public ResponseEntity<DynamicRecordsCursorPageDTO> getDynamicRecordsCursor(
+            @Parameter(description = "Request containing template ID, filters, sort, size and the optional 'after' cursor", required = true)
+            @Valid @RequestBody DynamicRecordsRequestDTO request
+    ) {
+        DynamicRecordsCursorPageDTO response = dynamicRecordService.getDynamicRecordsCursor(request);
+        return okWithFilterOrder(response.getFilterOrder()).body(response);
+    }
+
+    @PostMapping("/count")
+    @Operation(
+            summary = "Count dynamic records",
+            description = "Returns the exact number of records matching the filters, for pages fetched with countMode 'estimate' or 'none'. " +
+                         "With the result cache enabled the count also caches the ordered result, so the following pages of the same query are cheap. " +
+                         "page, sort, sortBy, sortDirection and countMode are ignored; size is only used for totalPages."
+    )
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Count successfully computed",
+                    content = @Content(mediaType = "application/json",
+                            schema = @Schema(implementation = DynamicRecordsCountDTO.class))),
+            @ApiResponse(responseCode = "400", description = "Invalid request parameters, or size not between 1 and 1000"),
+            @ApiResponse(responseCode = "401", description = "Unauthorized"),
+            @ApiResponse(responseCode = "404", description = "Template not found")
+    })
+    public ResponseEntity<DynamicRecordsCountDTO> countDynamicRecords(
+            @Parameter(description = "Request containing template ID and filters", required = true)
+            @Valid @RequestBody DynamicRecordsRequestDTO request
+    ) {
+        return ResponseEntity.ok(dynamicRecordService.countDynamicRecords(request));
+    }
+
+    @PostMapping("/facets")
+    @Operation(
+            summary = "Count values of dynamic record fields",
+            description = "Returns, for each key in facetFields, how many records matching filters and filterGroup hold each value, " +
+                         "most frequent first and at most facetLimit (default 20, max 500) values per field, e.g. Status: New (312), Contacted (95). " +
+                         "Fields with options also list the options no matching record holds, with a count of 0. " +
+                         "All fields are counted by one grouped query, cached with the query's result. " +
+                         "To count the alternatives of a field the user is filtering on, leave that field's own filter out of the request. " +
+                         "page, size, sort, sortBy, sortDirection and countMode are ignored."
+    )
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Facets successfully computed",
+                    content = @Content(mediaType = "application/json",
+                            schema = @Schema(implementation = DynamicRecordFacetsDTO.class))),
             @ApiResponse(responseCode = "400", description = "Invalid request parameters"),
             @ApiResponse(responseCode = "401", description = "Unauthorized"),
+            @ApiResponse(responseCode = "404", description = "Template or facet field not found")
+    })
+    public ResponseEntity<DynamicRecordFacetsDTO> getFacets(
+            @Parameter(description = "Request containing template ID, filters, facetFields and facetLimit", required = true)
+            @Valid @RequestBody DynamicRecordFacetsRequestDTO request
+    ) {
+        return ResponseEntity.ok(dynamicRecordService.getFacets(request));
+    }
+
+    @PostMapping("/aggregations")
+    @Operation(
+            summary = "Aggregate numeric dynamic record fields",
+            description = "Returns count, sum, avg, min and max of each NUMBER field in aggregateFields over the records matching filters and filterGroup, " +
+                         "plus percentiles given as fractions (e.g. [0.5, 0.9] for the median and 90th percentile). " +
+                         "With groupBy set to a field key the aggregates are computed per value of that field, largest groups first " +
+                         "(at most 500; distinctGroups tells how many there are), with records lacking the field in a group with a null groupValue. " +
+                         "Records without a numeric value are left out of a field's aggregates. Everything is computed in one database query. " +
+                         "page, size, sort, sortBy, sortDirection and countMode are ignored."
+    )
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Aggregates successfully computed",
+                    content = @Content(mediaType = "application/json",
+                            schema = @Schema(implementation = DynamicRecordAggregationsDTO.class))),
+            @ApiResponse(responseCode = "400", description = "Invalid request parameters or non-numeric field"),
+            @ApiResponse(responseCode = "401", description = "Unauthorized"),
+            @ApiResponse(responseCode = "404", description = "Template or field not found")
+    })
+    public ResponseEntity<DynamicRecordAggregationsDTO> getAggregations(
+            @Parameter(description = "Request containing template ID, filters, aggregateFields, percentiles and groupBy", required = true)
+            @Valid @RequestBody DynamicRecordAggregationsRequestDTO request
+    ) {
+        return ResponseEntity.ok(dynamicRecordService.getAggregations(request));
+    }
+
+    @GetMapping("/changes")
+    @Operation(
+            summary = "Get dynamic records changed since a watermark",
+            description = "Returns the records of a template created, updated or deleted after the 'since' watermark, oldest change first, " +
+                         "so clients keeping a local copy transfer only what changed. Created and updated records come with their current fields, " +
+                         "deleted ones by ID only. Pass the returned watermark as 'since' on the next call; while hasMore is true, call again right away. " +
+                         "Without 'since' every record is returned, in pages of 'size'. Changes are numbered in commit order, so a change committing " +
+                         "while the client syncs is returned by a later call, never skipped. Deletions are kept for a limited number of days " +
+                         "(dynamic-records.tombstone-retention-days, 30 by default); an older watermark is rejected and the client must reload."
+    )
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Changes successfully retrieved",
+                    content = @Content(mediaType = "application/json",
+                            schema = @Schema(implementation = DynamicRecordChangesDTO.class))),
+            @ApiResponse(responseCode = "400", description = "Invalid or expired watermark, or invalid size"),
+            @ApiResponse(responseCode = "401", description = "Unauthorized"),
             @ApiResponse(responseCode = "404", description = "Template not found")
     })
-    public ResponseEntity<DynamicRecordsSimplePageDTO> getDynamicRecordsSimple(
-            @Parameter(description = "Request containing template ID, filters, and pagination settings", required = true)
+    public ResponseEntity<DynamicRecordChangesDTO> getChanges(
+            @Parameter(description = "Menu ID of the template", required = true) @RequestParam Long menuId,
+            @Parameter(description = "Company ID of the template", required = true) @RequestParam Long companyId,
+            @Parameter(description = "Watermark returned by the previous call; omit to receive every record") @RequestParam(required = false) String since,
+            @Parameter(description = "Field keys to return; omit for all fields") @RequestParam(required = false) List<String> fields,
+            @Parameter(description = "Maximum number of changes, 1 to 1000") @RequestParam(defaultValue = "500") int size
+    ) {
+        return ResponseEntity.ok(dynamicRecordService.getChanges(menuId, companyId, since, fields, size));
+    }
+
+    @GetMapping("/autocomplete")
+    @Operation(
+            summary = "Suggest values of a search field",
+            description = "Returns the logged user's values of a search field (searchLead, searchContact or searchMerchant) that start with prefix, " +
+                         "ignoring case, ordered by value then record ID, with the record each belongs to. " +
+                         "Lookups are served from an in-memory index of the field that is kept current as records are written; " +
+                         "the first lookup of a field, and lookups of fields too large to index, are answered by the database."
+    )
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Suggestions successfully retrieved",
+                    content = @Content(mediaType = "application/json",
+                            schema = @Schema(implementation = AutocompleteSuggestionDTO.class))),
+            @ApiResponse(responseCode = "400", description = "Empty prefix, invalid limit or field not searchable"),
+            @ApiResponse(responseCode = "401", description = "Unauthorized"),
+            @ApiResponse(responseCode = "404", description = "Template or field not found")
+    })
+    public ResponseEntity<List<AutocompleteSuggestionDTO>> autocomplete(
+            @Parameter(description = "Menu ID of the template", required = true) @RequestParam Long menuId,
+            @Parameter(description = "Company ID of the template", required = true) @RequestParam Long companyId,
+            @Parameter(description = "Key of the search field", required = true) @RequestParam String fieldKey,
+            @Parameter(description = "Start of the value, at least one character", required = true) @RequestParam String prefix,
+            @Parameter(description = "Maximum number of suggestions, 1 to 50") @RequestParam(defaultValue = "10") int limit
+    ) {
+        return ResponseEntity.ok(dynamicRecordAutocompleteService.suggest(menuId, companyId, fieldKey, prefix, limit));
+    }
+
+    @PostMapping("/export")
+    @Operation(
+            summary = "Export dynamic records as NDJSON",
+            description = "Streams every record matching the filters, one {\"recordId\":..,\"fields\":{..}} object per line, " +
+                         "in record ID order. Runs the filters once and reads the values through a database cursor, " +
+                         "so the export size does not affect server memory. fields restricts the exported keys; " +
+                         "page, size, sort, sortBy, sortDirection and countMode are ignored."
+    )
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Records streamed",
+                    content = @Content(mediaType = MediaType.APPLICATION_NDJSON_VALUE)),
+            @ApiResponse(responseCode = "400", description = "Invalid request parameters"),
+            @ApiResponse(responseCode = "401", description = "Unauthorized"),
+            @ApiResponse(responseCode = "404", description = "Template not found")
+    })
+    public ResponseEntity<StreamingResponseBody> exportDynamicRecords(
+            @Parameter(description = "Request containing template ID, filters and optional fields", required = true)
             @Valid @RequestBody DynamicRecordsRequestDTO request
     ) {
-        DynamicRecordsSimplePageDTO response = dynamicRecordService.getDynamicRecordsSimple(request);
-        return ResponseEntity.ok(response);
+        StreamingResponseBody body = dynamicRecordService.exportDynamicRecords(request);
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"dynamic-records.ndjson\"")
+                .body(body);
+    }
+
+    @PostMapping("/export/xlsx")
+    @Operation(
+            summary = "Export dynamic records as an Excel workbook",
+            description = "Downloads every record matching the filters as XLSX: a Record ID column, then one column per template field " +
+                         "headed by its label (only the requested fields, in request order, when fields is given). " +
+                         "Rows are spooled to disk while the database is read, and the file is sent once the read has finished. " +
+                         "page, size, sort, sortBy, sortDirection and countMode are ignored."
+    )
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Workbook streamed",
+                    content = @Content(mediaType = XlsxExportWriter.MEDIA_TYPE)),
+            @ApiResponse(responseCode = "400", description = "Invalid request parameters"),
+            @ApiResponse(responseCode = "401", description = "Unauthorized"),
+            @ApiResponse(responseCode = "404", description = "Template not found")
+    })
+    public ResponseEntity<StreamingResponseBody> exportDynamicRecordsXlsx(
+            @Parameter(description = "Request containing template ID, filters and optional fields", required = true)
+            @Valid @RequestBody DynamicRecordsRequestDTO request
+    ) {
+        StreamingResponseBody body = dynamicRecordService.exportDynamicRecordsXlsx(request);
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(XlsxExportWriter.MEDIA_TYPE))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"dynamic-records.xlsx\"")
+                .body(body);
     }
 
     @GetMapping("/menu/{menuId}")
@@ -62,6 +315,7 @@ public class DynamicRecordController {
             @ApiResponse(responseCode = "200", description = "Records successfully retrieved",
                     content = @Content(mediaType = "application/json",
                             schema = @Schema(implementation = DynamicRecordsSimplePageDTO.class))),
+            @ApiResponse(responseCode = "400", description = "Negative page, or size not between 1 and 1000"),
             @ApiResponse(responseCode = "401", description = "Unauthorized"),
             @ApiResponse(responseCode = "404", description = "Template not found")
     })
@@ -70,7 +324,7 @@ public class DynamicRecordController {
             @PathVariable Long menuId,
             @Parameter(description = "Page number (0-based)", required = false)
             @RequestParam(defaultValue = "0") int page,
-            @Parameter(description = "Page size", required = false)
+            @Parameter(description = "Page size, 1 to 1000", required = false)
             @RequestParam(defaultValue = "10") int size
     ) {
         DynamicRecordsRequestDTO request = new DynamicRecordsRequestDTO();
@@ -81,4 +335,33 @@ public class DynamicRecordController {
         DynamicRecordsSimplePageDTO response = dynamicRecordService.getDynamicRecordsSimple(request);
         return ResponseEntity.ok(response);
     }
+
+    @PostMapping("/documents/rebuild")
+    @Operation(
+            summary = "Rebuild dynamic record documents (SUPERUSER only)",
+            description = "Recomputes the materialized per-record JSONB documents used by dynamic-records.query-engine=document " +
+                         "from the EAV values. Rebuilds a single template when templateId is given, otherwise all of them."
+    )
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Number of documents written"),
+            @ApiResponse(responseCode = "401", description = "Unauthorized")
+    })
+    public ResponseEntity<Integer> rebuildDocuments(
+            @Parameter(description = "Default template ID; omit to rebuild every template", required = false)
+            @RequestParam(required = false) Long templateId
+    ) {
+        return ResponseEntity.ok(dynamicRecordService.rebuildDocuments(templateId));
+    }
+
+    /**
+     * Debug aid: reports the order filters were applied in, e.g. "status:EQUALS=0.0120,name:CONTAINS=0.0050".
+     * The selectivities are field statistics, so the header is off unless dynamic-records.filter-order-header is set.
+     */
+    private ResponseEntity.BodyBuilder okWithFilterOrder(String filterOrder) {
+        ResponseEntity.BodyBuilder builder = ResponseEntity.ok();
+        if (filterOrder != null && dynamicRecordProperties.isFilterOrderHeader()) {
+            builder.header(FILTER_ORDER_HEADER, filterOrder);
+        }
+        return builder;
+    }
 }
@@ -0,0 +1,75 @@
+package merchant_manager.controller;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.security.SecurityRequirement;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import merchant_manager.models.DTO.ImportJobDTO;
+import merchant_manager.service.implementation.DynamicRecordImportServiceImp;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+
+@RestController
+@RequestMapping("/api/dynamic-records/import")
+@Tag(name = "Dynamic Record Import", description = "APIs for bulk importing records from CSV and XLSX files")
+@SecurityRequirement(name = "bearerAuth")
+@RequiredArgsConstructor
+public class DynamicRecordImportController {
+
+    private final DynamicRecordImportServiceImp dynamicRecordImportService;
+
+    @PostMapping(consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    @Operation(
+            summary = "Import records from a CSV or XLSX file",
+            description = "Creates one Lead, Contact or Merchant record per file row. The first row is the header; each column is " +
+                         "matched to a template field by key or label (case-insensitive), unmatched columns are skipped. " +
+                         "XLSX files are read from their first sheet. The import runs in the background: poll " +
+                         "GET /api/dynamic-records/import/{jobId} for progress and the rows that were rejected."
+    )
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "202", description = "Import started",
+                    content = @Content(mediaType = "application/json",
+                            schema = @Schema(implementation = ImportJobDTO.class))),
+            @ApiResponse(responseCode = "400", description = "Unsupported file, or too many imports running"),
+            @ApiResponse(responseCode = "401", description = "Unauthorized"),
+            @ApiResponse(responseCode = "404", description = "Template not found")
+    })
+    public ResponseEntity<ImportJobDTO> startImport(
+            @Parameter(description = "Menu the records are created in (Lead, Contact or Merchant)", required = true)
+            @RequestParam Long menuId,
+            @Parameter(description = "Company whose template receives the values", required = true)
+            @RequestParam Long companyId,
+            @Parameter(description = ".csv (UTF-8) or .xlsx file", required = true)
+            @RequestPart("file") MultipartFile file
+    ) {
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(dynamicRecordImportService.startImport(menuId, companyId, file));
+    }
+
+    @GetMapping("/{jobId}")
+    @Operation(
+            summary = "Get import progress",
+            description = "Rows read, imported and rejected so far, with the first row errors. " +
+                         "Finished imports are kept for an hour."
+    )
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Import job retrieved",
+                    content = @Content(mediaType = "application/json",
+                            schema = @Schema(implementation = ImportJobDTO.class))),
+            @ApiResponse(responseCode = "401", description = "Unauthorized"),
+            @ApiResponse(responseCode = "404", description = "Import not found")
+    })
+    public ResponseEntity<ImportJobDTO> getImport(
+            @Parameter(description = "Import job ID returned when the import was started", required = true)
+            @PathVariable String jobId
+    ) {
+        return ResponseEntity.ok(dynamicRecordImportService.getImport(jobId));
+    }
+}
@@ -0,0 +1,136 @@
+package merchant_manager.controller;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.security.SecurityRequirement;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.validation.Valid;
+import lombok.RequiredArgsConstructor;
+import merchant_manager.dto.GenericQueryRequestDTO;
+import merchant_manager.models.DTO.DynamicRecordsRequestDTO;
+import merchant_manager.models.DTO.QueryJobDTO;
+import merchant_manager.service.implementation.QueryJobServiceImp;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+@RestController
+@RequestMapping("/api/query-jobs")
+@Tag(name = "Query Jobs", description = "APIs for running heavy dynamic record and generic-data queries in the background")
+@SecurityRequirement(name = "bearerAuth")
+@RequiredArgsConstructor
+public class QueryJobController {
+
+    private final QueryJobServiceImp queryJobService;
+
+    @PostMapping("/dynamic-records")
+    @Operation(
+            summary = "Run a dynamic record query in the background",
+            description = "Takes the same body as POST /api/dynamic-records/simple. The matching records are collected in the " +
+                         "background: poll GET /api/query-jobs/{jobId} or subscribe to /topic/query-jobs/{jobId}, then read " +
+                         "pages from GET /api/query-jobs/{jobId}/results. The page and size of the body are ignored."
+    )
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "202", description = "Query queued",
+                    content = @Content(mediaType = "application/json",
+                            schema = @Schema(implementation = QueryJobDTO.class))),
+            @ApiResponse(responseCode = "400", description = "Too many queries queued or running"),
+            @ApiResponse(responseCode = "401", description = "Unauthorized"),
+            @ApiResponse(responseCode = "404", description = "Template not found")
+    })
+    public ResponseEntity<QueryJobDTO> submitDynamicRecords(
+            @Parameter(description = "Request containing template ID, filters and sort", required = true)
+            @Valid @RequestBody DynamicRecordsRequestDTO request
+    ) {
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(queryJobService.submitDynamicRecords(request));
+    }
+
+    @PostMapping("/generic-data")
+    @Operation(
+            summary = "Run a generic-data query in the background",
+            description = "Takes the same body as POST /api/generic-data/query. At most dynamic-records.query-job-max-rows " +
+                         "rows (default 10000) are kept; totalRecords of the job tells how many matched. " +
+                         "The page and size of the body are ignored."
+    )
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "202", description = "Query queued",
+                    content = @Content(mediaType = "application/json",
+                            schema = @Schema(implementation = QueryJobDTO.class))),
+            @ApiResponse(responseCode = "400", description = "Too many queries queued or running"),
+            @ApiResponse(responseCode = "401", description = "Unauthorized")
+    })
+    public ResponseEntity<QueryJobDTO> submitGenericData(
+            @Parameter(description = "Query request with entity name, filters and sort", required = true)
+            @Valid @RequestBody GenericQueryRequestDTO request
+    ) {
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(queryJobService.submitGenericData(request));
+    }
+
+    @GetMapping("/{jobId}")
+    @Operation(
+            summary = "Get query job status",
+            description = "Status, record counts and timestamps of the job. Results of a finished job are kept until its expiresAt, " +
+                         "dynamic-records.query-job-result-ttl-minutes (default 15) after it finished."
+    )
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Query job retrieved",
+                    content = @Content(mediaType = "application/json",
+                            schema = @Schema(implementation = QueryJobDTO.class))),
+            @ApiResponse(responseCode = "401", description = "Unauthorized"),
+            @ApiResponse(responseCode = "404", description = "Query job not found or expired")
+    })
+    public ResponseEntity<QueryJobDTO> getJob(
+            @Parameter(description = "Query job ID returned when the query was submitted", required = true)
+            @PathVariable String jobId
+    ) {
+        return ResponseEntity.ok(queryJobService.getJob(jobId));
+    }
+
+    @GetMapping("/{jobId}/results")
+    @Operation(
+            summary = "Get a page of query job results",
+            description = "Only for COMPLETED jobs. Dynamic record jobs return the same page as POST /api/dynamic-records/simple, " +
+                         "with the fields read when the page is fetched; generic-data jobs return the same page as " +
+                         "POST /api/generic-data/query."
+    )
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Page retrieved"),
+            @ApiResponse(responseCode = "400", description = "Job not completed, or invalid page or size"),
+            @ApiResponse(responseCode = "401", description = "Unauthorized"),
+            @ApiResponse(responseCode = "404", description = "Query job not found or expired")
+    })
+    public ResponseEntity<Object> getResults(
+            @Parameter(description = "Query job ID", required = true)
+            @PathVariable String jobId,
+            @Parameter(description = "Page number (0-based)")
+            @RequestParam(defaultValue = "0") int page,
+            @Parameter(description = "Page size, at most 1000")
+            @RequestParam(defaultValue = "25") int size
+    ) {
+        return ResponseEntity.ok(queryJobService.getResults(jobId, page, size));
+    }
+
+    @DeleteMapping("/{jobId}")
+    @Operation(
+            summary = "Cancel or discard a query job",
+            description = "Stops a queued or running query and discards the results of a finished one. A running query's " +
+                         "statement is cancelled in the database; the job counts against the user's limit of queued and running " +
+                         "queries until it has stopped, usually within a second."
+    )
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "204", description = "Query job cancelled"),
+            @ApiResponse(responseCode = "401", description = "Unauthorized"),
+            @ApiResponse(responseCode = "404", description = "Query job not found or expired")
+    })
+    public ResponseEntity<Void> cancelJob(
+            @Parameter(description = "Query job ID", required = true)
+            @PathVariable String jobId
+    ) {
+        queryJobService.cancelJob(jobId);
+        return ResponseEntity.noContent().build();
+    }
+}
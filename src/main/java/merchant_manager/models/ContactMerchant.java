@@ -13,7 +13,8 @@ import lombok.NoArgsConstructor;
 public class ContactMerchant {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "contact_merchant_id_seq")
+    @SequenceGenerator(name = "contact_merchant_id_seq", sequenceName = "contact_merchant_id_seq", allocationSize = 50)
     @Column(name = "id")
     private Long id;
 
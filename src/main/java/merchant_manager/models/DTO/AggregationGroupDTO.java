@@ -0,0 +1,19 @@
+package merchant_manager.models.DTO;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Aggregates of the records sharing one value of the groupBy field
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class AggregationGroupDTO {
+    private String groupValue; // null for records without a value, or for the single group when nothing is grouped
+    private long records;
+    private List<FieldAggregateDTO> aggregates; // in aggregateFields order
+}
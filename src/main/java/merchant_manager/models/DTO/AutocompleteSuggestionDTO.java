@@ -0,0 +1,16 @@
+package merchant_manager.models.DTO;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A search field value starting with the typed prefix and the record holding it
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class AutocompleteSuggestionDTO {
+    private Long recordId;
+    private String value;
+}
@@ -0,0 +1,23 @@
+package merchant_manager.models.DTO;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Values of one column of a columnar page, one per row
+ * Low-cardinality columns send each distinct value (null included) once in dictionary and
+ * one index per row in codes; the other columns send plain values, with null for a missing value
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ColumnValuesDTO {
+    private List<String> dictionary;
+    private int[] codes;
+    private List<String> values;
+}
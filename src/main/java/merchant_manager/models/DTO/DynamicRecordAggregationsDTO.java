@@ -0,0 +1,20 @@
+package merchant_manager.models.DTO;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Numeric aggregates over the records matching a query, overall or per value of the groupBy field
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DynamicRecordAggregationsDTO {
+    private String groupBy; // null when the aggregates cover every matching record in one group
+    private List<Double> percentiles; // fractions the percentile values of every aggregate refer to, in order
+    private List<AggregationGroupDTO> groups; // largest groups first
+    private long distinctGroups; // groups before the limit; more than groups.size() when truncated
+}
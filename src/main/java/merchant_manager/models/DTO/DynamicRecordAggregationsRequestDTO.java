@@ -0,0 +1,21 @@
+package merchant_manager.models.DTO;
+
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+import java.util.List;
+
+/**
+ * Request DTO for aggregating numeric fields: the records to aggregate over, as for the grid, plus what to compute
+ */
+@Data
+@NoArgsConstructor
+@EqualsAndHashCode(callSuper = true)
+@ToString(callSuper = true)
+public class DynamicRecordAggregationsRequestDTO extends DynamicRecordsRequestDTO {
+    private List<String> aggregateFields; // NUMBER field keys to aggregate
+    private List<Double> percentiles; // fractions between 0 and 1, e.g. 0.5 for the median
+    private String groupBy; // field key whose values split the records into groups
+}
@@ -0,0 +1,21 @@
+package merchant_manager.models.DTO;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Records changed or deleted since a watermark, oldest change first
+ * Pass watermark as "since" in the next request; while hasMore is true the next request returns more changes right away
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DynamicRecordChangesDTO {
+    private List<DynamicRecordDTO> records;  // created or updated records with their current fields
+    private List<Long> deletedRecordIds;     // records removed from the user's grid
+    private String watermark;
+    private boolean hasMore;
+}
@@ -0,0 +1,17 @@
+package merchant_manager.models.DTO;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Value counts of the requested fields over the records matching a query, in request order
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DynamicRecordFacetsDTO {
+    private List<RecordFacetDTO> facets;
+}
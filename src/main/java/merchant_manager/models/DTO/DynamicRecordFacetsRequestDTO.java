@@ -0,0 +1,20 @@
+package merchant_manager.models.DTO;
+
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+import java.util.List;
+
+/**
+ * Request DTO for counting field values: the records to count over, as for the grid, plus the fields to count
+ */
+@Data
+@NoArgsConstructor
+@EqualsAndHashCode(callSuper = true)
+@ToString(callSuper = true)
+public class DynamicRecordFacetsRequestDTO extends DynamicRecordsRequestDTO {
+    private List<String> facetFields; // field keys to count values of
+    private int facetLimit = 20; // most frequent values returned per field
+}
@@ -0,0 +1,28 @@
+package merchant_manager.models.DTO;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import merchant_manager.models.enums.CountMode;
+
+import java.util.List;
+
+/**
+ * Columnar form of DynamicRecordsSimplePageDTO: column keys are listed once and
+ * values[i] holds column i for every row, in recordIds order
+ * Requested with ?format=columnar or Accept: application/vnd.merchant-manager.columnar+json
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DynamicRecordsColumnarPageDTO {
+    private List<String> columns;
+    private List<Long> recordIds;
+    private List<ColumnValuesDTO> values;
+    private Long totalRecords; // null when countMode is none
+    private int currentPage;
+    private int pageSize;
+    private Integer totalPages; // null when countMode is none
+    private boolean hasNext;
+    private CountMode countMode;
+}
@@ -0,0 +1,16 @@
+package merchant_manager.models.DTO;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Exact number of dynamic records matching a query, for pages fetched with countMode estimate or none
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DynamicRecordsCountDTO {
+    private long totalRecords;
+    private int totalPages;
+}
@@ -0,0 +1,25 @@
+package merchant_manager.models.DTO;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Keyset-paginated response for dynamic records
+ * Pass nextCursor as "after" in the next request to continue; null when there are no more records
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DynamicRecordsCursorPageDTO {
+    private List<DynamicRecordDTO> records;
+    private int pageSize;
+    private String nextCursor;
+    private boolean hasNext;
+
+    @JsonIgnore
+    private String filterOrder; // filters in execution order with estimated selectivity, sent as a response header
+}
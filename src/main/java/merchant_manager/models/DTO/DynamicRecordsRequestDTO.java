@@ -3,6 +3,7 @@ package merchant_manager.models.DTO;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import merchant_manager.models.enums.CountMode;
 
 import java.util.List;
 
@@ -18,6 +19,11 @@ public class DynamicRecordsRequestDTO {
     private int page = 0;
     private int size = 10;
     private List<RecordFilterDTO> filters;
+    private RecordFilterGroupDTO filterGroup; // nested AND/OR/NOT conditions, ANDed with filters
+    private List<String> fields; // field keys to return; null or empty returns every field
     private String sortBy; // field key to sort by
     private String sortDirection = "ASC"; // ASC or DESC
+    private List<RecordSortDTO> sort; // several sort keys, most significant first; replaces sortBy and sortDirection
+    private String after; // cursor mode only: nextCursor token from the previous page
+    private CountMode countMode = CountMode.EXACT; // page mode only: exact, estimate or none
 }
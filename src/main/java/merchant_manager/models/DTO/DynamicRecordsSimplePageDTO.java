@@ -1,22 +1,30 @@
 package merchant_manager.models.DTO;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import merchant_manager.models.enums.CountMode;
 
 import java.util.List;
 
 /**
  * Simplified paginated response for dynamic records (without column definitions)
  * Use GET /api/template-forms-default/template/{id} to fetch columns separately
+ * Use POST /api/dynamic-records/count for the exact total of an estimated or uncounted page
  */
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
 public class DynamicRecordsSimplePageDTO {
     private List<DynamicRecordDTO> records;
-    private long totalRecords;
+    private Long totalRecords; // null when countMode is none
     private int currentPage;
     private int pageSize;
-    private int totalPages;
+    private Integer totalPages; // null when countMode is none
+    private boolean hasNext;
+    private CountMode countMode; // how totalRecords was obtained; may be exact even when an estimate was requested
+
+    @JsonIgnore
+    private String filterOrder; // filters in execution order with estimated selectivity, sent as a response header
 }
@@ -0,0 +1,16 @@
+package merchant_manager.models.DTO;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * One value of a facet and the number of matching records holding it
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class FacetValueDTO {
+    private String value;
+    private long count;
+}
@@ -0,0 +1,23 @@
+package merchant_manager.models.DTO;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Aggregates of one numeric field; records without a numeric value are left out, so all but count are null when none has one
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class FieldAggregateDTO {
+    private String fieldKey;
+    private long count; // records with a numeric value
+    private Double sum;
+    private Double avg;
+    private Double min;
+    private Double max;
+    private List<Double> percentiles; // one per requested percentile, in request order
+}
@@ -0,0 +1,31 @@
+package merchant_manager.models.DTO;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import merchant_manager.models.enums.ImportStatus;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Progress of a bulk record import; poll it until status is COMPLETED or FAILED.
+ * Only the first errors are listed, rowsFailed counts all of them.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ImportJobDTO {
+    private String jobId;
+    private ImportStatus status;
+    private String fileName;
+    private Long menuId;
+    private long rowsRead;
+    private long rowsImported;
+    private long rowsFailed;
+    private List<String> unmappedHeaders; // file columns that match no field key or label and were skipped
+    private List<ImportRowErrorDTO> errors;
+    private String message; // why the import stopped, when it failed
+    private LocalDateTime startedAt;
+    private LocalDateTime finishedAt;
+}
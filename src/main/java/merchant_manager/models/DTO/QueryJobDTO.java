@@ -0,0 +1,29 @@
+package merchant_manager.models.DTO;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import merchant_manager.models.enums.QueryJobStatus;
+import merchant_manager.models.enums.QueryJobType;
+
+import java.time.LocalDateTime;
+
+/**
+ * State of an asynchronous query; poll it or subscribe to /topic/query-jobs/{jobId} until status is
+ * COMPLETED, FAILED or CANCELLED, then read the results page by page until expiresAt.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class QueryJobDTO {
+    private String jobId;
+    private QueryJobType type;
+    private QueryJobStatus status;
+    private Long totalRecords;    // records matching the query, once completed
+    private Long bufferedRecords; // records the results can be paged through; below totalRecords when the buffer was capped
+    private String message;       // why the query failed
+    private LocalDateTime submittedAt;
+    private LocalDateTime startedAt;
+    private LocalDateTime finishedAt;
+    private LocalDateTime expiresAt; // results are discarded after this time
+}
@@ -0,0 +1,19 @@
+package merchant_manager.models.DTO;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Value counts of one field, most frequent first
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class RecordFacetDTO {
+    private String fieldKey;
+    private List<FacetValueDTO> values; // at most facetLimit values, then the field's options that no record holds
+    private long distinctValues; // distinct non-empty values among the matches; more than values.size() when truncated
+}
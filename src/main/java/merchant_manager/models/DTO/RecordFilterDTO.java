@@ -12,6 +12,7 @@ import lombok.NoArgsConstructor;
 @AllArgsConstructor
 public class RecordFilterDTO {
     private String fieldKey;
-    private String operator; // EQUALS, CONTAINS, STARTS_WITH, ENDS_WITH, GREATER_THAN, LESS_THAN
+    private String operator; // EQUALS, CONTAINS, STARTS_WITH, ENDS_WITH, GREATER_THAN, LESS_THAN, BETWEEN
     private String value;
+    private String valueTo; // upper bound, BETWEEN only
 }
@@ -0,0 +1,21 @@
+package merchant_manager.models.DTO;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import merchant_manager.models.enums.FilterGroupOperator;
+
+import java.util.List;
+
+/**
+ * Node of a boolean filter expression: the group's filters and nested groups, combined with its operator.
+ * A group without any filter at any depth is ignored, also inside OR and NOT.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class RecordFilterGroupDTO {
+    private FilterGroupOperator operator = FilterGroupOperator.AND;
+    private List<RecordFilterDTO> filters;
+    private List<RecordFilterGroupDTO> groups;
+}
@@ -0,0 +1,16 @@
+package merchant_manager.models.DTO;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * One sort key of a dynamic record query
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class RecordSortDTO {
+    private String fieldKey;
+    private String direction = "ASC"; // ASC or DESC
+}
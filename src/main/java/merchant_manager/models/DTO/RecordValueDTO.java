@@ -0,0 +1,17 @@
+package merchant_manager.models.DTO;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * One field value of a dynamic record, projected without loading the value entity or its field definition
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class RecordValueDTO {
+    private Long recordId;
+    private String key;
+    private String value;
+}
@@ -21,7 +21,8 @@ import java.security.SecureRandom;
 public class Recipient extends BaseModel {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "recipient_id_seq")
+    @SequenceGenerator(name = "recipient_id_seq", sequenceName = "recipient_id_seq", allocationSize = 50)
     @Column(name = "id")
     private Long id;
 
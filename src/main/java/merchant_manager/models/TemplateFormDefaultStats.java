@@ -0,0 +1,52 @@
+package merchant_manager.models;
+
+import com.vladmihalcea.hibernate.type.json.JsonType;
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.Type;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+
+/**
+ * Value distribution of one dynamic field, used to estimate filter selectivity.
+ * Rows are computed in bulk by FieldStatisticsServiceImp, never edited through JPA.
+ */
+@Entity
+@Table(name = "template_form_default_stats")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class TemplateFormDefaultStats {
+
+    @Id
+    @Column(name = "template_form_default_id")
+    private Long templateFormDefaultId;
+
+    @Column(name = "template_id", nullable = false)
+    private Long templateId;
+
+    @Column(name = "field_key", nullable = false)
+    private String fieldKey;
+
+    @Column(name = "record_count", nullable = false)
+    private Long recordCount;
+
+    @Column(name = "value_count", nullable = false)
+    private Long valueCount;
+
+    @Column(name = "distinct_count", nullable = false)
+    private Long distinctCount;
+
+    @Column(name = "null_ratio", nullable = false)
+    private Double nullRatio;
+
+    @Type(JsonType.class)
+    @Column(name = "most_common_values", columnDefinition = "jsonb")
+    private Map<String, Long> mostCommonValues;
+
+    @Column(name = "refreshed_at", nullable = false)
+    private LocalDateTime refreshedAt;
+}
@@ -14,7 +14,8 @@ import lombok.NoArgsConstructor;
 public class TemplateFormValue extends BaseModel{
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "template_form_value_id_seq")
+    @SequenceGenerator(name = "template_form_value_id_seq", sequenceName = "template_form_value_id_seq", allocationSize = 50)
     @Column(name = "id")
     private Long id;
 
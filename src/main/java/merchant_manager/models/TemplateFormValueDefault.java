@@ -4,6 +4,9 @@ import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import merchant_manager.util.FieldValueParser;
+
+import java.time.LocalDateTime;
 
 @Entity
 @Table(name = "template_form_value_default")
@@ -13,7 +16,8 @@ import lombok.NoArgsConstructor;
 public class TemplateFormValueDefault extends BaseModel{
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "template_form_value_default_id_seq")
+    @SequenceGenerator(name = "template_form_value_default_id_seq", sequenceName = "template_form_value_default_id_seq", allocationSize = 50)
     @Column(name = "id")
     private Long id;
 
@@ -27,7 +31,23 @@ public class TemplateFormValueDefault extends BaseModel{
     @Column(name = "value")
     private String value;
 
+    // Typed copies of value, filled from the column's FieldType so range filters run in SQL
+    @Column(name = "value_numeric")
+    private Double valueNumeric;
+
+    @Column(name = "value_ts")
+    private LocalDateTime valueTs;
+
     @ManyToOne
     @JoinColumn(name = "user_id", nullable = false)  // foreign key column in template table
     private User user;
+
+    @PrePersist
+    @PreUpdate
+    private void fillTypedValues() {
+        if (templateFormDefault != null) {
+            this.valueNumeric = FieldValueParser.numericValue(templateFormDefault.getType(), value);
+            this.valueTs = FieldValueParser.timestampValue(templateFormDefault.getType(), value);
+        }
+    }
 }
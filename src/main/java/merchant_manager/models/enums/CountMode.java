@@ -0,0 +1,25 @@
+package merchant_manager.models.enums;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonValue;
+
+/**
+ * How a dynamic record page reports its total:
+ * EXACT counts every match, ESTIMATE takes the query planner's row estimate,
+ * NONE skips the total and only reports whether another page exists
+ */
+public enum CountMode {
+    EXACT,
+    ESTIMATE,
+    NONE;
+
+    @JsonCreator
+    public static CountMode from(String value) {
+        return value == null || value.isEmpty() ? EXACT : valueOf(value.toUpperCase());
+    }
+
+    @JsonValue
+    public String toValue() {
+        return name().toLowerCase();
+    }
+}
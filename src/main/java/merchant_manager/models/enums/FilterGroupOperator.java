@@ -0,0 +1,18 @@
+package merchant_manager.models.enums;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+
+/**
+ * How a filter group combines its conditions:
+ * AND and OR join them, NOT matches the records that fail the AND of them
+ */
+public enum FilterGroupOperator {
+    AND,
+    OR,
+    NOT;
+
+    @JsonCreator
+    public static FilterGroupOperator from(String value) {
+        return value == null || value.isEmpty() ? AND : valueOf(value.toUpperCase());
+    }
+}
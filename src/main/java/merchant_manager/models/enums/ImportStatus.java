@@ -0,0 +1,11 @@
+package merchant_manager.models.enums;
+
+public enum ImportStatus {
+
+    RUNNING,
+
+    COMPLETED,
+
+    FAILED
+
+}
@@ -0,0 +1,15 @@
+package merchant_manager.models.enums;
+
+public enum QueryJobStatus {
+
+    QUEUED,
+
+    RUNNING,
+
+    COMPLETED,
+
+    FAILED,
+
+    CANCELLED
+
+}
@@ -0,0 +1,9 @@
+package merchant_manager.models.enums;
+
+public enum QueryJobType {
+
+    DYNAMIC_RECORDS,
+
+    GENERIC_DATA
+
+}
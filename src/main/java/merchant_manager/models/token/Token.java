@@ -9,7 +9,8 @@ import merchant_manager.models.enums.TokenType;
 public class Token {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "token_id_seq")
+    @SequenceGenerator(name = "token_id_seq", sequenceName = "token_id_seq", allocationSize = 50)
     public Integer id;
 
     @Column(unique = true)
@@ -8,6 +8,7 @@ import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -16,8 +17,12 @@ public interface TemplateFormDefaultRepository extends JpaRepository<TemplateFor
 
     List<TemplateFormDefault> findByTemplateId(Long templateId);
 
+    List<TemplateFormDefault> findByTemplateIdOrderById(Long templateId);
+
     Optional<TemplateFormDefault> findByKey(String key);
 
+    List<TemplateFormDefault> findByKeyIn(Collection<String> keys);
+
     Optional<TemplateFormDefault> findByTemplateIdAndSearchContact(Long templateId, Boolean searchCustomer);
 
     Optional<TemplateFormDefault> findByTemplateIdAndSearchMerchant(Long templateId, Boolean searchMerchant);
@@ -0,0 +1,13 @@
+package merchant_manager.repository;
+
+import merchant_manager.models.TemplateFormDefaultStats;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface TemplateFormDefaultStatsRepository extends JpaRepository<TemplateFormDefaultStats, Long> {
+
+    List<TemplateFormDefaultStats> findByTemplateId(Long templateId);
+}
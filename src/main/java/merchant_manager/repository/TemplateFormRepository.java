@@ -4,6 +4,7 @@ import merchant_manager.models.TemplateForm;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -16,6 +17,8 @@ public interface TemplateFormRepository extends JpaRepository<TemplateForm,Long>
 
     Optional<TemplateForm> findByKey(String key);
 
+    List<TemplateForm> findByKeyIn(Collection<String> keys);
+
     void deleteByKey(String key);
 
 }
@@ -1,5 +1,6 @@
 package merchant_manager.repository;
 
+import merchant_manager.models.DTO.RecordValueDTO;
 import merchant_manager.models.TemplateFormValueDefault;
 import merchant_manager.models.User;
 import org.springframework.data.jpa.repository.JpaRepository;
@@ -10,6 +11,7 @@ import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 @Repository
@@ -31,8 +33,50 @@ public interface TemplateFormValueDefaultRepository extends JpaRepository<Templa
             @Param("templateId") Long templateId,
             @Param("recordIds") List<Long> recordIds);
 
+    @Query("SELECT new merchant_manager.models.DTO.RecordValueDTO(tfvd.recordId, tfd.key, tfvd.value) " +
+           "FROM TemplateFormValueDefault tfvd JOIN tfvd.templateFormDefault tfd " +
+           "WHERE tfd.template.id = :templateId " +
+           "AND tfvd.recordId IN :recordIds")
+    List<RecordValueDTO> findValuesByTemplateIdAndRecordIds(
+            @Param("templateId") Long templateId,
+            @Param("recordIds") List<Long> recordIds);
+
+    @Query("SELECT new merchant_manager.models.DTO.RecordValueDTO(tfvd.recordId, tfd.key, tfvd.value) " +
+           "FROM TemplateFormValueDefault tfvd JOIN tfvd.templateFormDefault tfd " +
+           "WHERE tfd.template.id = :templateId " +
+           "AND tfvd.recordId IN :recordIds " +
+           "AND tfd.key IN :keys")
+    List<RecordValueDTO> findValuesByTemplateIdAndRecordIdsAndKeys(
+            @Param("templateId") Long templateId,
+            @Param("recordIds") List<Long> recordIds,
+            @Param("keys") List<String> keys);
+
     TemplateFormValueDefault findByTemplateFormDefaultIdAndRecordId(Long templateFormId, Long recordId);
 
+    /**
+     * Writes the values of many fields of one record in a single statement: new fields are inserted,
+     * fields that already have a value are updated in place (the row keeps its owner and creation audit).
+     * values is a JSON array of {"field_id", "value", "value_numeric", "value_ts"} objects, one per field.
+     */
+    @Modifying(flushAutomatically = true)
+    @Transactional
+    @Query(value = "INSERT INTO {h-schema}template_form_value_default AS v " +
+                   "(template_form_default_id, record_id, value, value_numeric, value_ts, user_id, " +
+                   "created_at, updated_at, created_by, last_updated_by) " +
+                   "SELECT d.field_id, :recordId, d.value, d.value_numeric, d.value_ts, :userId, " +
+                   ":updatedAt, :updatedAt, :updatedBy, :updatedBy " +
+                   "FROM jsonb_to_recordset(CAST(:values AS jsonb)) " +
+                   "AS d(field_id BIGINT, value VARCHAR(255), value_numeric DOUBLE PRECISION, value_ts TIMESTAMP) " +
+                   "ON CONFLICT (template_form_default_id, record_id) DO UPDATE SET " +
+                   "value = EXCLUDED.value, value_numeric = EXCLUDED.value_numeric, value_ts = EXCLUDED.value_ts, " +
+                   "updated_at = EXCLUDED.updated_at, last_updated_by = EXCLUDED.last_updated_by",
+           nativeQuery = true)
+    int upsertValues(@Param("recordId") Long recordId,
+                     @Param("values") String values,
+                     @Param("userId") Long userId,
+                     @Param("updatedAt") LocalDateTime updatedAt,
+                     @Param("updatedBy") String updatedBy);
+
     @Query("SELECT tfvd FROM TemplateFormValueDefault tfvd " +
            "WHERE tfvd.templateFormDefault.template.menu.id = :menuId " +
            "AND tfvd.recordId = :recordId")
@@ -40,6 +84,13 @@ public interface TemplateFormValueDefaultRepository extends JpaRepository<Templa
             @Param("menuId") Long menuId,
             @Param("recordId") Long recordId);
 
+    @Query("SELECT DISTINCT tfvd.templateFormDefault.template.id FROM TemplateFormValueDefault tfvd " +
+           "WHERE tfvd.templateFormDefault.template.menu.id = :menuId " +
+           "AND tfvd.recordId = :recordId")
+    List<Long> findTemplateIdsByMenuIdAndRecordId(
+            @Param("menuId") Long menuId,
+            @Param("recordId") Long recordId);
+
     @Modifying
     @Transactional
     @Query("DELETE FROM TemplateFormValueDefault tfvd " +
@@ -9,6 +9,7 @@ import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
@@ -17,6 +18,24 @@ public interface TemplateValueFormRepository extends JpaRepository<TemplateFormV
 
     Optional<TemplateFormValue> findByTemplateFormIdAndRecordId(Long templateFormId, Long recordId);
 
+    /**
+     * Inserts or updates the values of many fields of one record in a single statement;
+     * values is a JSON array of {"field_id", "value"} objects
+     */
+    @Modifying(flushAutomatically = true)
+    @Transactional
+    @Query(value = "INSERT INTO {h-schema}template_form_value AS v " +
+                   "(template_form_id, record_id, value, created_at, updated_at, created_by, last_updated_by) " +
+                   "SELECT d.field_id, :recordId, d.value, :updatedAt, :updatedAt, :updatedBy, :updatedBy " +
+                   "FROM jsonb_to_recordset(CAST(:values AS jsonb)) AS d(field_id BIGINT, value VARCHAR(255)) " +
+                   "ON CONFLICT (template_form_id, record_id) DO UPDATE SET " +
+                   "value = EXCLUDED.value, updated_at = EXCLUDED.updated_at, last_updated_by = EXCLUDED.last_updated_by",
+           nativeQuery = true)
+    int upsertValues(@Param("recordId") Long recordId,
+                     @Param("values") String values,
+                     @Param("updatedAt") LocalDateTime updatedAt,
+                     @Param("updatedBy") String updatedBy);
+
     @Query("SELECT tfv FROM TemplateFormValue tfv " +
            "WHERE tfv.templateForm.template.menu.id = :menuId " +
            "AND tfv.recordId = :recordId")
@@ -0,0 +1,43 @@
+package merchant_manager.scheduler;
+
+import merchant_manager.config.DynamicRecordProperties;
+import merchant_manager.service.implementation.DynamicRecordDocumentServiceImp;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+
+/**
+ * Removes the dynamic record tombstones older than the delta sync retention
+ */
+@Component
+public class DynamicRecordTombstoneScheduler {
+
+    private static final Logger logger = LoggerFactory.getLogger(DynamicRecordTombstoneScheduler.class);
+
+    private final DynamicRecordDocumentServiceImp dynamicRecordDocumentService;
+    private final DynamicRecordProperties dynamicRecordProperties;
+
+    public DynamicRecordTombstoneScheduler(DynamicRecordDocumentServiceImp dynamicRecordDocumentService,
+                                           DynamicRecordProperties dynamicRecordProperties) {
+        this.dynamicRecordDocumentService = dynamicRecordDocumentService;
+        this.dynamicRecordProperties = dynamicRecordProperties;
+    }
+
+    /**
+     * Runs nightly; retention configurable with dynamic-records.tombstone-retention-days (default 30)
+     * Cron format: second minute hour day month weekday
+     */
+    @Scheduled(cron = "0 0 3 * * ?")
+    public void purgeTombstones() {
+        try {
+            dynamicRecordDocumentService.purgeTombstones(ZonedDateTime.now(ZoneId.of("America/New_York")).toLocalDateTime()
+                    .minusDays(dynamicRecordProperties.getTombstoneRetentionDays()));
+        } catch (Exception e) {
+            logger.error("Error during scheduled tombstone purge", e);
+        }
+    }
+}
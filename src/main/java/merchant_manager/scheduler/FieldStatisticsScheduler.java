@@ -0,0 +1,50 @@
+package merchant_manager.scheduler;
+
+import merchant_manager.service.implementation.FieldStatisticsServiceImp;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Keeps the per-field statistics used for dynamic record filter ordering up to date
+ */
+@Component
+public class FieldStatisticsScheduler {
+
+    private static final Logger logger = LoggerFactory.getLogger(FieldStatisticsScheduler.class);
+
+    private final FieldStatisticsServiceImp fieldStatisticsService;
+
+    public FieldStatisticsScheduler(FieldStatisticsServiceImp fieldStatisticsService) {
+        this.fieldStatisticsService = fieldStatisticsService;
+    }
+
+    /**
+     * Refreshes templates written to since the last run
+     * Delay configurable with dynamic-records.stats-refresh-delay-ms (default 5 minutes)
+     */
+    @Scheduled(fixedDelayString = "${dynamic-records.stats-refresh-delay-ms:300000}", initialDelay = 60000)
+    public void refreshStaleStatistics() {
+        try {
+            fieldStatisticsService.refreshStale();
+        } catch (Exception e) {
+            logger.error("Error during scheduled field statistics refresh", e);
+        }
+    }
+
+    /**
+     * Runs nightly over every template to pick up changes made outside the record services (imports, manual fixes)
+     * Cron format: second minute hour day month weekday
+     */
+    @Scheduled(cron = "0 30 2 * * ?")
+    public void refreshAllStatistics() {
+        logger.info("Starting nightly field statistics refresh");
+        try {
+            fieldStatisticsService.refreshAll();
+            logger.info("Completed nightly field statistics refresh");
+        } catch (Exception e) {
+            logger.error("Error during nightly field statistics refresh", e);
+        }
+    }
+}
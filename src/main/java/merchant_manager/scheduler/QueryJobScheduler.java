@@ -0,0 +1,34 @@
+package merchant_manager.scheduler;
+
+import merchant_manager.service.implementation.QueryJobServiceImp;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Frees the buffered results of query jobs that nobody fetched before they expired
+ */
+@Component
+public class QueryJobScheduler {
+
+    private static final Logger logger = LoggerFactory.getLogger(QueryJobScheduler.class);
+
+    private final QueryJobServiceImp queryJobService;
+
+    public QueryJobScheduler(QueryJobServiceImp queryJobService) {
+        this.queryJobService = queryJobService;
+    }
+
+    /**
+     * Runs every minute; results are kept for dynamic-records.query-job-result-ttl-minutes (default 15)
+     */
+    @Scheduled(fixedDelay = 60_000)
+    public void removeExpiredJobs() {
+        try {
+            queryJobService.removeExpiredJobs();
+        } catch (Exception e) {
+            logger.error("Error during scheduled query job cleanup", e);
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package merchant_manager.service;
+
+import merchant_manager.models.DTO.AutocompleteSuggestionDTO;
+
+import java.util.List;
+
+public interface DynamicRecordAutocompleteService {
+
+    /**
+     * Suggests values of a search field (searchLead, searchContact or searchMerchant) starting with the prefix, ignoring case
+     * Answered from an in-memory prefix index of the field, built on first use; falls back to the database while the
+     * index loads or when the field holds more values than the index budget
+     *
+     * @param menuId    Menu of the records (Lead, Contact, Merchant)
+     * @param companyId The company ID
+     * @param fieldKey  Key of the search field
+     * @param prefix    Typed text, at least one character
+     * @param limit     Maximum suggestions
+     * @return The logged user's values starting with the prefix, ordered by value then record ID
+     */
+    List<AutocompleteSuggestionDTO> suggest(Long menuId, Long companyId, String fieldKey, String prefix, int limit);
+
+    /**
+     * Re-reads the indexed field values of one record once the surrounding transaction commits
+     * Removes the record from the indexes when the values are gone
+     *
+     * @param menuId   Menu the record belongs to (Lead, Contact, Merchant)
+     * @param recordId The record ID
+     */
+    void refreshRecord(Long menuId, Long recordId);
+
+    /**
+     * Re-reads the indexed field values of many records of one template once the surrounding transaction commits
+     *
+     * @param templateId The default template ID
+     * @param recordIds  The record IDs
+     */
+    void refreshRecords(Long templateId, List<Long> recordIds);
+}
@@ -0,0 +1,62 @@
+package merchant_manager.service;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+public interface DynamicRecordDocumentService {
+
+    /**
+     * Holds the change number lock of each template until the current transaction ends. Must be taken before
+     * writing dynamic_record or dynamic_record_tombstone rows of those templates, which draw change numbers,
+     * so a template's numbers are handed out in commit order: once a delta sync of the template reads a change,
+     * no change of it with a lower number can still commit. Locks are taken in ascending template order.
+     *
+     * @param templateIds The default template IDs about to be written
+     */
+    void lockChangeNumbers(Collection<Long> templateIds);
+
+    /**
+     * Re-materializes the dynamic_record document of one record from its template_form_value_default rows
+     * Removes the document when the record no longer has any value
+     *
+     * @param menuId   Menu the record belongs to (Lead, Contact, Merchant)
+     * @param recordId The record ID
+     */
+    void refreshRecord(Long menuId, Long recordId);
+
+    /**
+     * Re-materializes the dynamic_record documents of many records of one template in a single statement
+     *
+     * @param templateId The default template ID
+     * @param recordIds  The record IDs
+     * @return Number of documents written
+     */
+    int refreshRecords(Long templateId, List<Long> recordIds);
+
+    /**
+     * Rebuilds every document of a template from scratch
+     *
+     * @param templateId The default template ID, or null to rebuild all templates
+     * @return Number of documents written
+     */
+    int rebuild(Long templateId);
+
+    /**
+     * Writes a tombstone for each template of the menu where the user holds values of the record,
+     * so delta syncs report the record as deleted. Must run before the values are deleted.
+     *
+     * @param menuId   Menu the record belongs to (Lead, Contact, Merchant)
+     * @param recordId The record ID
+     * @param userId   The user whose values are being deleted
+     */
+    void recordDeletion(Long menuId, Long recordId, Long userId);
+
+    /**
+     * Removes the tombstones of deletions made before the given time
+     *
+     * @param before Deletion time limit
+     * @return Number of tombstones removed
+     */
+    int purgeTombstones(LocalDateTime before);
+}
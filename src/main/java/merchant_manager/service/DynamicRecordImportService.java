@@ -0,0 +1,26 @@
+package merchant_manager.service;
+
+import merchant_manager.models.DTO.ImportJobDTO;
+import org.springframework.web.multipart.MultipartFile;
+
+public interface DynamicRecordImportService {
+
+    /**
+     * Starts importing a CSV or XLSX file as new records of a menu (Lead, Contact, Merchant)
+     * The header row is matched to the template's fields by key or label; the rows are written in batches in the background
+     *
+     * @param menuId    The menu the records are created in
+     * @param companyId The company whose template receives the values
+     * @param file      The uploaded .csv or .xlsx file
+     * @return The queued import job, to be polled with getImport
+     */
+    ImportJobDTO startImport(Long menuId, Long companyId, MultipartFile file);
+
+    /**
+     * Progress of an import started by the logged user: rows read, imported and rejected, with the row errors
+     *
+     * @param jobId The import job ID
+     * @return The import job
+     */
+    ImportJobDTO getImport(String jobId);
+}
@@ -0,0 +1,60 @@
+package merchant_manager.service;
+
+import merchant_manager.models.DTO.DynamicRecordFacetsRequestDTO;
+import merchant_manager.models.DTO.DynamicRecordsRequestDTO;
+import merchant_manager.models.DTO.RecordFacetDTO;
+
+import java.util.List;
+import java.util.function.Supplier;
+
+public interface DynamicRecordResultCacheService {
+
+    /**
+     * Returns the ordered record IDs of a grid query, running the loader only on a cache miss
+     *
+     * @param templateId The default template ID
+     * @param userId     The requesting user ID
+     * @param request    The query; only filters, sort field and sort direction form the key
+     * @param loader     Computes every matching record ID in page order
+     * @return Matching record IDs in page order
+     */
+    long[] getRecordIds(Long templateId, Long userId, DynamicRecordsRequestDTO request, Supplier<long[]> loader);
+
+    /**
+     * Returns the cached ordered record IDs of a grid query without computing them on a miss
+     *
+     * @param templateId The default template ID
+     * @param userId     The requesting user ID
+     * @param request    The query; only filters, sort field and sort direction form the key
+     * @return Matching record IDs in page order, or null when the query is not cached
+     */
+    long[] getCachedRecordIds(Long templateId, Long userId, DynamicRecordsRequestDTO request);
+
+    /**
+     * Returns the facet counts of a grid query, running the loader only on a cache miss.
+     * Kept next to the query's record IDs and evicted with them.
+     *
+     * @param templateId The default template ID
+     * @param userId     The requesting user ID
+     * @param request    The query; filters, facet fields and facet limit form the key, the sort does not
+     * @param loader     Computes the facet counts
+     * @return Facet counts in facet field order
+     */
+    List<RecordFacetDTO> getFacets(Long templateId, Long userId, DynamicRecordFacetsRequestDTO request, Supplier<List<RecordFacetDTO>> loader);
+
+    /**
+     * Evicts the cached results of every template holding a record, now and again when the
+     * surrounding transaction completes. Call while the record's values still exist.
+     *
+     * @param menuId   Menu the record belongs to (Lead, Contact, Merchant)
+     * @param recordId The record ID
+     */
+    void invalidate(Long menuId, Long recordId);
+
+    /**
+     * Evicts every cached result of a template
+     *
+     * @param templateId The default template ID
+     */
+    void invalidateTemplate(Long templateId);
+}
@@ -1,8 +1,18 @@
 package merchant_manager.service;
 
+import merchant_manager.models.DTO.DynamicRecordAggregationsDTO;
+import merchant_manager.models.DTO.DynamicRecordAggregationsRequestDTO;
+import merchant_manager.models.DTO.DynamicRecordChangesDTO;
+import merchant_manager.models.DTO.DynamicRecordFacetsDTO;
+import merchant_manager.models.DTO.DynamicRecordFacetsRequestDTO;
+import merchant_manager.models.DTO.DynamicRecordsCountDTO;
+import merchant_manager.models.DTO.DynamicRecordsCursorPageDTO;
 import merchant_manager.models.DTO.DynamicRecordsPageDTO;
 import merchant_manager.models.DTO.DynamicRecordsRequestDTO;
 import merchant_manager.models.DTO.DynamicRecordsSimplePageDTO;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.util.List;
 
 public interface DynamicRecordService {
 
@@ -14,4 +24,99 @@ public interface DynamicRecordService {
      * @return Paginated dynamic records without column definitions
      */
     DynamicRecordsSimplePageDTO getDynamicRecordsSimple(DynamicRecordsRequestDTO request);
+
+    /**
+     * Retrieves dynamic records with keyset (cursor) pagination
+     * The page is located by seeking past the "after" token instead of skipping rows, so latency does not grow with depth
+     *
+     * @param request The request containing template ID, filters, sort, size and the optional "after" cursor
+     * @return One page of records with the cursor for the next page
+     */
+    DynamicRecordsCursorPageDTO getDynamicRecordsCursor(DynamicRecordsRequestDTO request);
+
+    /**
+     * Counts every dynamic record matching the request's filters
+     * Companion of getDynamicRecordsSimple for pages fetched with countMode estimate or none
+     *
+     * @param request The request containing template ID and filters; page, sort and countMode are ignored
+     * @return Exact total and the number of pages of the request's size
+     */
+    DynamicRecordsCountDTO countDynamicRecords(DynamicRecordsRequestDTO request);
+
+    /**
+     * Counts the values of the requested fields over the records matching the request's filters, for a filter sidebar
+     * Fields with options also list the options no matching record holds, with a count of 0
+     *
+     * @param request The request containing template ID, filters, facetFields and facetLimit; page, size, sort and countMode are ignored
+     * @return One facet per requested field, in request order, values most frequent first
+     */
+    DynamicRecordFacetsDTO getFacets(DynamicRecordFacetsRequestDTO request);
+
+    /**
+     * Computes count, sum, avg, min, max and the requested percentiles of NUMBER fields over the records matching
+     * the request's filters, optionally per value of the groupBy field. Runs in PostgreSQL whatever the engine.
+     *
+     * @param request The request containing template ID, filters, aggregateFields, percentiles and groupBy;
+     *                page, size, sort and countMode are ignored
+     * @return One group per groupBy value (largest first) or a single group, each with one aggregate per field
+     */
+    DynamicRecordAggregationsDTO getAggregations(DynamicRecordAggregationsRequestDTO request);
+
+    /**
+     * Returns the user's records of a template created, updated or deleted after a watermark, oldest change first,
+     * so clients keeping a local copy transfer only what changed. Changes are ordered by change number, drawn in
+     * commit order, so a write still committing is never skipped. Reads the documents whatever the engine.
+     *
+     * @param menuId    Menu of the template
+     * @param companyId Company of the template
+     * @param since     Watermark returned by the previous call, or null to receive every record
+     * @param fieldKeys Fields to return, or null for all
+     * @param size      Maximum number of changes returned
+     * @return Changed records with their current fields, deleted record IDs and the watermark to pass next
+     */
+    DynamicRecordChangesDTO getChanges(Long menuId, Long companyId, String since, List<String> fieldKeys, int size);
+
+    /**
+     * Every record ID matching the request's filters, in the request's sort order, through the result cache when enabled
+     *
+     * @param request The request containing template ID, filters and sort; page, size and countMode are ignored
+     * @return The ordered record IDs
+     */
+    long[] getDynamicRecordIds(DynamicRecordsRequestDTO request);
+
+    /**
+     * One page of records cut from record IDs computed earlier by getDynamicRecordIds; the fields are read now
+     *
+     * @param request   The request containing template ID, page, size and optional fields
+     * @param recordIds The ordered record IDs of the whole result
+     * @return The page, with the number of record IDs as total
+     */
+    DynamicRecordsSimplePageDTO getDynamicRecordsPage(DynamicRecordsRequestDTO request, long[] recordIds);
+
+    /**
+     * Exports every dynamic record matching the request's filters as NDJSON, one record per line
+     * Access is checked before the body is returned; the records are read and written while the body streams
+     *
+     * @param request The request containing template ID, filters and optional fields; page, size, sort and countMode are ignored
+     * @return Body writing {"recordId":..,"fields":{..}} lines in record ID order
+     */
+    StreamingResponseBody exportDynamicRecords(DynamicRecordsRequestDTO request);
+
+    /**
+     * Exports every dynamic record matching the request's filters as an XLSX workbook
+     * A Record ID column is followed by one column per template field (the requested fields, in request order,
+     * when there are any), headed by the field label. Rows are spooled to disk, not memory.
+     *
+     * @param request The request containing template ID, filters and optional fields; page, size, sort and countMode are ignored
+     * @return Body writing the workbook once every row has been read
+     */
+    StreamingResponseBody exportDynamicRecordsXlsx(DynamicRecordsRequestDTO request);
+
+    /**
+     * Rebuilds the materialized dynamic_record documents, restricted to superusers
+     *
+     * @param templateId The default template ID, or null for every template
+     * @return Number of documents written
+     */
+    int rebuildDocuments(Long templateId);
 }
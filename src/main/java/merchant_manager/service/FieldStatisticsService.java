@@ -0,0 +1,50 @@
+package merchant_manager.service;
+
+import merchant_manager.models.DTO.RecordFilterDTO;
+import merchant_manager.util.FilterPlan;
+
+import java.util.List;
+
+public interface FieldStatisticsService {
+
+    /**
+     * Orders the filters of a dynamic record query so the most selective one runs first
+     *
+     * @param templateId The default template ID
+     * @param filters    Filters in request order
+     * @return Filters in execution order with their estimated selectivity
+     */
+    FilterPlan planFilters(Long templateId, List<RecordFilterDTO> filters);
+
+    /**
+     * Recomputes distinct count, null ratio and most common values for every field of a template
+     *
+     * @param templateId The default template ID
+     */
+    void refreshTemplate(Long templateId);
+
+    /**
+     * Marks the templates holding a record as stale so the next scheduled run refreshes them
+     *
+     * @param menuId   Menu the record belongs to (Lead, Contact, Merchant)
+     * @param recordId The record ID
+     */
+    void markStale(Long menuId, Long recordId);
+
+    /**
+     * Marks a template as stale so the next scheduled run refreshes it
+     *
+     * @param templateId The default template ID
+     */
+    void markTemplateStale(Long templateId);
+
+    /**
+     * Refreshes the templates marked stale since the last run
+     */
+    void refreshStale();
+
+    /**
+     * Refreshes every template that has values
+     */
+    void refreshAll();
+}
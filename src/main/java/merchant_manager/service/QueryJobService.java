@@ -0,0 +1,55 @@
+package merchant_manager.service;
+
+import merchant_manager.dto.GenericQueryRequestDTO;
+import merchant_manager.models.DTO.DynamicRecordsRequestDTO;
+import merchant_manager.models.DTO.QueryJobDTO;
+
+public interface QueryJobService {
+
+    /**
+     * Queues a dynamic record query that computes every matching record ID in sort order
+     * Access to the template is checked now; the query itself runs on the query job executor
+     *
+     * @param request The request containing template ID, filters and sort; page, size and countMode are ignored
+     * @return The queued job, to be polled with getJob or followed on /topic/query-jobs/{jobId}
+     */
+    QueryJobDTO submitDynamicRecords(DynamicRecordsRequestDTO request);
+
+    /**
+     * Queues a generic-data query that buffers its matching rows, up to dynamic-records.query-job-max-rows
+     *
+     * @param request The query request with entity name, filters and sort; page and size are ignored
+     * @return The queued job, to be polled with getJob or followed on /topic/query-jobs/{jobId}
+     */
+    QueryJobDTO submitGenericData(GenericQueryRequestDTO request);
+
+    /**
+     * State of a query job submitted by the logged user
+     *
+     * @param jobId The query job ID
+     * @return The query job
+     */
+    QueryJobDTO getJob(String jobId);
+
+    /**
+     * One page of the results of a completed query job
+     *
+     * @param jobId The query job ID
+     * @param page  Page number (0-based)
+     * @param size  Page size
+     * @return A DynamicRecordsSimplePageDTO for dynamic record jobs, a GenericQueryResponseDTO for generic-data jobs
+     */
+    Object getResults(String jobId, int page, int size);
+
+    /**
+     * Cancels a queued or running query job, or discards the results of a finished one
+     *
+     * @param jobId The query job ID
+     */
+    void cancelJob(String jobId);
+
+    /**
+     * Drops the finished jobs whose results have expired
+     */
+    void removeExpiredJobs();
+}
@@ -3,7 +3,9 @@ package merchant_manager.service;
 import merchant_manager.models.TemplateForm;
 import merchant_manager.models.TemplateFormDefault;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 public interface TemplateFormDefaultService {
 
@@ -23,6 +25,14 @@ public interface TemplateFormDefaultService {
      */
     TemplateFormDefault getByKey(String key);
 
+    /**
+     * Get the column definitions of many keys with one query
+     *
+     * @param keys The column keys
+     * @return Column definitions by key; fails when a key does not exist
+     */
+    Map<String, TemplateFormDefault> getByKeys(Collection<String> keys);
+
     List<TemplateFormDefault> addFieldToDefaultTemplate(Long menuId, Long companyId, List<TemplateFormDefault> templateForm);
 
     void removeFieldFromTemplate(List<String> key);
@@ -2,7 +2,9 @@ package merchant_manager.service;
 
 import merchant_manager.models.TemplateForm;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 public interface TemplateFormService {
 
@@ -12,4 +14,12 @@ public interface TemplateFormService {
 
     List<TemplateForm> getTemplateFields(Long menuId);
 
+    /**
+     * Get the fields of many keys with one query
+     *
+     * @param keys The field keys
+     * @return Fields by key; fails when a key does not exist
+     */
+    Map<String, TemplateForm> findByKeys(Collection<String> keys);
+
 }
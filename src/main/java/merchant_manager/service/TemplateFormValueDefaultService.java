@@ -11,6 +11,15 @@ public interface TemplateFormValueDefaultService {
 
     void addDefaultValuesToForm(Long menuId, Long recordId, List<AddValueRequest> addValueRequests);
 
+    /**
+     * Writes the values of one record with a single INSERT ... ON CONFLICT DO UPDATE, after resolving
+     * every field key with one query. A key sent twice keeps its last value.
+     *
+     * @param recordId         The record ID
+     * @param addValueRequests Field keys and values
+     */
+    void upsertValues(Long recordId, List<AddValueRequest> addValueRequests);
+
     TemplateFormValueDefault findByTemplateFormIdAndRecordId(Long templateFormId, Long recordId);
 
     TemplateFormValueDefault save(TemplateFormValueDefault templateFormValue);
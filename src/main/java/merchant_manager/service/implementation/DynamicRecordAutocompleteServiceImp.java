@@ -0,0 +1,354 @@
+package merchant_manager.service.implementation;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Query;
+import lombok.extern.slf4j.Slf4j;
+import merchant_manager.config.DynamicRecordProperties;
+import merchant_manager.customExceptions.CustomExceptions;
+import merchant_manager.models.DTO.AutocompleteSuggestionDTO;
+import merchant_manager.models.TemplateDefault;
+import merchant_manager.models.TemplateFormDefault;
+import merchant_manager.models.User;
+import merchant_manager.repository.CompanyRepository;
+import merchant_manager.repository.TemplateFormDefaultRepository;
+import merchant_manager.service.DynamicRecordAutocompleteService;
+import merchant_manager.util.PrefixIndex;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static merchant_manager.util.TemplateFormValueDefaultSpecification.escapeLike;
+
+/**
+ * Prefix indexes of the search fields (searchLead, searchContact, searchMerchant), one per field and so per company.
+ * An index is loaded in the background on its first lookup, which the database answers, as it does every lookup
+ * until the load finishes. Loaded indexes are kept current by the value write paths, which re-read the written
+ * records after commit. The indexes share a budget of dynamic-records.autocomplete-max-values values; the least
+ * recently used ones are dropped to stay under it and loaded again in the background when asked for again.
+ */
+@Service
+@Slf4j
+public class DynamicRecordAutocompleteServiceImp implements DynamicRecordAutocompleteService {
+
+    private static final int MAX_LIMIT = 50;
+    private static final int LOAD_FETCH_SIZE = 10_000; // value rows per cursor round trip while loading an index
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private final TemplateFormDefaultRepository templateFormDefaultRepository;
+    private final TemplateDefaultServiceImp templateServiceImp;
+    private final UserServiceImp userServiceImp;
+    private final CompanyRepository companyRepository;
+    private final DynamicRecordProperties dynamicRecordProperties;
+    private final PlatformTransactionManager transactionManager;
+    private final ThreadPoolTaskExecutor autocompleteLoadExecutor;
+
+    // Access-ordered, so iteration starts at the least recently used field; guarded by this
+    private final LinkedHashMap<Long, FieldIndex> indexes = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final Timer indexLookups;
+    private final Timer databaseLookups;
+
+    /**
+     * The prefix index of one field; lookups use the database until it is loaded, and for good when it is oversized
+     */
+    private static final class FieldIndex {
+        final Long fieldId;
+        final Long templateId;
+        final Long menuId;
+        final PrefixIndex index = new PrefixIndex();
+        volatile boolean loaded = false;
+        volatile boolean oversized = false;
+
+        FieldIndex(Long fieldId, Long templateId, Long menuId) {
+            this.fieldId = fieldId;
+            this.templateId = templateId;
+            this.menuId = menuId;
+        }
+    }
+
+    public DynamicRecordAutocompleteServiceImp(TemplateFormDefaultRepository templateFormDefaultRepository,
+                                               TemplateDefaultServiceImp templateServiceImp,
+                                               UserServiceImp userServiceImp,
+                                               CompanyRepository companyRepository,
+                                               DynamicRecordProperties dynamicRecordProperties,
+                                               PlatformTransactionManager transactionManager,
+                                               ThreadPoolTaskExecutor autocompleteLoadExecutor,
+                                               MeterRegistry meterRegistry) {
+        this.templateFormDefaultRepository = templateFormDefaultRepository;
+        this.templateServiceImp = templateServiceImp;
+        this.userServiceImp = userServiceImp;
+        this.companyRepository = companyRepository;
+        this.dynamicRecordProperties = dynamicRecordProperties;
+        this.transactionManager = transactionManager;
+        this.autocompleteLoadExecutor = autocompleteLoadExecutor;
+        this.indexLookups = Timer.builder("autocomplete.lookups").tag("source", "index")
+                .description("Autocomplete lookups answered from a prefix index").register(meterRegistry);
+        this.databaseLookups = Timer.builder("autocomplete.lookups").tag("source", "database")
+                .description("Autocomplete lookups answered by the database while an index loads or when it is oversized").register(meterRegistry);
+        Gauge.builder("autocomplete.index.values", this, DynamicRecordAutocompleteServiceImp::indexedValues)
+                .description("Values held across all autocomplete indexes").register(meterRegistry);
+        Gauge.builder("autocomplete.index.bytes", this, DynamicRecordAutocompleteServiceImp::indexedBytes)
+                .description("Approximate heap held by the autocomplete indexes").baseUnit("bytes").register(meterRegistry);
+        Gauge.builder("autocomplete.index.fields", this, DynamicRecordAutocompleteServiceImp::indexedFields)
+                .description("Search fields with an autocomplete index").register(meterRegistry);
+    }
+
+    @Override
+    public List<AutocompleteSuggestionDTO> suggest(Long menuId, Long companyId, String fieldKey, String prefix, int limit) {
+        User user = userServiceImp.getLoggedUser();
+        if (!companyRepository.existsByIdAndUserId(companyId, user.getId())) {
+            throw new CustomExceptions.UnauthorizedAccessException("This user does not have permission to view dynamic records");
+        }
+        if (prefix == null || prefix.isEmpty()) {
+            throw new CustomExceptions.CustomValidationException("prefix must hold at least one character");
+        }
+        if (limit < 1 || limit > MAX_LIMIT) {
+            throw new CustomExceptions.CustomValidationException("limit must be between 1 and " + MAX_LIMIT);
+        }
+        TemplateDefault template = templateServiceImp.findByMenuIdAndCompanyId(menuId, companyId);
+        TemplateFormDefault field = templateFormDefaultRepository.findByTemplateId(template.getId()).stream()
+                .filter(candidate -> candidate.getKey().equals(fieldKey))
+                .findFirst()
+                .orElseThrow(() -> new CustomExceptions.ResourceNotFoundException("Field not found in template: " + fieldKey));
+        if (!Boolean.TRUE.equals(field.getSearchLead()) && !Boolean.TRUE.equals(field.getSearchContact())
+                && !Boolean.TRUE.equals(field.getSearchMerchant())) {
+            throw new CustomExceptions.CustomValidationException("Autocomplete is only available for search fields: " + fieldKey);
+        }
+
+        FieldIndex fieldIndex = fieldIndex(field.getId(), template.getId(), menuId);
+        long start = System.nanoTime();
+        List<PrefixIndex.Entry> entries;
+        if (fieldIndex.loaded) {
+            entries = fieldIndex.index.lookup(prefix, user.getId(), limit);
+            indexLookups.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        } else {
+            entries = databaseLookup(field.getId(), prefix, user.getId(), limit);
+            databaseLookups.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+        return entries.stream()
+                .map(entry -> new AutocompleteSuggestionDTO(entry.getRecordId(), entry.getValue()))
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public void refreshRecord(Long menuId, Long recordId) {
+        if (menuId == null || recordId == null) {
+            return;
+        }
+        // Record IDs are only unique within a menu, so only that menu's fields may take the values
+        afterCommit(fieldIndex -> menuId.equals(fieldIndex.menuId), List.of(recordId));
+    }
+
+    @Override
+    public void refreshRecords(Long templateId, List<Long> recordIds) {
+        if (templateId == null || recordIds == null || recordIds.isEmpty()) {
+            return;
+        }
+        afterCommit(fieldIndex -> templateId.equals(fieldIndex.templateId), List.copyOf(recordIds));
+    }
+
+    /**
+     * Applies the records' values to the indexes once they are committed, so a rolled-back write never shows up.
+     * The target indexes are picked after the commit too: an index registered while the write was still open
+     * may have read its values before the commit, and only this re-read brings it the written records.
+     */
+    private void afterCommit(Predicate<FieldIndex> target, List<Long> recordIds) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    apply(targets(target), recordIds);
+                }
+            });
+        } else {
+            apply(targets(target), recordIds);
+        }
+    }
+
+    private synchronized List<FieldIndex> targets(Predicate<FieldIndex> target) {
+        return indexes.values().stream()
+                .filter(fieldIndex -> !fieldIndex.oversized && target.test(fieldIndex))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Reads the current value of every target field for the records and writes it to the index, removing records without one
+     */
+    private void apply(List<FieldIndex> targets, List<Long> recordIds) {
+        if (targets.isEmpty()) {
+            return;
+        }
+        Map<Long, FieldIndex> byFieldId = targets.stream().collect(Collectors.toMap(fieldIndex -> fieldIndex.fieldId, fieldIndex -> fieldIndex));
+
+        // The committing transaction is finished; read in a fresh one
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        transactionTemplate.setReadOnly(true);
+        List<Object[]> rows = transactionTemplate.execute(status -> {
+            @SuppressWarnings("unchecked")
+            List<Object[]> result = entityManager.createNativeQuery(
+                            "SELECT v.template_form_default_id, v.record_id, v.user_id, v.value " +
+                            "FROM {h-schema}template_form_value_default v " +
+                            "WHERE v.template_form_default_id IN (:fieldIds) AND v.record_id IN (:recordIds)")
+                    .setParameter("fieldIds", byFieldId.keySet())
+                    .setParameter("recordIds", recordIds)
+                    .getResultList();
+            return result;
+        });
+
+        Map<Long, Set<Long>> written = new HashMap<>();
+        for (Object[] row : rows) {
+            FieldIndex fieldIndex = byFieldId.get(((Number) row[0]).longValue());
+            long recordId = ((Number) row[1]).longValue();
+            fieldIndex.index.put(recordId, ((Number) row[2]).longValue(), (String) row[3]);
+            written.computeIfAbsent(fieldIndex.fieldId, fieldId -> new HashSet<>()).add(recordId);
+        }
+        for (FieldIndex fieldIndex : targets) {
+            Set<Long> present = written.getOrDefault(fieldIndex.fieldId, Set.of());
+            for (Long recordId : recordIds) {
+                if (!present.contains(recordId)) {
+                    fieldIndex.index.remove(recordId);
+                }
+            }
+        }
+        enforceBudget(null);
+    }
+
+    /**
+     * The index of a field, registered on first use with its load queued on the load executor; it is not loaded
+     * yet when returned. Writes reach a registered index while it loads, so nothing committed during the load is missed.
+     */
+    private FieldIndex fieldIndex(Long fieldId, Long templateId, Long menuId) {
+        FieldIndex fieldIndex;
+        synchronized (this) {
+            fieldIndex = indexes.get(fieldId);
+            if (fieldIndex != null) {
+                return fieldIndex;
+            }
+            fieldIndex = new FieldIndex(fieldId, templateId, menuId);
+            indexes.put(fieldId, fieldIndex);
+        }
+        FieldIndex registered = fieldIndex;
+        try {
+            autocompleteLoadExecutor.execute(() -> loadInBackground(registered));
+        } catch (TaskRejectedException e) {
+            unregister(registered);
+            log.warn("Could not queue the autocomplete index load of field {}: {}", fieldId, e.getMessage());
+        }
+        return fieldIndex;
+    }
+
+    /**
+     * Loads the index off the request thread; a failed load is unregistered so that a later lookup tries again
+     */
+    private void loadInBackground(FieldIndex fieldIndex) {
+        try {
+            load(fieldIndex);
+        } catch (RuntimeException e) {
+            unregister(fieldIndex);
+            log.error("Could not load the autocomplete index of field {}: {}", fieldIndex.fieldId, e.getMessage(), e);
+        }
+    }
+
+    private synchronized void unregister(FieldIndex fieldIndex) {
+        indexes.remove(fieldIndex.fieldId, fieldIndex);
+    }
+
+    private void load(FieldIndex fieldIndex) {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setReadOnly(true);
+        transactionTemplate.executeWithoutResult(status -> {
+            long values = ((Number) entityManager.createNativeQuery(
+                            "SELECT count(*) FROM {h-schema}template_form_value_default WHERE template_form_default_id = :fieldId")
+                    .setParameter("fieldId", fieldIndex.fieldId)
+                    .getSingleResult()).longValue();
+            if (values > dynamicRecordProperties.getAutocompleteMaxValues()) {
+                log.info("Field {} holds {} values, over the autocomplete budget; its lookups use the database", fieldIndex.fieldId, values);
+                fieldIndex.oversized = true;
+                return;
+            }
+
+            Query query = entityManager.createNativeQuery(
+                            "SELECT v.record_id, v.user_id, v.value FROM {h-schema}template_form_value_default v " +
+                            "WHERE v.template_form_default_id = :fieldId AND v.value <> ''")
+                    .setParameter("fieldId", fieldIndex.fieldId);
+            query.setHint(HibernateHints.HINT_FETCH_SIZE, LOAD_FETCH_SIZE);
+            query.setHint(HibernateHints.HINT_READ_ONLY, true);
+
+            List<PrefixIndex.Entry> entries = new ArrayList<>((int) values);
+            @SuppressWarnings("unchecked")
+            Stream<Object[]> rows = query.getResultStream();
+            try (rows) {
+                rows.forEach(row -> entries.add(new PrefixIndex.Entry(
+                        ((Number) row[0]).longValue(), ((Number) row[1]).longValue(), (String) row[2])));
+            }
+            fieldIndex.index.load(entries);
+            fieldIndex.loaded = true;
+        });
+        enforceBudget(fieldIndex);
+    }
+
+    /**
+     * Drops the least recently used indexes, never the one just loaded, until the values fit the budget
+     */
+    private synchronized void enforceBudget(FieldIndex keep) {
+        long total = indexedValues();
+        Iterator<FieldIndex> iterator = indexes.values().iterator();
+        while (total > dynamicRecordProperties.getAutocompleteMaxValues() && iterator.hasNext()) {
+            FieldIndex fieldIndex = iterator.next();
+            if (fieldIndex != keep && fieldIndex.loaded) {
+                total -= fieldIndex.index.size();
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Case-insensitive prefix match on the value rows, for fields without a loaded index
+     */
+    private List<PrefixIndex.Entry> databaseLookup(Long fieldId, String prefix, Long userId, int limit) {
+        @SuppressWarnings("unchecked")
+        List<Object[]> rows = entityManager.createNativeQuery(
+                        "SELECT v.record_id, v.value FROM {h-schema}template_form_value_default v " +
+                        "WHERE v.template_form_default_id = :fieldId AND v.user_id = :userId AND lower(v.value) LIKE :pattern " +
+                        "ORDER BY lower(v.value), v.record_id LIMIT :limit")
+                .setParameter("fieldId", fieldId)
+                .setParameter("userId", userId)
+                .setParameter("pattern", escapeLike(prefix.toLowerCase()) + "%")
+                .setParameter("limit", limit)
+                .getResultList();
+        return rows.stream()
+                .map(row -> new PrefixIndex.Entry(((Number) row[0]).longValue(), userId, (String) row[1]))
+                .collect(Collectors.toList());
+    }
+
+    private synchronized long indexedValues() {
+        return indexes.values().stream().mapToLong(fieldIndex -> fieldIndex.index.size()).sum();
+    }
+
+    private synchronized long indexedBytes() {
+        return indexes.values().stream().mapToLong(fieldIndex -> fieldIndex.index.estimatedBytes()).sum();
+    }
+
+    private synchronized int indexedFields() {
+        return indexes.size();
+    }
+}
@@ -0,0 +1,175 @@
+package merchant_manager.service.implementation;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Query;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import merchant_manager.service.DynamicRecordDocumentService;
+import merchant_manager.util.DynamicRecordQueryBuilder;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Keeps the dynamic_record table (one JSONB document per record) in sync with the EAV value rows.
+ * Documents are always recomputed from template_form_value_default, never patched, so a refresh is idempotent.
+ * Every document write and deletion takes a new change number, the position delta syncs page by.
+ * Writers of the same template draw their numbers one at a time; writers of different templates do not wait on each other.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class DynamicRecordDocumentServiceImp implements DynamicRecordDocumentService {
+
+    private static final String DOCUMENT_TABLE = DynamicRecordQueryBuilder.DOCUMENT_TABLE;
+    private static final String TOMBSTONE_TABLE = DynamicRecordQueryBuilder.TOMBSTONE_TABLE;
+    private static final String MENU_TEMPLATES = "SELECT t.id FROM {h-schema}template_default t WHERE t.menu_id = :menuId";
+    private static final int CHANGE_NUMBER_LOCKS = 0x64796e72; // advisory lock namespace; the second key is the template ID
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    @Transactional
+    public void lockChangeNumbers(Collection<Long> templateIds) {
+        // Always in ascending order, so two writers of overlapping templates cannot deadlock
+        for (Long templateId : new TreeSet<>(templateIds)) {
+            entityManager.createNativeQuery("SELECT 1 FROM pg_advisory_xact_lock(:namespace, CAST(:templateId AS int))")
+                    .setParameter("namespace", CHANGE_NUMBER_LOCKS)
+                    .setParameter("templateId", templateId)
+                    .getSingleResult();
+        }
+    }
+
+    @Override
+    @Transactional
+    public void refreshRecord(Long menuId, Long recordId) {
+        if (menuId == null || recordId == null) {
+            return;
+        }
+        // Pending value rows must be visible to the native statements below
+        entityManager.flush();
+        lockChangeNumbers(menuTemplateIds(menuId));
+
+        Query delete = entityManager.createNativeQuery("DELETE FROM " + DOCUMENT_TABLE + " " +
+                "WHERE record_id = :recordId AND template_id IN (" + MENU_TEMPLATES + ")");
+        delete.setParameter("recordId", recordId);
+        delete.setParameter("menuId", menuId);
+        delete.executeUpdate();
+
+        Query insert = entityManager.createNativeQuery(upsertSql(
+                "v.record_id = :recordId AND f.template_id IN (" + MENU_TEMPLATES + ")"));
+        insert.setParameter("recordId", recordId);
+        insert.setParameter("menuId", menuId);
+        insert.executeUpdate();
+    }
+
+    @Override
+    @Transactional
+    public int refreshRecords(Long templateId, List<Long> recordIds) {
+        if (recordIds.isEmpty()) {
+            return 0;
+        }
+        entityManager.flush();
+        lockChangeNumbers(List.of(templateId));
+
+        String condition = "template_id = :templateId AND record_id IN (:recordIds)";
+        Query delete = entityManager.createNativeQuery("DELETE FROM " + DOCUMENT_TABLE + " WHERE " + condition);
+        Query insert = entityManager.createNativeQuery(upsertSql("f.template_id = :templateId AND v.record_id IN (:recordIds)"));
+        for (Query query : List.of(delete, insert)) {
+            query.setParameter("templateId", templateId);
+            query.setParameter("recordIds", recordIds);
+        }
+        delete.executeUpdate();
+        return insert.executeUpdate();
+    }
+
+    @Override
+    @Transactional
+    public int rebuild(Long templateId) {
+        entityManager.flush();
+        lockChangeNumbers(templateId != null ? List.of(templateId) : allTemplateIds());
+
+        Query delete = entityManager.createNativeQuery("DELETE FROM " + DOCUMENT_TABLE +
+                (templateId != null ? " WHERE template_id = :templateId" : ""));
+        Query insert = entityManager.createNativeQuery(upsertSql(templateId != null ? "f.template_id = :templateId" : "true"));
+        if (templateId != null) {
+            delete.setParameter("templateId", templateId);
+            insert.setParameter("templateId", templateId);
+        }
+        delete.executeUpdate();
+        int written = insert.executeUpdate();
+        log.info("Rebuilt {} dynamic record documents for template: {}", written, templateId != null ? templateId : "all");
+        return written;
+    }
+
+    @Override
+    @Transactional
+    public void recordDeletion(Long menuId, Long recordId, Long userId) {
+        if (menuId == null || recordId == null || userId == null) {
+            return;
+        }
+        entityManager.flush();
+        lockChangeNumbers(menuTemplateIds(menuId));
+
+        Query insert = entityManager.createNativeQuery("INSERT INTO " + TOMBSTONE_TABLE + " (template_id, record_id, user_id, deleted_at) " +
+                "SELECT DISTINCT f.template_id, v.record_id, v.user_id, CAST(:deletedAt AS timestamp) " +
+                "FROM " + DynamicRecordQueryBuilder.VALUE_TABLE + " v " +
+                "JOIN " + DynamicRecordQueryBuilder.FIELD_TABLE + " f ON f.id = v.template_form_default_id " +
+                "WHERE v.record_id = :recordId AND v.user_id = :userId AND f.template_id IN (" + MENU_TEMPLATES + ") " +
+                "ON CONFLICT (template_id, record_id, user_id) DO UPDATE SET deleted_at = EXCLUDED.deleted_at, change_seq = EXCLUDED.change_seq");
+        insert.setParameter("recordId", recordId);
+        insert.setParameter("userId", userId);
+        insert.setParameter("menuId", menuId);
+        insert.setParameter("deletedAt", ZonedDateTime.now(ZoneId.of("America/New_York")).toLocalDateTime());
+        insert.executeUpdate();
+    }
+
+    @Override
+    @Transactional
+    public int purgeTombstones(LocalDateTime before) {
+        int purged = entityManager.createNativeQuery("DELETE FROM " + TOMBSTONE_TABLE + " WHERE deleted_at < :before")
+                .setParameter("before", before)
+                .executeUpdate();
+        log.info("Purged {} dynamic record tombstones older than {}", purged, before);
+        return purged;
+    }
+
+    private List<Long> menuTemplateIds(Long menuId) {
+        List<?> ids = entityManager.createNativeQuery(MENU_TEMPLATES).setParameter("menuId", menuId).getResultList();
+        return ids.stream().map(id -> ((Number) id).longValue()).toList();
+    }
+
+    private List<Long> allTemplateIds() {
+        List<?> ids = entityManager.createNativeQuery("SELECT t.id FROM {h-schema}template_default t").getResultList();
+        return ids.stream().map(id -> ((Number) id).longValue()).toList();
+    }
+
+    /**
+     * Aggregates the value rows matching the condition into one document per (template, record).
+     * Same aggregates as the V8 backfill; change_seq takes its default, a new change number.
+     */
+    private static String upsertSql(String condition) {
+        return "INSERT INTO " + DOCUMENT_TABLE + " (template_id, record_id, user_ids, fields, typed, updated_at) " +
+                "SELECT f.template_id, v.record_id, " +
+                "coalesce(array_agg(DISTINCT v.user_id) FILTER (WHERE v.user_id IS NOT NULL), CAST(ARRAY[] AS bigint[])), " +
+                "jsonb_object_agg(f.key, v.value), " +
+                "coalesce(jsonb_object_agg(f.key, coalesce(to_jsonb(v.value_numeric), to_jsonb(v.value_ts))) " +
+                "FILTER (WHERE v.value_numeric IS NOT NULL OR v.value_ts IS NOT NULL), jsonb_build_object()), " +
+                "coalesce(max(v.updated_at), localtimestamp) " +
+                "FROM " + DynamicRecordQueryBuilder.VALUE_TABLE + " v " +
+                "JOIN " + DynamicRecordQueryBuilder.FIELD_TABLE + " f ON f.id = v.template_form_default_id " +
+                "WHERE " + condition + " " +
+                "GROUP BY f.template_id, v.record_id " +
+                "ON CONFLICT (template_id, record_id) DO UPDATE SET " +
+                "user_ids = EXCLUDED.user_ids, fields = EXCLUDED.fields, typed = EXCLUDED.typed, updated_at = EXCLUDED.updated_at, " +
+                "change_seq = EXCLUDED.change_seq";
+    }
+}
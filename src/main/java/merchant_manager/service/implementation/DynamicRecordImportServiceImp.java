@@ -0,0 +1,459 @@
+package merchant_manager.service.implementation;
+
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import merchant_manager.config.DynamicRecordProperties;
+import merchant_manager.customExceptions.CustomExceptions;
+import merchant_manager.models.DTO.ImportJobDTO;
+import merchant_manager.models.DTO.ImportRowErrorDTO;
+import merchant_manager.models.TemplateDefault;
+import merchant_manager.models.TemplateFormDefault;
+import merchant_manager.models.User;
+import merchant_manager.models.enums.FieldType;
+import merchant_manager.models.enums.ImportStatus;
+import merchant_manager.repository.CompanyRepository;
+import merchant_manager.repository.TemplateFormDefaultRepository;
+import merchant_manager.service.DynamicRecordImportService;
+import merchant_manager.util.FieldValueParser;
+import merchant_manager.util.RecordFileParser;
+import org.hibernate.Session;
+import org.postgresql.PGConnection;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Bulk import of CSV / XLSX files as new Lead, Contact or Merchant records.
+ * The upload is spooled to a temp file and parsed row by row on the import executor. Valid rows are written
+ * in batches, one transaction each: the record rows with a single multi-row INSERT, their values with
+ * PostgreSQL COPY, and their dynamic_record documents with a second COPY built from the parsed rows (the
+ * records are new, so there is nothing to merge and no need to read the values back). Batches committed
+ * before a failure stay imported; the job reports how far it got.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class DynamicRecordImportServiceImp implements DynamicRecordImportService {
+
+    private static final int MAX_REPORTED_ERRORS = 1_000;
+    private static final int MAX_VALUE_LENGTH = 255; // template_form_value_default.value is VARCHAR(255)
+    private static final Duration FINISHED_JOB_TTL = Duration.ofHours(1);
+    private static final ZoneId ZONE = ZoneId.of("America/New_York");
+
+    // Record table and the constant columns of a new row, by menu (same defaults as a record created in the UI)
+    private static final Map<Long, String[]> RECORD_TABLES = Map.of(
+            4L, new String[]{"lead", "is_signed, is_active, ", "false, true, "},
+            5L, new String[]{"contact", "", ""},
+            6L, new String[]{"merchant", "", ""});
+
+    private static final String COPY_COLUMNS = "(template_form_default_id, record_id, value, value_numeric, value_ts, " +
+                                               "user_id, created_at, updated_at, created_by, last_updated_by)";
+    private static final String DOCUMENT_COPY_COLUMNS = "(template_id, record_id, user_ids, fields, typed, updated_at)";
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Value("${spring.jpa.properties.hibernate.default_schema:public}")
+    private String schema;
+
+    private final UserServiceImp userServiceImp;
+    private final CompanyRepository companyRepository;
+    private final TemplateDefaultServiceImp templateServiceImp;
+    private final TemplateFormDefaultRepository templateFormDefaultRepository;
+    private final DynamicRecordDocumentServiceImp dynamicRecordDocumentServiceImp;
+    private final FieldStatisticsServiceImp fieldStatisticsServiceImp;
+    private final DynamicRecordResultCacheServiceImp dynamicRecordResultCacheServiceImp;
+    private final DynamicRecordAutocompleteServiceImp dynamicRecordAutocompleteServiceImp;
+    private final DynamicRecordProperties dynamicRecordProperties;
+    private final PlatformTransactionManager transactionManager;
+    private final ThreadPoolTaskExecutor recordImportExecutor;
+
+    private final Map<String, ImportJob> jobs = new ConcurrentHashMap<>();
+
+    @Override
+    public ImportJobDTO startImport(Long menuId, Long companyId, MultipartFile file) {
+        User user = userServiceImp.getLoggedUser();
+        boolean hasCompany = companyRepository.existsByIdAndUserId(companyId, user.getId());
+        if (!hasCompany) {
+            throw new CustomExceptions.UnauthorizedAccessException("This user does not have permission to import dynamic records");
+        }
+        String[] recordTable = RECORD_TABLES.get(menuId);
+        if (recordTable == null) {
+            throw new CustomExceptions.CustomValidationException("Records can only be imported into the Lead, Contact or Merchant menu");
+        }
+        TemplateDefault template = templateServiceImp.findByMenuIdAndCompanyId(menuId, companyId);
+        if (file == null || file.isEmpty()) {
+            throw new CustomExceptions.CustomValidationException("The uploaded file is empty");
+        }
+        String fileName = file.getOriginalFilename();
+        if (!RecordFileParser.supports(fileName)) {
+            throw new CustomExceptions.CustomValidationException("Only .csv and .xlsx files can be imported");
+        }
+        List<TemplateFormDefault> fields = templateFormDefaultRepository.findByTemplateIdOrderById(template.getId());
+
+        // The multipart file is gone once the request ends, so the job reads its own copy
+        Path spooled;
+        try {
+            spooled = Files.createTempFile("record-import-", fileName.substring(fileName.lastIndexOf('.')));
+            file.transferTo(spooled);
+        } catch (IOException e) {
+            log.error("Could not store uploaded import file: {}", e.getMessage(), e);
+            throw new CustomExceptions.SystemErrorException("Could not store the uploaded file");
+        }
+
+        removeExpiredJobs();
+        ImportJob job = new ImportJob(UUID.randomUUID().toString(), user.getId(), fileName, menuId);
+        jobs.put(job.id, job);
+        RecordBatchWriter writer = new RecordBatchWriter(job, recordTable, template.getId(), fields, user);
+        try {
+            recordImportExecutor.execute(() -> runImport(job, spooled, writer));
+        } catch (TaskRejectedException e) {
+            jobs.remove(job.id);
+            deleteQuietly(spooled);
+            throw new CustomExceptions.CustomValidationException("Too many imports are running, try again in a few minutes");
+        }
+        return job.snapshot();
+    }
+
+    @Override
+    public ImportJobDTO getImport(String jobId) {
+        User user = userServiceImp.getLoggedUser();
+        ImportJob job = jobs.get(jobId);
+        if (job == null || !job.userId.equals(user.getId())) {
+            throw new CustomExceptions.ResourceNotFoundException("Import not found with ID: " + jobId);
+        }
+        return job.snapshot();
+    }
+
+    private void runImport(ImportJob job, Path file, RecordBatchWriter writer) {
+        long start = System.nanoTime();
+        try {
+            RecordFileParser.parse(file, job.fileName, writer);
+            writer.flush();
+            job.finish(ImportStatus.COMPLETED, null);
+            double seconds = Math.max((System.nanoTime() - start) / 1e9, 0.001);
+            log.info("Imported {} of {} rows from {} in {} s ({} rows/s)", writer.imported, writer.read, job.fileName,
+                    String.format("%.1f", seconds), Math.round(writer.read / seconds));
+        } catch (CustomExceptions.CustomValidationException e) {
+            writer.publishProgress();
+            job.finish(ImportStatus.FAILED, e.getMessage());
+        } catch (Exception e) {
+            writer.publishProgress();
+            log.error("Import of {} stopped after {} rows: {}", job.fileName, writer.imported, e.getMessage(), e);
+            job.finish(ImportStatus.FAILED, "Import stopped after " + writer.imported + " imported rows: " + e.getMessage());
+        } finally {
+            // An Error (out of memory, missing class) must not leave the job polling as RUNNING forever
+            job.finishIfRunning("Import stopped unexpectedly after " + writer.imported + " imported rows");
+            deleteQuietly(file);
+        }
+    }
+
+    private void removeExpiredJobs() {
+        LocalDateTime expiry = ZonedDateTime.now(ZONE).toLocalDateTime().minus(FINISHED_JOB_TTL);
+        jobs.values().removeIf(job -> job.isFinishedBefore(expiry));
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("Could not delete import file {}: {}", file, e.getMessage());
+        }
+    }
+
+    /**
+     * Maps the header to template fields, validates each row and writes the valid ones batch by batch
+     */
+    private class RecordBatchWriter implements RecordFileParser.RowHandler {
+
+        private final ImportJob job;
+        private final String[] recordTable;
+        private final Long templateId;
+        private final List<TemplateFormDefault> fields;
+        private final Long userId;
+        private final String username;
+        private final TransactionTemplate transactionTemplate;
+
+        private TemplateFormDefault[] columnFields; // template field of each file column, null when unmapped
+        private final List<Object[][]> pending = new ArrayList<>(); // per row: value, numeric and timestamp by column
+        private final List<ImportRowErrorDTO> errors = new ArrayList<>();
+        private long read;
+        private long imported;
+        private long failed;
+
+        RecordBatchWriter(ImportJob job, String[] recordTable, Long templateId, List<TemplateFormDefault> fields, User user) {
+            this.job = job;
+            this.recordTable = recordTable;
+            this.templateId = templateId;
+            this.fields = fields;
+            this.userId = user.getId();
+            this.username = user.getUsername();
+            this.transactionTemplate = new TransactionTemplate(transactionManager);
+        }
+
+        @Override
+        public void header(List<String> headers) {
+            Map<String, TemplateFormDefault> byName = new HashMap<>();
+            // Keys win over labels when a label equals another field's key
+            for (TemplateFormDefault field : fields) {
+                if (field.getLabel() != null) {
+                    byName.put(field.getLabel().trim().toLowerCase(), field);
+                }
+            }
+            for (TemplateFormDefault field : fields) {
+                byName.put(field.getKey().trim().toLowerCase(), field);
+            }
+
+            columnFields = new TemplateFormDefault[headers.size()];
+            Set<Long> mappedFieldIds = new HashSet<>();
+            List<String> unmapped = new ArrayList<>();
+            for (int i = 0; i < headers.size(); i++) {
+                TemplateFormDefault field = byName.get(headers.get(i).trim().toLowerCase());
+                if (field != null && mappedFieldIds.add(field.getId())) {
+                    columnFields[i] = field;
+                } else if (!headers.get(i).isBlank()) {
+                    unmapped.add(headers.get(i));
+                }
+            }
+            if (mappedFieldIds.isEmpty()) {
+                throw new CustomExceptions.CustomValidationException("No column of the file matches the key or label of a template field");
+            }
+            job.mapped(unmapped);
+        }
+
+        @Override
+        public void row(long rowNumber, List<String> cells) {
+            read++;
+            Object[][] row = new Object[columnFields.length][];
+            boolean hasValue = false;
+            String error = null;
+            for (int i = 0; i < columnFields.length && i < cells.size() && error == null; i++) {
+                TemplateFormDefault field = columnFields[i];
+                String value = cells.get(i).trim();
+                if (field == null || value.isEmpty()) {
+                    continue;
+                }
+                Double numeric = FieldValueParser.numericValue(field.getType(), value);
+                LocalDateTime timestamp = FieldValueParser.timestampValue(field.getType(), value);
+                if (value.length() > MAX_VALUE_LENGTH) {
+                    error = field.getKey() + ": value is longer than " + MAX_VALUE_LENGTH + " characters";
+                } else if (field.getType() == FieldType.NUMBER && numeric == null) {
+                    error = field.getKey() + ": '" + value + "' is not a number";
+                } else if ((field.getType() == FieldType.DATE || field.getType() == FieldType.DATETIME) && timestamp == null) {
+                    error = field.getKey() + ": '" + value + "' is not an ISO date (2024-05-01 or 2024-05-01T10:30)";
+                }
+                row[i] = new Object[]{value, numeric, timestamp};
+                hasValue = true;
+            }
+            if (error == null && !hasValue) {
+                error = "The row has no value in a mapped column";
+            }
+
+            if (error != null) {
+                failed++;
+                if (errors.size() < MAX_REPORTED_ERRORS) {
+                    errors.add(new ImportRowErrorDTO(rowNumber, error));
+                }
+                return;
+            }
+            pending.add(row);
+            if (pending.size() >= dynamicRecordProperties.getImportBatchSize()) {
+                flush();
+            }
+        }
+
+        void flush() {
+            if (!pending.isEmpty()) {
+                List<Long> recordIds = transactionTemplate.execute(status -> writeBatch());
+                imported += recordIds.size();
+                pending.clear();
+
+                dynamicRecordResultCacheServiceImp.invalidateTemplate(templateId);
+                fieldStatisticsServiceImp.markTemplateStale(templateId);
+                dynamicRecordAutocompleteServiceImp.refreshRecords(templateId, recordIds);
+            }
+            publishProgress();
+        }
+
+        void publishProgress() {
+            job.progress(read, imported, failed, errors);
+        }
+
+        private List<Long> writeBatch() {
+            LocalDateTime now = ZonedDateTime.now(ZONE).toLocalDateTime();
+
+            @SuppressWarnings("unchecked")
+            List<Number> created = entityManager.createNativeQuery(
+                            "INSERT INTO {h-schema}" + recordTable[0] + " (" + recordTable[1] +
+                            "created_at, updated_at, created_by, last_updated_by) " +
+                            "SELECT " + recordTable[2] + ":now, :now, :username, :username " +
+                            "FROM generate_series(1, :rows) RETURNING id")
+                    .setParameter("now", now)
+                    .setParameter("username", username)
+                    .setParameter("rows", pending.size())
+                    .getResultList();
+            List<Long> recordIds = created.stream().map(Number::longValue).sorted().toList();
+
+            StringBuilder csv = new StringBuilder(pending.size() * columnFields.length * 48);
+            for (int r = 0; r < pending.size(); r++) {
+                Object[][] row = pending.get(r);
+                for (int i = 0; i < row.length; i++) {
+                    if (row[i] != null) {
+                        csv.append(columnFields[i].getId()).append(',')
+                                .append(recordIds.get(r)).append(',');
+                        appendQuoted(csv, (String) row[i][0]).append(',');
+                        csv.append(row[i][1] != null ? row[i][1] : "").append(',')
+                                .append(row[i][2] != null ? row[i][2] : "").append(',')
+                                .append(userId).append(',')
+                                .append(now).append(',').append(now).append(',');
+                        appendQuoted(csv, username).append(',');
+                        appendQuoted(csv, username).append('\n');
+                    }
+                }
+            }
+            String copySql = "COPY " + schema + ".template_form_value_default " + COPY_COLUMNS + " FROM STDIN WITH (FORMAT csv)";
+            String documentCopySql = "COPY " + schema + ".dynamic_record " + DOCUMENT_COPY_COLUMNS + " FROM STDIN WITH (FORMAT csv)";
+            CharSequence documents = documentsCsv(recordIds, now);
+            Session session = entityManager.unwrap(Session.class);
+            session.doWork(connection -> copyIn(connection.unwrap(PGConnection.class), copySql, csv));
+            // Held until the batch commits, so it is taken after the slow value COPY
+            dynamicRecordDocumentServiceImp.lockChangeNumbers(List.of(templateId));
+            session.doWork(connection -> copyIn(connection.unwrap(PGConnection.class), documentCopySql, documents));
+            return recordIds;
+        }
+
+        /**
+         * The documents DynamicRecordDocumentServiceImp would build for the new records: every value under
+         * fields, the numeric and timestamp ones also under typed (timestamps as to_jsonb writes them)
+         */
+        private CharSequence documentsCsv(List<Long> recordIds, LocalDateTime now) {
+            StringBuilder csv = new StringBuilder(pending.size() * columnFields.length * 40);
+            for (int r = 0; r < pending.size(); r++) {
+                Object[][] row = pending.get(r);
+                ObjectNode values = JsonNodeFactory.instance.objectNode();
+                ObjectNode typed = JsonNodeFactory.instance.objectNode();
+                for (int i = 0; i < row.length; i++) {
+                    if (row[i] != null) {
+                        String key = columnFields[i].getKey();
+                        values.put(key, (String) row[i][0]);
+                        if (row[i][1] != null) {
+                            typed.put(key, (Double) row[i][1]);
+                        } else if (row[i][2] != null) {
+                            typed.put(key, DateTimeFormatter.ISO_LOCAL_DATE_TIME.format((LocalDateTime) row[i][2]));
+                        }
+                    }
+                }
+                csv.append(templateId).append(',')
+                        .append(recordIds.get(r)).append(',')
+                        .append("\"{").append(userId).append("}\",");
+                appendQuoted(csv, values.toString()).append(',');
+                appendQuoted(csv, typed.toString()).append(',')
+                        .append(now).append('\n');
+            }
+            return csv;
+        }
+
+        private static void copyIn(PGConnection connection, String copySql, CharSequence csv) throws SQLException {
+            try {
+                connection.getCopyAPI().copyIn(copySql, new StringReader(csv.toString()));
+            } catch (IOException e) {
+                throw new SQLException("Could not stream values to the database", e);
+            }
+        }
+
+        private static StringBuilder appendQuoted(StringBuilder csv, String text) {
+            csv.append('"');
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                if (c == '"') {
+                    csv.append('"');
+                }
+                csv.append(c);
+            }
+            return csv.append('"');
+        }
+    }
+
+    /**
+     * State of one import, updated by the import thread after every batch and read by the polling requests
+     */
+    private static class ImportJob {
+
+        private final String id;
+        private final Long userId;
+        private final String fileName;
+        private final Long menuId;
+        private final LocalDateTime startedAt = ZonedDateTime.now(ZONE).toLocalDateTime();
+
+        private ImportStatus status = ImportStatus.RUNNING;
+        private long rowsRead;
+        private long rowsImported;
+        private long rowsFailed;
+        private List<String> unmappedHeaders = List.of();
+        private List<ImportRowErrorDTO> errors = List.of();
+        private String message;
+        private LocalDateTime finishedAt;
+
+        ImportJob(String id, Long userId, String fileName, Long menuId) {
+            this.id = id;
+            this.userId = userId;
+            this.fileName = fileName;
+            this.menuId = menuId;
+        }
+
+        synchronized void mapped(List<String> unmappedHeaders) {
+            this.unmappedHeaders = List.copyOf(unmappedHeaders);
+        }
+
+        synchronized void progress(long rowsRead, long rowsImported, long rowsFailed, List<ImportRowErrorDTO> errors) {
+            this.rowsRead = rowsRead;
+            this.rowsImported = rowsImported;
+            this.rowsFailed = rowsFailed;
+            if (errors.size() != this.errors.size()) {
+                this.errors = List.copyOf(errors);
+            }
+        }
+
+        synchronized void finish(ImportStatus status, String message) {
+            this.status = status;
+            this.message = message;
+            this.finishedAt = ZonedDateTime.now(ZONE).toLocalDateTime();
+        }
+
+        synchronized void finishIfRunning(String message) {
+            if (status == ImportStatus.RUNNING) {
+                finish(ImportStatus.FAILED, message);
+            }
+        }
+
+        synchronized boolean isFinishedBefore(LocalDateTime time) {
+            return finishedAt != null && finishedAt.isBefore(time);
+        }
+
+        synchronized ImportJobDTO snapshot() {
+            return new ImportJobDTO(id, status, fileName, menuId, rowsRead, rowsImported, rowsFailed,
+                    unmappedHeaders, errors, message, startedAt, finishedAt);
+        }
+    }
+}
@@ -0,0 +1,274 @@
+package merchant_manager.service.implementation;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import merchant_manager.config.DynamicRecordProperties;
+import merchant_manager.models.DTO.DynamicRecordFacetsRequestDTO;
+import merchant_manager.models.DTO.DynamicRecordsRequestDTO;
+import merchant_manager.models.DTO.RecordFacetDTO;
+import merchant_manager.models.DTO.RecordFilterDTO;
+import merchant_manager.models.DTO.RecordFilterGroupDTO;
+import merchant_manager.repository.TemplateFormValueDefaultRepository;
+import merchant_manager.service.DynamicRecordResultCacheService;
+import merchant_manager.util.RecordFilterGroups;
+import merchant_manager.util.RecordSortKey;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.*;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Bounded LRU cache of ordered record IDs per (template, user, normalized query).
+ * Paging through a cached result only fetches the values of the page.
+ * Facet counts of the same queries are kept in a second LRU map with the same bound and invalidation.
+ * Every template carries a version bumped on each invalidation; a result computed while
+ * a write was in flight is not stored, so the cache never serves rows older than the last commit.
+ */
+@Service
+@Slf4j
+public class DynamicRecordResultCacheServiceImp implements DynamicRecordResultCacheService {
+
+    private static final String CACHE_NAME = "dynamicRecordResults";
+    private static final String FACET_CACHE_NAME = "dynamicRecordFacets";
+
+    private final TemplateFormValueDefaultRepository templateFormValueDefaultRepository;
+    private final DynamicRecordProperties dynamicRecordProperties;
+
+    // Access-ordered, so iteration starts at the least recently used entry; guarded by this
+    private final LinkedHashMap<ResultKey, long[]> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<FacetKey, List<RecordFacetDTO>> facetEntries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<Long, Long> templateVersions = new HashMap<>();
+    private long cachedRecordIds = 0;
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter puts;
+    private final Counter evictions;
+    private final Counter facetHits;
+    private final Counter facetMisses;
+    private final Counter facetPuts;
+
+    public DynamicRecordResultCacheServiceImp(TemplateFormValueDefaultRepository templateFormValueDefaultRepository,
+                                              DynamicRecordProperties dynamicRecordProperties,
+                                              MeterRegistry meterRegistry) {
+        this.templateFormValueDefaultRepository = templateFormValueDefaultRepository;
+        this.dynamicRecordProperties = dynamicRecordProperties;
+        this.hits = Counter.builder("cache.gets").tag("cache", CACHE_NAME).tag("result", "hit")
+                .description("Grid queries answered from cached record IDs").register(meterRegistry);
+        this.misses = Counter.builder("cache.gets").tag("cache", CACHE_NAME).tag("result", "miss")
+                .description("Grid queries that had to filter and sort").register(meterRegistry);
+        this.puts = Counter.builder("cache.puts").tag("cache", CACHE_NAME).register(meterRegistry);
+        this.evictions = Counter.builder("cache.evictions").tag("cache", CACHE_NAME)
+                .description("Entries dropped by writes to their template or by the size bounds").register(meterRegistry);
+        Gauge.builder("cache.size", this, DynamicRecordResultCacheServiceImp::size).tag("cache", CACHE_NAME)
+                .register(meterRegistry);
+        this.facetHits = Counter.builder("cache.gets").tag("cache", FACET_CACHE_NAME).tag("result", "hit")
+                .description("Facet requests answered from cached counts").register(meterRegistry);
+        this.facetMisses = Counter.builder("cache.gets").tag("cache", FACET_CACHE_NAME).tag("result", "miss")
+                .description("Facet requests that had to group the matching values").register(meterRegistry);
+        this.facetPuts = Counter.builder("cache.puts").tag("cache", FACET_CACHE_NAME).register(meterRegistry);
+        Gauge.builder("cache.size", this, DynamicRecordResultCacheServiceImp::facetSize).tag("cache", FACET_CACHE_NAME)
+                .register(meterRegistry);
+    }
+
+    @Override
+    public long[] getRecordIds(Long templateId, Long userId, DynamicRecordsRequestDTO request, Supplier<long[]> loader) {
+        ResultKey key = ResultKey.of(templateId, userId, request);
+        long version;
+        synchronized (this) {
+            long[] cached = entries.get(key);
+            if (cached != null) {
+                hits.increment();
+                return cached;
+            }
+            version = templateVersions.getOrDefault(templateId, 0L);
+        }
+        misses.increment();
+
+        long[] recordIds = loader.get();
+
+        synchronized (this) {
+            boolean unchanged = templateVersions.getOrDefault(templateId, 0L) == version;
+            if (unchanged && recordIds.length <= dynamicRecordProperties.getResultCacheMaxRecordIds()) {
+                long[] previous = entries.put(key, recordIds);
+                cachedRecordIds += recordIds.length - (previous != null ? previous.length : 0);
+                puts.increment();
+                evictOverflow();
+            }
+        }
+        return recordIds;
+    }
+
+    @Override
+    public synchronized long[] getCachedRecordIds(Long templateId, Long userId, DynamicRecordsRequestDTO request) {
+        long[] cached = entries.get(ResultKey.of(templateId, userId, request));
+        (cached != null ? hits : misses).increment();
+        return cached;
+    }
+
+    @Override
+    public List<RecordFacetDTO> getFacets(Long templateId, Long userId, DynamicRecordFacetsRequestDTO request,
+                                          Supplier<List<RecordFacetDTO>> loader) {
+        FacetKey key = FacetKey.of(templateId, userId, request);
+        long version;
+        synchronized (this) {
+            List<RecordFacetDTO> cached = facetEntries.get(key);
+            if (cached != null) {
+                facetHits.increment();
+                return cached;
+            }
+            version = templateVersions.getOrDefault(templateId, 0L);
+        }
+        facetMisses.increment();
+
+        List<RecordFacetDTO> facets = List.copyOf(loader.get());
+
+        synchronized (this) {
+            if (templateVersions.getOrDefault(templateId, 0L) == version) {
+                facetEntries.put(key, facets);
+                facetPuts.increment();
+                Iterator<FacetKey> iterator = facetEntries.keySet().iterator();
+                while (iterator.hasNext() && facetEntries.size() > dynamicRecordProperties.getResultCacheMaxEntries()) {
+                    iterator.next();
+                    iterator.remove();
+                }
+            }
+        }
+        return facets;
+    }
+
+    @Override
+    public void invalidate(Long menuId, Long recordId) {
+        if (menuId == null || recordId == null) {
+            return;
+        }
+        List<Long> templateIds = templateFormValueDefaultRepository.findTemplateIdsByMenuIdAndRecordId(menuId, recordId);
+        templateIds.forEach(this::invalidateTemplate);
+
+        // Queries running before the commit still see the old rows; evict whatever they cached
+        if (!templateIds.isEmpty() && TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    templateIds.forEach(DynamicRecordResultCacheServiceImp.this::invalidateTemplate);
+                }
+            });
+        }
+    }
+
+    @Override
+    public synchronized void invalidateTemplate(Long templateId) {
+        templateVersions.merge(templateId, 1L, Long::sum);
+        Iterator<Map.Entry<ResultKey, long[]>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<ResultKey, long[]> entry = iterator.next();
+            if (entry.getKey().getTemplateId().equals(templateId)) {
+                remove(iterator, entry);
+            }
+        }
+        facetEntries.keySet().removeIf(key -> key.getResult().getTemplateId().equals(templateId));
+    }
+
+    private synchronized int size() {
+        return entries.size();
+    }
+
+    private synchronized int facetSize() {
+        return facetEntries.size();
+    }
+
+    private void evictOverflow() {
+        Iterator<Map.Entry<ResultKey, long[]>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext() && (entries.size() > dynamicRecordProperties.getResultCacheMaxEntries()
+                || cachedRecordIds > dynamicRecordProperties.getResultCacheMaxRecordIds())) {
+            remove(iterator, iterator.next());
+        }
+    }
+
+    private void remove(Iterator<Map.Entry<ResultKey, long[]>> iterator, Map.Entry<ResultKey, long[]> entry) {
+        cachedRecordIds -= entry.getValue().length;
+        iterator.remove();
+        evictions.increment();
+    }
+
+    /**
+     * Cache key: filters in a canonical order with case-insensitive values lowercased,
+     * the filter group in the same canonical form, and the sort keys with their directions
+     */
+    @Value
+    static class ResultKey {
+        Long templateId;
+        Long userId;
+        List<String> filters;
+        String filterGroup;
+        String ordering;
+
+        static ResultKey of(Long templateId, Long userId, DynamicRecordsRequestDTO request) {
+            return of(templateId, userId, request, RecordSortKey.ordering(request));
+        }
+
+        static ResultKey of(Long templateId, Long userId, DynamicRecordsRequestDTO request, String ordering) {
+            List<String> filters = request.getFilters() == null ? List.of() : request.getFilters().stream()
+                    .filter(Objects::nonNull)
+                    .map(ResultKey::normalize)
+                    .sorted()
+                    .collect(Collectors.toList());
+            return new ResultKey(
+                    templateId,
+                    userId,
+                    filters,
+                    RecordFilterGroups.hasFilters(request.getFilterGroup()) ? normalize(request.getFilterGroup()) : null,
+                    ordering
+            );
+        }
+
+        /**
+         * Operator and normalized operands, e.g. "OR(filter,filter,AND(filter,filter))"; operands are sorted
+         * because AND and OR do not depend on their order
+         */
+        private static String normalize(RecordFilterGroupDTO group) {
+            List<String> operands = new ArrayList<>();
+            RecordFilterGroups.filters(group).forEach(filter -> operands.add(normalize(filter)));
+            RecordFilterGroups.groups(group).forEach(nested -> operands.add(normalize(nested)));
+            Collections.sort(operands);
+            return RecordFilterGroups.operator(group) + "(" + String.join(",", operands) + ")";
+        }
+
+        private static String normalize(RecordFilterDTO filter) {
+            if (filter.getValue() == null) {
+                return filter.getFieldKey() + "\u0000PRESENT";
+            }
+            String operator = filter.getOperator() != null ? filter.getOperator().toUpperCase() : "EQUALS";
+            String value = switch (operator) {
+                case "GREATER_THAN", "LESS_THAN", "GREATER_THAN_OR_EQUAL", "LESS_THAN_OR_EQUAL", "BETWEEN" -> filter.getValue();
+                default -> filter.getValue().toLowerCase();
+            };
+            String valueTo = "BETWEEN".equals(operator) ? filter.getValueTo() : null;
+            return filter.getFieldKey() + "\u0000" + operator + "\u0000" + value + "\u0000" + valueTo;
+        }
+    }
+
+    /**
+     * Facet cache key: the query without its sort, plus the facet fields in request order and the per-field limit
+     */
+    @Value
+    static class FacetKey {
+        ResultKey result;
+        List<String> fieldKeys;
+        int limit;
+
+        static FacetKey of(Long templateId, Long userId, DynamicRecordFacetsRequestDTO request) {
+            return new FacetKey(
+                    ResultKey.of(templateId, userId, request, ""),
+                    request.getFacetFields() == null ? List.of() : List.copyOf(request.getFacetFields()),
+                    request.getFacetLimit()
+            );
+        }
+    }
+}
@@ -1,223 +1,1024 @@
 package merchant_manager.service.implementation;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Query;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Root;
 import lombok.RequiredArgsConstructor;
+import merchant_manager.config.DynamicRecordProperties;
 import merchant_manager.customExceptions.CustomExceptions;
 import merchant_manager.models.*;
 import merchant_manager.models.DTO.*;
+import merchant_manager.models.enums.CountMode;
+import merchant_manager.models.enums.FieldType;
+import merchant_manager.models.enums.FilterGroupOperator;
+import merchant_manager.models.enums.Role;
 import merchant_manager.repository.TemplateFormDefaultRepository;
 import merchant_manager.repository.TemplateFormValueDefaultRepository;
 import merchant_manager.repository.CompanyRepository;
 import merchant_manager.service.DynamicRecordService;
+import merchant_manager.util.ChangeWatermark;
+import merchant_manager.util.DynamicRecordCursor;
+import merchant_manager.util.DynamicRecordExportWriter;
+import merchant_manager.util.DynamicRecordQueryBuilder;
+import merchant_manager.util.FilterPlan;
+import merchant_manager.util.NdjsonExportWriter;
+import merchant_manager.util.RecordFilterGroups;
+import merchant_manager.util.RecordIdSet;
+import merchant_manager.util.RecordSortKey;
 import merchant_manager.util.TemplateFormValueDefaultSpecification;
+import merchant_manager.util.XlsxExportWriter;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
 import java.util.*;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 @RequiredArgsConstructor
 public class DynamicRecordServiceImp implements DynamicRecordService {
 
-    private final TemplateFormDefaultRepository templateFormDefaultRepository;
+    private static final int EXPORT_FETCH_SIZE = 1_000; // value rows per cursor round trip
+    private static final int MAX_FACET_FIELDS = 20;
+    private static final int MAX_FACET_LIMIT = 500;
+    private static final int MAX_AGGREGATE_FIELDS = 10;
+    private static final int MAX_PERCENTILES = 5;
+    private static final int MAX_AGGREGATE_GROUPS = 500; // largest groups returned when grouping by a many-valued field
+    private static final int MAX_CHANGES = 1_000;
+    private static final int MAX_PAGE_SIZE = 1_000;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
     private final TemplateFormValueDefaultRepository templateFormValueDefaultRepository;
+    private final TemplateFormDefaultRepository templateFormDefaultRepository;
     private final TemplateDefaultServiceImp templateServiceImp;
     private final UserServiceImp userServiceImp;
     private final CompanyRepository companyRepository;
+    private final DynamicRecordProperties dynamicRecordProperties;
+    private final ObjectMapper objectMapper;
+    private final DynamicRecordDocumentServiceImp dynamicRecordDocumentServiceImp;
+    private final FieldStatisticsServiceImp fieldStatisticsServiceImp;
+    private final DynamicRecordResultCacheServiceImp dynamicRecordResultCacheServiceImp;
+    private final PlatformTransactionManager transactionManager;
 
     @Override
     public DynamicRecordsSimplePageDTO getDynamicRecordsSimple(DynamicRecordsRequestDTO request) {
         User user = userServiceImp.getLoggedUser();
-        boolean hasCompany = companyRepository.existsByIdAndUserId(request.getCompanyId(), user.getId());
-        if (!hasCompany) {
-            throw new CustomExceptions.UnauthorizedAccessException("This user does not have permission to view dynamic records");
+        TemplateDefault template = findAccessibleTemplate(request, user);
+        checkPageSize(request);
+        if (request.getPage() < 0) {
+            throw new CustomExceptions.CustomValidationException("page must not be negative");
         }
-        TemplateDefault template = templateServiceImp.findByMenuIdAndCompanyId(request.getMenuId(), request.getCompanyId());
-        // 1. Get all column definitions for the template (for transformation only)
-        List<TemplateFormDefault> columns = templateFormDefaultRepository
-                .findByTemplateId(template.getId());
+        FilterPlan filterPlan = planFilters(request, template);
+        CountMode countMode = request.getCountMode() != null ? request.getCountMode() : CountMode.EXACT;
 
-        // 2. Get all distinct record IDs for this template
-        List<Long> allRecordIds = templateFormValueDefaultRepository
-                .findDistinctRecordIdsByTemplateId(template.getId(), userServiceImp.getLoggedUser());
+        // A cached result is exact and free; only an exact count is worth filling the cache for
+        long[] cachedRecordIds = null;
+        if (dynamicRecordProperties.isResultCacheEnabled()) {
+            cachedRecordIds = countMode == CountMode.EXACT
+                    ? dynamicRecordResultCacheServiceImp.getRecordIds(template.getId(), user.getId(), request,
+                            () -> orderedRecordIds(request, template, user))
+                    : dynamicRecordResultCacheServiceImp.getCachedRecordIds(template.getId(), user.getId(), request);
+        }
 
-        // 3. Apply filtering
-        List<Long> filteredRecordIds = applyFilters(allRecordIds, request.getFilters(), template.getId());
+        DynamicRecordsSimplePageDTO page;
+        if (cachedRecordIds != null) {
+            page = getDynamicRecordsPage(request, template, cachedRecordIds);
+        } else if (dynamicRecordProperties.isLegacyEngine()) {
+            // The in-memory pipeline knows the exact total anyway
+            page = getDynamicRecordsLegacy(request, template);
+        } else if (countMode == CountMode.EXACT) {
+            page = getDynamicRecordsSql(request, template, user);
+        } else {
+            page = getDynamicRecordsUncounted(request, template, user, countMode);
+        }
+        page.setFilterOrder(filterPlan.getFilters().isEmpty() ? null : filterPlan.describe());
+        return page;
+    }
 
-        // 4. Apply sorting (if specified)
-        filteredRecordIds = applySorting(filteredRecordIds, request.getSortBy(),
-                                        request.getSortDirection(), template.getId());
+    @Override
+    public DynamicRecordsCursorPageDTO getDynamicRecordsCursor(DynamicRecordsRequestDTO request) {
+        User user = userServiceImp.getLoggedUser();
+        TemplateDefault template = findAccessibleTemplate(request, user);
+        checkPageSize(request);
+        FilterPlan filterPlan = planFilters(request, template);
+        List<RecordSortKey> sortKeys = sortKeys(request, template);
+        String ordering = RecordSortKey.ordering(request);
+        DynamicRecordCursor after = request.getAfter() == null || request.getAfter().isEmpty()
+                ? null
+                : DynamicRecordCursor.decode(request.getAfter(), ordering, sortKeys.size());
 
-        // 5. Calculate pagination
-        int totalRecords = filteredRecordIds.size();
-        int totalPages = (int) Math.ceil((double) totalRecords / request.getSize());
-        int fromIndex = request.getPage() * request.getSize();
-        int toIndex = Math.min(fromIndex + request.getSize(), totalRecords);
+        String seekEdge = seekEdge(request, template, user, sortKeys, after);
+        DynamicRecordQueryBuilder.SqlQuery sqlQuery = DynamicRecordQueryBuilder.cursorQuery(querySource(), template.getId(), user.getId(),
+                request, sortKeys, after, seekEdge);
+        Query query = entityManager.createNativeQuery(sqlQuery.getSql());
+        sqlQuery.getParameters().forEach(query::setParameter);
 
-        // 6. Get paginated record IDs
-        List<Long> paginatedRecordIds = filteredRecordIds.subList(fromIndex, toIndex);
+        @SuppressWarnings("unchecked")
+        List<Object[]> rows = query.getResultList();
 
-        // 7. Fetch all values for the paginated records
-        List<TemplateFormValueDefault> values = templateFormValueDefaultRepository
-                .findByTemplateIdAndRecordIds(template.getId(), paginatedRecordIds);
+        // One extra row was fetched only to detect whether a next page exists
+        boolean hasNext = rows.size() > request.getSize();
+        List<Object[]> pageRows = hasNext ? rows.subList(0, request.getSize()) : rows;
 
-        // 8. Transform EAV data to grid format
-        List<DynamicRecordDTO> records = transformToGridFormat(paginatedRecordIds, values, columns);
+        List<DynamicRecordDTO> records = new ArrayList<>();
+        for (Object[] row : pageRows) {
+            records.add(new DynamicRecordDTO(((Number) row[0]).longValue(), readFields((String) row[1])));
+        }
 
-        // 9. Build and return response (without columns)
-        return new DynamicRecordsSimplePageDTO(
-                records,
-                totalRecords,
-                request.getPage(),
-                request.getSize(),
-                totalPages
-        );
+        String nextCursor = null;
+        if (hasNext) {
+            Object[] last = pageRows.get(pageRows.size() - 1);
+            List<String> sortValues = new ArrayList<>();
+            for (int i = 0; i < sortKeys.size(); i++) {
+                sortValues.add((String) last[2 + i]);
+            }
+            nextCursor = new DynamicRecordCursor(sortValues, ((Number) last[0]).longValue(), ordering).encode();
+        }
+
+        return new DynamicRecordsCursorPageDTO(records, request.getSize(), nextCursor, hasNext,
+                filterPlan.getFilters().isEmpty() ? null : filterPlan.describe());
     }
 
     /**
-     * Apply filters to record IDs
+     * First sort key value bounding the next sorted page, read from the key's index; null when the page cannot be bounded
      */
-    private List<Long> applyFilters(List<Long> recordIds, List<RecordFilterDTO> filters, Long templateId) {
-        if (filters == null || filters.isEmpty()) {
-            return recordIds;
+    private String seekEdge(DynamicRecordsRequestDTO request, TemplateDefault template, User user,
+                            List<RecordSortKey> sortKeys, DynamicRecordCursor after) {
+        DynamicRecordQueryBuilder.SqlQuery edgeQuery = DynamicRecordQueryBuilder.seekEdgeQuery(querySource(), template.getId(), user.getId(),
+                request, sortKeys, after);
+        if (edgeQuery == null) {
+            return null;
         }
+        Query query = entityManager.createNativeQuery(edgeQuery.getSql());
+        edgeQuery.getParameters().forEach(query::setParameter);
+        @SuppressWarnings("unchecked")
+        List<Object> rows = query.getResultList();
+        return rows.isEmpty() ? null : (String) rows.get(0);
+    }
 
-        // For each filter, narrow down the record IDs
-        for (RecordFilterDTO filter : filters) {
-            recordIds = filterByField(recordIds, filter, templateId);
+    @Override
+    public StreamingResponseBody exportDynamicRecords(DynamicRecordsRequestDTO request) {
+        User user = userServiceImp.getLoggedUser();
+        TemplateDefault template = findAccessibleTemplate(request, user);
+        planFilters(request, template);
+        DynamicRecordQueryBuilder.SqlQuery sqlQuery = DynamicRecordQueryBuilder.exportQuery(template.getId(), user.getId(), request);
+
+        return outputStream -> {
+            try (NdjsonExportWriter writer = new NdjsonExportWriter(objectMapper, outputStream)) {
+                readExport(sqlQuery, writer);
+                writer.finish();
+            }
+        };
+    }
+
+    @Override
+    public StreamingResponseBody exportDynamicRecordsXlsx(DynamicRecordsRequestDTO request) {
+        User user = userServiceImp.getLoggedUser();
+        TemplateDefault template = findAccessibleTemplate(request, user);
+        planFilters(request, template);
+        DynamicRecordQueryBuilder.SqlQuery sqlQuery = DynamicRecordQueryBuilder.exportQuery(template.getId(), user.getId(), request);
+        List<TemplateFormDefault> columns = exportColumns(template, request.getFields());
+
+        return outputStream -> {
+            try (XlsxExportWriter writer = new XlsxExportWriter(columns, outputStream)) {
+                // Rows are spooled to the workbook's temp files, so the transaction ends before the download starts
+                readExport(sqlQuery, writer);
+                writer.finish();
+            }
+        };
+    }
+
+    /**
+     * Template fields in column order: the requested keys in request order, otherwise every field in creation order
+     */
+    private List<TemplateFormDefault> exportColumns(TemplateDefault template, List<String> fieldKeys) {
+        List<TemplateFormDefault> fields = templateFormDefaultRepository.findByTemplateIdOrderById(template.getId());
+        if (fieldKeys == null || fieldKeys.isEmpty()) {
+            return fields;
         }
+        Map<String, TemplateFormDefault> fieldsByKey = fields.stream()
+                .collect(Collectors.toMap(TemplateFormDefault::getKey, field -> field));
+        return fieldKeys.stream()
+                .distinct()
+                .map(fieldsByKey::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
 
-        return recordIds;
+    /**
+     * Reads the value rows forward only and hands them to the writer record by record.
+     * The driver only reads through a cursor (fetchSize rows at a time) inside a transaction,
+     * so neither the result nor a whole record's rows are ever held in memory.
+     */
+    private void readExport(DynamicRecordQueryBuilder.SqlQuery sqlQuery, DynamicRecordExportWriter writer) {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setReadOnly(true);
+        transactionTemplate.executeWithoutResult(status -> {
+            Query query = entityManager.createNativeQuery(sqlQuery.getSql());
+            sqlQuery.getParameters().forEach(query::setParameter);
+            query.setHint(HibernateHints.HINT_FETCH_SIZE, EXPORT_FETCH_SIZE);
+            query.setHint(HibernateHints.HINT_READ_ONLY, true);
+
+            @SuppressWarnings("unchecked")
+            Stream<Object[]> rows = query.getResultStream();
+            try (rows) {
+                Iterator<Object[]> iterator = rows.iterator();
+                Long currentRecordId = null;
+                while (iterator.hasNext()) {
+                    Object[] row = iterator.next();
+                    long recordId = ((Number) row[0]).longValue();
+                    if (currentRecordId == null || recordId != currentRecordId) {
+                        if (currentRecordId != null) {
+                            writer.endRecord();
+                        }
+                        writer.startRecord(recordId);
+                        currentRecordId = recordId;
+                    }
+                    // A record without any requested field comes as a single row with a null key
+                    if (row[1] != null) {
+                        writer.field((String) row[1], (String) row[2]);
+                    }
+                }
+                if (currentRecordId != null) {
+                    writer.endRecord();
+                }
+            } catch (IOException e) {
+                throw new CustomExceptions.SystemErrorException("Dynamic record export interrupted: " + e.getMessage());
+            }
+        });
+    }
+
+    @Override
+    public int rebuildDocuments(Long templateId) {
+        User user = userServiceImp.getLoggedUser();
+        if (user.getRole() != Role.ROLE_SUPERUSER) {
+            throw new CustomExceptions.UnauthorizedAccessException("Only superusers can rebuild dynamic record documents");
+        }
+        return dynamicRecordDocumentServiceImp.rebuild(templateId);
+    }
+
+    private TemplateDefault findAccessibleTemplate(DynamicRecordsRequestDTO request, User user) {
+        return findAccessibleTemplate(request.getMenuId(), request.getCompanyId(), user);
+    }
+
+    private TemplateDefault findAccessibleTemplate(Long menuId, Long companyId, User user) {
+        boolean hasCompany = companyRepository.existsByIdAndUserId(companyId, user.getId());
+        if (!hasCompany) {
+            throw new CustomExceptions.UnauthorizedAccessException("This user does not have permission to view dynamic records");
+        }
+        return templateServiceImp.findByMenuIdAndCompanyId(menuId, companyId);
+    }
+
+    private static void checkPageSize(DynamicRecordsRequestDTO request) {
+        if (request.getSize() < 1 || request.getSize() > MAX_PAGE_SIZE) {
+            throw new CustomExceptions.CustomValidationException("size must be between 1 and " + MAX_PAGE_SIZE);
+        }
     }
 
     /**
-     * Filter record IDs by a specific field condition using database query
+     * Replaces the request's filters with the same filters ordered most selective first,
+     * so both engines narrow the record set as early as possible. Rejects oversized filter groups.
      */
-    private List<Long> filterByField(List<Long> recordIds, RecordFilterDTO filter, Long templateId) {
-        if (recordIds.isEmpty()) {
-            return recordIds;
+    private FilterPlan planFilters(DynamicRecordsRequestDTO request, TemplateDefault template) {
+        RecordFilterGroups.validate(request.getFilterGroup());
+        FilterPlan filterPlan = fieldStatisticsServiceImp.planFilters(template.getId(), request.getFilters());
+        if (request.getFilters() != null) {
+            request.setFilters(filterPlan.getFilters());
         }
+        return filterPlan;
+    }
 
-        if (filter == null) {
-            return recordIds;
+    /**
+     * The request's sort keys typed by their template columns; the fields are only read when there is a sort key
+     */
+    private List<RecordSortKey> sortKeys(DynamicRecordsRequestDTO request, TemplateDefault template) {
+        if (RecordSortKey.requested(request).isEmpty()) {
+            return List.of();
+        }
+        Map<String, FieldType> fieldTypes = templateFormDefaultRepository.findByTemplateId(template.getId()).stream()
+                .filter(field -> field.getType() != null)
+                .collect(Collectors.toMap(TemplateFormDefault::getKey, TemplateFormDefault::getType, (first, second) -> first));
+        return RecordSortKey.of(request, fieldTypes);
+    }
+
+    private DynamicRecordQueryBuilder.Source querySource() {
+        return dynamicRecordProperties.isDocumentEngine()
+                ? DynamicRecordQueryBuilder.Source.DOCUMENT
+                : DynamicRecordQueryBuilder.Source.EAV;
+    }
+
+    @Override
+    public DynamicRecordsCountDTO countDynamicRecords(DynamicRecordsRequestDTO request) {
+        User user = userServiceImp.getLoggedUser();
+        TemplateDefault template = findAccessibleTemplate(request, user);
+        checkPageSize(request);
+        planFilters(request, template);
+
+        long totalRecords;
+        if (dynamicRecordProperties.isResultCacheEnabled()) {
+            // Counting through the cache also prepares every later page of the same query
+            totalRecords = dynamicRecordResultCacheServiceImp.getRecordIds(template.getId(), user.getId(), request,
+                    () -> orderedRecordIds(request, template, user)).length;
+        } else if (dynamicRecordProperties.isLegacyEngine()) {
+            totalRecords = legacyFilteredRecordIds(request, template).size();
+        } else {
+            DynamicRecordQueryBuilder.SqlQuery sqlQuery = DynamicRecordQueryBuilder.countQuery(querySource(), template.getId(), user.getId(), request);
+            Query query = entityManager.createNativeQuery(sqlQuery.getSql());
+            sqlQuery.getParameters().forEach(query::setParameter);
+            totalRecords = ((Number) query.getSingleResult()).longValue();
         }
+        return new DynamicRecordsCountDTO(totalRecords, (int) Math.ceil((double) totalRecords / request.getSize()));
+    }
 
-        if (isNumericOperator(filter.getOperator())) {
-            Optional<Double> targetValue = parseDoubleSafe(filter.getValue());
-            if (targetValue.isEmpty()) {
-                return Collections.emptyList();
+    @Override
+    public DynamicRecordFacetsDTO getFacets(DynamicRecordFacetsRequestDTO request) {
+        User user = userServiceImp.getLoggedUser();
+        TemplateDefault template = findAccessibleTemplate(request, user);
+        List<TemplateFormDefault> facetFields = facetFields(request, template);
+        planFilters(request, template);
+
+        Supplier<List<RecordFacetDTO>> loader = () -> {
+            Map<String, RecordFacetDTO> counted = dynamicRecordProperties.isLegacyEngine()
+                    ? legacyFacets(request, template, facetFields)
+                    : sqlFacets(request, template, user);
+            return facetFields.stream()
+                    .map(field -> withUnusedOptions(counted.getOrDefault(field.getKey(),
+                            new RecordFacetDTO(field.getKey(), new ArrayList<>(), 0)), field))
+                    .collect(Collectors.toList());
+        };
+        List<RecordFacetDTO> facets = dynamicRecordProperties.isResultCacheEnabled()
+                ? dynamicRecordResultCacheServiceImp.getFacets(template.getId(), user.getId(), request, loader)
+                : loader.get();
+        return new DynamicRecordFacetsDTO(facets);
+    }
+
+    /**
+     * The template fields named by facetFields, in request order without repeats; the request keeps the cleaned keys
+     */
+    private List<TemplateFormDefault> facetFields(DynamicRecordFacetsRequestDTO request, TemplateDefault template) {
+        List<String> keys = request.getFacetFields() == null ? List.of() : request.getFacetFields().stream()
+                .filter(key -> key != null && !key.isBlank())
+                .distinct()
+                .collect(Collectors.toList());
+        if (keys.isEmpty()) {
+            throw new CustomExceptions.CustomValidationException("facetFields must name at least one field");
+        }
+        if (keys.size() > MAX_FACET_FIELDS) {
+            throw new CustomExceptions.CustomValidationException("At most " + MAX_FACET_FIELDS + " facet fields can be requested at once");
+        }
+        if (request.getFacetLimit() < 1 || request.getFacetLimit() > MAX_FACET_LIMIT) {
+            throw new CustomExceptions.CustomValidationException("facetLimit must be between 1 and " + MAX_FACET_LIMIT);
+        }
+        Map<String, TemplateFormDefault> fields = templateFormDefaultRepository.findByTemplateId(template.getId()).stream()
+                .collect(Collectors.toMap(TemplateFormDefault::getKey, field -> field, (first, second) -> first));
+        List<TemplateFormDefault> facetFields = new ArrayList<>();
+        for (String key : keys) {
+            TemplateFormDefault field = fields.get(key);
+            if (field == null) {
+                throw new CustomExceptions.ResourceNotFoundException("Field not found in template: " + key);
             }
+            facetFields.add(field);
+        }
+        request.setFacetFields(keys);
+        return facetFields;
+    }
+
+    /**
+     * Facet counts from one grouped native statement, by field key
+     */
+    private Map<String, RecordFacetDTO> sqlFacets(DynamicRecordFacetsRequestDTO request, TemplateDefault template, User user) {
+        DynamicRecordQueryBuilder.SqlQuery sqlQuery = DynamicRecordQueryBuilder.facetsQuery(querySource(), template.getId(), user.getId(), request,
+                request.getFacetFields(), request.getFacetLimit());
+        Query query = entityManager.createNativeQuery(sqlQuery.getSql());
+        sqlQuery.getParameters().forEach(query::setParameter);
+
+        @SuppressWarnings("unchecked")
+        List<Object[]> rows = query.getResultList();
 
-            // Fetch values for this field and record IDs, then filter numerically in-memory
+        Map<String, RecordFacetDTO> facets = new HashMap<>();
+        for (Object[] row : rows) {
+            String key = (String) row[0];
+            facets.computeIfAbsent(key, k -> new RecordFacetDTO(k, new ArrayList<>(), ((Number) row[3]).longValue()))
+                    .getValues().add(new FacetValueDTO((String) row[1], ((Number) row[2]).longValue()));
+        }
+        return facets;
+    }
+
+    /**
+     * Facet counts from the in-memory pipeline: the values of each facet field, kept when their record matches
+     */
+    private Map<String, RecordFacetDTO> legacyFacets(DynamicRecordFacetsRequestDTO request, TemplateDefault template,
+                                                     List<TemplateFormDefault> facetFields) {
+        RecordIdSet recordIds = legacyFilteredRecordIds(request, template);
+        Map<String, RecordFacetDTO> facets = new HashMap<>();
+        for (TemplateFormDefault field : facetFields) {
             Specification<TemplateFormValueDefault> spec = TemplateFormValueDefaultSpecification
-                    .filterByFieldAndValue(filter.getFieldKey(), null, recordIds);
-
-            Double target = targetValue.get();
-            return templateFormValueDefaultRepository.findAll(spec).stream()
-                    .map(v -> new AbstractMap.SimpleEntry<>(v.getRecordId(), parseDoubleSafe(v.getValue())))
-                    .filter(e -> e.getValue().isPresent())
-                    .filter(e -> compareNumeric(e.getValue().get(), target, filter.getOperator()))
-                    .map(Map.Entry::getKey)
-                    .distinct()
+                    .filterForSorting(field.getKey(), null)
+                    .and(TemplateFormValueDefaultSpecification.inTemplate(template.getId()));
+
+            CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+            CriteriaQuery<Object[]> query = criteriaBuilder.createQuery(Object[].class);
+            Root<TemplateFormValueDefault> root = query.from(TemplateFormValueDefault.class);
+            query.multiselect(root.get("recordId"), root.get("value")).where(spec.toPredicate(root, query, criteriaBuilder));
+
+            Map<String, Long> counts = new HashMap<>();
+            for (Object[] row : entityManager.createQuery(query).getResultList()) {
+                String value = (String) row[1];
+                if (value != null && !value.isEmpty() && recordIds.contains((Long) row[0])) {
+                    counts.merge(value, 1L, Long::sum);
+                }
+            }
+            List<FacetValueDTO> values = counts.entrySet().stream()
+                    .sorted(Map.Entry.<String, Long>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()))
+                    .limit(request.getFacetLimit())
+                    .map(entry -> new FacetValueDTO(entry.getKey(), entry.getValue()))
                     .collect(Collectors.toList());
+            facets.put(field.getKey(), new RecordFacetDTO(field.getKey(), values, counts.size()));
         }
+        return facets;
+    }
 
-        // Use Specification to build database query with filtering
-        Specification<TemplateFormValueDefault> spec = TemplateFormValueDefaultSpecification
-                .filterByFieldAndValue(filter.getFieldKey(), filter, recordIds);
+    /**
+     * Appends the field's options that no matching record holds with a count of 0, so the sidebar can list every choice.
+     * Skipped when the values were truncated, since an option past the limit may still be held.
+     */
+    private static RecordFacetDTO withUnusedOptions(RecordFacetDTO facet, TemplateFormDefault field) {
+        if (field.getOptions() == null || facet.getDistinctValues() > facet.getValues().size()) {
+            return facet;
+        }
+        Set<String> counted = facet.getValues().stream().map(FacetValueDTO::getValue).collect(Collectors.toSet());
+        for (Map<String, String> option : field.getOptions()) {
+            String value = option == null ? null : option.getOrDefault("value", option.get("label"));
+            if (value != null && !value.isEmpty() && counted.add(value)) {
+                facet.getValues().add(new FacetValueDTO(value, 0));
+            }
+        }
+        return facet;
+    }
 
-        // Execute query and get matching record IDs
-        return templateFormValueDefaultRepository.findAll(spec).stream()
-                .map(TemplateFormValueDefault::getRecordId)
+    @Override
+    public DynamicRecordAggregationsDTO getAggregations(DynamicRecordAggregationsRequestDTO request) {
+        User user = userServiceImp.getLoggedUser();
+        TemplateDefault template = findAccessibleTemplate(request, user);
+        List<String> aggregateKeys = aggregateFields(request, template);
+        List<Double> percentiles = request.getPercentiles() == null ? List.of() : request.getPercentiles().stream()
+                .filter(Objects::nonNull)
                 .distinct()
                 .collect(Collectors.toList());
+        if (percentiles.size() > MAX_PERCENTILES) {
+            throw new CustomExceptions.CustomValidationException("At most " + MAX_PERCENTILES + " percentiles can be requested at once");
+        }
+        if (percentiles.stream().anyMatch(percentile -> percentile < 0 || percentile > 1)) {
+            throw new CustomExceptions.CustomValidationException("Percentiles must be fractions between 0 and 1");
+        }
+        String groupBy = request.getGroupBy() == null || request.getGroupBy().isBlank() ? null : request.getGroupBy();
+        planFilters(request, template);
+
+        // Never loaded into memory, not even by the legacy engine, which matches on the EAV rows here
+        DynamicRecordQueryBuilder.SqlQuery sqlQuery = DynamicRecordQueryBuilder.aggregationsQuery(querySource(), template.getId(), user.getId(), request,
+                aggregateKeys, percentiles, groupBy, MAX_AGGREGATE_GROUPS);
+        Query query = entityManager.createNativeQuery(sqlQuery.getSql());
+        sqlQuery.getParameters().forEach(query::setParameter);
+
+        @SuppressWarnings("unchecked")
+        List<Object[]> rows = query.getResultList();
+
+        // Rows arrive group by group, one per field holding a numeric value in the group
+        Map<String, AggregationGroupDTO> groups = new LinkedHashMap<>();
+        Map<String, Map<String, FieldAggregateDTO>> groupAggregates = new HashMap<>();
+        long distinctGroups = 0;
+        for (Object[] row : rows) {
+            String groupValue = (String) row[0];
+            distinctGroups = ((Number) row[2]).longValue();
+            groups.computeIfAbsent(groupValue, value -> new AggregationGroupDTO(value.isEmpty() ? null : value, ((Number) row[1]).longValue(), null));
+            if (row[3] != null) {
+                List<Double> percentileValues = new ArrayList<>();
+                for (int i = 0; i < percentiles.size(); i++) {
+                    percentileValues.add(toDouble(row[9 + i]));
+                }
+                groupAggregates.computeIfAbsent(groupValue, value -> new HashMap<>()).put((String) row[3], new FieldAggregateDTO(
+                        (String) row[3], ((Number) row[4]).longValue(), toDouble(row[5]), toDouble(row[6]),
+                        toDouble(row[7]), toDouble(row[8]), percentileValues));
+            }
+        }
+        for (Map.Entry<String, AggregationGroupDTO> group : groups.entrySet()) {
+            Map<String, FieldAggregateDTO> aggregates = groupAggregates.getOrDefault(group.getKey(), Map.of());
+            group.getValue().setAggregates(aggregateKeys.stream()
+                    .map(key -> aggregates.getOrDefault(key, new FieldAggregateDTO(key, 0, null, null, null, null,
+                            Collections.nCopies(percentiles.size(), null))))
+                    .collect(Collectors.toList()));
+        }
+        return new DynamicRecordAggregationsDTO(groupBy, percentiles, new ArrayList<>(groups.values()), distinctGroups);
     }
 
-    private boolean isNumericOperator(String operator) {
-        if (operator == null) {
-            return false;
+    /**
+     * The aggregateFields keys in request order without repeats, checked to be NUMBER fields of the template;
+     * the groupBy key is checked to be a field of the template as well
+     */
+    private List<String> aggregateFields(DynamicRecordAggregationsRequestDTO request, TemplateDefault template) {
+        List<String> keys = request.getAggregateFields() == null ? List.of() : request.getAggregateFields().stream()
+                .filter(key -> key != null && !key.isBlank())
+                .distinct()
+                .collect(Collectors.toList());
+        if (keys.isEmpty()) {
+            throw new CustomExceptions.CustomValidationException("aggregateFields must name at least one field");
+        }
+        if (keys.size() > MAX_AGGREGATE_FIELDS) {
+            throw new CustomExceptions.CustomValidationException("At most " + MAX_AGGREGATE_FIELDS + " fields can be aggregated at once");
+        }
+        Map<String, TemplateFormDefault> fields = templateFormDefaultRepository.findByTemplateId(template.getId()).stream()
+                .collect(Collectors.toMap(TemplateFormDefault::getKey, field -> field, (first, second) -> first));
+        for (String key : keys) {
+            TemplateFormDefault field = fields.get(key);
+            if (field == null) {
+                throw new CustomExceptions.ResourceNotFoundException("Field not found in template: " + key);
+            }
+            if (field.getType() != FieldType.NUMBER) {
+                throw new CustomExceptions.CustomValidationException("Only NUMBER fields can be aggregated: " + key + " is " + field.getType());
+            }
+        }
+        if (request.getGroupBy() != null && !request.getGroupBy().isBlank() && !fields.containsKey(request.getGroupBy())) {
+            throw new CustomExceptions.ResourceNotFoundException("Field not found in template: " + request.getGroupBy());
         }
-        String op = operator.toUpperCase();
-        return op.equals("GREATER_THAN") ||
-                op.equals("LESS_THAN") ||
-                op.equals("GREATER_THAN_OR_EQUAL") ||
-                op.equals("LESS_THAN_OR_EQUAL");
+        return keys;
     }
 
-    private Optional<Double> parseDoubleSafe(String value) {
-        if (value == null) {
-            return Optional.empty();
+    private static Double toDouble(Object value) {
+        return value == null ? null : ((Number) value).doubleValue();
+    }
+
+    @Override
+    public DynamicRecordChangesDTO getChanges(Long menuId, Long companyId, String since, List<String> fieldKeys, int size) {
+        User user = userServiceImp.getLoggedUser();
+        TemplateDefault template = findAccessibleTemplate(menuId, companyId, user);
+        if (size < 1 || size > MAX_CHANGES) {
+            throw new CustomExceptions.CustomValidationException("size must be between 1 and " + MAX_CHANGES);
+        }
+
+        LocalDateTime now = ZonedDateTime.now(ZoneId.of("America/New_York")).toLocalDateTime();
+        ChangeWatermark after = since == null || since.isEmpty()
+                ? ChangeWatermark.origin(lastDeletionSeq(template.getId()), now)
+                : ChangeWatermark.decode(since);
+        // Every deletion after the position was made after the client last caught up; none may have been purged yet
+        if (after.getCaughtUpAtTime().isBefore(now.minusDays(dynamicRecordProperties.getTombstoneRetentionDays()))) {
+            throw new CustomExceptions.CustomValidationException("The watermark is older than the "
+                    + dynamicRecordProperties.getTombstoneRetentionDays() + " days deletions are kept; reload every record without since");
         }
+
+        // Change numbers are drawn in commit order, so nothing numbered below a change read here can still commit.
+        // One row past the size from each stream: their merge then orders the first size changes exactly
+        List<Object[]> changedRows = changeRows(DynamicRecordQueryBuilder.changedRecordsQuery(template.getId(), user.getId(),
+                after.getChangeSeq(), fieldKeys, size + 1));
+        // Deletions before the client's copy was first read are not its concern
+        List<Object[]> deletedRows = changeRows(DynamicRecordQueryBuilder.tombstonesQuery(template.getId(), user.getId(),
+                Math.max(after.getChangeSeq(), after.getSyncedSeq()), size + 1));
+
+        // Rows are (record_id, change_seq[, fields]); a deleted row has no fields
+        List<Object[]> changes = new ArrayList<>(changedRows.size() + deletedRows.size());
+        changes.addAll(changedRows);
+        for (Object[] row : deletedRows) {
+            changes.add(new Object[]{row[0], row[1], null});
+        }
+        changes.sort(Comparator.comparingLong(row -> ((Number) row[1]).longValue()));
+        boolean hasMore = changes.size() > size;
+        List<Object[]> sent = hasMore ? changes.subList(0, size) : changes;
+
+        // A record both changed and deleted in this batch is reported by its latest change
+        Map<Long, Object[]> latest = new LinkedHashMap<>();
+        for (Object[] row : sent) {
+            Long recordId = ((Number) row[0]).longValue();
+            latest.remove(recordId);
+            latest.put(recordId, row);
+        }
+        List<DynamicRecordDTO> records = new ArrayList<>();
+        List<Long> deletedRecordIds = new ArrayList<>();
+        latest.forEach((recordId, row) -> {
+            if (row[2] == null) {
+                deletedRecordIds.add(recordId);
+            } else {
+                records.add(new DynamicRecordDTO(recordId, readFields((String) row[2])));
+            }
+        });
+
+        long changeSeq = sent.isEmpty() ? after.getChangeSeq() : ((Number) sent.get(sent.size() - 1)[1]).longValue();
+        ChangeWatermark next = new ChangeWatermark(changeSeq, after.getSyncedSeq(), hasMore ? after.getCaughtUpAt() : now.toString());
+        return new DynamicRecordChangesDTO(records, deletedRecordIds, next.encode(), hasMore);
+    }
+
+    @Override
+    public long[] getDynamicRecordIds(DynamicRecordsRequestDTO request) {
+        User user = userServiceImp.getLoggedUser();
+        TemplateDefault template = findAccessibleTemplate(request, user);
+        planFilters(request, template);
+        if (dynamicRecordProperties.isResultCacheEnabled()) {
+            return dynamicRecordResultCacheServiceImp.getRecordIds(template.getId(), user.getId(), request,
+                    () -> orderedRecordIds(request, template, user));
+        }
+        return orderedRecordIds(request, template, user);
+    }
+
+    @Override
+    public DynamicRecordsSimplePageDTO getDynamicRecordsPage(DynamicRecordsRequestDTO request, long[] recordIds) {
+        User user = userServiceImp.getLoggedUser();
+        TemplateDefault template = findAccessibleTemplate(request, user);
+        return getDynamicRecordsPage(request, template, recordIds);
+    }
+
+    private List<Object[]> changeRows(DynamicRecordQueryBuilder.SqlQuery sqlQuery) {
+        Query query = entityManager.createNativeQuery(sqlQuery.getSql());
+        sqlQuery.getParameters().forEach(query::setParameter);
+
+        @SuppressWarnings("unchecked")
+        List<Object[]> rows = query.getResultList();
+        return rows;
+    }
+
+    private long lastDeletionSeq(Long templateId) {
+        DynamicRecordQueryBuilder.SqlQuery sqlQuery = DynamicRecordQueryBuilder.lastDeletionQuery(templateId);
+        Query query = entityManager.createNativeQuery(sqlQuery.getSql());
+        sqlQuery.getParameters().forEach(query::setParameter);
+        return ((Number) query.getSingleResult()).longValue();
+    }
+
+    /**
+     * Cuts the page from the ordered record IDs of the whole result, so paging costs one value fetch per page
+     */
+    private DynamicRecordsSimplePageDTO getDynamicRecordsPage(DynamicRecordsRequestDTO request, TemplateDefault template, long[] recordIds) {
+        int fromIndex = (int) Math.min((long) request.getPage() * request.getSize(), recordIds.length);
+        int toIndex = Math.min(fromIndex + request.getSize(), recordIds.length);
+        List<Long> paginatedRecordIds = Arrays.stream(recordIds, fromIndex, toIndex).boxed().collect(Collectors.toList());
+
+        List<DynamicRecordDTO> records = dynamicRecordProperties.isLegacyEngine()
+                ? legacyRecords(template, paginatedRecordIds, request.getFields())
+                : sqlRecords(template, paginatedRecordIds, request.getFields());
+
+        return exactPage(records, recordIds.length, request);
+    }
+
+    /**
+     * Every matching record ID in page order, with the configured engine (result cache loader)
+     */
+    private long[] orderedRecordIds(DynamicRecordsRequestDTO request, TemplateDefault template, User user) {
+        return dynamicRecordProperties.isLegacyEngine()
+                ? legacyRecordIds(request, template)
+                : sqlRecordIds(request, template, user);
+    }
+
+    /**
+     * Fetches one row past the page instead of counting; with ESTIMATE the total comes from the planner.
+     * A short page ends the result, so its total is exact whatever was requested.
+     */
+    private DynamicRecordsSimplePageDTO getDynamicRecordsUncounted(DynamicRecordsRequestDTO request, TemplateDefault template,
+                                                                   User user, CountMode countMode) {
+        DynamicRecordQueryBuilder.SqlQuery sqlQuery = DynamicRecordQueryBuilder.uncountedPageQuery(querySource(), template.getId(), user.getId(), request,
+                sortKeys(request, template));
+        Query query = entityManager.createNativeQuery(sqlQuery.getSql());
+        sqlQuery.getParameters().forEach(query::setParameter);
+
+        @SuppressWarnings("unchecked")
+        List<Object[]> rows = query.getResultList();
+
+        boolean hasNext = rows.size() > request.getSize();
+        List<DynamicRecordDTO> records = new ArrayList<>();
+        for (Object[] row : hasNext ? rows.subList(0, request.getSize()) : rows) {
+            records.add(new DynamicRecordDTO(((Number) row[0]).longValue(), readFields((String) row[1])));
+        }
+
+        long offset = (long) request.getPage() * request.getSize();
+        if (!hasNext && (!records.isEmpty() || request.getPage() == 0)) {
+            return exactPage(records, offset + records.size(), request);
+        }
+        if (countMode == CountMode.NONE) {
+            return new DynamicRecordsSimplePageDTO(records, null, request.getPage(), request.getSize(),
+                    null, hasNext, CountMode.NONE, null);
+        }
+        // Keep the estimate consistent with what this page proved: more rows follow, or the result ends before it
+        long estimate = estimateTotal(request, template, user);
+        long totalRecords = records.isEmpty()
+                ? Math.min(estimate, offset)
+                : Math.max(estimate, offset + records.size() + 1);
+        return new DynamicRecordsSimplePageDTO(records, totalRecords, request.getPage(), request.getSize(),
+                (int) Math.ceil((double) totalRecords / request.getSize()), hasNext, CountMode.ESTIMATE, null);
+    }
+
+    /**
+     * Row estimate of the planner for the matching records; costs one EXPLAIN, nothing is executed
+     */
+    private long estimateTotal(DynamicRecordsRequestDTO request, TemplateDefault template, User user) {
+        DynamicRecordQueryBuilder.SqlQuery sqlQuery = DynamicRecordQueryBuilder.estimateQuery(querySource(), template.getId(), user.getId(), request);
+        Query query = entityManager.createNativeQuery(sqlQuery.getSql());
+        sqlQuery.getParameters().forEach(query::setParameter);
         try {
-            return Optional.of(Double.parseDouble(value.trim()));
-        } catch (NumberFormatException e) {
-            return Optional.empty();
+            JsonNode plan = objectMapper.readTree(String.valueOf(query.getSingleResult()));
+            return plan.path(0).path("Plan").path("Plan Rows").asLong(0);
+        } catch (JsonProcessingException e) {
+            throw new CustomExceptions.SystemErrorException("Could not read query plan: " + e.getMessage());
         }
     }
 
-    private boolean compareNumeric(double actual, double target, String operator) {
-        if (operator == null) {
-            return false;
+    private static DynamicRecordsSimplePageDTO exactPage(List<DynamicRecordDTO> records, long totalRecords, DynamicRecordsRequestDTO request) {
+        int totalPages = (int) Math.ceil((double) totalRecords / request.getSize());
+        return new DynamicRecordsSimplePageDTO(
+                records,
+                totalRecords,
+                request.getPage(),
+                request.getSize(),
+                totalPages,
+                request.getPage() + 1 < totalPages,
+                CountMode.EXACT,
+                null
+        );
+    }
+
+    /**
+     * Every matching record ID in page order, from one native statement
+     */
+    private long[] sqlRecordIds(DynamicRecordsRequestDTO request, TemplateDefault template, User user) {
+        DynamicRecordQueryBuilder.SqlQuery sqlQuery = DynamicRecordQueryBuilder.recordIdsQuery(querySource(), template.getId(), user.getId(), request,
+                sortKeys(request, template));
+        Query query = entityManager.createNativeQuery(sqlQuery.getSql());
+        sqlQuery.getParameters().forEach(query::setParameter);
+
+        @SuppressWarnings("unchecked")
+        List<Number> rows = query.getResultList();
+        return rows.stream().mapToLong(Number::longValue).toArray();
+    }
+
+    /**
+     * Fields of the given records, in the order given
+     */
+    private List<DynamicRecordDTO> sqlRecords(TemplateDefault template, List<Long> recordIds, List<String> fieldKeys) {
+        if (recordIds.isEmpty()) {
+            return new ArrayList<>();
         }
-        String op = operator.toUpperCase();
-        return switch (op) {
-            case "GREATER_THAN" -> actual > target;
-            case "LESS_THAN" -> actual < target;
-            case "GREATER_THAN_OR_EQUAL" -> actual >= target;
-            case "LESS_THAN_OR_EQUAL" -> actual <= target;
-            default -> false;
-        };
+        DynamicRecordQueryBuilder.SqlQuery sqlQuery = DynamicRecordQueryBuilder.fieldsQuery(querySource(), template.getId(), recordIds, fieldKeys);
+        Query query = entityManager.createNativeQuery(sqlQuery.getSql());
+        sqlQuery.getParameters().forEach(query::setParameter);
+
+        @SuppressWarnings("unchecked")
+        List<Object[]> rows = query.getResultList();
+
+        Map<Long, Map<String, String>> fieldsByRecord = new HashMap<>();
+        for (Object[] row : rows) {
+            fieldsByRecord.put(((Number) row[0]).longValue(), readFields((String) row[1]));
+        }
+        return recordIds.stream()
+                .map(recordId -> new DynamicRecordDTO(recordId, fieldsByRecord.getOrDefault(recordId, new HashMap<>())))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Filters, sorts, pages and pivots in one native statement; only the page rows and the total leave the database
+     */
+    private DynamicRecordsSimplePageDTO getDynamicRecordsSql(DynamicRecordsRequestDTO request, TemplateDefault template, User user) {
+        DynamicRecordQueryBuilder.SqlQuery sqlQuery = DynamicRecordQueryBuilder.pageQuery(querySource(), template.getId(), user.getId(), request,
+                sortKeys(request, template));
+        Query query = entityManager.createNativeQuery(sqlQuery.getSql());
+        sqlQuery.getParameters().forEach(query::setParameter);
+
+        @SuppressWarnings("unchecked")
+        List<Object[]> rows = query.getResultList();
+
+        long totalRecords = 0;
+        List<DynamicRecordDTO> records = new ArrayList<>();
+        for (Object[] row : rows) {
+            totalRecords = ((Number) row[0]).longValue();
+            if (row[1] != null) {
+                records.add(new DynamicRecordDTO(((Number) row[1]).longValue(), readFields((String) row[2])));
+            }
+        }
+
+        return exactPage(records, totalRecords, request);
+    }
+
+    private Map<String, String> readFields(String json) {
+        if (json == null) {
+            return new HashMap<>();
+        }
+        try {
+            return objectMapper.readValue(json, new TypeReference<HashMap<String, String>>() {});
+        } catch (JsonProcessingException e) {
+            throw new CustomExceptions.SystemErrorException("Could not read dynamic record fields: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Original pipeline: loads every record ID and narrows it in memory.
+     * Kept as a fallback, selected with dynamic-records.query-engine=legacy
+     */
+    private DynamicRecordsSimplePageDTO getDynamicRecordsLegacy(DynamicRecordsRequestDTO request, TemplateDefault template) {
+        // 1. Get the record IDs of this template matching every filter
+        RecordIdSet filteredRecordIds = legacyFilteredRecordIds(request, template);
+
+        // 2. Calculate pagination
+        long totalRecords = filteredRecordIds.size();
+        long fromIndex = (long) request.getPage() * request.getSize();
+
+        // 3. Apply sorting (if specified) and cut the page; only these IDs go back to the database
+        List<Long> paginatedRecordIds = applySorting(filteredRecordIds, sortKeys(request, template),
+                template.getId(), fromIndex, request.getSize());
+
+        // 4. Fetch the values (requested fields only) of the paginated records in grid format
+        List<DynamicRecordDTO> records = legacyRecords(template, paginatedRecordIds, request.getFields());
+
+        // 5. Build and return response (without columns)
+        return exactPage(records, totalRecords, request);
+    }
+
+    /**
+     * Every matching record ID in page order, from the in-memory pipeline (result cache loader)
+     */
+    private long[] legacyRecordIds(DynamicRecordsRequestDTO request, TemplateDefault template) {
+        return applySorting(legacyFilteredRecordIds(request, template), sortKeys(request, template),
+                template.getId(), 0, Integer.MAX_VALUE)
+                .stream()
+                .mapToLong(Long::longValue)
+                .toArray();
+    }
+
+    private RecordIdSet legacyFilteredRecordIds(DynamicRecordsRequestDTO request, TemplateDefault template) {
+        // Get all distinct record IDs for this template
+        RecordIdSet allRecordIds = RecordIdSet.of(templateFormValueDefaultRepository
+                .findDistinctRecordIdsByTemplateId(template.getId(), userServiceImp.getLoggedUser()));
+
+        // Apply filtering
+        RecordIdSet filtered = applyFilters(allRecordIds.copy(), request.getFilters(), template.getId());
+        if (RecordFilterGroups.hasFilters(request.getFilterGroup()) && !filtered.isEmpty()) {
+            filtered.retainAll(applyFilterGroup(allRecordIds, request.getFilterGroup(), template.getId()));
+        }
+        return filtered;
+    }
+
+    /**
+     * Fetches the values of the given records, only the requested field keys when there are any,
+     * as (recordId, key, value) projections and pivots them to grid format
+     */
+    private List<DynamicRecordDTO> legacyRecords(TemplateDefault template, List<Long> recordIds, List<String> fieldKeys) {
+        if (recordIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+        List<RecordValueDTO> values = fieldKeys == null || fieldKeys.isEmpty()
+                ? templateFormValueDefaultRepository.findValuesByTemplateIdAndRecordIds(template.getId(), recordIds)
+                : templateFormValueDefaultRepository.findValuesByTemplateIdAndRecordIdsAndKeys(template.getId(), recordIds, fieldKeys);
+        return transformToGridFormat(recordIds, values);
     }
 
     /**
-     * Apply sorting to record IDs using database query
+     * Apply filters to record IDs
      */
-    private List<Long> applySorting(List<Long> recordIds, String sortBy, String sortDirection, Long templateId) {
-        if (sortBy == null || sortBy.isEmpty() || recordIds.isEmpty()) {
+    private RecordIdSet applyFilters(RecordIdSet recordIds, List<RecordFilterDTO> filters, Long templateId) {
+        if (filters == null || filters.isEmpty()) {
             return recordIds;
         }
 
-        // Use Specification to get sort values from database
+        // For each filter (most selective first), intersect the record IDs; stop once nothing is left
+        for (RecordFilterDTO filter : filters) {
+            if (filter == null) {
+                continue;
+            }
+            recordIds.retainAll(filterByField(filter, templateId));
+            if (recordIds.isEmpty()) {
+                break;
+            }
+        }
+
+        return recordIds;
+    }
+
+    /**
+     * Record IDs of the template matching a filter group, combining each filter's IDs with set operations;
+     * NOT is taken against every record of the template
+     */
+    private RecordIdSet applyFilterGroup(RecordIdSet allRecordIds, RecordFilterGroupDTO group, Long templateId) {
+        FilterGroupOperator operator = RecordFilterGroups.operator(group);
+        RecordIdSet matches = operator == FilterGroupOperator.OR ? RecordIdSet.empty() : allRecordIds.copy();
+        for (RecordFilterDTO filter : RecordFilterGroups.filters(group)) {
+            combine(matches, filterByField(filter, templateId), operator);
+        }
+        for (RecordFilterGroupDTO nested : RecordFilterGroups.groups(group)) {
+            combine(matches, applyFilterGroup(allRecordIds, nested, templateId), operator);
+        }
+        return operator == FilterGroupOperator.NOT ? allRecordIds.copy().removeAll(matches) : matches;
+    }
+
+    private static void combine(RecordIdSet matches, RecordIdSet condition, FilterGroupOperator operator) {
+        if (operator == FilterGroupOperator.OR) {
+            matches.addAll(condition);
+        } else {
+            matches.retainAll(condition);
+        }
+    }
+
+    /**
+     * Record IDs of the template matching one field condition. The query carries only the
+     * field predicate, never the IDs narrowed so far; the intersection happens in memory.
+     */
+    private RecordIdSet filterByField(RecordFilterDTO filter, Long templateId) {
         Specification<TemplateFormValueDefault> spec = TemplateFormValueDefaultSpecification
-                .filterForSorting(sortBy, recordIds);
-
-        // Execute query and get values for sorting
-        List<TemplateFormValueDefault> values = templateFormValueDefaultRepository.findAll(spec);
-
-        // Create a map of recordId -> value for the sort field
-        Map<Long, String> sortValues = values.stream()
-                .collect(Collectors.toMap(
-                        TemplateFormValueDefault::getRecordId,
-                        TemplateFormValueDefault::getValue,
-                        (v1, v2) -> v1
-                ));
-
-        // Sort record IDs based on the values
-        Comparator<Long> comparator = Comparator.comparing(
-                id -> sortValues.getOrDefault(id, ""),
-                String.CASE_INSENSITIVE_ORDER
-        );
+                .filterByFieldAndValue(filter.getFieldKey(), filter, null)
+                .and(TemplateFormValueDefaultSpecification.inTemplate(templateId));
+
+        CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Long> query = criteriaBuilder.createQuery(Long.class);
+        Root<TemplateFormValueDefault> root = query.from(TemplateFormValueDefault.class);
+        // No DISTINCT: the bitmap deduplicates for free
+        query.select(root.get("recordId")).where(spec.toPredicate(root, query, criteriaBuilder));
 
-        if ("DESC".equalsIgnoreCase(sortDirection)) {
-            comparator = comparator.reversed();
+        RecordIdSet matches = RecordIdSet.empty();
+        entityManager.createQuery(query).getResultList().forEach(matches::add);
+        return matches;
+    }
+
+    /**
+     * Sorts the record IDs by the sort keys and returns the requested page, with the same typed ordering as the SQL engines.
+     * Without a sort key the page is cut straight from the set, newest records first.
+     */
+    private List<Long> applySorting(RecordIdSet recordIds, List<RecordSortKey> sortKeys,
+                                    Long templateId, long fromIndex, int size) {
+        if (sortKeys.isEmpty() || recordIds.isEmpty()) {
+            return recordIds.pageDescending(fromIndex, size);
         }
 
+        Comparator<Long> comparator = null;
+        for (RecordSortKey sortKey : sortKeys) {
+            Comparator<Long> keyComparator = sortKeyComparator(recordIds, sortKey, templateId);
+            if (sortKey.isDescending()) {
+                keyComparator = keyComparator.reversed();
+            }
+            comparator = comparator == null ? keyComparator : comparator.thenComparing(keyComparator);
+        }
+        // Ties newest first, like the unsorted page
+        comparator = comparator.thenComparing(Comparator.reverseOrder());
+
         return recordIds.stream()
+                .boxed()
                 .sorted(comparator)
+                .skip(fromIndex)
+                .limit(size)
                 .collect(Collectors.toList());
     }
 
+    /**
+     * Ascending order of one sort key: numbers and timestamps on their typed copies, text case-insensitively,
+     * missing values first
+     */
+    private Comparator<Long> sortKeyComparator(RecordIdSet recordIds, RecordSortKey sortKey, Long templateId) {
+        // Fetch (recordId, value, typed values) of the sort field and keep those in the set
+        Specification<TemplateFormValueDefault> spec = TemplateFormValueDefaultSpecification
+                .filterForSorting(sortKey.getFieldKey(), null)
+                .and(TemplateFormValueDefaultSpecification.inTemplate(templateId));
+
+        CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Object[]> query = criteriaBuilder.createQuery(Object[].class);
+        Root<TemplateFormValueDefault> root = query.from(TemplateFormValueDefault.class);
+        query.multiselect(root.get("recordId"), root.get("value"), root.get("valueNumeric"), root.get("valueTs"))
+                .where(spec.toPredicate(root, query, criteriaBuilder));
+
+        int column = switch (sortKey.getKind()) {
+            case NUMBER -> 2;
+            case TIMESTAMP -> 3;
+            default -> 1;
+        };
+        Map<Long, Object> sortValues = new HashMap<>();
+        entityManager.createQuery(query).getResultList().forEach(row -> {
+            Long recordId = (Long) row[0];
+            if (row[column] != null && recordIds.contains(recordId)) {
+                sortValues.putIfAbsent(recordId, row[column]);
+            }
+        });
+
+        return switch (sortKey.getKind()) {
+            case NUMBER -> Comparator.comparing(id -> (Double) sortValues.get(id), Comparator.nullsFirst(Comparator.<Double>naturalOrder()));
+            case TIMESTAMP -> Comparator.comparing(id -> (LocalDateTime) sortValues.get(id), Comparator.nullsFirst(Comparator.<LocalDateTime>naturalOrder()));
+            default -> Comparator.comparing(id -> (String) sortValues.getOrDefault(id, ""), String.CASE_INSENSITIVE_ORDER);
+        };
+    }
+
     /**
      * Transform EAV data to grid format (horizontal rows)
      */
-    private List<DynamicRecordDTO> transformToGridFormat(
-            List<Long> recordIds,
-            List<TemplateFormValueDefault> values,
-            List<TemplateFormDefault> columns
-    ) {
+    private List<DynamicRecordDTO> transformToGridFormat(List<Long> recordIds, List<RecordValueDTO> values) {
         // Group values by record ID
-        Map<Long, List<TemplateFormValueDefault>> valuesByRecord = values.stream()
-                .collect(Collectors.groupingBy(TemplateFormValueDefault::getRecordId));
+        Map<Long, List<RecordValueDTO>> valuesByRecord = values.stream()
+                .collect(Collectors.groupingBy(RecordValueDTO::getRecordId));
 
         // Transform each record
         return recordIds.stream()
@@ -225,14 +1026,11 @@ public class DynamicRecordServiceImp implements DynamicRecordService {
                     Map<String, String> fieldValues = new HashMap<>();
 
                     // Get values for this record
-                    List<TemplateFormValueDefault> recordValues = valuesByRecord.getOrDefault(recordId, Collections.emptyList());
+                    List<RecordValueDTO> recordValues = valuesByRecord.getOrDefault(recordId, Collections.emptyList());
 
                     // Map each value to its field key
-                    for (TemplateFormValueDefault value : recordValues) {
-                        fieldValues.put(
-                                value.getTemplateFormDefault().getKey(),
-                                value.getValue()
-                        );
+                    for (RecordValueDTO value : recordValues) {
+                        fieldValues.put(value.getKey(), value.getValue());
                     }
 
                     return new DynamicRecordDTO(recordId, fieldValues);
@@ -0,0 +1,151 @@
+package merchant_manager.service.implementation;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import merchant_manager.models.DTO.RecordFilterDTO;
+import merchant_manager.models.TemplateFormDefaultStats;
+import merchant_manager.repository.TemplateFormDefaultStatsRepository;
+import merchant_manager.repository.TemplateFormValueDefaultRepository;
+import merchant_manager.service.FieldStatisticsService;
+import merchant_manager.util.DynamicRecordQueryBuilder;
+import merchant_manager.util.FilterPlan;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps per-field value statistics (template_form_default_stats) for filter ordering.
+ * Writes only mark templates stale; the aggregation runs from FieldStatisticsScheduler.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class FieldStatisticsServiceImp implements FieldStatisticsService {
+
+    private static final int MOST_COMMON_VALUES = 20;
+
+    private static final String VALUE_TABLE = DynamicRecordQueryBuilder.VALUE_TABLE;
+    private static final String FIELD_TABLE = DynamicRecordQueryBuilder.FIELD_TABLE;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private final TemplateFormDefaultStatsRepository templateFormDefaultStatsRepository;
+    private final TemplateFormValueDefaultRepository templateFormValueDefaultRepository;
+    private final PlatformTransactionManager transactionManager;
+
+    private final Set<Long> staleTemplateIds = ConcurrentHashMap.newKeySet();
+
+    @Override
+    public FilterPlan planFilters(Long templateId, List<RecordFilterDTO> filters) {
+        if (filters == null || filters.isEmpty()) {
+            return FilterPlan.of(filters, Map.of());
+        }
+        Map<String, TemplateFormDefaultStats> statsByKey = templateFormDefaultStatsRepository.findByTemplateId(templateId).stream()
+                .collect(Collectors.toMap(TemplateFormDefaultStats::getFieldKey, Function.identity()));
+
+        boolean missing = filters.stream()
+                .filter(Objects::nonNull)
+                .anyMatch(filter -> !statsByKey.containsKey(filter.getFieldKey()));
+        if (missing) {
+            // New template or new field: estimate as unknown now, compute on the next run
+            staleTemplateIds.add(templateId);
+        }
+        return FilterPlan.of(filters, statsByKey);
+    }
+
+    @Override
+    @Transactional
+    public void refreshTemplate(Long templateId) {
+        String sql = "INSERT INTO {h-schema}template_form_default_stats " +
+                "(template_form_default_id, template_id, field_key, record_count, value_count, distinct_count, " +
+                "null_ratio, most_common_values, refreshed_at) " +
+                "SELECT f.id, f.template_id, f.key, r.record_count, coalesce(s.value_count, 0), coalesce(s.distinct_count, 0), " +
+                "CASE WHEN r.record_count = 0 THEN 0 " +
+                "ELSE greatest(0, 1 - CAST(coalesce(s.value_count, 0) AS double precision) / r.record_count) END, " +
+                "coalesce(m.most_common, jsonb_build_object()), localtimestamp " +
+                "FROM " + FIELD_TABLE + " f " +
+                "CROSS JOIN (SELECT count(DISTINCT v.record_id) AS record_count FROM " + VALUE_TABLE + " v " +
+                "JOIN " + FIELD_TABLE + " rf ON rf.id = v.template_form_default_id WHERE rf.template_id = :templateId) r " +
+                "LEFT JOIN (SELECT v.template_form_default_id, count(*) AS value_count, count(DISTINCT lower(v.value)) AS distinct_count " +
+                "FROM " + VALUE_TABLE + " v JOIN " + FIELD_TABLE + " sf ON sf.id = v.template_form_default_id " +
+                "WHERE sf.template_id = :templateId AND v.value IS NOT NULL GROUP BY v.template_form_default_id) s " +
+                "ON s.template_form_default_id = f.id " +
+                "LEFT JOIN (SELECT c.template_form_default_id, jsonb_object_agg(c.value, c.occurrences) AS most_common " +
+                "FROM (SELECT v.template_form_default_id, lower(v.value) AS value, count(*) AS occurrences, " +
+                "row_number() OVER (PARTITION BY v.template_form_default_id ORDER BY count(*) DESC, lower(v.value)) AS position " +
+                "FROM " + VALUE_TABLE + " v JOIN " + FIELD_TABLE + " cf ON cf.id = v.template_form_default_id " +
+                "WHERE cf.template_id = :templateId AND v.value IS NOT NULL " +
+                "GROUP BY v.template_form_default_id, lower(v.value)) c " +
+                "WHERE c.position <= :mostCommonValues AND c.occurrences > 1 GROUP BY c.template_form_default_id) m " +
+                "ON m.template_form_default_id = f.id " +
+                "WHERE f.template_id = :templateId " +
+                "ON CONFLICT (template_form_default_id) DO UPDATE SET " +
+                "field_key = EXCLUDED.field_key, record_count = EXCLUDED.record_count, value_count = EXCLUDED.value_count, " +
+                "distinct_count = EXCLUDED.distinct_count, null_ratio = EXCLUDED.null_ratio, " +
+                "most_common_values = EXCLUDED.most_common_values, refreshed_at = EXCLUDED.refreshed_at";
+
+        int fields = entityManager.createNativeQuery(sql)
+                .setParameter("templateId", templateId)
+                .setParameter("mostCommonValues", MOST_COMMON_VALUES)
+                .executeUpdate();
+        log.debug("Refreshed statistics of {} fields for template: {}", fields, templateId);
+    }
+
+    @Override
+    public void markStale(Long menuId, Long recordId) {
+        if (menuId == null || recordId == null) {
+            return;
+        }
+        staleTemplateIds.addAll(templateFormValueDefaultRepository.findTemplateIdsByMenuIdAndRecordId(menuId, recordId));
+    }
+
+    @Override
+    public void markTemplateStale(Long templateId) {
+        staleTemplateIds.add(templateId);
+    }
+
+    @Override
+    public void refreshStale() {
+        List<Long> templateIds = new ArrayList<>(staleTemplateIds);
+        for (Long templateId : templateIds) {
+            staleTemplateIds.remove(templateId);
+            refreshQuietly(templateId);
+        }
+        if (!templateIds.isEmpty()) {
+            log.info("Refreshed field statistics for {} stale templates", templateIds.size());
+        }
+    }
+
+    @Override
+    public void refreshAll() {
+        @SuppressWarnings("unchecked")
+        List<Number> templateIds = entityManager.createNativeQuery(
+                        "SELECT DISTINCT f.template_id FROM " + FIELD_TABLE + " f")
+                .getResultList();
+        templateIds.forEach(templateId -> refreshQuietly(templateId.longValue()));
+        log.info("Refreshed field statistics for {} templates", templateIds.size());
+    }
+
+    private void refreshQuietly(Long templateId) {
+        try {
+            // Each template commits on its own so one failure does not roll back the whole run
+            new TransactionTemplate(transactionManager).executeWithoutResult(status -> refreshTemplate(templateId));
+        } catch (Exception e) {
+            staleTemplateIds.add(templateId);
+            log.error("Error refreshing field statistics for template {}: {}", templateId, e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,399 @@
+package merchant_manager.service.implementation;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import merchant_manager.config.DynamicRecordProperties;
+import merchant_manager.customExceptions.CustomExceptions;
+import merchant_manager.dto.GenericQueryRequestDTO;
+import merchant_manager.dto.GenericQueryResponseDTO;
+import merchant_manager.models.DTO.DynamicRecordsRequestDTO;
+import merchant_manager.models.DTO.QueryJobDTO;
+import merchant_manager.models.User;
+import merchant_manager.models.enums.QueryJobStatus;
+import merchant_manager.models.enums.QueryJobType;
+import merchant_manager.repository.CompanyRepository;
+import merchant_manager.service.QueryJobService;
+import org.hibernate.Session;
+import org.postgresql.PGConnection;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.security.concurrent.DelegatingSecurityContextRunnable;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/**
+ * Runs slow dynamic record and generic-data queries on the bounded query job executor instead of a request thread.
+ * A dynamic record job keeps the ordered IDs of every matching record (8 bytes each) and reads the fields of a
+ * page when it is fetched; a generic-data job keeps its rows as JSON, up to dynamic-records.query-job-max-rows.
+ * Every state change is published to /topic/query-jobs/{jobId}. Results are dropped
+ * dynamic-records.query-job-result-ttl-minutes after the job finishes. Cancelling a running job cancels the
+ * statement on its connection; the job keeps its place in the submitter's limit until its thread has stopped.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class QueryJobServiceImp implements QueryJobService {
+
+    private static final int MAX_PAGE_SIZE = 1_000;
+    private static final ZoneId ZONE = ZoneId.of("America/New_York");
+    private static final String TOPIC = "/topic/query-jobs/";
+
+    private final UserServiceImp userServiceImp;
+    private final CompanyRepository companyRepository;
+    private final TemplateDefaultServiceImp templateServiceImp;
+    private final DynamicRecordServiceImp dynamicRecordServiceImp;
+    private final GenericQueryServiceImp genericQueryServiceImp;
+    private final DynamicRecordProperties dynamicRecordProperties;
+    private final PlatformTransactionManager transactionManager;
+    private final ThreadPoolTaskExecutor queryJobExecutor;
+    private final SimpMessagingTemplate messagingTemplate;
+    private final ObjectMapper objectMapper;
+
+    private final Map<String, QueryJob> jobs = new ConcurrentHashMap<>();
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public QueryJobDTO submitDynamicRecords(DynamicRecordsRequestDTO request) {
+        User user = userServiceImp.getLoggedUser();
+        boolean hasCompany = companyRepository.existsByIdAndUserId(request.getCompanyId(), user.getId());
+        if (!hasCompany) {
+            throw new CustomExceptions.UnauthorizedAccessException("This user does not have permission to view dynamic records");
+        }
+        templateServiceImp.findByMenuIdAndCompanyId(request.getMenuId(), request.getCompanyId());
+
+        DynamicRecordsRequestDTO query = objectMapper.convertValue(request, DynamicRecordsRequestDTO.class);
+        return submit(user, QueryJobType.DYNAMIC_RECORDS, job -> {
+            long[] recordIds = dynamicRecordServiceImp.getDynamicRecordIds(query);
+            job.complete(query, recordIds);
+        });
+    }
+
+    @Override
+    public QueryJobDTO submitGenericData(GenericQueryRequestDTO request) {
+        User user = userServiceImp.getLoggedUser();
+        GenericQueryRequestDTO query = objectMapper.convertValue(request, GenericQueryRequestDTO.class);
+        query.setPage(0);
+        query.setSize(dynamicRecordProperties.getQueryJobMaxRows());
+        return submit(user, QueryJobType.GENERIC_DATA, job -> {
+            GenericQueryResponseDTO<Object> response = genericQueryServiceImp.executeQuery(query);
+            // Serialized inside the job's transaction, while lazy associations can still load
+            List<JsonNode> rows = new ArrayList<>(response.getData().size());
+            for (Object row : response.getData()) {
+                rows.add(objectMapper.valueToTree(row));
+            }
+            job.complete(response.getTotalRecords(), rows);
+        });
+    }
+
+    @Override
+    public QueryJobDTO getJob(String jobId) {
+        return findJob(jobId).snapshot();
+    }
+
+    @Override
+    public Object getResults(String jobId, int page, int size) {
+        QueryJob job = findJob(jobId);
+        if (page < 0) {
+            throw new CustomExceptions.CustomValidationException("page must not be negative");
+        }
+        if (size < 1 || size > MAX_PAGE_SIZE) {
+            throw new CustomExceptions.CustomValidationException("size must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        QueryJobStatus status = job.status();
+        if (status != QueryJobStatus.COMPLETED) {
+            throw new CustomExceptions.CustomValidationException("The query has no results: its status is " + status);
+        }
+
+        if (job.type == QueryJobType.DYNAMIC_RECORDS) {
+            DynamicRecordsRequestDTO pageRequest = objectMapper.convertValue(job.dynamicRecordsRequest, DynamicRecordsRequestDTO.class);
+            pageRequest.setPage(page);
+            pageRequest.setSize(size);
+            return dynamicRecordServiceImp.getDynamicRecordsPage(pageRequest, job.recordIds);
+        }
+        return genericPage(job.rows, page, size);
+    }
+
+    @Override
+    public void cancelJob(String jobId) {
+        QueryJob job = findJob(jobId);
+        if (job.cancel()) {
+            publish(job);
+        }
+        // A job still executing is removed by its thread once the query has stopped, so it keeps counting until then
+        if (!job.isExecuting()) {
+            jobs.remove(job.id);
+        }
+    }
+
+    @Override
+    public void removeExpiredJobs() {
+        LocalDateTime now = ZonedDateTime.now(ZONE).toLocalDateTime();
+        jobs.values().removeIf(job -> job.isExpired(now));
+    }
+
+    private QueryJobDTO submit(User user, QueryJobType type, Consumer<QueryJob> query) {
+        removeExpiredJobs();
+        int limit = dynamicRecordProperties.getQueryJobsPerUser();
+        QueryJob job = new QueryJob(UUID.randomUUID().toString(), user.getId(), type,
+                Duration.ofMinutes(dynamicRecordProperties.getQueryJobResultTtlMinutes()));
+        // The count and the insert must not interleave with another submission of the same user
+        synchronized (jobs) {
+            long active = jobs.values().stream().filter(other -> other.userId.equals(user.getId()) && other.holdsSlot()).count();
+            if (active >= limit) {
+                throw new CustomExceptions.CustomValidationException("You already have " + limit +
+                        " queries queued or running; wait for one to finish or cancel it");
+            }
+            jobs.put(job.id, job);
+        }
+        try {
+            // The job reads the logged user through the security context, so it runs with the submitter's
+            job.future = queryJobExecutor.submit(new DelegatingSecurityContextRunnable(() -> run(job, query)));
+        } catch (TaskRejectedException e) {
+            jobs.remove(job.id);
+            throw new CustomExceptions.CustomValidationException("Too many queries are running, try again in a few minutes");
+        }
+        return job.snapshot();
+    }
+
+    private void run(QueryJob job, Consumer<QueryJob> query) {
+        if (!job.start()) {
+            return; // cancelled while queued
+        }
+        publish(job);
+        long start = System.nanoTime();
+        try {
+            TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+            transactionTemplate.setReadOnly(true);
+            transactionTemplate.executeWithoutResult(status -> {
+                // The connection the query runs on, so that cancelling the job can cancel its statement
+                entityManager.unwrap(Session.class).doWork(job::attach);
+                try {
+                    if (job.status() == QueryJobStatus.RUNNING) {
+                        query.accept(job);
+                    }
+                } finally {
+                    job.detach();
+                }
+            });
+            log.info("Query job {} ({}) finished in {} ms", job.id, job.type, (System.nanoTime() - start) / 1_000_000);
+        } catch (CustomExceptions.CustomValidationException | CustomExceptions.UnauthorizedAccessException
+                 | CustomExceptions.ResourceNotFoundException e) {
+            job.fail(e.getMessage());
+        } catch (Exception e) {
+            if (job.status() == QueryJobStatus.CANCELLED) {
+                log.info("Query job {} ({}) stopped after {} ms: cancelled", job.id, job.type, (System.nanoTime() - start) / 1_000_000);
+            } else {
+                log.error("Query job {} ({}) failed: {}", job.id, job.type, e.getMessage(), e);
+                job.fail("The query failed: " + e.getMessage());
+            }
+        } finally {
+            // An Error (out of memory, missing class) must not leave the job polling as RUNNING forever
+            job.fail("The query stopped unexpectedly");
+            boolean cancelled = job.exit();
+            publish(job);
+            if (cancelled) {
+                jobs.remove(job.id);
+            }
+        }
+    }
+
+    private void publish(QueryJob job) {
+        try {
+            messagingTemplate.convertAndSend(TOPIC + job.id, job.snapshot());
+        } catch (Exception e) {
+            log.warn("Could not publish query job {} update: {}", job.id, e.getMessage());
+        }
+    }
+
+    private QueryJob findJob(String jobId) {
+        User user = userServiceImp.getLoggedUser();
+        QueryJob job = jobs.get(jobId);
+        if (job == null || !job.userId.equals(user.getId()) || job.isExpired(ZonedDateTime.now(ZONE).toLocalDateTime())) {
+            throw new CustomExceptions.ResourceNotFoundException("Query job not found with ID: " + jobId);
+        }
+        return job;
+    }
+
+    /**
+     * Cuts a page from the buffered generic-data rows, with the same metadata as a synchronous query
+     */
+    private static GenericQueryResponseDTO<Object> genericPage(List<JsonNode> rows, int page, int size) {
+        int fromIndex = (int) Math.min((long) page * size, rows.size());
+        int toIndex = Math.min(fromIndex + size, rows.size());
+        int totalPages = (int) Math.ceil((double) rows.size() / size);
+
+        GenericQueryResponseDTO<Object> response = new GenericQueryResponseDTO<>();
+        response.setData(new ArrayList<>(rows.subList(fromIndex, toIndex)));
+        response.setTotalRecords(rows.size());
+        response.setCurrentPage(page);
+        response.setPageSize(size);
+        response.setTotalPages(totalPages);
+        response.setFirst(page == 0);
+        response.setLast(page >= totalPages - 1);
+        response.setHasNext(page < totalPages - 1);
+        response.setHasPrevious(page > 0);
+        return response;
+    }
+
+    /**
+     * State and results of one query, updated by the job thread and read by the polling requests
+     */
+    private static class QueryJob {
+
+        private final String id;
+        private final Long userId;
+        private final QueryJobType type;
+        private final Duration resultTtl;
+        private final LocalDateTime submittedAt = ZonedDateTime.now(ZONE).toLocalDateTime();
+        private volatile Future<?> future;
+        private boolean executing; // between start() and exit(), whatever the status
+        private Connection connection; // while the query runs, so cancel() can stop its statement
+
+        private QueryJobStatus status = QueryJobStatus.QUEUED;
+        private Long totalRecords;
+        private Long bufferedRecords;
+        private String message;
+        private LocalDateTime startedAt;
+        private LocalDateTime finishedAt;
+
+        // Results, written once before the job completes and only read after
+        private volatile DynamicRecordsRequestDTO dynamicRecordsRequest;
+        private volatile long[] recordIds;
+        private volatile List<JsonNode> rows;
+
+        QueryJob(String id, Long userId, QueryJobType type, Duration resultTtl) {
+            this.id = id;
+            this.userId = userId;
+            this.type = type;
+            this.resultTtl = resultTtl;
+        }
+
+        synchronized boolean start() {
+            if (status != QueryJobStatus.QUEUED) {
+                return false;
+            }
+            status = QueryJobStatus.RUNNING;
+            startedAt = ZonedDateTime.now(ZONE).toLocalDateTime();
+            executing = true;
+            return true;
+        }
+
+        /**
+         * Marks the job thread as done with the job; true when the job was cancelled and can be discarded now
+         */
+        synchronized boolean exit() {
+            executing = false;
+            return status == QueryJobStatus.CANCELLED;
+        }
+
+        synchronized void attach(Connection connection) {
+            this.connection = connection;
+        }
+
+        // Before the transaction ends, so a late cancel() never reaches a connection returned to the pool
+        synchronized void detach() {
+            this.connection = null;
+        }
+
+        synchronized void complete(DynamicRecordsRequestDTO request, long[] recordIds) {
+            if (status == QueryJobStatus.RUNNING) {
+                this.dynamicRecordsRequest = request;
+                this.recordIds = recordIds;
+                finish(QueryJobStatus.COMPLETED, null, (long) recordIds.length, (long) recordIds.length);
+            }
+        }
+
+        synchronized void complete(long totalRecords, List<JsonNode> rows) {
+            if (status == QueryJobStatus.RUNNING) {
+                this.rows = rows;
+                finish(QueryJobStatus.COMPLETED, null, totalRecords, (long) rows.size());
+            }
+        }
+
+        synchronized void fail(String message) {
+            if (status == QueryJobStatus.RUNNING) {
+                finish(QueryJobStatus.FAILED, message, null, null);
+            }
+        }
+
+        /**
+         * Cancels a queued or running job. A queued job never starts; a running one has the statement on its
+         * connection cancelled by PostgreSQL (interrupting the thread would not stop it) and its results discarded.
+         */
+        synchronized boolean cancel() {
+            if (!isActive()) {
+                return false;
+            }
+            finish(QueryJobStatus.CANCELLED, null, null, null);
+            if (future != null) {
+                future.cancel(false);
+            }
+            if (connection != null) {
+                try {
+                    connection.unwrap(PGConnection.class).cancelQuery();
+                } catch (SQLException e) {
+                    log.warn("Could not cancel the statement of query job {}: {}", id, e.getMessage());
+                }
+            }
+            return true;
+        }
+
+        synchronized QueryJobStatus status() {
+            return status;
+        }
+
+        synchronized boolean isActive() {
+            return status == QueryJobStatus.QUEUED || status == QueryJobStatus.RUNNING;
+        }
+
+        synchronized boolean isExecuting() {
+            return executing;
+        }
+
+        /**
+         * Whether the job counts against its user's limit: queued, or still executing even if already cancelled
+         */
+        synchronized boolean holdsSlot() {
+            return status == QueryJobStatus.QUEUED || executing;
+        }
+
+        synchronized boolean isExpired(LocalDateTime now) {
+            return !executing && finishedAt != null && finishedAt.plus(resultTtl).isBefore(now);
+        }
+
+        private void finish(QueryJobStatus status, String message, Long totalRecords, Long bufferedRecords) {
+            this.status = status;
+            this.message = message;
+            this.totalRecords = totalRecords;
+            this.bufferedRecords = bufferedRecords;
+            this.finishedAt = ZonedDateTime.now(ZONE).toLocalDateTime();
+        }
+
+        synchronized QueryJobDTO snapshot() {
+            return new QueryJobDTO(id, type, status, totalRecords, bufferedRecords, message, submittedAt, startedAt, finishedAt,
+                    finishedAt != null ? finishedAt.plus(resultTtl) : null);
+        }
+    }
+}
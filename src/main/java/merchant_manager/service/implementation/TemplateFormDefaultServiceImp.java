@@ -15,7 +15,10 @@ import org.springframework.transaction.annotation.Transactional;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 @Service
 @Slf4j
@@ -40,6 +43,20 @@ public class TemplateFormDefaultServiceImp implements TemplateFormDefaultService
                         "Column not found with key: " + key));
     }
 
+    @Override
+    public Map<String, TemplateFormDefault> getByKeys(Collection<String> keys) {
+        Map<String, TemplateFormDefault> fields = new HashMap<>();
+        for (TemplateFormDefault field : templateFormDefaultRepository.findByKeyIn(keys)) {
+            fields.put(field.getKey(), field);
+        }
+        for (String key : keys) {
+            if (!fields.containsKey(key)) {
+                throw new CustomExceptions.ResourceNotFoundException("Column not found with key: " + key);
+            }
+        }
+        return fields;
+    }
+
     @Override
     @Transactional
     public List<TemplateFormDefault> addFieldToDefaultTemplate(Long menuId, Long companyId, List<TemplateFormDefault> templateForm) {
@@ -13,7 +13,10 @@ import org.springframework.transaction.annotation.Transactional;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 @Service
 @Slf4j
@@ -97,6 +100,20 @@ public class TemplateFormServiceImp implements TemplateFormService {
         return templateFormRepository.findByKey(key).orElseThrow(() -> new CustomExceptions.ResourceNotFoundException("Template not found for user ID: " + key));
     }
 
+    @Override
+    public Map<String, TemplateForm> findByKeys(Collection<String> keys) {
+        Map<String, TemplateForm> fields = new HashMap<>();
+        for (TemplateForm field : templateFormRepository.findByKeyIn(keys)) {
+            fields.put(field.getKey(), field);
+        }
+        for (String key : keys) {
+            if (!fields.containsKey(key)) {
+                throw new CustomExceptions.ResourceNotFoundException("Template field not found with key: " + key);
+            }
+        }
+        return fields;
+    }
+
     private void removeByKey(String key) {
         templateFormRepository.deleteByKey(key);
     }
@@ -1,5 +1,7 @@
 package merchant_manager.service.implementation;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import merchant_manager.customExceptions.CustomExceptions;
@@ -9,11 +11,18 @@ import merchant_manager.models.enums.Role;
 import merchant_manager.repository.TemplateFormValueDefaultRepository;
 import merchant_manager.repository.TemplateValueFormRepository;
 import merchant_manager.service.TemplateFormValueDefaultService;
+import merchant_manager.util.FieldValueParser;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 @Service
 @Slf4j
@@ -26,8 +35,14 @@ public class TemplateFormValueDefaultServiceImp implements TemplateFormValueDefa
     private final UserServiceImp userServiceImp;
     private final ContactServiceImp contactServiceImp;
     private final MerchantServiceImp merchantServiceImp;
+    private final DynamicRecordDocumentServiceImp dynamicRecordDocumentServiceImp;
+    private final FieldStatisticsServiceImp fieldStatisticsServiceImp;
+    private final DynamicRecordResultCacheServiceImp dynamicRecordResultCacheServiceImp;
+    private final DynamicRecordAutocompleteServiceImp dynamicRecordAutocompleteServiceImp;
+    private final ObjectMapper objectMapper;
 
     @Override
+    @Transactional
     public void addDefaultValuesToForm(Long menuId, Long recordId, List<AddValueRequest> addValueRequests) {
         try {
             if (recordId == null) {
@@ -63,35 +78,17 @@ public class TemplateFormValueDefaultServiceImp implements TemplateFormValueDefa
                         currentRecordId = merchant.getId();
                         break;
                 }
-                for (AddValueRequest addValueRequest : addValueRequests) {
-                    TemplateFormValueDefault templateFormValue = new TemplateFormValueDefault();
-                    templateFormValue.setTemplateFormDefault(templateFormDefaultServiceImp.getByKey(addValueRequest.getKey()));
-                    templateFormValue.setValue(addValueRequest.getValue());
-                    templateFormValue.setRecordId(currentRecordId);
-                    templateFormValue.setCreatedAt(ZonedDateTime.now(ZoneId.of("America/New_York")).toLocalDateTime());
-                    templateFormValue.setUpdatedAt(ZonedDateTime.now(ZoneId.of("America/New_York")).toLocalDateTime());
-                    templateFormValue.setCreatedBy(userServiceImp.getLoggedUser().getUsername());
-                    templateFormValue.setLastUpdatedBy(userServiceImp.getLoggedUser().getUsername());
-                    save(templateFormValue);
-                }
+                upsertValues(currentRecordId, addValueRequests);
+                dynamicRecordDocumentServiceImp.refreshRecord(menuId, currentRecordId);
+                fieldStatisticsServiceImp.markStale(menuId, currentRecordId);
+                dynamicRecordResultCacheServiceImp.invalidate(menuId, currentRecordId);
+                dynamicRecordAutocompleteServiceImp.refreshRecord(menuId, currentRecordId);
             } else {
-                for (AddValueRequest addValueRequest : addValueRequests) {
-                    TemplateFormValueDefault templateFormValue;
-                    try {
-                        templateFormValue = findByTemplateFormIdAndRecordId(templateFormDefaultServiceImp.getByKey(addValueRequest.getKey()).getId(), recordId);
-                    } catch (CustomExceptions.ResourceNotFoundException e) {
-                        templateFormValue = new TemplateFormValueDefault();
-                        templateFormValue.setUser(userServiceImp.getLoggedUser());
-                        templateFormValue.setTemplateFormDefault(templateFormDefaultServiceImp.getByKey(addValueRequest.getKey()));
-                        templateFormValue.setRecordId(recordId);
-                        templateFormValue.setCreatedBy(userServiceImp.getLoggedUser().getUsername());
-                        templateFormValue.setCreatedAt(ZonedDateTime.now(ZoneId.of("America/New_York")).toLocalDateTime());
-                    }
-                    templateFormValue.setValue(addValueRequest.getValue());
-                    templateFormValue.setUpdatedAt(ZonedDateTime.now(ZoneId.of("America/New_York")).toLocalDateTime());
-                    templateFormValue.setLastUpdatedBy(userServiceImp.getLoggedUser().getUsername());
-                    save(templateFormValue);
-                }
+                upsertValues(recordId, addValueRequests);
+                dynamicRecordDocumentServiceImp.refreshRecord(menuId, recordId);
+                fieldStatisticsServiceImp.markStale(menuId, recordId);
+                dynamicRecordResultCacheServiceImp.invalidate(menuId, recordId);
+                dynamicRecordAutocompleteServiceImp.refreshRecord(menuId, recordId);
             }
         } catch (CustomExceptions.ResourceNotFoundException e) {
             throw e;
@@ -102,6 +99,42 @@ public class TemplateFormValueDefaultServiceImp implements TemplateFormValueDefa
     }
 
 
+    @Override
+    public void upsertValues(Long recordId, List<AddValueRequest> addValueRequests) {
+        Map<String, String> valuesByKey = new LinkedHashMap<>();
+        for (AddValueRequest addValueRequest : addValueRequests) {
+            valuesByKey.put(addValueRequest.getKey(), addValueRequest.getValue());
+        }
+        if (valuesByKey.isEmpty()) {
+            return;
+        }
+        Map<String, TemplateFormDefault> fields = templateFormDefaultServiceImp.getByKeys(valuesByKey.keySet());
+
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for (Map.Entry<String, String> entry : valuesByKey.entrySet()) {
+            TemplateFormDefault field = fields.get(entry.getKey());
+            LocalDateTime timestamp = FieldValueParser.timestampValue(field.getType(), entry.getValue());
+            Map<String, Object> row = new HashMap<>();
+            row.put("field_id", field.getId());
+            row.put("value", entry.getValue());
+            row.put("value_numeric", FieldValueParser.numericValue(field.getType(), entry.getValue()));
+            row.put("value_ts", timestamp != null ? timestamp.toString() : null);
+            rows.add(row);
+        }
+
+        User user = userServiceImp.getLoggedUser();
+        templateFormValueDefaultRepository.upsertValues(recordId, toJson(rows), user.getId(),
+                ZonedDateTime.now(ZoneId.of("America/New_York")).toLocalDateTime(), user.getUsername());
+    }
+
+    private String toJson(List<Map<String, Object>> rows) {
+        try {
+            return objectMapper.writeValueAsString(rows);
+        } catch (JsonProcessingException e) {
+            throw new CustomExceptions.SystemErrorException("Could not write field values: " + e.getMessage());
+        }
+    }
+
     @Override
     public TemplateFormValueDefault findByTemplateFormIdAndRecordId(Long templateFormId, Long recordId) {
         TemplateFormValueDefault templateFormValueDefault = templateFormValueDefaultRepository.findByTemplateFormDefaultIdAndRecordId(templateFormId, recordId);
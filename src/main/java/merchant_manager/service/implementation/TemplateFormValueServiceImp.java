@@ -1,5 +1,7 @@
 package merchant_manager.service.implementation;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import merchant_manager.customExceptions.CustomExceptions;
@@ -9,10 +11,15 @@ import merchant_manager.repository.TemplateValueFormRepository;
 import merchant_manager.service.TemplateFormValueService;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 @Service
 @Slf4j
@@ -27,7 +34,13 @@ public class TemplateFormValueServiceImp implements TemplateFormValueService {
     private final UserServiceImp userServiceImp;
     private final ContactServiceImp contactServiceImp;
     private final MerchantServiceImp merchantServiceImp;
+    private final DynamicRecordDocumentServiceImp dynamicRecordDocumentServiceImp;
+    private final FieldStatisticsServiceImp fieldStatisticsServiceImp;
+    private final DynamicRecordResultCacheServiceImp dynamicRecordResultCacheServiceImp;
+    private final DynamicRecordAutocompleteServiceImp dynamicRecordAutocompleteServiceImp;
+    private final ObjectMapper objectMapper;
 
+    @Transactional
     public Long addValuesToForm(Long menuId, Long recordId, List<AddValueRequest> addValueRequests){
         try {
             Long currentRecordId = recordId;
@@ -66,40 +79,24 @@ public class TemplateFormValueServiceImp implements TemplateFormValueService {
                         throw new CustomExceptions.CustomValidationException("Record creation not supported for menu ID: " + menuId + ". Please provide a recordId.");
                 }
             }
+            List<AddValueRequest> defaultValues = new ArrayList<>();
+            List<AddValueRequest> formValues = new ArrayList<>();
             for (AddValueRequest addValueRequest : addValueRequests) {
-                if(addValueRequest.getIsDefault()){
-                    TemplateFormValueDefault templateFormValue;
-                    try {
-                        templateFormValue = templateFormValueDefaultServiceImp.findByTemplateFormIdAndRecordId(templateFormDefaultServiceImp.getByKey(addValueRequest.getKey()).getId(), recordId);
-                    } catch (CustomExceptions.ResourceNotFoundException e) {
-                        templateFormValue = new TemplateFormValueDefault();
-                        templateFormValue.setTemplateFormDefault(templateFormDefaultServiceImp.getByKey(addValueRequest.getKey()));
-                        templateFormValue.setRecordId(currentRecordId);
-                        templateFormValue.setUser(userServiceImp.getLoggedUser());
-                        templateFormValue.setCreatedBy(userServiceImp.getLoggedUser().getUsername());
-                        templateFormValue.setCreatedAt(ZonedDateTime.now(ZoneId.of("America/New_York")).toLocalDateTime());
-                    }
-                    templateFormValue.setValue(addValueRequest.getValue());
-                    templateFormValue.setUpdatedAt(ZonedDateTime.now(ZoneId.of("America/New_York")).toLocalDateTime());
-                    templateFormValue.setLastUpdatedBy(userServiceImp.getLoggedUser().getUsername());
-                    templateFormValueDefaultServiceImp.save(templateFormValue);
-                }else {
-                    TemplateFormValue templateFormValue;
-                    try {
-                        templateFormValue = findByTemplateFormIdAndRecordId(templateFormServiceImp.findByKey(addValueRequest.getKey()).getId(), recordId);
-                    } catch (CustomExceptions.ResourceNotFoundException e) {
-                        templateFormValue = new TemplateFormValue();
-                        templateFormValue.setTemplateForm(templateFormServiceImp.findByKey(addValueRequest.getKey()));
-                        templateFormValue.setRecordId(currentRecordId);
-                        templateFormValue.setCreatedBy(userServiceImp.getLoggedUser().getUsername());
-                        templateFormValue.setCreatedAt(ZonedDateTime.now(ZoneId.of("America/New_York")).toLocalDateTime());
-                    }
-                    templateFormValue.setValue(addValueRequest.getValue());
-                    templateFormValue.setUpdatedAt(ZonedDateTime.now(ZoneId.of("America/New_York")).toLocalDateTime());
-                    templateFormValue.setLastUpdatedBy(userServiceImp.getLoggedUser().getUsername());
-                    save(templateFormValue);
+                if (Boolean.TRUE.equals(addValueRequest.getIsDefault())) {
+                    defaultValues.add(addValueRequest);
+                } else {
+                    formValues.add(addValueRequest);
                 }
             }
+            templateFormValueDefaultServiceImp.upsertValues(currentRecordId, defaultValues);
+            upsertValues(currentRecordId, formValues);
+
+            if (!defaultValues.isEmpty()) {
+                dynamicRecordDocumentServiceImp.refreshRecord(menuId, currentRecordId);
+                fieldStatisticsServiceImp.markStale(menuId, currentRecordId);
+                dynamicRecordResultCacheServiceImp.invalidate(menuId, currentRecordId);
+                dynamicRecordAutocompleteServiceImp.refreshRecord(menuId, currentRecordId);
+            }
             return currentRecordId;
         } catch (CustomExceptions.ResourceNotFoundException e) {
             throw e;
@@ -109,6 +106,38 @@ public class TemplateFormValueServiceImp implements TemplateFormValueService {
         }
     }
 
+    /**
+     * Writes the non-default field values of one record with a single INSERT ... ON CONFLICT DO UPDATE
+     */
+    private void upsertValues(Long recordId, List<AddValueRequest> addValueRequests) {
+        Map<String, String> valuesByKey = new LinkedHashMap<>();
+        for (AddValueRequest addValueRequest : addValueRequests) {
+            valuesByKey.put(addValueRequest.getKey(), addValueRequest.getValue());
+        }
+        if (valuesByKey.isEmpty()) {
+            return;
+        }
+        Map<String, TemplateForm> fields = templateFormServiceImp.findByKeys(valuesByKey.keySet());
+
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for (Map.Entry<String, String> entry : valuesByKey.entrySet()) {
+            Map<String, Object> row = new HashMap<>();
+            row.put("field_id", fields.get(entry.getKey()).getId());
+            row.put("value", entry.getValue());
+            rows.add(row);
+        }
+        templateValueFormRepository.upsertValues(recordId, toJson(rows),
+                ZonedDateTime.now(ZoneId.of("America/New_York")).toLocalDateTime(), userServiceImp.getLoggedUser().getUsername());
+    }
+
+    private String toJson(List<Map<String, Object>> rows) {
+        try {
+            return objectMapper.writeValueAsString(rows);
+        } catch (JsonProcessingException e) {
+            throw new CustomExceptions.SystemErrorException("Could not write field values: " + e.getMessage());
+        }
+    }
+
     public TemplateFormValue findByTemplateFormIdAndRecordId(String key, Long recordId) {
         TemplateForm templateForm = templateFormServiceImp.findByKey(key);
         return findByTemplateFormIdAndRecordId(templateForm.getId(), recordId);
@@ -130,13 +159,21 @@ public class TemplateFormValueServiceImp implements TemplateFormValueService {
         templateValueFormRepository.deleteByMenuIdAndRecordI(menuId, recordId);
     }
 
+    @Transactional
     public void deleteRecord(Long menuId, Long recordId) {
         try {
             User user = userServiceImp.getLoggedUser();
+            // Resolved while the values still exist
+            fieldStatisticsServiceImp.markStale(menuId, recordId);
+            dynamicRecordResultCacheServiceImp.invalidate(menuId, recordId);
+
+            dynamicRecordDocumentServiceImp.recordDeletion(menuId, recordId, user.getId());
 
             // Delete all TemplateFormValueDefault records for this menu and record (including user filter)
             templateFormValueDefaultServiceImp.deleteByMenuIdAndRecordIdAndUser(menuId, recordId, user);
             deleteByMenuIdAndRecordId(menuId, recordId);
+            dynamicRecordDocumentServiceImp.refreshRecord(menuId, recordId);
+            dynamicRecordAutocompleteServiceImp.refreshRecord(menuId, recordId);
             // Delete the actual record from Lead, Contact, or Merchant table
             switch (Math.toIntExact(menuId)) {
                 case 4: // Lead
@@ -0,0 +1,67 @@
+package merchant_manager.util;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import merchant_manager.customExceptions.CustomExceptions;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+
+/**
+ * Position of a client in the change stream of a template: every change numbered up to changeSeq was sent.
+ * Serialized as an opaque URL-safe token so clients never depend on its layout.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ChangeWatermark {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private Long changeSeq;   // change number of the last change sent
+    private Long syncedSeq;   // last deletion number when the client's copy was first read; older deletions are not its concern
+    private String caughtUpAt; // ISO timestamp of the last call that sent every change; later deletions must not have been purged
+
+    /**
+     * Position before every change, for a client starting from an empty copy
+     */
+    public static ChangeWatermark origin(long lastDeletionSeq, LocalDateTime now) {
+        return new ChangeWatermark(0L, lastDeletionSeq, now.toString());
+    }
+
+    @JsonIgnore
+    public LocalDateTime getCaughtUpAtTime() {
+        return LocalDateTime.parse(caughtUpAt);
+    }
+
+    public String encode() {
+        try {
+            return Base64.getUrlEncoder().withoutPadding()
+                    .encodeToString(MAPPER.writeValueAsBytes(this));
+        } catch (Exception e) {
+            throw new CustomExceptions.SystemErrorException("Could not encode watermark: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Decodes a token issued by {@link #encode()}
+     */
+    public static ChangeWatermark decode(String token) {
+        try {
+            byte[] json = Base64.getUrlDecoder().decode(token.getBytes(StandardCharsets.US_ASCII));
+            ChangeWatermark watermark = MAPPER.readValue(json, ChangeWatermark.class);
+            // Checked once here so a malformed token, or one issued before change numbers, is rejected as such
+            watermark.getCaughtUpAtTime();
+            if (watermark.getChangeSeq() == null || watermark.getSyncedSeq() == null) {
+                throw new IllegalArgumentException("changeSeq");
+            }
+            return watermark;
+        } catch (Exception e) {
+            throw new CustomExceptions.CustomValidationException("Invalid watermark");
+        }
+    }
+}
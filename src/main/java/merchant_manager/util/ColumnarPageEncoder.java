@@ -0,0 +1,97 @@
+package merchant_manager.util;
+
+import merchant_manager.models.DTO.ColumnValuesDTO;
+import merchant_manager.models.DTO.DynamicRecordDTO;
+import merchant_manager.models.DTO.DynamicRecordsColumnarPageDTO;
+import merchant_manager.models.DTO.DynamicRecordsSimplePageDTO;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Turns a row-oriented dynamic record page into its columnar form,
+ * so wide grids do not repeat every column key in every row
+ */
+public class ColumnarPageEncoder {
+
+    public static final String MEDIA_TYPE = "application/vnd.merchant-manager.columnar+json";
+    public static final String FORMAT = "columnar";
+
+    /**
+     * @param page    Row-oriented page
+     * @param columns Column order to use (the request's fields); null or empty lists every key present, sorted
+     */
+    public static DynamicRecordsColumnarPageDTO encode(DynamicRecordsSimplePageDTO page, List<String> columns) {
+        List<DynamicRecordDTO> records = page.getRecords() != null ? page.getRecords() : List.of();
+        Map<String, String[]> valuesByKey = transpose(records);
+        List<String> keys;
+        if (columns != null && !columns.isEmpty()) {
+            keys = columns.stream().distinct().collect(Collectors.toList());
+        } else {
+            keys = new ArrayList<>(valuesByKey.keySet());
+            Collections.sort(keys);
+        }
+
+        List<ColumnValuesDTO> values = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            String[] column = valuesByKey.get(key);
+            values.add(encodeColumn(column != null ? column : new String[records.size()]));
+        }
+
+        return new DynamicRecordsColumnarPageDTO(
+                keys,
+                records.stream().map(DynamicRecordDTO::getRecordId).collect(Collectors.toList()),
+                values,
+                page.getTotalRecords(),
+                page.getCurrentPage(),
+                page.getPageSize(),
+                page.getTotalPages(),
+                page.isHasNext(),
+                page.getCountMode()
+        );
+    }
+
+    /**
+     * One pass over every record's entries; keys missing from a record stay null in its row
+     */
+    private static Map<String, String[]> transpose(List<DynamicRecordDTO> records) {
+        int rows = records.size();
+        Map<String, String[]> valuesByKey = new HashMap<>();
+        for (int row = 0; row < rows; row++) {
+            for (Map.Entry<String, String> field : records.get(row).getFields().entrySet()) {
+                String[] column = valuesByKey.get(field.getKey());
+                if (column == null) {
+                    column = new String[rows];
+                    valuesByKey.put(field.getKey(), column);
+                }
+                column[row] = field.getValue();
+            }
+        }
+        return valuesByKey;
+    }
+
+    /**
+     * Dictionary-encodes the column while at most half of its values are distinct, otherwise sends them as is.
+     * High-cardinality columns give up on the dictionary after about half the rows.
+     */
+    private static ColumnValuesDTO encodeColumn(String[] column) {
+        int rows = column.length;
+        Map<String, Integer> codeByValue = new HashMap<>();
+        List<String> dictionary = new ArrayList<>();
+        int[] codes = new int[rows];
+
+        for (int row = 0; row < rows; row++) {
+            Integer code = codeByValue.get(column[row]);
+            if (code == null) {
+                code = dictionary.size();
+                if ((code + 1) * 2 > rows) {
+                    return new ColumnValuesDTO(null, null, Arrays.asList(column));
+                }
+                codeByValue.put(column[row], code);
+                dictionary.add(column[row]);
+            }
+            codes[row] = code;
+        }
+        return new ColumnValuesDTO(dictionary, codes, null);
+    }
+}
@@ -0,0 +1,55 @@
+package merchant_manager.util;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import merchant_manager.customExceptions.CustomExceptions;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Keyset position inside a dynamic record listing.
+ * Serialized as an opaque URL-safe token so clients never depend on its layout.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DynamicRecordCursor {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private List<String> sortValues; // sort key values of the last row as text, one per sort key (empty when unsorted)
+    private Long recordId;           // record ID of the last row, breaks ties
+    private String ordering;         // sort keys and directions the cursor was issued for, see RecordSortKey.ordering
+
+    public String encode() {
+        try {
+            return Base64.getUrlEncoder().withoutPadding()
+                    .encodeToString(MAPPER.writeValueAsBytes(this));
+        } catch (Exception e) {
+            throw new CustomExceptions.SystemErrorException("Could not encode cursor: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Decodes a token issued by {@link #encode()} and checks it belongs to the same ordering
+     */
+    public static DynamicRecordCursor decode(String token, String ordering, int sortKeys) {
+        DynamicRecordCursor cursor;
+        try {
+            byte[] json = Base64.getUrlDecoder().decode(token.getBytes(StandardCharsets.US_ASCII));
+            cursor = MAPPER.readValue(json, DynamicRecordCursor.class);
+        } catch (Exception e) {
+            throw new CustomExceptions.CustomValidationException("Invalid cursor");
+        }
+        if (cursor.getRecordId() == null || !Objects.equals(cursor.getOrdering(), ordering)
+                || cursor.getSortValues() == null || cursor.getSortValues().size() != sortKeys) {
+            throw new CustomExceptions.CustomValidationException("Cursor does not match the requested sort order");
+        }
+        return cursor;
+    }
+}
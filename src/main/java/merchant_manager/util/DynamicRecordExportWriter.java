@@ -0,0 +1,23 @@
+package merchant_manager.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Receives the value rows of a dynamic record export as they come off the database cursor,
+ * grouped by record: startRecord, then one field call per value, then endRecord.
+ */
+public interface DynamicRecordExportWriter extends Closeable {
+
+    void startRecord(long recordId) throws IOException;
+
+    void field(String key, String value) throws IOException;
+
+    void endRecord() throws IOException;
+
+    /**
+     * Called once every row has been read and the database transaction has ended;
+     * writes whatever the writer still buffers to the response
+     */
+    void finish() throws IOException;
+}
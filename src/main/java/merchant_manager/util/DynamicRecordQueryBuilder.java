@@ -0,0 +1,832 @@
+package merchant_manager.util;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import merchant_manager.models.DTO.DynamicRecordsRequestDTO;
+import merchant_manager.models.DTO.RecordFilterDTO;
+import merchant_manager.models.DTO.RecordFilterGroupDTO;
+import merchant_manager.models.enums.FilterGroupOperator;
+
+import static merchant_manager.util.TemplateFormValueDefaultSpecification.escapeLike;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+
+/**
+ * Builds native PostgreSQL statements that pivot template_form_value_default rows
+ * (or read the materialized dynamic_record documents) into grid records,
+ * so filtering, sorting and paging run in a single round trip.
+ */
+public class DynamicRecordQueryBuilder {
+
+    public static final String VALUE_TABLE = "{h-schema}template_form_value_default";
+    public static final String FIELD_TABLE = "{h-schema}template_form_default";
+    public static final String DOCUMENT_TABLE = "{h-schema}dynamic_record";
+    public static final String TOMBSTONE_TABLE = "{h-schema}dynamic_record_tombstone";
+
+    /**
+     * Where records are read from: the EAV value rows or the materialized dynamic_record documents
+     */
+    public enum Source {
+        EAV,
+        DOCUMENT
+    }
+
+    private final Source source;
+    private final Map<String, Object> parameters = new LinkedHashMap<>();
+    private int parameterIndex = 0;
+    private final List<String> fieldKeys; // sparse fieldset; null or empty selects every field
+    private final List<RecordSortKey> sortKeys; // most significant first; empty keeps the newest records first
+
+    private DynamicRecordQueryBuilder(Source source) {
+        this(source, null, List.of());
+    }
+
+    private DynamicRecordQueryBuilder(Source source, List<String> fieldKeys, List<RecordSortKey> sortKeys) {
+        this.source = source;
+        this.fieldKeys = fieldKeys;
+        this.sortKeys = sortKeys;
+    }
+
+    /**
+     * Native SQL plus its named parameters
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class SqlQuery {
+        private final String sql;
+        private final Map<String, Object> parameters;
+    }
+
+    /**
+     * Creates one statement returning the requested page and the total match count.
+     * Columns: total, record_id, fields (jsonb text of key -> value).
+     * When the page is past the end a single row with a null record_id still carries the total.
+     */
+    public static SqlQuery pageQuery(Source source, Long templateId, Long userId, DynamicRecordsRequestDTO request,
+                                     List<RecordSortKey> sortKeys) {
+        DynamicRecordQueryBuilder builder = new DynamicRecordQueryBuilder(source, request.getFields(), sortKeys);
+        String matched = builder.matchedRecords(templateId, userId, request.getFilters(), request.getFilterGroup(), null);
+
+        builder.parameters.put("pageLimit", request.getSize());
+        builder.parameters.put("pageOffset", (long) request.getPage() * request.getSize());
+
+        String sql = "WITH matched AS (" + matched + "), " +
+                "page AS (" + builder.pageRecords() + ") " +
+                "SELECT t.total, p.record_id, p.fields " +
+                "FROM (SELECT count(*) AS total FROM matched) t " +
+                "LEFT JOIN LATERAL (" +
+                "SELECT pg.record_id, pg.position, " + builder.fieldsColumn("pg") + " AS fields " +
+                "FROM page pg) p ON true " +
+                "ORDER BY p.position";
+
+        return new SqlQuery(sql, builder.parameters);
+    }
+
+    /**
+     * Creates one statement returning the requested page without counting the matches.
+     * Fetches size + 1 rows so the caller can tell whether another page exists.
+     * Columns: record_id, fields.
+     */
+    public static SqlQuery uncountedPageQuery(Source source, Long templateId, Long userId, DynamicRecordsRequestDTO request,
+                                              List<RecordSortKey> sortKeys) {
+        DynamicRecordQueryBuilder builder = new DynamicRecordQueryBuilder(source, request.getFields(), sortKeys);
+        String matched = builder.matchedRecords(templateId, userId, request.getFilters(), request.getFilterGroup(), null);
+
+        builder.parameters.put("pageLimit", request.getSize() + 1);
+        builder.parameters.put("pageOffset", (long) request.getPage() * request.getSize());
+
+        // Fields are pivoted only for the rows that survive LIMIT
+        String sql = "WITH matched AS (" + matched + "), " +
+                "page AS (" + builder.pageRecords() + ") " +
+                "SELECT pg.record_id, " + builder.fieldsColumn("pg") + " AS fields " +
+                "FROM page pg ORDER BY pg.position";
+
+        return new SqlQuery(sql, builder.parameters);
+    }
+
+    /**
+     * Creates a statement counting the matching records.
+     * Columns: total.
+     */
+    public static SqlQuery countQuery(Source source, Long templateId, Long userId, DynamicRecordsRequestDTO request) {
+        DynamicRecordQueryBuilder builder = new DynamicRecordQueryBuilder(source);
+        String matched = builder.matchedRecords(templateId, userId, request.getFilters(), request.getFilterGroup(), null);
+        String sql = "WITH matched AS (" + matched + ") SELECT count(*) AS total FROM matched";
+
+        return new SqlQuery(sql, builder.parameters);
+    }
+
+    /**
+     * Creates one statement counting the values of the given fields over the matching records, with a single
+     * GROUP BY over the EAV rows whatever the source. Empty values are skipped; each field keeps its
+     * facetLimit most frequent values, ties by value.
+     * Columns: key, value, records, distinct_values (non-empty values of the field before the limit).
+     */
+    public static SqlQuery facetsQuery(Source source, Long templateId, Long userId, DynamicRecordsRequestDTO request,
+                                       List<String> facetKeys, int facetLimit) {
+        DynamicRecordQueryBuilder builder = new DynamicRecordQueryBuilder(source);
+        String matched = builder.matchedRecords(templateId, userId, request.getFilters(), request.getFilterGroup(), null);
+        builder.parameters.put("facetKeys", facetKeys);
+        builder.parameters.put("facetLimit", facetLimit);
+
+        String sql = "WITH matched AS (" + matched + ") " +
+                "SELECT c.key, c.value, c.records, c.distinct_values FROM (" +
+                "SELECT f.key, v.value, count(*) AS records, " +
+                "row_number() OVER (PARTITION BY f.key ORDER BY count(*) DESC, v.value) AS value_rank, " +
+                "count(*) OVER (PARTITION BY f.key) AS distinct_values " +
+                "FROM matched m " +
+                "JOIN " + VALUE_TABLE + " v ON v.record_id = m.record_id " +
+                "JOIN " + FIELD_TABLE + " f ON f.id = v.template_form_default_id " +
+                "WHERE f.template_id = :templateId AND f.key IN (:facetKeys) AND v.value <> '' " +
+                "GROUP BY f.key, v.value) c " +
+                "WHERE c.value_rank <= :facetLimit " +
+                "ORDER BY c.key, c.value_rank";
+
+        return new SqlQuery(sql, builder.parameters);
+    }
+
+    /**
+     * Creates one statement aggregating the typed numeric copies of the given fields over the matching records,
+     * split by the value of groupKey when there is one (records without it form the '' group). Only the groupLimit
+     * largest groups are aggregated. The percentiles share one sort per field and group.
+     * Columns: group_value, records, distinct_groups, key (null for a group without any numeric value), value_count,
+     * sum_value, avg_value, min_value, max_value, then one percentile_N per percentile.
+     */
+    public static SqlQuery aggregationsQuery(Source source, Long templateId, Long userId, DynamicRecordsRequestDTO request,
+                                             List<String> aggregateKeys, List<Double> percentiles, String groupKey, int groupLimit) {
+        DynamicRecordQueryBuilder builder = new DynamicRecordQueryBuilder(source);
+        String matched = builder.matchedRecords(templateId, userId, request.getFilters(), request.getFilterGroup(), null);
+        builder.parameters.put("aggregateKeys", aggregateKeys);
+        builder.parameters.put("groupLimit", groupLimit);
+
+        String grouped;
+        if (groupKey != null) {
+            builder.parameters.put("groupKey", groupKey);
+            grouped = "SELECT m.record_id, coalesce(g.value, '') AS group_value FROM matched m " +
+                    "LEFT JOIN (SELECT gv.record_id, gv.value FROM " + VALUE_TABLE + " gv " +
+                    "JOIN " + FIELD_TABLE + " gf ON gf.id = gv.template_form_default_id " +
+                    "WHERE gf.template_id = :templateId AND gf.key = :groupKey) g ON g.record_id = m.record_id";
+        } else {
+            grouped = "SELECT m.record_id, '' AS group_value FROM matched m";
+        }
+
+        StringBuilder sql = new StringBuilder("WITH matched AS (").append(matched).append("), ")
+                .append("grouped AS (").append(grouped).append("), ")
+                .append("groups AS (SELECT gd.group_value, count(*) AS records, count(*) OVER () AS distinct_groups ")
+                .append("FROM grouped gd GROUP BY gd.group_value ORDER BY count(*) DESC, gd.group_value LIMIT :groupLimit) ")
+                .append("SELECT gr.group_value, gr.records, gr.distinct_groups, a.key, count(a.value_numeric) AS value_count, ")
+                .append("sum(a.value_numeric) AS sum_value, avg(a.value_numeric) AS avg_value, ")
+                .append("min(a.value_numeric) AS min_value, max(a.value_numeric) AS max_value");
+        for (int i = 0; i < percentiles.size(); i++) {
+            sql.append(", percentile_cont(CAST(").append(builder.bind(percentiles.get(i))).append(" AS double precision)) ")
+                    .append("WITHIN GROUP (ORDER BY a.value_numeric) AS percentile_").append(i);
+        }
+        sql.append(" FROM groups gr ")
+                .append("JOIN grouped gd ON gd.group_value = gr.group_value ")
+                .append("LEFT JOIN (SELECT v.record_id, f.key, v.value_numeric FROM ").append(VALUE_TABLE).append(" v ")
+                .append("JOIN ").append(FIELD_TABLE).append(" f ON f.id = v.template_form_default_id ")
+                .append("WHERE f.template_id = :templateId AND f.key IN (:aggregateKeys) AND v.value_numeric IS NOT NULL) a ")
+                .append("ON a.record_id = gd.record_id ")
+                .append("GROUP BY gr.group_value, gr.records, gr.distinct_groups, a.key ")
+                .append("ORDER BY gr.records DESC, gr.group_value");
+
+        return new SqlQuery(sql.toString(), builder.parameters);
+    }
+
+    /**
+     * Creates an EXPLAIN of the matching records; the top plan node's "Plan Rows" is the planner's estimate
+     * of the total, available without executing the query.
+     * Columns: QUERY PLAN (json text).
+     */
+    public static SqlQuery estimateQuery(Source source, Long templateId, Long userId, DynamicRecordsRequestDTO request) {
+        DynamicRecordQueryBuilder builder = new DynamicRecordQueryBuilder(source);
+        String matched = builder.matchedRecords(templateId, userId, request.getFilters(), request.getFilterGroup(), null);
+        String sql = "EXPLAIN (FORMAT JSON) WITH matched AS (" + matched + ") SELECT m.record_id FROM matched m";
+
+        return new SqlQuery(sql, builder.parameters);
+    }
+
+    /**
+     * Creates a keyset statement that seeks past the given cursor instead of skipping rows with OFFSET.
+     * Fetches size + 1 rows so the caller can tell whether another page exists.
+     * When seekEdge is given (see {@link #seekEdgeQuery}) only the records whose first sort key lies between the
+     * cursor and the edge are pivoted, read as a range of the key's typed index; otherwise every match is.
+     * Columns: record_id, fields, then one sort_key_N per sort key (its normalized value as text, used by the cursor).
+     */
+    public static SqlQuery cursorQuery(Source source, Long templateId, Long userId, DynamicRecordsRequestDTO request,
+                                       List<RecordSortKey> sortKeys, DynamicRecordCursor after, String seekEdge) {
+        DynamicRecordQueryBuilder builder = new DynamicRecordQueryBuilder(source, request.getFields(), sortKeys);
+        boolean sorted = !sortKeys.isEmpty();
+        // Without a sort key the seek is a plain record_id range that can be applied before grouping
+        Long recordIdBound = after != null && !sorted ? after.getRecordId() : null;
+        String recordWindow = seekEdge != null ? builder.seekWindow(after, seekEdge) : null;
+        String matched = builder.matchedRecords(templateId, userId, request.getFilters(), request.getFilterGroup(),
+                recordIdBound, recordWindow);
+
+        StringBuilder sql = new StringBuilder("WITH matched AS (").append(matched).append(") ")
+                .append("SELECT m.record_id, ").append(builder.fieldsColumn("m")).append(" AS fields");
+        for (int i = 0; i < sortKeys.size(); i++) {
+            sql.append(", CAST(").append(builder.sortExpression(i, "m")).append(" AS text) AS sort_key_").append(i);
+        }
+        sql.append(" FROM matched m ");
+        if (after != null && sorted) {
+            sql.append("WHERE ").append(builder.seekPredicate(after)).append(" ");
+        }
+        builder.parameters.put("pageLimit", request.getSize() + 1);
+        sql.append("ORDER BY ").append(builder.orderBy("m")).append(" LIMIT :pageLimit");
+
+        return new SqlQuery(sql.toString(), builder.parameters);
+    }
+
+    /**
+     * Creates a statement returning the first sort key value of the (size + 1)th matching record strictly past the
+     * cursor, as text, walking the key's typed index in sort order. Every row of the next page has its first key
+     * between the cursor's and this edge, so cursorQuery only needs to pivot that slice. No row means fewer rows
+     * with a value are left and the page must be read from every match.
+     * Returns null when the first key cannot bound the page: the documents are read, the listing is unsorted, or an
+     * ascending page may start with records missing the key (which sort lowest and have no index entry).
+     * Columns: edge.
+     */
+    public static SqlQuery seekEdgeQuery(Source source, Long templateId, Long userId, DynamicRecordsRequestDTO request,
+                                         List<RecordSortKey> sortKeys, DynamicRecordCursor after) {
+        if (source != Source.EAV || sortKeys.isEmpty()) {
+            return null;
+        }
+        RecordSortKey first = sortKeys.get(0);
+        if (!first.isDescending() && (after == null || lowestValue(first.getKind()).equals(after.getSortValues().get(0)))) {
+            return null;
+        }
+        DynamicRecordQueryBuilder builder = new DynamicRecordQueryBuilder(source, null, sortKeys);
+        builder.parameters.put("templateId", templateId);
+        builder.parameters.put("userId", userId);
+
+        List<RecordFilterDTO> semiJoins = new ArrayList<>();
+        List<RecordFilterGroupDTO> recordConditions = new ArrayList<>();
+        splitFilters(request.getFilters(), request.getFilterGroup(), semiJoins, recordConditions);
+
+        String key = seekColumn(first.getKind(), "v");
+        StringBuilder sql = new StringBuilder("SELECT CAST(").append(key).append(" AS text) AS edge ")
+                .append("FROM ").append(VALUE_TABLE).append(" v ")
+                .append("WHERE v.template_form_default_id = ").append(builder.sortFieldId(first)).append(" ")
+                .append("AND v.user_id = :userId AND ").append(aboveLowest(first.getKind(), key)).append(" ");
+        if (after != null) {
+            String bound = builder.typedBound(first.getKind(), after.getSortValues().get(0));
+            sql.append("AND ").append(key).append(first.isDescending() ? " < " : " > ").append(bound).append(" ");
+        }
+        // The same filters as the matched records, probed per row so the walk stops at the edge
+        for (RecordFilterDTO filter : semiJoins) {
+            sql.append("AND ").append(builder.filterExists(filter)).append(" ");
+        }
+        for (RecordFilterGroupDTO condition : recordConditions) {
+            sql.append("AND ").append(builder.groupPredicate(condition, builder::filterExists)).append(" ");
+        }
+        sql.append("ORDER BY ").append(key).append(first.isDescending() ? " DESC" : " ASC")
+                .append(" LIMIT 1 OFFSET ").append(builder.bind(request.getSize()));
+
+        return new SqlQuery(sql.toString(), builder.parameters);
+    }
+
+    /**
+     * Creates a statement returning every matching record ID in page order, for the result cache.
+     * Columns: record_id.
+     */
+    public static SqlQuery recordIdsQuery(Source source, Long templateId, Long userId, DynamicRecordsRequestDTO request,
+                                          List<RecordSortKey> sortKeys) {
+        DynamicRecordQueryBuilder builder = new DynamicRecordQueryBuilder(source, null, sortKeys);
+        String matched = builder.matchedRecords(templateId, userId, request.getFilters(), request.getFilterGroup(), null);
+        String sql = "WITH matched AS (" + matched + ") " +
+                "SELECT m.record_id FROM matched m " +
+                "ORDER BY " + builder.orderBy("m");
+
+        return new SqlQuery(sql, builder.parameters);
+    }
+
+    /**
+     * Creates a statement returning the raw value rows of every matching record, ordered by record_id,
+     * for an export that pivots each record as its rows arrive. Always reads the EAV rows, whatever the engine.
+     * Only the requested field keys are returned when there are any; a record without any of them
+     * still yields one row with a null key.
+     * Columns: record_id, key, value.
+     */
+    public static SqlQuery exportQuery(Long templateId, Long userId, DynamicRecordsRequestDTO request) {
+        DynamicRecordQueryBuilder builder = new DynamicRecordQueryBuilder(Source.EAV, request.getFields(), List.of());
+        String matched = builder.matchedRecords(templateId, userId, request.getFilters(), request.getFilterGroup(), null);
+        // Only the record IDs are sorted; each record's values are then read from the (record_id, field) index
+        String sql = "WITH matched AS (" + matched + ") " +
+                "SELECT m.record_id, pv.key, pv.value FROM matched m " +
+                "LEFT JOIN LATERAL (" +
+                "SELECT pf.key, v.value " +
+                "FROM " + VALUE_TABLE + " v JOIN " + FIELD_TABLE + " pf ON pf.id = v.template_form_default_id " +
+                "WHERE v.record_id = m.record_id AND pf.template_id = :templateId" +
+                (builder.projected() ? " AND pf.key IN (:fieldKeys)" : "") +
+                ") pv ON true " +
+                "ORDER BY m.record_id";
+
+        return new SqlQuery(sql, builder.parameters);
+    }
+
+    /**
+     * Creates a statement returning the fields of the given records, in no particular order.
+     * Only the given field keys are returned when there are any.
+     * Columns: record_id, fields.
+     */
+    public static SqlQuery fieldsQuery(Source source, Long templateId, List<Long> recordIds, List<String> fieldKeys) {
+        DynamicRecordQueryBuilder builder = new DynamicRecordQueryBuilder(source, fieldKeys, List.of());
+        builder.parameters.put("templateId", templateId);
+        builder.parameters.put("recordIds", recordIds);
+        String sql;
+        if (source == Source.DOCUMENT) {
+            sql = "SELECT d.record_id, " + builder.documentFields("d") + " AS fields FROM " + DOCUMENT_TABLE + " d " +
+                    "WHERE d.template_id = :templateId AND d.record_id IN (:recordIds)";
+        } else {
+            sql = "SELECT r.record_id, " + builder.fieldsColumn("r") + " AS fields " +
+                    "FROM (SELECT DISTINCT v.record_id FROM " + VALUE_TABLE + " v " +
+                    "WHERE v.record_id IN (:recordIds)) r";
+        }
+
+        return new SqlQuery(sql, builder.parameters);
+    }
+
+    /**
+     * Creates a statement returning the user's records of a template written after the given change number,
+     * oldest change first. Always reads the documents, every write of which takes a new change number,
+     * so the changes are one range of the (template_id, change_seq) index.
+     * Only the given field keys are returned when there are any.
+     * Columns: record_id, change_seq, fields.
+     */
+    public static SqlQuery changedRecordsQuery(Long templateId, Long userId, long afterChangeSeq, List<String> fieldKeys, int limit) {
+        DynamicRecordQueryBuilder builder = new DynamicRecordQueryBuilder(Source.DOCUMENT, fieldKeys, List.of());
+        builder.parameters.put("templateId", templateId);
+        builder.parameters.put("userId", userId);
+        String sql = "SELECT d.record_id, d.change_seq, " + builder.documentFields("d") + " AS fields FROM " + DOCUMENT_TABLE + " d " +
+                "WHERE d.template_id = :templateId AND d.user_ids @> ARRAY[CAST(:userId AS bigint)] " +
+                "AND d.change_seq > " + builder.bind(afterChangeSeq) + " " +
+                "ORDER BY d.change_seq LIMIT " + builder.bind(limit);
+
+        return new SqlQuery(sql, builder.parameters);
+    }
+
+    /**
+     * Creates a statement returning the records deleted from the user's grid of a template after the given
+     * change number, oldest deletion first.
+     * Columns: record_id, change_seq.
+     */
+    public static SqlQuery tombstonesQuery(Long templateId, Long userId, long afterChangeSeq, int limit) {
+        DynamicRecordQueryBuilder builder = new DynamicRecordQueryBuilder(Source.DOCUMENT);
+        builder.parameters.put("templateId", templateId);
+        builder.parameters.put("userId", userId);
+        String sql = "SELECT t.record_id, t.change_seq FROM " + TOMBSTONE_TABLE + " t " +
+                "WHERE t.template_id = :templateId AND t.user_id = :userId " +
+                "AND t.change_seq > " + builder.bind(afterChangeSeq) + " " +
+                "ORDER BY t.change_seq LIMIT " + builder.bind(limit);
+
+        return new SqlQuery(sql, builder.parameters);
+    }
+
+    /**
+     * Creates a statement returning the change number of the latest deletion in a template, 0 when there is none.
+     * Columns: change_seq.
+     */
+    public static SqlQuery lastDeletionQuery(Long templateId) {
+        DynamicRecordQueryBuilder builder = new DynamicRecordQueryBuilder(Source.DOCUMENT);
+        builder.parameters.put("templateId", templateId);
+        String sql = "SELECT coalesce(max(t.change_seq), 0) FROM " + TOMBSTONE_TABLE + " t WHERE t.template_id = :templateId";
+
+        return new SqlQuery(sql, builder.parameters);
+    }
+
+    /**
+     * Correlated subquery returning the values of a record as jsonb text (key -> value),
+     * restricted to the requested field keys when there are any
+     */
+    private String fieldsColumn(String alias) {
+        if (source == Source.DOCUMENT) {
+            return "(SELECT " + documentFields("pd") + " FROM " + DOCUMENT_TABLE + " pd " +
+                    "WHERE pd.template_id = :templateId AND pd.record_id = " + alias + ".record_id)";
+        }
+        return "(SELECT CAST(jsonb_object_agg(pf.key, pv.value) AS text) " +
+                "FROM " + VALUE_TABLE + " pv JOIN " + FIELD_TABLE + " pf ON pf.id = pv.template_form_default_id " +
+                "WHERE pv.record_id = " + alias + ".record_id AND pf.template_id = :templateId" +
+                (projected() ? " AND pf.key IN (:fieldKeys))" : ")");
+    }
+
+    /**
+     * Fields of a dynamic_record document as jsonb text, projected onto the requested keys
+     */
+    private String documentFields(String alias) {
+        if (!projected()) {
+            return "CAST(" + alias + ".fields AS text)";
+        }
+        return "(SELECT CAST(jsonb_object_agg(pe.key, pe.value) AS text) " +
+                "FROM jsonb_each(" + alias + ".fields) pe WHERE pe.key IN (:fieldKeys))";
+    }
+
+    private boolean projected() {
+        if (fieldKeys == null || fieldKeys.isEmpty()) {
+            return false;
+        }
+        parameters.put("fieldKeys", fieldKeys);
+        return true;
+    }
+
+    /**
+     * One row per record of the template owned by the user that satisfies every filter and the filter group,
+     * with the typed value of each sort key alongside (sort_value_0, sort_value_1, ..., NULL when missing).
+     */
+    private String matchedRecords(Long templateId, Long userId, List<RecordFilterDTO> filters, RecordFilterGroupDTO filterGroup,
+                                  Long recordIdBelow) {
+        return matchedRecords(templateId, userId, filters, filterGroup, recordIdBelow, null);
+    }
+
+    /**
+     * Same, restricted to the record IDs returned by recordWindow when there is one (EAV only)
+     */
+    private String matchedRecords(Long templateId, Long userId, List<RecordFilterDTO> filters, RecordFilterGroupDTO filterGroup,
+                                  Long recordIdBelow, String recordWindow) {
+        parameters.put("templateId", templateId);
+        parameters.put("userId", userId);
+        if (source == Source.DOCUMENT) {
+            return matchedDocuments(filters, filterGroup, recordIdBelow);
+        }
+
+        List<RecordFilterDTO> semiJoins = new ArrayList<>();
+        List<RecordFilterGroupDTO> recordConditions = new ArrayList<>();
+        splitFilters(filters, filterGroup, semiJoins, recordConditions);
+
+        StringBuilder sql = new StringBuilder("SELECT v.record_id");
+        for (int i = 0; i < sortKeys.size(); i++) {
+            sql.append(", max(CASE WHEN f.key = ").append(bind(sortKeys.get(i).getFieldKey()))
+                    .append(" THEN ").append(valueColumn(sortKeys.get(i).getKind())).append(" END) AS sort_value_").append(i);
+        }
+        sql.append(" FROM ").append(VALUE_TABLE).append(" v ")
+                .append("JOIN ").append(FIELD_TABLE).append(" f ON f.id = v.template_form_default_id ")
+                .append("WHERE f.template_id = :templateId AND v.user_id = :userId ");
+        if (recordIdBelow != null) {
+            parameters.put("recordIdBelow", recordIdBelow);
+            sql.append("AND v.record_id < :recordIdBelow ");
+        }
+        if (recordWindow != null) {
+            sql.append("AND v.record_id IN (").append(recordWindow).append(") ");
+        }
+        // Filters are semi-joins applied before grouping, so each one can be answered from an index
+        for (RecordFilterDTO filter : semiJoins) {
+            sql.append("AND v.record_id IN (").append(filterSubquery(filter)).append(") ");
+        }
+        sql.append("GROUP BY v.record_id");
+        for (int i = 0; i < recordConditions.size(); i++) {
+            sql.append(i == 0 ? " HAVING " : " AND ").append(groupPredicate(recordConditions.get(i), this::filterExists));
+        }
+        return sql.toString();
+    }
+
+    /**
+     * The conditions directly under a top-level AND narrow like plain filters (semiJoins); any other group is
+     * checked once per record (recordConditions), with an EXISTS probe per filter
+     */
+    private static void splitFilters(List<RecordFilterDTO> filters, RecordFilterGroupDTO filterGroup,
+                                     List<RecordFilterDTO> semiJoins, List<RecordFilterGroupDTO> recordConditions) {
+        if (filters != null) {
+            filters.stream().filter(Objects::nonNull).forEach(semiJoins::add);
+        }
+        if (RecordFilterGroups.hasFilters(filterGroup)) {
+            if (RecordFilterGroups.operator(filterGroup) == FilterGroupOperator.AND) {
+                semiJoins.addAll(RecordFilterGroups.filters(filterGroup));
+                recordConditions.addAll(RecordFilterGroups.groups(filterGroup));
+            } else {
+                recordConditions.add(filterGroup);
+            }
+        }
+    }
+
+    /**
+     * Same contract as the EAV pivot, answered from one dynamic_record row per record
+     */
+    private String matchedDocuments(List<RecordFilterDTO> filters, RecordFilterGroupDTO filterGroup, Long recordIdBelow) {
+        StringBuilder sql = new StringBuilder("SELECT d.record_id");
+        for (int i = 0; i < sortKeys.size(); i++) {
+            sql.append(", ").append(documentValue(sortKeys.get(i).getKind(), bind(sortKeys.get(i).getFieldKey())))
+                    .append(" AS sort_value_").append(i);
+        }
+        sql.append(" FROM ").append(DOCUMENT_TABLE).append(" d ")
+                .append("WHERE d.template_id = :templateId AND d.user_ids @> ARRAY[CAST(:userId AS bigint)] ");
+        if (recordIdBelow != null) {
+            parameters.put("recordIdBelow", recordIdBelow);
+            sql.append("AND d.record_id < :recordIdBelow ");
+        }
+        if (filters != null) {
+            for (RecordFilterDTO filter : filters) {
+                if (filter != null) {
+                    sql.append("AND ").append(documentFilter(filter)).append(" ");
+                }
+            }
+        }
+        if (RecordFilterGroups.hasFilters(filterGroup)) {
+            // A missing key makes some document predicates NULL, which NOT would not turn into a match
+            sql.append("AND ").append(groupPredicate(filterGroup, filter -> "coalesce(" + documentFilter(filter) + ", false)")).append(" ");
+        }
+        return sql.toString();
+    }
+
+    /**
+     * Boolean SQL expression of a filter group, with each filter rendered by the given function
+     */
+    private String groupPredicate(RecordFilterGroupDTO group, Function<RecordFilterDTO, String> filterPredicate) {
+        List<String> conditions = new ArrayList<>();
+        RecordFilterGroups.filters(group).forEach(filter -> conditions.add(filterPredicate.apply(filter)));
+        RecordFilterGroups.groups(group).forEach(nested -> conditions.add(groupPredicate(nested, filterPredicate)));
+
+        FilterGroupOperator operator = RecordFilterGroups.operator(group);
+        String combined = "(" + String.join(operator == FilterGroupOperator.OR ? " OR " : " AND ", conditions) + ")";
+        return operator == FilterGroupOperator.NOT ? "NOT " + combined : combined;
+    }
+
+    /**
+     * Document counterpart of filterSubquery. EQUALS uses the GIN index on the lowercased document,
+     * range operators read the typed map (numbers, ISO timestamps).
+     */
+    private String documentFilter(RecordFilterDTO filter) {
+        String value = filter.getValue();
+        String operator = filter.getOperator() != null ? filter.getOperator().toUpperCase() : "EQUALS";
+        if (value != null && isRangeOperator(operator) && !hasRangeTarget(operator, value, filter.getValueTo())) {
+            return "false";
+        }
+
+        String key = bind(filter.getFieldKey());
+        if (value == null) {
+            return "jsonb_exists(d.fields, " + key + ")";
+        }
+
+        return switch (operator) {
+            case "CONTAINS" -> "lower(d.fields ->> " + key + ") LIKE " + bind("%" + escapeLike(value.toLowerCase()) + "%");
+            case "STARTS_WITH" -> "lower(d.fields ->> " + key + ") LIKE " + bind(escapeLike(value.toLowerCase()) + "%");
+            case "ENDS_WITH" -> "lower(d.fields ->> " + key + ") LIKE " + bind("%" + escapeLike(value.toLowerCase()));
+            case "GREATER_THAN", "LESS_THAN", "GREATER_THAN_OR_EQUAL", "LESS_THAN_OR_EQUAL", "BETWEEN" ->
+                    documentRangePredicate(key, operator, value, filter.getValueTo());
+            default -> "CAST(lower(CAST(d.fields AS text)) AS jsonb) @> jsonb_build_object(lower("
+                    + key + "), " + bind(value.toLowerCase()) + ")";
+        };
+    }
+
+    private String documentRangePredicate(String key, String operator, String value, String valueTo) {
+        Double number = FieldValueParser.parseNumber(value);
+        String column = number != null
+                ? "(CASE WHEN jsonb_typeof(d.typed -> " + key + ") = 'number' THEN CAST(d.typed ->> " + key + " AS double precision) END)"
+                : "(CASE WHEN jsonb_typeof(d.typed -> " + key + ") = 'string' THEN CAST(d.typed ->> " + key + " AS timestamp) END)";
+        return typedComparison(column, operator, value, valueTo);
+    }
+
+    /**
+     * Record IDs having a value row for the filter's field that satisfies the operator,
+     * mirroring TemplateFormValueDefaultSpecification.filterByFieldAndValue.
+     */
+    private String filterSubquery(RecordFilterDTO filter) {
+        return "SELECT fv.record_id FROM " + VALUE_TABLE + " fv " +
+                "JOIN " + FIELD_TABLE + " ff ON ff.id = fv.template_form_default_id " +
+                "WHERE " + filterCondition(filter);
+    }
+
+    /**
+     * Whether the grouped record (v.record_id) has a value row satisfying the filter; probes the (record_id, field) index
+     */
+    private String filterExists(RecordFilterDTO filter) {
+        return "EXISTS (SELECT 1 FROM " + VALUE_TABLE + " fv " +
+                "JOIN " + FIELD_TABLE + " ff ON ff.id = fv.template_form_default_id " +
+                "WHERE fv.record_id = v.record_id AND " + filterCondition(filter) + ")";
+    }
+
+    /**
+     * Condition on a value row (fv) and its field (ff) for one filter
+     */
+    private String filterCondition(RecordFilterDTO filter) {
+        String condition = "ff.key = " + bind(filter.getFieldKey()) + " AND fv.user_id = :userId";
+        if (filter.getValue() == null) {
+            return condition;
+        }
+
+        String value = filter.getValue();
+        String operator = filter.getOperator() != null ? filter.getOperator().toUpperCase() : "EQUALS";
+
+        String predicate = switch (operator) {
+            case "CONTAINS" -> "lower(fv.value) LIKE " + bind("%" + escapeLike(value.toLowerCase()) + "%");
+            case "STARTS_WITH" -> "lower(fv.value) LIKE " + bind(escapeLike(value.toLowerCase()) + "%");
+            case "ENDS_WITH" -> "lower(fv.value) LIKE " + bind("%" + escapeLike(value.toLowerCase()));
+            case "GREATER_THAN", "LESS_THAN", "GREATER_THAN_OR_EQUAL", "LESS_THAN_OR_EQUAL", "BETWEEN" ->
+                    rangePredicate(operator, value, filter.getValueTo());
+            default -> "lower(fv.value) = " + bind(value.toLowerCase());
+        };
+        return condition + " AND " + predicate;
+    }
+
+    /**
+     * Range comparison on the typed shadow columns: numeric targets compare value_numeric,
+     * ISO date targets compare value_ts.
+     */
+    private String rangePredicate(String operator, String value, String valueTo) {
+        String column = FieldValueParser.parseNumber(value) != null ? "fv.value_numeric" : "fv.value_ts";
+        return typedComparison(column, operator, value, valueTo);
+    }
+
+    /**
+     * Compares a numeric or timestamp expression against the parsed target; targets that are
+     * neither a number nor an ISO date match nothing.
+     */
+    private String typedComparison(String column, String operator, String value, String valueTo) {
+        if (!hasRangeTarget(operator, value, valueTo)) {
+            return "false";
+        }
+        Double number = FieldValueParser.parseNumber(value);
+        Object target = number != null ? number : FieldValueParser.parseTimestamp(value);
+
+        if (operator.equals("BETWEEN")) {
+            Object upper = number != null ? FieldValueParser.parseNumber(valueTo) : FieldValueParser.parseTimestamp(valueTo);
+            return column + " BETWEEN " + bind(target) + " AND " + bind(upper);
+        }
+
+        String comparison = switch (operator) {
+            case "GREATER_THAN" -> ">";
+            case "LESS_THAN" -> "<";
+            case "GREATER_THAN_OR_EQUAL" -> ">=";
+            default -> "<=";
+        };
+        return column + " " + comparison + " " + bind(target);
+    }
+
+    private static boolean isRangeOperator(String operator) {
+        return switch (operator) {
+            case "GREATER_THAN", "LESS_THAN", "GREATER_THAN_OR_EQUAL", "LESS_THAN_OR_EQUAL", "BETWEEN" -> true;
+            default -> false;
+        };
+    }
+
+    /**
+     * Whether the range bounds parse as numbers or ISO dates (BETWEEN needs both bounds of the same kind)
+     */
+    private static boolean hasRangeTarget(String operator, String value, String valueTo) {
+        Double number = FieldValueParser.parseNumber(value);
+        if (number == null && FieldValueParser.parseTimestamp(value) == null) {
+            return false;
+        }
+        if (operator.equals("BETWEEN")) {
+            return number != null ? FieldValueParser.parseNumber(valueTo) != null : FieldValueParser.parseTimestamp(valueTo) != null;
+        }
+        return true;
+    }
+
+    /**
+     * Value column a sort key reads: the typed shadow column of NUMBER and DATE columns, the text otherwise
+     */
+    private static String valueColumn(RecordSortKey.Kind kind) {
+        return switch (kind) {
+            case NUMBER -> "v.value_numeric";
+            case TIMESTAMP -> "v.value_ts";
+            default -> "v.value";
+        };
+    }
+
+    /**
+     * Document counterpart of valueColumn, read from the typed map for NUMBER and DATE columns
+     */
+    private static String documentValue(RecordSortKey.Kind kind, String key) {
+        return switch (kind) {
+            case NUMBER -> "(CASE WHEN jsonb_typeof(d.typed -> " + key + ") = 'number' THEN CAST(d.typed ->> " + key + " AS double precision) END)";
+            case TIMESTAMP -> "(CASE WHEN jsonb_typeof(d.typed -> " + key + ") = 'string' THEN CAST(d.typed ->> " + key + " AS timestamp) END)";
+            default -> "(d.fields ->> " + key + ")";
+        };
+    }
+
+    /**
+     * Normalized value of sort key i of a matched row, never NULL: text is lowercased,
+     * and a missing value becomes the lowest value of its type ('', -Infinity, -infinity)
+     */
+    private String sortExpression(int i, String alias) {
+        String column = alias + ".sort_value_" + i;
+        return switch (sortKeys.get(i).getKind()) {
+            case NUMBER -> "coalesce(" + column + ", CAST('-Infinity' AS double precision))";
+            case TIMESTAMP -> "coalesce(" + column + ", CAST('-infinity' AS timestamp))";
+            default -> "lower(coalesce(" + column + ", ''))";
+        };
+    }
+
+    /**
+     * Every sort key in its direction, ties kept in descending record order like the unsorted listing
+     */
+    private String orderBy(String alias) {
+        List<String> terms = new ArrayList<>();
+        for (int i = 0; i < sortKeys.size(); i++) {
+            terms.add(sortExpression(i, alias) + (sortKeys.get(i).isDescending() ? " DESC" : " ASC"));
+        }
+        terms.add(alias + ".record_id DESC");
+        return String.join(", ", terms);
+    }
+
+    /**
+     * The requested page of matched records with its position; LIMIT sits right on the ORDER BY,
+     * so PostgreSQL keeps only the top offset + limit rows (top-N heapsort) instead of sorting every match.
+     * row_number() numbers the rows in the order the limited subquery returns them.
+     */
+    private String pageRecords() {
+        return "SELECT pm.record_id, row_number() OVER () AS position FROM (" +
+                "SELECT m.record_id FROM matched m ORDER BY " + orderBy("m") +
+                " LIMIT :pageLimit OFFSET :pageOffset) pm";
+    }
+
+    /**
+     * Record IDs of the user whose first sort key lies between the cursor (inclusive, for the rows tied with it)
+     * and the edge, both bounds inclusive: one range scan of the key's typed index
+     */
+    private String seekWindow(DynamicRecordCursor after, String seekEdge) {
+        RecordSortKey first = sortKeys.get(0);
+        String key = seekColumn(first.getKind(), "sv");
+        String edge = typedBound(first.getKind(), seekEdge);
+        String range;
+        if (after == null) {
+            range = key + " >= " + edge; // only descending first pages are bounded
+        } else {
+            String bound = typedBound(first.getKind(), after.getSortValues().get(0));
+            range = first.isDescending() ? key + " BETWEEN " + edge + " AND " + bound : key + " BETWEEN " + bound + " AND " + edge;
+        }
+        return "SELECT sv.record_id FROM " + VALUE_TABLE + " sv " +
+                "WHERE sv.template_form_default_id = " + sortFieldId(first) + " AND sv.user_id = :userId AND " + range;
+    }
+
+    /**
+     * ID of a sort key's field; keys are unique across templates, so this is a single row computed once
+     */
+    private String sortFieldId(RecordSortKey sortKey) {
+        return "(SELECT sf.id FROM " + FIELD_TABLE + " sf WHERE sf.template_id = :templateId AND sf.key = " + bind(sortKey.getFieldKey()) + ")";
+    }
+
+    /**
+     * Value of a sort key on one value row, as sortExpression normalizes it, matching the indexes on
+     * (template_form_default_id, value_numeric / value_ts / lower(value))
+     */
+    private static String seekColumn(RecordSortKey.Kind kind, String alias) {
+        return switch (kind) {
+            case NUMBER -> alias + ".value_numeric";
+            case TIMESTAMP -> alias + ".value_ts";
+            default -> "lower(" + alias + ".value)";
+        };
+    }
+
+    /**
+     * Rows whose key sorts above the value a missing key takes, so they have an entry in the key's index
+     */
+    private static String aboveLowest(RecordSortKey.Kind kind, String column) {
+        return kind == RecordSortKey.Kind.TEXT ? column + " > ''" : column + " IS NOT NULL";
+    }
+
+    /**
+     * Text form of the value sortExpression gives a missing key
+     */
+    private static String lowestValue(RecordSortKey.Kind kind) {
+        return switch (kind) {
+            case NUMBER -> "-Infinity";
+            case TIMESTAMP -> "-infinity";
+            default -> "";
+        };
+    }
+
+    /**
+     * Rows strictly after the cursor in the multi-key order: greater on the first key that differs
+     * (smaller for DESC keys), or equal on every key with a smaller record ID
+     */
+    private String seekPredicate(DynamicRecordCursor after) {
+        List<String> alternatives = new ArrayList<>();
+        List<String> equalPrefix = new ArrayList<>();
+        for (int i = 0; i < sortKeys.size(); i++) {
+            String expression = sortExpression(i, "m");
+            String bound = typedBound(sortKeys.get(i).getKind(), after.getSortValues().get(i));
+            List<String> step = new ArrayList<>(equalPrefix);
+            step.add(expression + (sortKeys.get(i).isDescending() ? " < " : " > ") + bound);
+            alternatives.add("(" + String.join(" AND ", step) + ")");
+            equalPrefix.add(expression + " = " + bound);
+        }
+        parameters.put("afterRecordId", after.getRecordId());
+        List<String> last = new ArrayList<>(equalPrefix);
+        last.add("m.record_id < :afterRecordId");
+        alternatives.add("(" + String.join(" AND ", last) + ")");
+        return "(" + String.join(" OR ", alternatives) + ")";
+    }
+
+    /**
+     * Cursor sort value (the text form of sortExpression) bound back to the key's type
+     */
+    private String typedBound(RecordSortKey.Kind kind, String value) {
+        return switch (kind) {
+            case NUMBER -> "CAST(" + bind(value) + " AS double precision)";
+            case TIMESTAMP -> "CAST(" + bind(value) + " AS timestamp)";
+            default -> bind(value);
+        };
+    }
+
+    private String bind(Object value) {
+        String name = "p" + parameterIndex++;
+        parameters.put(name, value);
+        return ":" + name;
+    }
+}
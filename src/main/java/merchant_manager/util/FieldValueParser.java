@@ -0,0 +1,67 @@
+package merchant_manager.util;
+
+import merchant_manager.models.enums.FieldType;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+
+/**
+ * Converts the raw string stored for a dynamic field into the typed shadow values
+ * (value_numeric / value_ts) used for range filtering and sorting in the database.
+ */
+public class FieldValueParser {
+
+    /**
+     * Numeric shadow value, only for NUMBER columns
+     */
+    public static Double numericValue(FieldType type, String value) {
+        return type == FieldType.NUMBER ? parseNumber(value) : null;
+    }
+
+    /**
+     * Timestamp shadow value, only for DATE and DATETIME columns
+     */
+    public static LocalDateTime timestampValue(FieldType type, String value) {
+        return type == FieldType.DATE || type == FieldType.DATETIME ? parseTimestamp(value) : null;
+    }
+
+    /**
+     * Parses plain decimals, ignoring surrounding blanks and thousands separators ("10,000.50")
+     */
+    public static Double parseNumber(String value) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        try {
+            double parsed = Double.parseDouble(value.trim().replace(",", ""));
+            return Double.isFinite(parsed) ? parsed : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Parses ISO dates ("2024-05-01") and date-times with or without offset ("2024-05-01T10:30:00", "2024-05-01 10:30")
+     */
+    public static LocalDateTime parseTimestamp(String value) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        String text = value.trim();
+        try {
+            if (text.length() == 10) {
+                return LocalDate.parse(text).atStartOfDay();
+            }
+            text = text.replace(' ', 'T');
+            try {
+                return LocalDateTime.parse(text);
+            } catch (DateTimeParseException e) {
+                return OffsetDateTime.parse(text).toLocalDateTime();
+            }
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package merchant_manager.util;
+
+import lombok.Getter;
+import merchant_manager.models.DTO.RecordFilterDTO;
+import merchant_manager.models.TemplateFormDefaultStats;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * Filters of one dynamic record query in execution order, most selective first,
+ * each with the estimated share of the template's records it keeps.
+ */
+@Getter
+public class FilterPlan {
+
+    // Fallbacks borrowed from PostgreSQL's selfuncs.h for predicates the statistics cannot describe
+    static final double DEFAULT_MATCH_SEL = 0.005;
+    static final double DEFAULT_INEQ_SEL = 1.0 / 3.0;
+    static final double DEFAULT_RANGE_INEQ_SEL = 0.005;
+
+    private final List<RecordFilterDTO> filters;
+    private final List<Double> selectivities;
+
+    private FilterPlan(List<RecordFilterDTO> filters, List<Double> selectivities) {
+        this.filters = filters;
+        this.selectivities = selectivities;
+    }
+
+    /**
+     * Orders the filters by estimated selectivity; fields without statistics keep their request order at the end
+     */
+    public static FilterPlan of(List<RecordFilterDTO> filters, Map<String, TemplateFormDefaultStats> statsByKey) {
+        if (filters == null || filters.isEmpty()) {
+            return new FilterPlan(new ArrayList<>(), new ArrayList<>());
+        }
+        List<RecordFilterDTO> ordered = filters.stream()
+                .filter(Objects::nonNull)
+                .sorted(Comparator.comparingDouble(filter -> estimate(filter, statsByKey.get(filter.getFieldKey()))))
+                .collect(Collectors.toList());
+        List<Double> selectivities = ordered.stream()
+                .map(filter -> estimate(filter, statsByKey.get(filter.getFieldKey())))
+                .collect(Collectors.toList());
+        return new FilterPlan(ordered, selectivities);
+    }
+
+    /**
+     * Estimated fraction (0..1) of the template's records matching the filter
+     */
+    public static double estimate(RecordFilterDTO filter, TemplateFormDefaultStats stats) {
+        if (stats == null) {
+            return 1.0;
+        }
+        if (stats.getRecordCount() == 0) {
+            return 0.0;
+        }
+        double present = 1.0 - stats.getNullRatio();
+        if (filter.getValue() == null) {
+            return present;
+        }
+
+        String value = filter.getValue().toLowerCase();
+        String operator = filter.getOperator() != null ? filter.getOperator().toUpperCase() : "EQUALS";
+
+        return switch (operator) {
+            case "CONTAINS" -> patternSelectivity(stats, candidate -> candidate.contains(value));
+            case "STARTS_WITH" -> patternSelectivity(stats, candidate -> candidate.startsWith(value));
+            case "ENDS_WITH" -> patternSelectivity(stats, candidate -> candidate.endsWith(value));
+            case "GREATER_THAN", "LESS_THAN", "GREATER_THAN_OR_EQUAL", "LESS_THAN_OR_EQUAL" -> present * DEFAULT_INEQ_SEL;
+            case "BETWEEN" -> present * DEFAULT_RANGE_INEQ_SEL;
+            default -> equalsSelectivity(stats, value);
+        };
+    }
+
+    /**
+     * Most common values are exact; the remaining values are assumed evenly spread over the remaining distinct values
+     */
+    private static double equalsSelectivity(TemplateFormDefaultStats stats, String value) {
+        Map<String, Long> mostCommon = mostCommonValues(stats);
+        Long occurrences = mostCommon.get(value);
+        if (occurrences != null) {
+            return clamp((double) occurrences / stats.getRecordCount());
+        }
+        long remainingDistinct = stats.getDistinctCount() - mostCommon.size();
+        if (remainingDistinct <= 0) {
+            return 0.0;
+        }
+        double remainingValues = stats.getValueCount() - sum(mostCommon);
+        return clamp(remainingValues / remainingDistinct / stats.getRecordCount());
+    }
+
+    private static double patternSelectivity(TemplateFormDefaultStats stats, Predicate<String> matches) {
+        Map<String, Long> mostCommon = mostCommonValues(stats);
+        long matched = mostCommon.entrySet().stream()
+                .filter(entry -> matches.test(entry.getKey()))
+                .mapToLong(Map.Entry::getValue)
+                .sum();
+        double remainingValues = stats.getValueCount() - sum(mostCommon);
+        return clamp((matched + remainingValues * DEFAULT_MATCH_SEL) / stats.getRecordCount());
+    }
+
+    private static Map<String, Long> mostCommonValues(TemplateFormDefaultStats stats) {
+        return stats.getMostCommonValues() != null ? stats.getMostCommonValues() : Map.of();
+    }
+
+    private static long sum(Map<String, Long> mostCommon) {
+        return mostCommon.values().stream().mapToLong(Long::longValue).sum();
+    }
+
+    private static double clamp(double selectivity) {
+        return Math.max(0.0, Math.min(1.0, selectivity));
+    }
+
+    /**
+     * Header-friendly form, e.g. "status:EQUALS=0.0120,name:CONTAINS=0.0050"
+     */
+    public String describe() {
+        List<String> steps = new ArrayList<>();
+        for (int i = 0; i < filters.size(); i++) {
+            RecordFilterDTO filter = filters.get(i);
+            String operator = filter.getValue() == null ? "PRESENT"
+                    : filter.getOperator() != null ? filter.getOperator().toUpperCase() : "EQUALS";
+            steps.add(String.format(Locale.ROOT, "%s:%s=%.4f", filter.getFieldKey(), operator, selectivities.get(i)));
+        }
+        return String.join(",", steps);
+    }
+}
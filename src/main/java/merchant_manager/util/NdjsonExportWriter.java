@@ -0,0 +1,57 @@
+package merchant_manager.util;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes each record as one {"recordId":..,"fields":{..}} line while its rows are read,
+ * without building the record in memory
+ */
+public class NdjsonExportWriter implements DynamicRecordExportWriter {
+
+    private static final int FLUSH_RECORDS = 500; // records written between flushes to the client
+
+    private final JsonGenerator generator;
+    private long written = 0;
+
+    public NdjsonExportWriter(ObjectMapper objectMapper, OutputStream outputStream) throws IOException {
+        this.generator = objectMapper.getFactory().createGenerator(outputStream);
+        generator.configure(JsonGenerator.Feature.AUTO_CLOSE_TARGET, false);
+        generator.setRootValueSeparator(null);
+    }
+
+    @Override
+    public void startRecord(long recordId) throws IOException {
+        generator.writeStartObject();
+        generator.writeNumberField("recordId", recordId);
+        generator.writeObjectFieldStart("fields");
+    }
+
+    @Override
+    public void field(String key, String value) throws IOException {
+        generator.writeStringField(key, value);
+    }
+
+    @Override
+    public void endRecord() throws IOException {
+        generator.writeEndObject();
+        generator.writeEndObject();
+        generator.writeRaw('\n');
+        if (++written % FLUSH_RECORDS == 0) {
+            generator.flush();
+        }
+    }
+
+    @Override
+    public void finish() throws IOException {
+        generator.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        generator.close();
+    }
+}
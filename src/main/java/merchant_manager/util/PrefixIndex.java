@@ -0,0 +1,202 @@
+package merchant_manager.util;
+
+import lombok.Value;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Case-insensitive prefix index over the values of one field, one value per record.
+ * Values live in parallel arrays sorted by (user ID, value ignoring case, record ID), so each user's values
+ * starting with a prefix are one contiguous run: a lookup is a binary search followed by a forward scan that
+ * reads only matches, however many values other users hold. Writes go to a small overlay map that shadows the arrays for its records
+ * and is merged into new arrays once it holds COMPACT_AFTER records. Readers never lock: they work on the
+ * arrays and overlay published together, while writers serialize on the index.
+ */
+public class PrefixIndex {
+
+    public static final int COMPACT_AFTER = 4_096; // overlay records before a merge; bounds the overlay scan of a lookup
+
+    private static final Comparator<Entry> ORDER = Comparator.comparingLong(Entry::getUserId)
+            .thenComparing(Entry::getValue, String.CASE_INSENSITIVE_ORDER)
+            .thenComparingLong(Entry::getRecordId);
+
+    /**
+     * One indexed value; a null value in the overlay marks a removed record
+     */
+    @Value
+    public static class Entry {
+        long recordId;
+        long userId;
+        String value;
+    }
+
+    /**
+     * Sorted arrays plus the overlay written since they were built; replaced as a whole on each merge
+     */
+    private static final class State {
+        final String[] values;
+        final long[] recordIds;
+        final long[] userIds;
+        final Map<Long, Entry> overlay = new ConcurrentHashMap<>();
+
+        State(String[] values, long[] recordIds, long[] userIds) {
+            this.values = values;
+            this.recordIds = recordIds;
+            this.userIds = userIds;
+        }
+    }
+
+    private volatile State state = new State(new String[0], new long[0], new long[0]);
+    private long estimatedBytes = 0; // guarded by this
+
+    /**
+     * Replaces the arrays with the given entries, keeping the overlay: writes made while the entries were
+     * read still shadow them. Blank values are skipped; a record listed twice keeps its last value.
+     */
+    public synchronized void load(Collection<Entry> entries) {
+        Map<Long, Entry> byRecord = new HashMap<>();
+        for (Entry entry : entries) {
+            if (entry.getValue() != null && !entry.getValue().isEmpty()) {
+                byRecord.put(entry.getRecordId(), entry);
+            }
+        }
+        State current = state;
+        State loaded = build(byRecord.values().stream().sorted(ORDER).toList());
+        loaded.overlay.putAll(current.overlay);
+        state = loaded;
+        estimatedBytes = estimateBytes(loaded);
+    }
+
+    /**
+     * Sets the value of a record, or removes the record when the value is null or empty
+     */
+    public synchronized void put(long recordId, long userId, String value) {
+        State current = state;
+        Entry previous = current.overlay.put(recordId, new Entry(recordId, userId, value == null || value.isEmpty() ? null : value));
+        estimatedBytes += entryBytes(value) - (previous != null ? entryBytes(previous.getValue()) : 0);
+        if (current.overlay.size() >= COMPACT_AFTER) {
+            compact();
+        }
+    }
+
+    public void remove(long recordId) {
+        put(recordId, 0, null);
+    }
+
+    /**
+     * Values of the user starting with the prefix, ignoring case, ordered by value then record ID
+     */
+    public List<Entry> lookup(String prefix, long userId, int limit) {
+        State current = state;
+        List<Entry> matches = new ArrayList<>();
+
+        for (int i = lowerBound(current, userId, prefix); i < current.values.length; i++) {
+            if (current.userIds[i] != userId || !current.values[i].regionMatches(true, 0, prefix, 0, prefix.length())) {
+                break;
+            }
+            if (!current.overlay.containsKey(current.recordIds[i])) {
+                matches.add(new Entry(current.recordIds[i], userId, current.values[i]));
+                if (matches.size() == limit) {
+                    break;
+                }
+            }
+        }
+        for (Entry entry : current.overlay.values()) {
+            if (entry.getValue() != null && entry.getUserId() == userId
+                    && entry.getValue().regionMatches(true, 0, prefix, 0, prefix.length())) {
+                matches.add(entry);
+            }
+        }
+
+        matches.sort(ORDER);
+        return matches.size() > limit ? new ArrayList<>(matches.subList(0, limit)) : matches;
+    }
+
+    /**
+     * Records in the arrays plus records written since; a record both rewritten and indexed counts twice until the next merge
+     */
+    public int size() {
+        State current = state;
+        return current.values.length + current.overlay.size();
+    }
+
+    /**
+     * Approximate heap held by the values and arrays, compact (Latin-1) strings assumed
+     */
+    public synchronized long estimatedBytes() {
+        return estimatedBytes;
+    }
+
+    /**
+     * Merges the overlay into new arrays: a linear merge of the arrays, minus shadowed records, with the sorted overlay
+     */
+    private void compact() {
+        State current = state;
+        List<Entry> written = current.overlay.values().stream()
+                .filter(entry -> entry.getValue() != null)
+                .sorted(ORDER)
+                .toList();
+
+        List<Entry> merged = new ArrayList<>(current.values.length + written.size());
+        int w = 0;
+        for (int i = 0; i < current.values.length; i++) {
+            if (current.overlay.containsKey(current.recordIds[i])) {
+                continue;
+            }
+            Entry indexed = new Entry(current.recordIds[i], current.userIds[i], current.values[i]);
+            while (w < written.size() && ORDER.compare(written.get(w), indexed) < 0) {
+                merged.add(written.get(w++));
+            }
+            merged.add(indexed);
+        }
+        merged.addAll(written.subList(w, written.size()));
+
+        State compacted = build(merged);
+        state = compacted;
+        estimatedBytes = estimateBytes(compacted);
+    }
+
+    private static State build(List<Entry> sorted) {
+        String[] values = new String[sorted.size()];
+        long[] recordIds = new long[sorted.size()];
+        long[] userIds = new long[sorted.size()];
+        for (int i = 0; i < sorted.size(); i++) {
+            values[i] = sorted.get(i).getValue();
+            recordIds[i] = sorted.get(i).getRecordId();
+            userIds[i] = sorted.get(i).getUserId();
+        }
+        return new State(values, recordIds, userIds);
+    }
+
+    /**
+     * First position not below (user, prefix); every value of the user starting with the prefix follows it contiguously
+     */
+    private static int lowerBound(State state, long userId, String prefix) {
+        int low = 0;
+        int high = state.values.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            int compared = Long.compare(state.userIds[middle], userId);
+            if (compared < 0 || compared == 0 && String.CASE_INSENSITIVE_ORDER.compare(state.values[middle], prefix) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private static long estimateBytes(State state) {
+        long bytes = 0;
+        for (String value : state.values) {
+            bytes += entryBytes(value);
+        }
+        return bytes;
+    }
+
+    // String header and backing array, plus the array slots and the record and user IDs
+    private static long entryBytes(String value) {
+        return value == null ? 0 : 24 + 16 + value.length() + 4 + 8 + 8;
+    }
+}
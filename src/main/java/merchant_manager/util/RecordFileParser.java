@@ -0,0 +1,173 @@
+package merchant_manager.util;
+
+import merchant_manager.customExceptions.CustomExceptions;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler;
+import org.apache.poi.xssf.usermodel.XSSFComment;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Reads an uploaded CSV or XLSX file row by row and pushes each row to a handler, so a file of any
+ * length is parsed in constant memory. XLSX files are read with POI's SAX event API (first sheet only);
+ * date cells come out as ISO dates.
+ */
+public class RecordFileParser {
+
+    private static final char BYTE_ORDER_MARK = '\uFEFF';
+
+    /**
+     * Receives the header row first, then every non-empty row.
+     * Row numbers are the file's own (header = 1), for error reports.
+     */
+    public interface RowHandler {
+        void header(List<String> headers);
+
+        void row(long rowNumber, List<String> cells);
+    }
+
+    public static boolean supports(String fileName) {
+        return isCsv(fileName) || isXlsx(fileName);
+    }
+
+    public static void parse(Path file, String fileName, RowHandler handler) throws IOException {
+        if (isXlsx(fileName)) {
+            parseXlsx(file, handler);
+        } else if (isCsv(fileName)) {
+            parseCsv(file, handler);
+        } else {
+            throw new CustomExceptions.CustomValidationException("Only .csv and .xlsx files can be imported");
+        }
+    }
+
+    private static boolean isCsv(String fileName) {
+        return fileName != null && fileName.toLowerCase().endsWith(".csv");
+    }
+
+    private static boolean isXlsx(String fileName) {
+        return fileName != null && fileName.toLowerCase().endsWith(".xlsx");
+    }
+
+    private static void parseCsv(Path file, RowHandler handler) throws IOException {
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+             CSVParser parser = CSVParser.parse(reader, CSVFormat.DEFAULT)) {
+            Iterator<CSVRecord> records = parser.iterator();
+            if (!records.hasNext()) {
+                throw new CustomExceptions.CustomValidationException("The file is empty");
+            }
+            List<String> headers = records.next().toList();
+            // Excel saves "CSV UTF-8" with a byte order mark in front of the first header
+            if (!headers.isEmpty() && !headers.get(0).isEmpty() && headers.get(0).charAt(0) == BYTE_ORDER_MARK) {
+                headers.set(0, headers.get(0).substring(1));
+            }
+            handler.header(headers);
+
+            while (records.hasNext()) {
+                CSVRecord record = records.next();
+                if (record.size() == 1 && record.get(0).isEmpty()) {
+                    continue;
+                }
+                handler.row(record.getRecordNumber(), record.toList());
+            }
+        }
+    }
+
+    private static void parseXlsx(Path file, RowHandler handler) throws IOException {
+        try (OPCPackage xlsx = OPCPackage.open(file.toFile(), PackageAccess.READ)) {
+            XSSFReader reader = new XSSFReader(xlsx);
+            Iterator<InputStream> sheets = reader.getSheetsData();
+            if (!sheets.hasNext()) {
+                throw new CustomExceptions.CustomValidationException("The workbook has no sheet");
+            }
+            try (InputStream sheet = sheets.next()) {
+                XMLReader sheetParser = XMLHelper.newXMLReader();
+                sheetParser.setContentHandler(new XSSFSheetXMLHandler(reader.getStylesTable(), null,
+                        new ReadOnlySharedStringsTable(xlsx), new SheetRows(handler), new IsoDateFormatter(), false));
+                sheetParser.parse(new InputSource(sheet));
+            }
+        } catch (OpenXML4JException | SAXException | ParserConfigurationException e) {
+            throw new CustomExceptions.CustomValidationException("Could not read the XLSX file: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Collects the cells of each sheet row, leaving blanks for the cells Excel does not store
+     */
+    private static class SheetRows implements XSSFSheetXMLHandler.SheetContentsHandler {
+
+        private final RowHandler handler;
+        private List<String> cells;
+        private boolean headerSeen = false;
+
+        SheetRows(RowHandler handler) {
+            this.handler = handler;
+        }
+
+        @Override
+        public void startRow(int rowNum) {
+            cells = new ArrayList<>();
+        }
+
+        @Override
+        public void cell(String cellReference, String formattedValue, XSSFComment comment) {
+            int column = cellReference != null ? new CellReference(cellReference).getCol() : cells.size();
+            while (cells.size() < column) {
+                cells.add("");
+            }
+            cells.add(formattedValue != null ? formattedValue : "");
+        }
+
+        @Override
+        public void endRow(int rowNum) {
+            if (!headerSeen) {
+                headerSeen = true;
+                handler.header(cells);
+            } else if (!cells.isEmpty()) {
+                handler.row(rowNum + 1L, cells);
+            }
+        }
+    }
+
+    /**
+     * Formats date cells as ISO dates ("2024-05-01", or "2024-05-01T10:30" with a time) instead of the
+     * cell's display format, so they parse like dates typed in the application
+     */
+    private static class IsoDateFormatter extends DataFormatter {
+
+        @Override
+        public String formatRawCellContents(double value, int formatIndex, String formatString) {
+            if (DateUtil.isADateFormat(formatIndex, formatString) && DateUtil.isValidExcelDate(value)) {
+                LocalDateTime dateTime = DateUtil.getLocalDateTime(value);
+                return dateTime.toLocalTime().equals(LocalTime.MIDNIGHT)
+                        ? dateTime.toLocalDate().toString()
+                        : dateTime.toString();
+            }
+            return super.formatRawCellContents(value, formatIndex, formatString);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package merchant_manager.util;
+
+import merchant_manager.customExceptions.CustomExceptions;
+import merchant_manager.models.DTO.RecordFilterDTO;
+import merchant_manager.models.DTO.RecordFilterGroupDTO;
+import merchant_manager.models.enums.FilterGroupOperator;
+
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Helpers shared by every engine for the nested AND/OR/NOT filter expression of a dynamic record query.
+ */
+public class RecordFilterGroups {
+
+    // A saved view is a handful of conditions; the bounds only stop statements the planner would choke on
+    public static final int MAX_DEPTH = 8;
+    public static final int MAX_FILTERS = 100;
+
+    /**
+     * Whether the group holds at least one filter, directly or in a nested group
+     */
+    public static boolean hasFilters(RecordFilterGroupDTO group) {
+        if (group == null) {
+            return false;
+        }
+        return !filters(group).isEmpty() || groups(group).stream().anyMatch(RecordFilterGroups::hasFilters);
+    }
+
+    /**
+     * The group's operator, AND when none was given
+     */
+    public static FilterGroupOperator operator(RecordFilterGroupDTO group) {
+        return group.getOperator() != null ? group.getOperator() : FilterGroupOperator.AND;
+    }
+
+    /**
+     * The group's filters without nulls
+     */
+    public static List<RecordFilterDTO> filters(RecordFilterGroupDTO group) {
+        return group.getFilters() == null ? List.of() : group.getFilters().stream().filter(Objects::nonNull).toList();
+    }
+
+    /**
+     * The nested groups that hold at least one filter
+     */
+    public static List<RecordFilterGroupDTO> groups(RecordFilterGroupDTO group) {
+        return group.getGroups() == null ? List.of() : group.getGroups().stream().filter(RecordFilterGroups::hasFilters).toList();
+    }
+
+    /**
+     * Rejects expressions nested deeper than MAX_DEPTH or holding more than MAX_FILTERS filters
+     */
+    public static void validate(RecordFilterGroupDTO group) {
+        if (countFilters(group, 1) > MAX_FILTERS) {
+            throw new CustomExceptions.CustomValidationException("A filter group can hold at most " + MAX_FILTERS + " filters");
+        }
+    }
+
+    private static int countFilters(RecordFilterGroupDTO group, int depth) {
+        if (group == null) {
+            return 0;
+        }
+        if (depth > MAX_DEPTH) {
+            throw new CustomExceptions.CustomValidationException("Filter groups can be nested at most " + MAX_DEPTH + " levels deep");
+        }
+        int count = group.getFilters() == null ? 0 : group.getFilters().size();
+        if (group.getGroups() != null) {
+            for (RecordFilterGroupDTO nested : group.getGroups()) {
+                count += countFilters(nested, depth + 1);
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,112 @@
+package merchant_manager.util;
+
+import org.roaringbitmap.longlong.Roaring64NavigableMap;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.LongStream;
+
+/**
+ * Set of dynamic record IDs kept as compressed Roaring bitmaps of primitive longs
+ * (one 32-bit bitmap per high word, so bigserial IDs live in a single bucket).
+ * Filter results are intersected, merged and subtracted here instead of through boxed
+ * List&lt;Long&gt; chains; only the page that is actually returned becomes a list again.
+ */
+public class RecordIdSet {
+
+    private final Roaring64NavigableMap bitmap;
+
+    private RecordIdSet(Roaring64NavigableMap bitmap) {
+        this.bitmap = bitmap;
+    }
+
+    public static RecordIdSet empty() {
+        return new RecordIdSet(new Roaring64NavigableMap());
+    }
+
+    public static RecordIdSet of(long... recordIds) {
+        Roaring64NavigableMap bitmap = new Roaring64NavigableMap();
+        bitmap.add(recordIds);
+        return new RecordIdSet(bitmap);
+    }
+
+    public static RecordIdSet of(Collection<Long> recordIds) {
+        RecordIdSet set = empty();
+        for (Long recordId : recordIds) {
+            set.add(recordId);
+        }
+        return set;
+    }
+
+    public void add(long recordId) {
+        bitmap.addLong(recordId);
+    }
+
+    /**
+     * Keeps only the IDs also present in the other set (AND of two filters)
+     */
+    public RecordIdSet retainAll(RecordIdSet other) {
+        bitmap.and(other.bitmap);
+        return this;
+    }
+
+    /**
+     * Adds every ID of the other set (OR of two filters)
+     */
+    public RecordIdSet addAll(RecordIdSet other) {
+        bitmap.or(other.bitmap);
+        return this;
+    }
+
+    /**
+     * Drops every ID of the other set (AND NOT of two filters)
+     */
+    public RecordIdSet removeAll(RecordIdSet other) {
+        bitmap.andNot(other.bitmap);
+        return this;
+    }
+
+    public boolean contains(long recordId) {
+        return bitmap.contains(recordId);
+    }
+
+    public long size() {
+        return bitmap.getLongCardinality();
+    }
+
+    public boolean isEmpty() {
+        return bitmap.isEmpty();
+    }
+
+    public RecordIdSet copy() {
+        RecordIdSet copy = empty();
+        copy.bitmap.or(bitmap);
+        return copy;
+    }
+
+    /**
+     * IDs in ascending order
+     */
+    public LongStream stream() {
+        LongStream.Builder builder = LongStream.builder();
+        bitmap.forEach(builder::add);
+        return builder.build();
+    }
+
+    /**
+     * One page of IDs, newest (highest) first, without materializing the rest of the set
+     */
+    public List<Long> pageDescending(long offset, int limit) {
+        long size = size();
+        List<Long> page = new ArrayList<>((int) Math.max(Math.min(limit, size - offset), 0));
+        for (long rank = size - 1 - Math.max(offset, 0); rank >= 0 && page.size() < limit; rank--) {
+            page.add(bitmap.select(rank));
+        }
+        return page;
+    }
+
+    public long sizeInBytes() {
+        return bitmap.getLongSizeInBytes();
+    }
+}
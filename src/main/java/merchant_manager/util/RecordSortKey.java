@@ -0,0 +1,80 @@
+package merchant_manager.util;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import merchant_manager.models.DTO.DynamicRecordsRequestDTO;
+import merchant_manager.models.DTO.RecordSortDTO;
+import merchant_manager.models.enums.FieldType;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Sort key of a dynamic record query resolved against the template: NUMBER columns sort on value_numeric,
+ * DATE and DATETIME columns on value_ts, every other column case-insensitively on the text.
+ * A missing (or, for typed columns, unparseable) value sorts as the lowest value.
+ */
+@Getter
+@AllArgsConstructor
+public class RecordSortKey {
+
+    /**
+     * Which typed copy of the value a key sorts on
+     */
+    public enum Kind {
+        TEXT,
+        NUMBER,
+        TIMESTAMP
+    }
+
+    private final String fieldKey;
+    private final Kind kind;
+    private final boolean descending;
+
+    /**
+     * The request's sort keys, most significant first: the sort list when given, otherwise sortBy and sortDirection.
+     * Blank keys are dropped and a repeated key only counts the first time.
+     */
+    public static List<RecordSortDTO> requested(DynamicRecordsRequestDTO request) {
+        List<RecordSortDTO> sorts = request.getSort() != null && !request.getSort().isEmpty()
+                ? request.getSort()
+                : List.of(new RecordSortDTO(request.getSortBy(), request.getSortDirection()));
+        Map<String, RecordSortDTO> byKey = new LinkedHashMap<>();
+        for (RecordSortDTO sort : sorts) {
+            if (sort != null && sort.getFieldKey() != null && !sort.getFieldKey().isEmpty()) {
+                byKey.putIfAbsent(sort.getFieldKey(),
+                        new RecordSortDTO(sort.getFieldKey(), "DESC".equalsIgnoreCase(sort.getDirection()) ? "DESC" : "ASC"));
+            }
+        }
+        return new ArrayList<>(byKey.values());
+    }
+
+    /**
+     * Resolves the request's sort keys; keys that are not a field of the template sort as text
+     */
+    public static List<RecordSortKey> of(DynamicRecordsRequestDTO request, Map<String, FieldType> fieldTypes) {
+        return requested(request).stream()
+                .map(sort -> new RecordSortKey(sort.getFieldKey(), kind(fieldTypes.get(sort.getFieldKey())),
+                        "DESC".equals(sort.getDirection())))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Canonical form of the request's ordering, e.g. "volume:DESC,name:ASC"; empty when unsorted
+     */
+    public static String ordering(DynamicRecordsRequestDTO request) {
+        return requested(request).stream()
+                .map(sort -> sort.getFieldKey() + ":" + sort.getDirection())
+                .collect(Collectors.joining(","));
+    }
+
+    public static Kind kind(FieldType type) {
+        if (type == FieldType.NUMBER) {
+            return Kind.NUMBER;
+        }
+        return type == FieldType.DATE || type == FieldType.DATETIME ? Kind.TIMESTAMP : Kind.TEXT;
+    }
+}
@@ -1,15 +1,21 @@
 package merchant_manager.util;
 
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.Expression;
 import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
 import merchant_manager.models.DTO.RecordFilterDTO;
 import merchant_manager.models.TemplateFormValueDefault;
 import org.springframework.data.jpa.domain.Specification;
 
+import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
 
 public class TemplateFormValueDefaultSpecification {
 
+    public static final char LIKE_ESCAPE = '\\';
+
     /**
      * Creates a specification for filtering TemplateFormValueDefault records
      * based on field key and filter criteria
@@ -49,21 +55,24 @@ public class TemplateFormValueDefaultSpecification {
                     case "CONTAINS":
                         predicates.add(criteriaBuilder.like(
                                 criteriaBuilder.lower(root.get("value")),
-                                "%" + value.toLowerCase() + "%"
+                                "%" + escapeLike(value.toLowerCase()) + "%",
+                                LIKE_ESCAPE
                         ));
                         break;
 
                     case "STARTS_WITH":
                         predicates.add(criteriaBuilder.like(
                                 criteriaBuilder.lower(root.get("value")),
-                                value.toLowerCase() + "%"
+                                escapeLike(value.toLowerCase()) + "%",
+                                LIKE_ESCAPE
                         ));
                         break;
 
                     case "ENDS_WITH":
                         predicates.add(criteriaBuilder.like(
                                 criteriaBuilder.lower(root.get("value")),
-                                "%" + value.toLowerCase()
+                                "%" + escapeLike(value.toLowerCase()),
+                                LIKE_ESCAPE
                         ));
                         break;
 
@@ -71,8 +80,9 @@ public class TemplateFormValueDefaultSpecification {
                     case "LESS_THAN":
                     case "GREATER_THAN_OR_EQUAL":
                     case "LESS_THAN_OR_EQUAL":
-                        // Numeric operators are handled in-service to avoid DB cast errors on non-numeric values.
-                        predicates.add(criteriaBuilder.disjunction());
+                    case "BETWEEN":
+                        // Range operators compare the typed shadow columns filled on write
+                        predicates.add(rangePredicate(root, criteriaBuilder, operator, value, filter.getValueTo()));
                         break;
 
                     default:
@@ -89,6 +99,66 @@ public class TemplateFormValueDefaultSpecification {
         };
     }
 
+    /**
+     * Escapes LIKE wildcards typed by the user so "%" and "_" match literally.
+     * Together with the lower(value) trigram index this keeps CONTAINS / ENDS_WITH indexable.
+     */
+    public static String escapeLike(String value) {
+        return value
+                .replace(String.valueOf(LIKE_ESCAPE), String.valueOf(LIKE_ESCAPE) + LIKE_ESCAPE)
+                .replace("%", LIKE_ESCAPE + "%")
+                .replace("_", LIKE_ESCAPE + "_");
+    }
+
+    /**
+     * Numeric targets compare valueNumeric, ISO date targets compare valueTs; anything else matches nothing
+     */
+    private static Predicate rangePredicate(
+            Root<TemplateFormValueDefault> root,
+            CriteriaBuilder criteriaBuilder,
+            String operator,
+            String value,
+            String valueTo) {
+
+        Double number = FieldValueParser.parseNumber(value);
+        if (number != null) {
+            return compare(criteriaBuilder, root.get("valueNumeric"), operator, number, FieldValueParser.parseNumber(valueTo));
+        }
+        LocalDateTime timestamp = FieldValueParser.parseTimestamp(value);
+        if (timestamp != null) {
+            return compare(criteriaBuilder, root.get("valueTs"), operator, timestamp, FieldValueParser.parseTimestamp(valueTo));
+        }
+        return criteriaBuilder.disjunction();
+    }
+
+    private static <T extends Comparable<? super T>> Predicate compare(
+            CriteriaBuilder criteriaBuilder,
+            Expression<T> column,
+            String operator,
+            T target,
+            T upperBound) {
+
+        return switch (operator) {
+            case "GREATER_THAN" -> criteriaBuilder.greaterThan(column, target);
+            case "LESS_THAN" -> criteriaBuilder.lessThan(column, target);
+            case "GREATER_THAN_OR_EQUAL" -> criteriaBuilder.greaterThanOrEqualTo(column, target);
+            case "BETWEEN" -> upperBound != null
+                    ? criteriaBuilder.between(column, target, upperBound)
+                    : criteriaBuilder.disjunction();
+            default -> criteriaBuilder.lessThanOrEqualTo(column, target);
+        };
+    }
+
+    /**
+     * Restricts values to the fields of one template
+     */
+    public static Specification<TemplateFormValueDefault> inTemplate(Long templateId) {
+        return (root, query, criteriaBuilder) -> criteriaBuilder.equal(
+                root.get("templateFormDefault").get("template").get("id"),
+                templateId
+        );
+    }
+
     /**
      * Creates a specification for fetching values by template ID and record IDs
      * for sorting purposes
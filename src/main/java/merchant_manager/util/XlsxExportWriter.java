@@ -0,0 +1,124 @@
+package merchant_manager.util;
+
+import merchant_manager.models.TemplateFormDefault;
+import merchant_manager.models.enums.FieldType;
+import org.apache.poi.ss.SpreadsheetVersion;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Font;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.xssf.streaming.SXSSFSheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes records into a streaming (SXSSF) workbook: one row per record, a Record ID column followed
+ * by one column per template field headed by its label. Only the last ROW_WINDOW rows stay in memory;
+ * older ones go to a compressed temp file, which finish() copies to the response.
+ * A new sheet is started whenever one reaches Excel's row limit.
+ */
+public class XlsxExportWriter implements DynamicRecordExportWriter {
+
+    public static final String MEDIA_TYPE = "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet";
+
+    private static final int ROW_WINDOW = 100;
+    private static final int MAX_ROWS = SpreadsheetVersion.EXCEL2007.getMaxRows();
+    private static final int MAX_TEXT_LENGTH = SpreadsheetVersion.EXCEL2007.getMaxTextLength();
+
+    private final SXSSFWorkbook workbook;
+    private final OutputStream outputStream;
+    private final List<TemplateFormDefault> columns;
+    private final Map<String, Integer> columnIndexes = new HashMap<>();
+    private final CellStyle headerStyle;
+
+    private SXSSFSheet sheet;
+    private Row row;
+    private int rowIndex;
+
+    /**
+     * @param columns      Template fields to export, in column order
+     * @param outputStream Response the finished workbook is written to
+     */
+    public XlsxExportWriter(List<TemplateFormDefault> columns, OutputStream outputStream) {
+        this.workbook = new SXSSFWorkbook(ROW_WINDOW);
+        this.workbook.setCompressTempFiles(true);
+        this.outputStream = outputStream;
+        this.columns = columns;
+        for (int i = 0; i < columns.size(); i++) {
+            columnIndexes.put(columns.get(i).getKey(), i + 1);
+        }
+
+        Font bold = workbook.createFont();
+        bold.setBold(true);
+        this.headerStyle = workbook.createCellStyle();
+        this.headerStyle.setFont(bold);
+    }
+
+    @Override
+    public void startRecord(long recordId) {
+        if (sheet == null || rowIndex == MAX_ROWS) {
+            startSheet();
+        }
+        row = sheet.createRow(rowIndex++);
+        row.createCell(0).setCellValue(recordId);
+    }
+
+    @Override
+    public void field(String key, String value) {
+        Integer columnIndex = columnIndexes.get(key);
+        if (columnIndex == null || value == null) {
+            return;
+        }
+        if (columns.get(columnIndex - 1).getType() == FieldType.NUMBER) {
+            try {
+                row.createCell(columnIndex).setCellValue(Double.parseDouble(value));
+                return;
+            } catch (NumberFormatException e) {
+                // Not a number after all; keep the text
+            }
+        }
+        row.createCell(columnIndex).setCellValue(value.length() > MAX_TEXT_LENGTH ? value.substring(0, MAX_TEXT_LENGTH) : value);
+    }
+
+    @Override
+    public void endRecord() {
+        row = null;
+    }
+
+    @Override
+    public void finish() throws IOException {
+        if (sheet == null) {
+            startSheet();
+        }
+        workbook.write(outputStream);
+        outputStream.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        // Deletes the temp files backing the flushed rows
+        workbook.dispose();
+        workbook.close();
+    }
+
+    private void startSheet() {
+        int sheetNumber = workbook.getNumberOfSheets() + 1;
+        sheet = workbook.createSheet(sheetNumber == 1 ? "Records" : "Records " + sheetNumber);
+        sheet.setDefaultColumnWidth(20);
+        sheet.createFreezePane(0, 1);
+
+        Row header = sheet.createRow(0);
+        header.createCell(0).setCellValue("Record ID");
+        for (int i = 0; i < columns.size(); i++) {
+            header.createCell(i + 1).setCellValue(columns.get(i).getLabel());
+        }
+        for (int i = 0; i <= columns.size(); i++) {
+            header.getCell(i).setCellStyle(headerStyle);
+        }
+        rowIndex = 1;
+    }
+}
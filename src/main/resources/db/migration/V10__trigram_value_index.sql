@@ -0,0 +1,5 @@
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+
+-- CONTAINS and ENDS_WITH filters (lower(value) LIKE '%x%' / '%x'); B-tree indexes only serve prefixes
+CREATE INDEX idx_template_form_value_default_lower_value_trgm
+    ON template_form_value_default USING GIN (lower(value) gin_trgm_ops);
@@ -0,0 +1,16 @@
+CREATE TABLE template_form_default_stats (
+    template_form_default_id BIGINT PRIMARY KEY,
+    template_id BIGINT NOT NULL,
+    field_key VARCHAR(255) NOT NULL,
+    record_count BIGINT NOT NULL,          -- distinct records in the template
+    value_count BIGINT NOT NULL,           -- non-null values of the field
+    distinct_count BIGINT NOT NULL,        -- distinct lower(value)
+    null_ratio DOUBLE PRECISION NOT NULL,  -- share of records without a value for the field
+    most_common_values JSONB NOT NULL DEFAULT '{}', -- lower(value) -> occurrences
+    refreshed_at TIMESTAMP NOT NULL,
+    CONSTRAINT fk_template_form_default_stats_field FOREIGN KEY (template_form_default_id)
+        REFERENCES template_form_default(id) ON DELETE CASCADE
+);
+
+CREATE INDEX idx_template_form_default_stats_template
+    ON template_form_default_stats (template_id);
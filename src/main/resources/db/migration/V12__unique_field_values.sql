@@ -0,0 +1,25 @@
+-- One value per field and record, so a form save can upsert all its fields in one statement
+-- instead of reading each field first. Concurrent saves used to be able to insert the same
+-- field twice; keep the most recently inserted row of each pair.
+DELETE FROM template_form_value_default v
+    USING template_form_value_default newer
+    WHERE newer.template_form_default_id = v.template_form_default_id
+      AND newer.record_id = v.record_id
+      AND newer.id > v.id;
+
+DELETE FROM template_form_value v
+    USING template_form_value newer
+    WHERE newer.template_form_id = v.template_form_id
+      AND newer.record_id = v.record_id
+      AND newer.id > v.id;
+
+-- Replaces idx_template_form_value_default_field_record (same columns), so writes keep the same index count
+DROP INDEX idx_template_form_value_default_field_record;
+
+ALTER TABLE template_form_value_default
+    ADD CONSTRAINT uq_template_form_value_default_field_record
+        UNIQUE (template_form_default_id, record_id) INCLUDE (user_id);
+
+ALTER TABLE template_form_value
+    ADD CONSTRAINT uq_template_form_value_field_record
+        UNIQUE (template_form_id, record_id);
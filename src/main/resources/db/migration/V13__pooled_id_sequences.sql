@@ -0,0 +1,11 @@
+-- Hibernate cannot batch inserts of IDENTITY entities, because it needs each generated key
+-- before it can queue the next row. These entities now take their IDs from the existing
+-- serial sequences through a pooled optimizer: one nextval reserves the 50 IDs below it,
+-- so a block of 50 rows costs one sequence call and goes out as one batched insert.
+-- Existing IDs are kept; the next block starts right after the current sequence value.
+-- The column defaults stay, so native INSERT and COPY still work (each such row uses up a block).
+ALTER SEQUENCE template_form_value_default_id_seq INCREMENT BY 50;
+ALTER SEQUENCE template_form_value_id_seq INCREMENT BY 50;
+ALTER SEQUENCE token_id_seq INCREMENT BY 50;
+ALTER SEQUENCE recipient_id_seq INCREMENT BY 50;
+ALTER SEQUENCE contact_merchant_id_seq INCREMENT BY 50;
@@ -0,0 +1,20 @@
+-- Delta sync: records of a template changed after a watermark, oldest change first.
+-- dynamic_record.updated_at is the newest updated_at of the record's value rows, so the
+-- template's changes are one range of this index, already in watermark order.
+CREATE INDEX idx_dynamic_record_template_updated
+    ON dynamic_record (template_id, updated_at, record_id);
+
+-- Records removed from a user's grid by deleteRecord, kept for tombstone_retention_days
+-- so clients syncing deltas learn about deletions. One row per template, record and user.
+CREATE TABLE dynamic_record_tombstone (
+    template_id BIGINT NOT NULL,
+    record_id BIGINT NOT NULL,
+    user_id BIGINT NOT NULL,
+    deleted_at TIMESTAMP NOT NULL,
+    PRIMARY KEY (template_id, record_id, user_id),
+    CONSTRAINT fk_dynamic_record_tombstone_template FOREIGN KEY (template_id) REFERENCES template_default(id)
+);
+
+CREATE INDEX idx_dynamic_record_tombstone_template_deleted
+    ON dynamic_record_tombstone (template_id, deleted_at, record_id)
+    INCLUDE (user_id);
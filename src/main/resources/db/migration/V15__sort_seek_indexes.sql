@@ -0,0 +1,19 @@
+-- Keyset pages of sorted grids seek through one field of one user in sort order: the cursor's
+-- value bounds a range of (template_form_default_id, user_id, value). Range filters carry the
+-- same field and user equalities, so the V7 typed indexes are replaced rather than duplicated.
+DROP INDEX idx_template_form_value_default_numeric;
+DROP INDEX idx_template_form_value_default_ts;
+
+CREATE INDEX idx_template_form_value_default_numeric
+    ON template_form_value_default (template_form_default_id, user_id, value_numeric)
+    WHERE value_numeric IS NOT NULL;
+
+CREATE INDEX idx_template_form_value_default_ts
+    ON template_form_value_default (template_form_default_id, user_id, value_ts)
+    WHERE value_ts IS NOT NULL;
+
+-- Text columns sort on lower(value) in the database collation, which the text_pattern_ops
+-- index used by LIKE filters cannot order or compare
+CREATE INDEX idx_template_form_value_default_lower_sort
+    ON template_form_value_default (template_form_default_id, user_id, lower(value))
+    INCLUDE (record_id);
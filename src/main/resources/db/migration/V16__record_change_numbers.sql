@@ -0,0 +1,22 @@
+-- Delta sync position: a change number drawn from one sequence by every document write and deletion,
+-- instead of the value rows' wall-clock updated_at. Writers draw numbers under a transaction-scoped
+-- advisory lock per template (DynamicRecordDocumentServiceImp.lockChangeNumbers), so within a template
+-- the numbers of a committed change are always below those of changes still committing, and a reader,
+-- which only ever pages through one template, never passes over one.
+CREATE SEQUENCE dynamic_record_change_seq;
+
+ALTER TABLE dynamic_record
+    ADD COLUMN change_seq BIGINT NOT NULL DEFAULT nextval('dynamic_record_change_seq');
+
+ALTER TABLE dynamic_record_tombstone
+    ADD COLUMN change_seq BIGINT NOT NULL DEFAULT nextval('dynamic_record_change_seq');
+
+DROP INDEX idx_dynamic_record_template_updated;
+DROP INDEX idx_dynamic_record_tombstone_template_deleted;
+
+CREATE INDEX idx_dynamic_record_template_change
+    ON dynamic_record (template_id, change_seq);
+
+CREATE INDEX idx_dynamic_record_tombstone_template_change
+    ON dynamic_record_tombstone (template_id, change_seq)
+    INCLUDE (user_id, record_id);
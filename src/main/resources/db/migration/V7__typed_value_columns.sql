@@ -0,0 +1,48 @@
+ALTER TABLE template_form_value_default
+    ADD COLUMN value_numeric DOUBLE PRECISION,
+    ADD COLUMN value_ts TIMESTAMP;
+
+CREATE FUNCTION pg_temp.try_numeric(raw TEXT) RETURNS DOUBLE PRECISION AS $$
+BEGIN
+    RETURN CAST(replace(trim(raw), ',', '') AS DOUBLE PRECISION);
+EXCEPTION WHEN others THEN
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE FUNCTION pg_temp.try_timestamp(raw TEXT) RETURNS TIMESTAMP AS $$
+BEGIN
+    IF trim(raw) !~ '^[0-9]{4}-[0-9]{2}-[0-9]{2}([T ][0-9]{2}:[0-9]{2}.*)?$' THEN
+        RETURN NULL;
+    END IF;
+    RETURN CAST(trim(raw) AS TIMESTAMP);
+EXCEPTION WHEN others THEN
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+UPDATE template_form_value_default v
+SET value_numeric = pg_temp.try_numeric(v.value)
+FROM template_form_default f
+WHERE f.id = v.template_form_default_id
+  AND f.type = 'NUMBER'
+  AND v.value IS NOT NULL;
+
+UPDATE template_form_value_default v
+SET value_ts = pg_temp.try_timestamp(v.value)
+FROM template_form_default f
+WHERE f.id = v.template_form_default_id
+  AND f.type IN ('DATE', 'DATETIME')
+  AND v.value IS NOT NULL;
+
+UPDATE template_form_value_default
+SET value_numeric = NULL
+WHERE value_numeric IN ('NaN', 'Infinity', '-Infinity');
+
+CREATE INDEX idx_template_form_value_default_numeric
+    ON template_form_value_default (template_form_default_id, value_numeric)
+    WHERE value_numeric IS NOT NULL;
+
+CREATE INDEX idx_template_form_value_default_ts
+    ON template_form_value_default (template_form_default_id, value_ts)
+    WHERE value_ts IS NOT NULL;
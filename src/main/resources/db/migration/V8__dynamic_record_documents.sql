@@ -0,0 +1,26 @@
+CREATE TABLE dynamic_record (
+    template_id BIGINT NOT NULL,
+    record_id BIGINT NOT NULL,
+    user_ids BIGINT[] NOT NULL, -- owners of the underlying value rows, checked with @>
+    fields JSONB NOT NULL DEFAULT '{}',
+    typed JSONB NOT NULL DEFAULT '{}',
+    updated_at TIMESTAMP NOT NULL,
+    PRIMARY KEY (template_id, record_id),
+    CONSTRAINT fk_dynamic_record_template FOREIGN KEY (template_id) REFERENCES template_default(id)
+);
+
+-- Case-insensitive EQUALS filters: lower(fields) @> {"key": "value"}
+CREATE INDEX idx_dynamic_record_fields_lower
+    ON dynamic_record USING GIN ((CAST(lower(CAST(fields AS TEXT)) AS JSONB)) jsonb_path_ops);
+
+INSERT INTO dynamic_record (template_id, record_id, user_ids, fields, typed, updated_at)
+SELECT f.template_id,
+       v.record_id,
+       coalesce(array_agg(DISTINCT v.user_id) FILTER (WHERE v.user_id IS NOT NULL), '{}'),
+       jsonb_object_agg(f.key, v.value),
+       coalesce(jsonb_object_agg(f.key, coalesce(to_jsonb(v.value_numeric), to_jsonb(v.value_ts)))
+                    FILTER (WHERE v.value_numeric IS NOT NULL OR v.value_ts IS NOT NULL), '{}'),
+       coalesce(max(v.updated_at), localtimestamp)
+FROM template_form_value_default v
+JOIN template_form_default f ON f.id = v.template_form_default_id
+GROUP BY f.template_id, v.record_id;
@@ -0,0 +1,23 @@
+-- Field lookups and joins: template_form_default is always reached through its template
+CREATE INDEX idx_template_form_default_template
+    ON template_form_default (template_id);
+
+-- One field of one record (findByTemplateFormDefaultIdAndRecordId) and
+-- one field over a record set (filterForSorting, search column fetches)
+CREATE INDEX idx_template_form_value_default_field_record
+    ON template_form_value_default (template_form_default_id, record_id)
+    INCLUDE (user_id);
+
+-- Every field of a record (findByRecordId, menu/record reads and deletes, grid pivot)
+CREATE INDEX idx_template_form_value_default_record_field
+    ON template_form_value_default (record_id, template_form_default_id);
+
+-- Records owned by a user in a template (findDistinctRecordIdsByTemplateId, native matched CTE)
+CREATE INDEX idx_template_form_value_default_user_field_record
+    ON template_form_value_default (user_id, template_form_default_id, record_id);
+
+-- Case-insensitive EQUALS and STARTS_WITH filters; text_pattern_ops keeps prefix LIKE
+-- indexable whatever the database collation, and the included columns make the filter index-only
+CREATE INDEX idx_template_form_value_default_field_lower_value
+    ON template_form_value_default (template_form_default_id, lower(value) text_pattern_ops)
+    INCLUDE (record_id, user_id);
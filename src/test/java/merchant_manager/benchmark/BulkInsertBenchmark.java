@@ -0,0 +1,154 @@
+package merchant_manager.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.sql.*;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bulk field value writes as Hibernate sends them for an IDENTITY id vs a pooled sequence id.
+ * Each invocation inserts 1,000 template_form_value_default rows in one transaction and rolls
+ * it back. "identity" is one INSERT ... RETURNING id round trip per row, which is all Hibernate
+ * can do when the database assigns the key. "sequence" is what the pooled generator with
+ * hibernate.jdbc.batch_size=50 does: one nextval per 50 rows and one batched insert, which
+ * reWriteBatchedInserts turns into a multi-row INSERT.
+ *
+ * Needs a migrated database (the sequence must have INCREMENT BY 50) with at least one user
+ * and one template field. Defaults match application-local.properties; override with
+ * -Dbenchmark.url, -Dbenchmark.user, -Dbenchmark.password and -Dbenchmark.schema.
+ *
+ * Run with: mvn test-compile exec:java -Dexec.classpathScope=test
+ *           -Dexec.mainClass=merchant_manager.benchmark.BulkInsertBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BulkInsertBenchmark {
+
+    private static final int ROWS = 1_000;
+    private static final int BATCH_SIZE = 50;
+
+    private static final String COLUMNS =
+            "template_form_default_id, record_id, value, user_id, created_at, updated_at, created_by, last_updated_by";
+
+    @Param({"identity", "sequence"})
+    private String idStrategy;
+
+    private Connection connection;
+    private String schema;
+    private long fieldId;
+    private long userId;
+
+    @Setup
+    public void setUp() throws SQLException {
+        Properties properties = new Properties();
+        properties.setProperty("user", System.getProperty("benchmark.user", "postgres"));
+        properties.setProperty("password", System.getProperty("benchmark.password", ""));
+        properties.setProperty("reWriteBatchedInserts", "true");
+        connection = DriverManager.getConnection(
+                System.getProperty("benchmark.url", "jdbc:postgresql://localhost:5432/postgres"), properties);
+        connection.setAutoCommit(false);
+        schema = System.getProperty("benchmark.schema", "merchant_manager");
+        fieldId = firstId("SELECT min(id) FROM " + schema + ".template_form_default");
+        userId = firstId("SELECT min(id) FROM " + schema + "._user");
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        connection.close();
+    }
+
+    @Benchmark
+    public List<Long> insert() throws SQLException {
+        try {
+            return "identity".equals(idStrategy) ? insertWithIdentity() : insertWithSequence();
+        } finally {
+            connection.rollback();
+        }
+    }
+
+    private List<Long> insertWithIdentity() throws SQLException {
+        List<Long> ids = new ArrayList<>(ROWS);
+        String sql = "INSERT INTO " + schema + ".template_form_value_default (" + COLUMNS + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+        try (PreparedStatement insert = connection.prepareStatement(sql, new String[]{"id"})) {
+            for (int i = 0; i < ROWS; i++) {
+                bindRow(insert, 1, i);
+                insert.executeUpdate();
+                try (ResultSet keys = insert.getGeneratedKeys()) {
+                    keys.next();
+                    ids.add(keys.getLong(1));
+                }
+            }
+        }
+        return ids;
+    }
+
+    private List<Long> insertWithSequence() throws SQLException {
+        List<Long> ids = new ArrayList<>(ROWS);
+        String sql = "INSERT INTO " + schema + ".template_form_value_default (id, " + COLUMNS + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+        try (PreparedStatement nextval = connection.prepareStatement("SELECT nextval('" + schema + ".template_form_value_default_id_seq')");
+             PreparedStatement insert = connection.prepareStatement(sql)) {
+            long nextId = 0;
+            long blockEnd = 0;
+            for (int i = 0; i < ROWS; i++) {
+                if (nextId > blockEnd) {
+                    // Pooled optimizer: nextval is the top of the next block of BATCH_SIZE IDs
+                    try (ResultSet rs = nextval.executeQuery()) {
+                        rs.next();
+                        blockEnd = rs.getLong(1);
+                    }
+                    nextId = blockEnd - BATCH_SIZE + 1;
+                }
+                insert.setLong(1, nextId);
+                ids.add(nextId++);
+                bindRow(insert, 2, i);
+                insert.addBatch();
+                if ((i + 1) % BATCH_SIZE == 0) {
+                    insert.executeBatch();
+                }
+            }
+            insert.executeBatch();
+        }
+        return ids;
+    }
+
+    private void bindRow(PreparedStatement insert, int first, int row) throws SQLException {
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        insert.setLong(first, fieldId);
+        // Negative record IDs never collide with real records or with the (field, record) constraint
+        insert.setLong(first + 1, -1L - row);
+        insert.setString(first + 2, "value " + row);
+        insert.setLong(first + 3, userId);
+        insert.setTimestamp(first + 4, now);
+        insert.setTimestamp(first + 5, now);
+        insert.setString(first + 6, "benchmark");
+        insert.setString(first + 7, "benchmark");
+    }
+
+    private long firstId(String sql) throws SQLException {
+        try (Statement statement = connection.createStatement(); ResultSet rs = statement.executeQuery(sql)) {
+            rs.next();
+            long id = rs.getLong(1);
+            if (rs.wasNull()) {
+                throw new IllegalStateException("Benchmark needs at least one row for: " + sql);
+            }
+            return id;
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(BulkInsertBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,104 @@
+package merchant_manager.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import merchant_manager.models.DTO.DynamicRecordDTO;
+import merchant_manager.models.DTO.DynamicRecordsSimplePageDTO;
+import merchant_manager.models.enums.CountMode;
+import merchant_manager.util.ColumnarPageEncoder;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Row vs columnar format for a 100-row page of the 40-column merchant template: a few unique text
+ * columns, many low-cardinality status / type / flag columns, numbers, dates and sparsely filled
+ * optional columns. The columnar cost includes encoding the row page, which the endpoint also pays.
+ * main() prints the wire size of each format first.
+ *
+ * Run with: mvn test-compile exec:java -Dexec.classpathScope=test
+ *           -Dexec.mainClass=merchant_manager.benchmark.ColumnarPageBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ColumnarPageBenchmark {
+
+    private static final int ROWS = 100;
+    private static final int COLUMNS = 40;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private DynamicRecordsSimplePageDTO page;
+
+    @Setup
+    public void setUp() {
+        page = merchantPage();
+    }
+
+    @Benchmark
+    public byte[] rowFormat() throws Exception {
+        return objectMapper.writeValueAsBytes(page);
+    }
+
+    @Benchmark
+    public byte[] columnarFormat() throws Exception {
+        return objectMapper.writeValueAsBytes(ColumnarPageEncoder.encode(page, null));
+    }
+
+    private static DynamicRecordsSimplePageDTO merchantPage() {
+        Random random = new Random(7);
+        String[] statuses = {"New", "Contacted", "Underwriting", "Approved", "Declined"};
+        String[] types = {"Retail", "Restaurant", "E-commerce", "Services"};
+        String[] states = {"NY", "NJ", "CA", "TX", "FL", "IL"};
+
+        List<DynamicRecordDTO> records = new ArrayList<>();
+        for (int row = 0; row < ROWS; row++) {
+            long recordId = 100_000 + row;
+            Map<String, String> fields = new HashMap<>();
+            fields.put("legal_name", "Merchant Holdings " + recordId + " LLC");
+            fields.put("dba_name", "Store " + recordId);
+            fields.put("email", "owner" + recordId + "@example.com");
+            fields.put("phone", String.format("+1 212 555 %04d", random.nextInt(10_000)));
+            fields.put("street_address", random.nextInt(9_999) + " Main Street");
+            fields.put("tax_id", String.format("%02d-%07d", random.nextInt(100), random.nextInt(10_000_000)));
+            fields.put("monthly_volume", String.valueOf(random.nextInt(500_000)));
+            fields.put("average_ticket", String.valueOf(random.nextInt(900) + 10));
+            fields.put("opened_date", String.format("2024-%02d-%02d", random.nextInt(12) + 1, random.nextInt(28) + 1));
+            fields.put("zip_code", String.format("%05d", random.nextInt(100_000)));
+            for (int column = 0; column < 10; column++) {
+                fields.put("status_" + column, statuses[random.nextInt(statuses.length)]);
+            }
+            for (int column = 0; column < 6; column++) {
+                fields.put("business_type_" + column, types[random.nextInt(types.length)]);
+            }
+            fields.put("state", states[random.nextInt(states.length)]);
+            fields.put("city", states[random.nextInt(states.length)] + " City");
+            for (int column = 0; column < 8; column++) {
+                fields.put("accepts_option_" + column, random.nextBoolean() ? "Yes" : "No");
+            }
+            // Optional columns, mostly empty
+            for (int column = 0; column < COLUMNS - 34; column++) {
+                if (random.nextInt(5) == 0) {
+                    fields.put("optional_note_" + column, "Note " + random.nextInt(1_000));
+                }
+            }
+            records.add(new DynamicRecordDTO(recordId, fields));
+        }
+        return new DynamicRecordsSimplePageDTO(records, 12_345L, 0, ROWS, 124, true, CountMode.EXACT, null);
+    }
+
+    public static void main(String[] args) throws Exception {
+        ObjectMapper objectMapper = new ObjectMapper();
+        DynamicRecordsSimplePageDTO page = merchantPage();
+        System.out.printf("row      %,8d bytes%n", objectMapper.writeValueAsBytes(page).length);
+        System.out.printf("columnar %,8d bytes%n", objectMapper.writeValueAsBytes(ColumnarPageEncoder.encode(page, null)).length);
+        new Runner(new OptionsBuilder()
+                .include(ColumnarPageBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,80 @@
+package merchant_manager.benchmark;
+
+import merchant_manager.util.PrefixIndex;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Autocomplete lookup at the size of a large lead field: one million values spread over 200 users,
+ * plus an overlay one write short of a merge, so every lookup also scans the largest overlay it can meet.
+ * Each invocation looks up a one- or two-letter prefix for a random user and keeps the first 10 values.
+ * Sampled, so the report gives the median and tail percentiles the autocomplete target is stated in.
+ *
+ * Run with: mvn test-compile exec:java -Dexec.classpathScope=test
+ *           -Dexec.mainClass=merchant_manager.benchmark.PrefixIndexBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PrefixIndexBenchmark {
+
+    private static final int VALUES = 1_000_000;
+    private static final int USERS = 200;
+    private static final int LOOKUPS = 4_096; // prepared prefix / user pairs, cycled through
+
+    private PrefixIndex index;
+    private String[] prefixes;
+    private long[] userIds;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(7);
+        List<PrefixIndex.Entry> entries = new ArrayList<>(VALUES);
+        for (long recordId = 0; recordId < VALUES; recordId++) {
+            entries.add(new PrefixIndex.Entry(recordId, random.nextInt(USERS), word(random) + " " + word(random)));
+        }
+        index = new PrefixIndex();
+        index.load(entries);
+        for (long recordId = 0; recordId < PrefixIndex.COMPACT_AFTER - 1; recordId++) {
+            index.put(recordId, random.nextInt(USERS), word(random));
+        }
+
+        prefixes = new String[LOOKUPS];
+        userIds = new long[LOOKUPS];
+        for (int i = 0; i < LOOKUPS; i++) {
+            prefixes[i] = word(random).substring(0, 1 + random.nextInt(2));
+            userIds[i] = random.nextInt(USERS);
+        }
+    }
+
+    @Benchmark
+    public List<PrefixIndex.Entry> lookup() {
+        int i = next++ & (LOOKUPS - 1);
+        return index.lookup(prefixes[i], userIds[i], 10);
+    }
+
+    // Short words over a five-letter alphabet with random case, so prefixes share long runs
+    private static String word(Random random) {
+        char[] letters = new char[3 + random.nextInt(6)];
+        for (int i = 0; i < letters.length; i++) {
+            char letter = (char) ('a' + random.nextInt(5));
+            letters[i] = random.nextBoolean() ? Character.toUpperCase(letter) : letter;
+        }
+        return new String(letters);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(PrefixIndexBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,100 @@
+package merchant_manager.benchmark;
+
+import merchant_manager.util.RecordIdSet;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Legacy dynamic record filtering: boxed List&lt;Long&gt; narrowing vs RecordIdSet intersection.
+ * Each invocation narrows a template's record IDs through three filters (50%, 20% and 5% of
+ * the records) and cuts the first page of 25 IDs. The inputs are the boxed lists JPA returns.
+ * The list pipeline also re-sends its ID list to the database on every step; that round trip
+ * is not measured here, so the list numbers are a lower bound.
+ *
+ * Run with: mvn test-compile exec:java -Dexec.classpathScope=test
+ *           -Dexec.mainClass=merchant_manager.benchmark.RecordIdFilterBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RecordIdFilterBenchmark {
+
+    private static final double[] FILTER_SELECTIVITIES = {0.5, 0.2, 0.05};
+    private static final int PAGE_SIZE = 25;
+
+    @Param({"10000", "100000", "1000000"})
+    private int recordCount;
+
+    private List<Long> allRecordIds;
+    private List<List<Long>> filterMatches;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+
+        // bigserial IDs are shared by every template, so one template's IDs have gaps
+        allRecordIds = new ArrayList<>(recordCount);
+        long recordId = 1_000;
+        for (int i = 0; i < recordCount; i++) {
+            recordId += 1 + random.nextInt(3);
+            allRecordIds.add(recordId);
+        }
+        Collections.reverse(allRecordIds);
+
+        // Each filter matches across the whole template, independently of the other filters
+        filterMatches = new ArrayList<>();
+        for (double selectivity : FILTER_SELECTIVITIES) {
+            List<Long> matches = new ArrayList<>();
+            for (Long id : allRecordIds) {
+                if (random.nextDouble() < selectivity) {
+                    matches.add(id);
+                }
+            }
+            filterMatches.add(matches);
+        }
+    }
+
+    @Benchmark
+    public List<Long> listPipeline() {
+        List<Long> recordIds = allRecordIds;
+        for (List<Long> matches : filterMatches) {
+            // What "recordId IN (:recordIds)" followed by .distinct() does for each filter
+            Set<Long> current = new HashSet<>(recordIds);
+            recordIds = matches.stream()
+                    .filter(current::contains)
+                    .distinct()
+                    .collect(Collectors.toList());
+            if (recordIds.isEmpty()) {
+                break;
+            }
+        }
+        return recordIds.subList(0, Math.min(PAGE_SIZE, recordIds.size()));
+    }
+
+    @Benchmark
+    public List<Long> bitmapPipeline() {
+        RecordIdSet recordIds = RecordIdSet.of(allRecordIds);
+        for (List<Long> matches : filterMatches) {
+            recordIds.retainAll(RecordIdSet.of(matches));
+            if (recordIds.isEmpty()) {
+                break;
+            }
+        }
+        return recordIds.pageDescending(0, PAGE_SIZE);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(RecordIdFilterBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
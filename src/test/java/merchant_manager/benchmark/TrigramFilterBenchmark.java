@@ -0,0 +1,180 @@
+package merchant_manager.benchmark;
+
+import merchant_manager.util.TemplateFormValueDefaultSpecification;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CONTAINS and ENDS_WITH filters before and after V10's trigram index, on the data set of
+ * TemplateFormValueDefaultQueryPlanTests: 20 tenants of 1,500 records with four fields each.
+ * Each invocation runs the filter subquery DynamicRecordQueryBuilder emits for one field of one tenant.
+ * "before" drops the trigram index in a transaction that stays open for the trial and binds the
+ * pattern unescaped, as the filters did then; "after" keeps the index and escapes the fragment.
+ * The fragments hold no LIKE wildcards, so both match the same records. "chant 142" shares most of
+ * its trigrams with every seeded name, "1499" is rare; 15,000 records per tenant shows a larger field.
+ *
+ * Needs a migrated database nobody else is using: dropping the index locks the value table until
+ * the trial ends. The data is seeded per trial and removed afterwards. Defaults match
+ * application-production.properties; override with -Dbenchmark.url, -Dbenchmark.user,
+ * -Dbenchmark.password and -Dbenchmark.schema.
+ *
+ * Run with: mvn test-compile exec:java -Dexec.classpathScope=test
+ *           -Dexec.mainClass=merchant_manager.benchmark.TrigramFilterBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TrigramFilterBenchmark {
+
+    private static final String TRIGRAM_INDEX = "idx_template_form_value_default_lower_value_trgm";
+    private static final String SEEDED_BY = "trigram-benchmark";
+    private static final int TENANTS = 20;
+    private static final long RECORD_ID_BASE = 910_000_000L;
+
+    @Param({"1500", "15000"})
+    private int recordsPerTenant;
+
+    @Param({"CONTAINS", "ENDS_WITH"})
+    private String operator;
+
+    @Param({"chant 142", "1499"})
+    private String fragment;
+
+    @Param({"before", "after"})
+    private String trigramIndex;
+
+    private Connection connection;
+    private String schema;
+    private String nameKey;
+    private long userId;
+    private String pattern;
+
+    @Setup
+    public void setUp() throws SQLException {
+        Properties properties = new Properties();
+        properties.setProperty("user", System.getProperty("benchmark.user", "postgres"));
+        properties.setProperty("password", System.getProperty("benchmark.password", "postgres"));
+        connection = DriverManager.getConnection(
+                System.getProperty("benchmark.url", "jdbc:postgresql://localhost:5432/postgres"), properties);
+        connection.setAutoCommit(false);
+        schema = System.getProperty("benchmark.schema", "merchant_manager");
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("SET search_path TO " + schema);
+        }
+
+        seed();
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("ANALYZE template_form_default");
+            statement.execute("ANALYZE template_form_value_default");
+        }
+        connection.commit();
+
+        String bound = fragment.toLowerCase();
+        if ("before".equals(trigramIndex)) {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("DROP INDEX " + TRIGRAM_INDEX);
+            }
+        } else {
+            bound = TemplateFormValueDefaultSpecification.escapeLike(bound);
+        }
+        pattern = "CONTAINS".equals(operator) ? "%" + bound + "%" : "%" + bound;
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        // Brings the index back
+        connection.rollback();
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("DELETE FROM template_form_value_default WHERE created_by = '" + SEEDED_BY + "'");
+            statement.executeUpdate("DELETE FROM template_form_default WHERE created_by = '" + SEEDED_BY + "'");
+            statement.executeUpdate("DELETE FROM template_default WHERE created_by = '" + SEEDED_BY + "'");
+            statement.executeUpdate("DELETE FROM company WHERE created_by = '" + SEEDED_BY + "'");
+            statement.executeUpdate("DELETE FROM _user WHERE username LIKE '" + SEEDED_BY + "-%'");
+            statement.executeUpdate("DELETE FROM menu WHERE created_by = '" + SEEDED_BY + "'");
+        }
+        connection.commit();
+        connection.close();
+    }
+
+    @Benchmark
+    public List<Long> filter() throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(
+                "SELECT fv.record_id FROM template_form_value_default fv " +
+                "JOIN template_form_default ff ON ff.id = fv.template_form_default_id " +
+                "WHERE ff.key = ? AND fv.user_id = ? AND lower(fv.value) LIKE ?")) {
+            statement.setString(1, nameKey);
+            statement.setLong(2, userId);
+            statement.setString(3, pattern);
+            List<Long> recordIds = new ArrayList<>();
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    recordIds.add(resultSet.getLong(1));
+                }
+            }
+            return recordIds;
+        }
+    }
+
+    private void seed() throws SQLException {
+        long menuId = insertReturningId("INSERT INTO menu (label, created_at, updated_at, created_by) " +
+                "VALUES ('" + SEEDED_BY + "', now(), now(), '" + SEEDED_BY + "') RETURNING id");
+        for (int tenant = TENANTS - 1; tenant >= 0; tenant--) {
+            long user = insertReturningId("INSERT INTO _user (username, role) VALUES ('" + SEEDED_BY + "-" + tenant + "', 'ROLE_USER') RETURNING id");
+            long company = insertReturningId("INSERT INTO company (name, created_at, updated_at, created_by) " +
+                    "VALUES ('" + SEEDED_BY + "-" + tenant + "', now(), now(), '" + SEEDED_BY + "') RETURNING id");
+            long template = insertReturningId("INSERT INTO template_default (user_id, menu_id, company_id, created_at, updated_at, created_by) " +
+                    "VALUES (" + user + ", " + menuId + ", " + company + ", now(), now(), '" + SEEDED_BY + "') RETURNING id");
+
+            long firstRecord = RECORD_ID_BASE + (long) tenant * recordsPerTenant;
+            seedField(template, "name", "TEXT", "'Merchant ' || g", "NULL", "NULL", firstRecord, user);
+            seedField(template, "status", "DROPDOWN", "(ARRAY['New', 'Contacted', 'Closed'])[1 + g % 3]", "NULL", "NULL", firstRecord, user);
+            seedField(template, "volume", "NUMBER", "CAST(g * 10 AS varchar)", "g * 10", "NULL", firstRecord, user);
+            seedField(template, "opened", "DATE", "to_char(date '2024-01-01' + g, 'YYYY-MM-DD')", "NULL", "date '2024-01-01' + g", firstRecord, user);
+            if (tenant == 0) {
+                nameKey = fieldKey(template, "name");
+                userId = user;
+            }
+        }
+    }
+
+    private void seedField(long template, String name, String type, String value, String numeric, String timestamp,
+                           long firstRecord, long user) throws SQLException {
+        long field = insertReturningId("INSERT INTO template_form_default (template_id, key, label, type, created_at, updated_at, created_by) " +
+                "VALUES (" + template + ", '" + fieldKey(template, name) + "', '" + name + "', '" + type + "', now(), now(), '" + SEEDED_BY + "') RETURNING id");
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("INSERT INTO template_form_value_default (template_form_default_id, record_id, value, value_numeric, value_ts, " +
+                    "user_id, created_at, updated_at, created_by) " +
+                    "SELECT " + field + ", " + firstRecord + " + g, " + value + ", " + numeric + ", " + timestamp + ", " + user + ", now(), now(), '" + SEEDED_BY + "' " +
+                    "FROM generate_series(1, " + recordsPerTenant + ") g");
+        }
+    }
+
+    private static String fieldKey(long template, String name) {
+        return "trgm_" + template + "_" + name;
+    }
+
+    private long insertReturningId(String sql) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery(sql)) {
+            resultSet.next();
+            return resultSet.getLong(1);
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(TrigramFilterBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
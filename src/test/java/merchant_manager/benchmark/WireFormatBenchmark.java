@@ -0,0 +1,145 @@
+package merchant_manager.benchmark;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import merchant_manager.models.DTO.DynamicRecordDTO;
+import merchant_manager.models.DTO.DynamicRecordsSimplePageDTO;
+import merchant_manager.models.TemplateFormDefault;
+import merchant_manager.models.enums.CountMode;
+import merchant_manager.models.enums.FieldType;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JSON vs Smile vs CBOR for the bodies our dashboards poll: a 100-row page of the 40-column
+ * merchant template (/api/dynamic-records/query-simple) and that template's column definitions
+ * (/api/template-forms-default/menu/{menuId}/{companyId}). Measures encoding on the server and
+ * decoding into a tree on the client; main() prints the wire size of each payload first.
+ *
+ * Run with: mvn test-compile exec:java -Dexec.classpathScope=test
+ *           -Dexec.mainClass=merchant_manager.benchmark.WireFormatBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WireFormatBenchmark {
+
+    private static final int ROWS = 100;
+    private static final int COLUMNS = 40;
+
+    @Param({"json", "smile", "cbor"})
+    private String format;
+
+    @Param({"recordPage", "templateColumns"})
+    private String payload;
+
+    private ObjectMapper objectMapper;
+    private Object body;
+    private byte[] encoded;
+
+    @Setup
+    public void setUp() throws Exception {
+        objectMapper = mapper(format);
+        body = payload(payload);
+        encoded = objectMapper.writeValueAsBytes(body);
+    }
+
+    @Benchmark
+    public byte[] encode() throws Exception {
+        return objectMapper.writeValueAsBytes(body);
+    }
+
+    @Benchmark
+    public JsonNode decode() throws Exception {
+        return objectMapper.readTree(encoded);
+    }
+
+    private static ObjectMapper mapper(String format) {
+        JsonFactory factory = switch (format) {
+            case "smile" -> new SmileFactory();
+            case "cbor" -> new CBORFactory();
+            default -> new JsonFactory();
+        };
+        return new ObjectMapper(factory).findAndRegisterModules();
+    }
+
+    private static Object payload(String payload) {
+        return "templateColumns".equals(payload) ? templateColumns() : recordPage();
+    }
+
+    private static DynamicRecordsSimplePageDTO recordPage() {
+        Random random = new Random(7);
+        String[] statuses = {"New", "Contacted", "Underwriting", "Approved", "Declined"};
+        String[] types = {"Retail", "Restaurant", "E-commerce", "Services"};
+
+        List<DynamicRecordDTO> records = new ArrayList<>();
+        for (int row = 0; row < ROWS; row++) {
+            long recordId = 100_000 + row;
+            Map<String, String> fields = new HashMap<>();
+            fields.put("legal_name", "Merchant Holdings " + recordId + " LLC");
+            fields.put("email", "owner" + recordId + "@example.com");
+            fields.put("phone", String.format("+1 212 555 %04d", random.nextInt(10_000)));
+            fields.put("monthly_volume", String.valueOf(random.nextInt(500_000)));
+            fields.put("opened_date", String.format("2024-%02d-%02d", random.nextInt(12) + 1, random.nextInt(28) + 1));
+            for (int column = 0; column < 15; column++) {
+                fields.put("status_" + column, statuses[random.nextInt(statuses.length)]);
+            }
+            for (int column = 0; column < 10; column++) {
+                fields.put("business_type_" + column, types[random.nextInt(types.length)]);
+            }
+            for (int column = 0; column < COLUMNS - 30; column++) {
+                fields.put("accepts_option_" + column, random.nextBoolean() ? "Yes" : "No");
+            }
+            records.add(new DynamicRecordDTO(recordId, fields));
+        }
+        return new DynamicRecordsSimplePageDTO(records, 12_345L, 0, ROWS, 124, true, CountMode.EXACT, null);
+    }
+
+    private static List<TemplateFormDefault> templateColumns() {
+        FieldType[] types = FieldType.values();
+        List<TemplateFormDefault> columns = new ArrayList<>();
+        for (int column = 0; column < COLUMNS; column++) {
+            TemplateFormDefault field = new TemplateFormDefault();
+            field.setId((long) column + 1);
+            field.setKey("merchant_field_" + column);
+            field.setLabel("Merchant field " + column);
+            field.setType(types[column % types.length]);
+            field.setOptions(List.of(
+                    Map.of("label", "Yes", "value", "yes"),
+                    Map.of("label", "No", "value", "no")));
+            field.setFormProps(Map.of("required", String.valueOf(column % 3 == 0), "placeholder", "Enter value"));
+            field.setColumnProps(Map.of("width", "160", "visible", "true"));
+            field.setSearchMerchant(true);
+            field.setSearchLead(column % 2 == 0);
+            field.setSearchContact(false);
+            field.setCreatedAt(LocalDateTime.of(2024, 3, 1, 9, 30));
+            field.setUpdatedAt(LocalDateTime.of(2024, 6, 15, 14, 5));
+            field.setCreatedBy("admin");
+            columns.add(field);
+        }
+        return columns;
+    }
+
+    public static void main(String[] args) throws Exception {
+        for (String payload : new String[]{"recordPage", "templateColumns"}) {
+            for (String format : new String[]{"json", "smile", "cbor"}) {
+                System.out.printf("%-16s %-6s %,8d bytes%n", payload, format,
+                        mapper(format).writeValueAsBytes(payload(payload)).length);
+            }
+        }
+        new Runner(new OptionsBuilder()
+                .include(WireFormatBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
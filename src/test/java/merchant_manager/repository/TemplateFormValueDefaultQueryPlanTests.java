@@ -0,0 +1,470 @@
+package merchant_manager.repository;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import merchant_manager.models.DTO.DynamicRecordsRequestDTO;
+import merchant_manager.models.DTO.RecordFilterDTO;
+import merchant_manager.util.DynamicRecordCursor;
+import merchant_manager.util.DynamicRecordQueryBuilder;
+import merchant_manager.util.RecordSortKey;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs EXPLAIN on the hot template_form_value_default queries against generated data and fails
+ * when the planner falls back to a sequential scan of the value table or of the documents built from it.
+ * Data is seeded once for the class and removed afterwards; the statements are only explained, never run.
+ */
+@SpringBootTest
+@Transactional
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class TemplateFormValueDefaultQueryPlanTests {
+
+    private static final String VALUE_TABLE = "template_form_value_default";
+    private static final String DOCUMENT_TABLE = "dynamic_record";
+    private static final String SEEDED_BY = "plan-test";
+    private static final int TENANTS = 20;
+    private static final int RECORDS_PER_TENANT = 1500;
+    private static final long RECORD_ID_BASE = 900_000_000L;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    // The queried tenant; the others only make its rows a small slice of the table
+    private long menuId;
+    private long userId;
+    private long templateId;
+    private long nameFieldId;
+    private long volumeFieldId;
+    private long openedFieldId;
+    private String nameKey;
+    private String statusKey;
+    private String volumeKey;
+    private long firstRecordId;
+
+    @BeforeAll
+    void seed() {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            useSchema();
+            menuId = jdbcTemplate.queryForObject(
+                    "INSERT INTO menu (label, created_at, updated_at, created_by) VALUES ('" + SEEDED_BY + "', now(), now(), '" + SEEDED_BY + "') RETURNING id",
+                    Long.class);
+            for (int tenant = TENANTS - 1; tenant >= 0; tenant--) {
+                seedTenant(tenant);
+            }
+            jdbcTemplate.update("INSERT INTO " + DOCUMENT_TABLE + " (template_id, record_id, user_ids, fields, updated_at) " +
+                    "SELECT f.template_id, v.record_id, array_agg(DISTINCT v.user_id), jsonb_object_agg(f.key, v.value), max(v.updated_at) " +
+                    "FROM " + VALUE_TABLE + " v JOIN template_form_default f ON f.id = v.template_form_default_id " +
+                    "WHERE v.created_by = ? GROUP BY f.template_id, v.record_id", SEEDED_BY);
+        });
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            useSchema();
+            jdbcTemplate.execute("ANALYZE template_form_default");
+            jdbcTemplate.execute("ANALYZE " + VALUE_TABLE);
+            jdbcTemplate.execute("ANALYZE " + DOCUMENT_TABLE);
+        });
+    }
+
+    @AfterAll
+    void cleanUp() {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            useSchema();
+            jdbcTemplate.update("DELETE FROM " + VALUE_TABLE + " WHERE created_by = ?", SEEDED_BY);
+            jdbcTemplate.update("DELETE FROM " + DOCUMENT_TABLE + " WHERE template_id IN (SELECT id FROM template_default WHERE created_by = ?)", SEEDED_BY);
+            jdbcTemplate.update("DELETE FROM template_form_default WHERE created_by = ?", SEEDED_BY);
+            jdbcTemplate.update("DELETE FROM template_default WHERE created_by = ?", SEEDED_BY);
+            jdbcTemplate.update("DELETE FROM company WHERE created_by = ?", SEEDED_BY);
+            jdbcTemplate.update("DELETE FROM _user WHERE username LIKE ?", SEEDED_BY + "-%");
+            jdbcTemplate.update("DELETE FROM menu WHERE created_by = ?", SEEDED_BY);
+        });
+    }
+
+    @BeforeEach
+    void useSchema() {
+        jdbcTemplate.execute("SET LOCAL search_path TO merchant_manager");
+    }
+
+    private void seedTenant(int tenant) {
+        long user = jdbcTemplate.queryForObject(
+                "INSERT INTO _user (username, role) VALUES (?, 'ROLE_USER') RETURNING id", Long.class, SEEDED_BY + "-" + tenant);
+        long company = jdbcTemplate.queryForObject(
+                "INSERT INTO company (name, created_at, updated_at, created_by) VALUES (?, now(), now(), '" + SEEDED_BY + "') RETURNING id",
+                Long.class, SEEDED_BY + "-" + tenant);
+        long template = jdbcTemplate.queryForObject(
+                "INSERT INTO template_default (user_id, menu_id, company_id, created_at, updated_at, created_by) " +
+                "VALUES (?, ?, ?, now(), now(), '" + SEEDED_BY + "') RETURNING id",
+                Long.class, user, menuId, company);
+
+        long name = insertField(template, "name", "TEXT");
+        long status = insertField(template, "status", "DROPDOWN");
+        long volume = insertField(template, "volume", "NUMBER");
+        long opened = insertField(template, "opened", "DATE");
+
+        long firstRecord = RECORD_ID_BASE + (long) tenant * RECORDS_PER_TENANT;
+        String insert = "INSERT INTO " + VALUE_TABLE + " (template_form_default_id, record_id, value, value_numeric, value_ts, " +
+                "user_id, created_at, updated_at, created_by) ";
+        String series = " FROM generate_series(1, " + RECORDS_PER_TENANT + ") g";
+        jdbcTemplate.update(insert + "SELECT ?, ? + g, 'Merchant ' || g, NULL, NULL, ?, now(), now(), '" + SEEDED_BY + "'" + series,
+                name, firstRecord, user);
+        jdbcTemplate.update(insert + "SELECT ?, ? + g, (ARRAY['New', 'Contacted', 'Closed'])[1 + g % 3], NULL, NULL, ?, now(), now(), '" + SEEDED_BY + "'" + series,
+                status, firstRecord, user);
+        jdbcTemplate.update(insert + "SELECT ?, ? + g, CAST(g * 10 AS varchar), g * 10, NULL, ?, now(), now(), '" + SEEDED_BY + "'" + series,
+                volume, firstRecord, user);
+        jdbcTemplate.update(insert + "SELECT ?, ? + g, to_char(date '2024-01-01' + g, 'YYYY-MM-DD'), NULL, date '2024-01-01' + g, ?, now(), now(), '" + SEEDED_BY + "'" + series,
+                opened, firstRecord, user);
+
+        if (tenant == 0) {
+            userId = user;
+            templateId = template;
+            nameFieldId = name;
+            volumeFieldId = volume;
+            openedFieldId = opened;
+            nameKey = fieldKey(template, "name");
+            statusKey = fieldKey(template, "status");
+            volumeKey = fieldKey(template, "volume");
+            firstRecordId = firstRecord + 1;
+        }
+    }
+
+    private long insertField(long template, String name, String type) {
+        return jdbcTemplate.queryForObject(
+                "INSERT INTO template_form_default (template_id, key, label, type, created_at, updated_at, created_by) " +
+                "VALUES (?, ?, ?, ?, now(), now(), '" + SEEDED_BY + "') RETURNING id",
+                Long.class, template, fieldKey(template, name), name, type);
+    }
+
+    private static String fieldKey(long template, String name) {
+        return "plan_" + template + "_" + name;
+    }
+
+    private List<Long> someRecordIds() {
+        List<Long> recordIds = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            recordIds.add(firstRecordId + i * 7L);
+        }
+        return recordIds;
+    }
+
+    private String inList(List<Long> ids) {
+        return String.join(", ", ids.stream().map(String::valueOf).toList());
+    }
+
+    @Test
+    void distinctRecordIdsByTemplateAndUser() {
+        assertNoSequentialScan(
+                "SELECT DISTINCT v.record_id FROM " + VALUE_TABLE + " v " +
+                "JOIN template_form_default f ON f.id = v.template_form_default_id " +
+                "WHERE f.template_id = ? AND v.user_id = ? ORDER BY v.record_id DESC",
+                templateId, userId);
+    }
+
+    @Test
+    void valuesByTemplateAndRecordIds() {
+        assertNoSequentialScan(
+                "SELECT v.* FROM " + VALUE_TABLE + " v " +
+                "JOIN template_form_default f ON f.id = v.template_form_default_id " +
+                "WHERE f.template_id = ? AND v.record_id IN (" + inList(someRecordIds()) + ")",
+                templateId);
+    }
+
+    @Test
+    void searchColumnValuesByTemplateAndRecordIds() {
+        assertNoSequentialScan(
+                "SELECT v.* FROM " + VALUE_TABLE + " v " +
+                "JOIN template_form_default f ON f.id = v.template_form_default_id " +
+                "WHERE f.template_id = ? AND f.search_contact = true AND v.record_id IN (" + inList(someRecordIds()) + ")",
+                templateId);
+    }
+
+    @Test
+    void valueByFieldAndRecord() {
+        assertNoSequentialScan(
+                "SELECT v.* FROM " + VALUE_TABLE + " v WHERE v.template_form_default_id = ? AND v.record_id = ?",
+                nameFieldId, firstRecordId);
+    }
+
+    @Test
+    void valuesByRecord() {
+        assertNoSequentialScan(
+                "SELECT v.* FROM " + VALUE_TABLE + " v WHERE v.record_id = ?",
+                firstRecordId);
+    }
+
+    @Test
+    void valuesByMenuAndRecord() {
+        assertNoSequentialScan(
+                "SELECT v.* FROM " + VALUE_TABLE + " v " +
+                "JOIN template_form_default f ON f.id = v.template_form_default_id " +
+                "JOIN template_default t ON t.id = f.template_id " +
+                "WHERE t.menu_id = ? AND v.record_id = ?",
+                menuId, firstRecordId);
+    }
+
+    @Test
+    void deleteByMenuRecordAndUser() {
+        assertNoSequentialScan(
+                "DELETE FROM " + VALUE_TABLE + " v USING template_form_default f, template_default t " +
+                "WHERE f.id = v.template_form_default_id AND t.id = f.template_id " +
+                "AND t.menu_id = ? AND v.record_id = ? AND v.user_id = ?",
+                menuId, firstRecordId, userId);
+    }
+
+    @Test
+    void filterEquals() {
+        assertNoSequentialScan(
+                "SELECT v.* FROM " + VALUE_TABLE + " v " +
+                "JOIN template_form_default f ON f.id = v.template_form_default_id " +
+                "WHERE f.key = ? AND lower(v.value) = ?",
+                nameKey, "merchant 42");
+    }
+
+    @Test
+    void filterStartsWith() {
+        assertNoSequentialScan(
+                "SELECT v.* FROM " + VALUE_TABLE + " v " +
+                "JOIN template_form_default f ON f.id = v.template_form_default_id " +
+                "WHERE f.key = ? AND lower(v.value) LIKE ?",
+                nameKey, "merchant 14%");
+    }
+
+    @Test
+    void filterContains() {
+        assertNoSequentialScan(
+                "SELECT v.* FROM " + VALUE_TABLE + " v " +
+                "JOIN template_form_default f ON f.id = v.template_form_default_id " +
+                "WHERE f.key = ? AND lower(v.value) LIKE ?",
+                nameKey, "%chant 142%");
+    }
+
+    @Test
+    void filterEndsWith() {
+        assertNoSequentialScan(
+                "SELECT v.* FROM " + VALUE_TABLE + " v " +
+                "JOIN template_form_default f ON f.id = v.template_form_default_id " +
+                "WHERE f.key = ? AND lower(v.value) LIKE ?",
+                nameKey, "%nt 1499");
+    }
+
+    @Test
+    void filterNumericRange() {
+        assertNoSequentialScan(
+                "SELECT v.* FROM " + VALUE_TABLE + " v WHERE v.template_form_default_id = ? AND v.value_numeric > ?",
+                volumeFieldId, 14_000.0);
+    }
+
+    @Test
+    void filterDateRange() {
+        assertNoSequentialScan(
+                "SELECT v.* FROM " + VALUE_TABLE + " v WHERE v.template_form_default_id = ? " +
+                "AND v.value_ts BETWEEN CAST(? AS timestamp) AND CAST(? AS timestamp)",
+                openedFieldId, "2024-02-01", "2024-02-10");
+    }
+
+    @Test
+    void sortValuesForRecordSet() {
+        assertNoSequentialScan(
+                "SELECT v.* FROM " + VALUE_TABLE + " v " +
+                "JOIN template_form_default f ON f.id = v.template_form_default_id " +
+                "WHERE f.key = ? AND v.record_id IN (" + inList(someRecordIds()) + ")",
+                nameKey);
+    }
+
+    @Test
+    void nativePageQuery() {
+        DynamicRecordsRequestDTO request = gridRequest();
+        assertNoSequentialScan(DynamicRecordQueryBuilder.pageQuery(DynamicRecordQueryBuilder.Source.EAV, templateId, userId, request,
+                List.of(new RecordSortKey(nameKey, RecordSortKey.Kind.TEXT, false))));
+    }
+
+    @Test
+    void nativeTypedMultiKeyPageQuery() {
+        DynamicRecordsRequestDTO request = gridRequest();
+        DynamicRecordQueryBuilder.SqlQuery query = DynamicRecordQueryBuilder.pageQuery(DynamicRecordQueryBuilder.Source.EAV, templateId, userId, request,
+                List.of(new RecordSortKey(volumeKey, RecordSortKey.Kind.NUMBER, true),
+                        new RecordSortKey(nameKey, RecordSortKey.Kind.TEXT, false)));
+        assertNoSequentialScan(query);
+        // LIMIT directly on the ORDER BY lets the executor keep only the top rows (top-N heapsort)
+        String plan = explain(query);
+        assertTrue(hasBoundedSort(readPlan(plan)), "Page sort is not bounded by its LIMIT: " + plan);
+    }
+
+    @Test
+    void nativeFacetsQuery() {
+        assertNoSequentialScan(DynamicRecordQueryBuilder.facetsQuery(DynamicRecordQueryBuilder.Source.EAV, templateId, userId, gridRequest(),
+                List.of(statusKey, volumeKey), 20));
+    }
+
+    @Test
+    void nativeAggregationsQuery() {
+        assertNoSequentialScan(DynamicRecordQueryBuilder.aggregationsQuery(DynamicRecordQueryBuilder.Source.EAV, templateId, userId, gridRequest(),
+                List.of(volumeKey), List.of(0.5, 0.9), statusKey, 500));
+    }
+
+    @Test
+    void nativeCursorQuery() {
+        DynamicRecordsRequestDTO request = gridRequest();
+        DynamicRecordCursor after = new DynamicRecordCursor(List.of("merchant 500"), firstRecordId + 500,
+                RecordSortKey.ordering(request));
+        assertNoSequentialScan(DynamicRecordQueryBuilder.cursorQuery(DynamicRecordQueryBuilder.Source.EAV, templateId, userId, request,
+                List.of(new RecordSortKey(nameKey, RecordSortKey.Kind.TEXT, false)), after, null));
+    }
+
+    @Test
+    void nativeSortedCursorSeeksThroughTheSortIndex() {
+        // Unfiltered, so only the sort index can bound the page; a selective filter may rightly drive the plan instead
+        DynamicRecordsRequestDTO request = gridRequest();
+        request.setFilters(List.of());
+        request.setSortBy(volumeKey);
+        request.setSortDirection("DESC");
+        List<RecordSortKey> sortKeys = List.of(new RecordSortKey(volumeKey, RecordSortKey.Kind.NUMBER, true),
+                new RecordSortKey(nameKey, RecordSortKey.Kind.TEXT, false));
+        DynamicRecordCursor after = new DynamicRecordCursor(List.of("5000", "merchant 500"), firstRecordId + 500,
+                RecordSortKey.ordering(request));
+
+        // The edge walks the volume index downwards from the cursor and stops after one page
+        DynamicRecordQueryBuilder.SqlQuery edge = DynamicRecordQueryBuilder.seekEdgeQuery(DynamicRecordQueryBuilder.Source.EAV,
+                templateId, userId, request, sortKeys, after);
+        assertSeekThroughIndex(edge, "idx_template_form_value_default_numeric");
+        assertTrue(!hasBoundedSort(readPlan(explain(edge))), "Seek edge sorts instead of reading the index in order: " + explain(edge));
+
+        // Only the records between the cursor and the edge are pivoted
+        assertSeekThroughIndex(DynamicRecordQueryBuilder.cursorQuery(DynamicRecordQueryBuilder.Source.EAV, templateId, userId, request,
+                sortKeys, after, "4000"), "idx_template_form_value_default_numeric");
+    }
+
+    @Test
+    void nativeTextSortedCursorSeeksThroughTheSortIndex() {
+        DynamicRecordsRequestDTO request = gridRequest();
+        List<RecordSortKey> sortKeys = List.of(new RecordSortKey(nameKey, RecordSortKey.Kind.TEXT, false));
+        DynamicRecordCursor after = new DynamicRecordCursor(List.of("merchant 500"), firstRecordId + 500,
+                RecordSortKey.ordering(request));
+
+        assertSeekThroughIndex(DynamicRecordQueryBuilder.seekEdgeQuery(DynamicRecordQueryBuilder.Source.EAV,
+                templateId, userId, request, sortKeys, after), "idx_template_form_value_default_lower_sort");
+        assertSeekThroughIndex(DynamicRecordQueryBuilder.cursorQuery(DynamicRecordQueryBuilder.Source.EAV, templateId, userId, request,
+                sortKeys, after, "merchant 600"), "idx_template_form_value_default_lower_sort");
+    }
+
+    @Test
+    void nativeChangesQuery() {
+        assertNoSequentialScan(DynamicRecordQueryBuilder.changedRecordsQuery(templateId, userId, 0L, List.of(nameKey), 501));
+        assertNoSequentialScan(DynamicRecordQueryBuilder.tombstonesQuery(templateId, userId, 0L, 501));
+    }
+
+    private DynamicRecordsRequestDTO gridRequest() {
+        DynamicRecordsRequestDTO request = new DynamicRecordsRequestDTO();
+        request.setPage(3);
+        request.setSize(25);
+        request.setSortBy(nameKey);
+        request.setSortDirection("ASC");
+        request.setFilters(List.of(new RecordFilterDTO(statusKey, "EQUALS", "contacted", null)));
+        return request;
+    }
+
+    private void assertNoSequentialScan(String sql, Object... args) {
+        String plan = jdbcTemplate.queryForObject("EXPLAIN (FORMAT JSON) " + sql, String.class, args);
+        assertPlan(sql, plan);
+    }
+
+    private void assertNoSequentialScan(DynamicRecordQueryBuilder.SqlQuery query) {
+        assertPlan(query.getSql(), explain(query));
+    }
+
+    /**
+     * No sequential scan, and the sort key's index is scanned with the cursor bound as an index condition
+     * rather than every record of the user being read
+     */
+    private void assertSeekThroughIndex(DynamicRecordQueryBuilder.SqlQuery query, String indexName) {
+        String plan = explain(query);
+        assertPlan(query.getSql(), plan);
+        List<String> indexes = new ArrayList<>();
+        collectBoundedIndexScans(readPlan(plan), indexes);
+        assertTrue(indexes.contains(indexName), "Seek does not range-scan " + indexName + ": " + plan);
+        assertTrue(!indexes.contains("idx_template_form_value_default_user_field_record"),
+                "Seek still reads every record of the user: " + plan);
+    }
+
+    private static void collectBoundedIndexScans(JsonNode node, List<String> indexes) {
+        String type = node.path("Node Type").asText();
+        if ((type.equals("Index Scan") || type.equals("Index Only Scan") || type.equals("Bitmap Index Scan"))
+                && node.path("Index Cond").asText().contains("template_form_default_id")) {
+            indexes.add(node.path("Index Name").asText());
+        }
+        for (JsonNode child : node.path("Plans")) {
+            collectBoundedIndexScans(child, indexes);
+        }
+    }
+
+    private String explain(DynamicRecordQueryBuilder.SqlQuery query) {
+        String sql = query.getSql().replace("{h-schema}", "");
+        return namedParameterJdbcTemplate.queryForObject("EXPLAIN (FORMAT JSON) " + sql, query.getParameters(), String.class);
+    }
+
+    private JsonNode readPlan(String plan) {
+        try {
+            return objectMapper.readTree(plan).get(0).get("Plan");
+        } catch (Exception e) {
+            throw new IllegalStateException("Could not read plan: " + plan, e);
+        }
+    }
+
+    private static boolean hasBoundedSort(JsonNode node) {
+        if ("Limit".equals(node.path("Node Type").asText())) {
+            for (JsonNode child : node.path("Plans")) {
+                if ("Sort".equals(child.path("Node Type").asText()) || "Incremental Sort".equals(child.path("Node Type").asText())) {
+                    return true;
+                }
+            }
+        }
+        for (JsonNode child : node.path("Plans")) {
+            if (hasBoundedSort(child)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void assertPlan(String sql, String plan) {
+        List<String> scans = new ArrayList<>();
+        try {
+            collectSequentialScans(objectMapper.readTree(plan).get(0).get("Plan"), scans);
+        } catch (Exception e) {
+            throw new IllegalStateException("Could not read plan for: " + sql, e);
+        }
+        assertTrue(scans.isEmpty(), "Sequential scan on " + scans + " for: " + sql + "\n" + plan);
+    }
+
+    private static void collectSequentialScans(JsonNode node, List<String> scans) {
+        String relation = node.path("Relation Name").asText();
+        if ("Seq Scan".equals(node.path("Node Type").asText()) && (VALUE_TABLE.equals(relation) || DOCUMENT_TABLE.equals(relation))) {
+            scans.add(relation);
+        }
+        for (JsonNode child : node.path("Plans")) {
+            collectSequentialScans(child, scans);
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package merchant_manager.service;
+
+import merchant_manager.customExceptions.CustomExceptions;
+import merchant_manager.models.DTO.DynamicRecordChangesDTO;
+import merchant_manager.models.DTO.DynamicRecordDTO;
+import merchant_manager.models.DTO.DynamicRecordsRequestDTO;
+import merchant_manager.repository.UserRepository;
+import merchant_manager.service.implementation.TemplateFormValueServiceImp;
+import merchant_manager.util.ChangeWatermark;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Keeps a client copy of a tenant's records in step through getChanges, paging with a small size across writes,
+ * updates and deletions made after a watermark, and checks the copy against the grid after every sync.
+ * Also checks that the change number lock serializes writers of one template without blocking another's.
+ */
+@SpringBootTest
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class DynamicRecordChangesTests {
+
+    private static final int RECORDS = 25;
+    private static final int SYNC_SIZE = 3;
+    private static final long LOCK_TIMEOUT_SECONDS = 10;
+
+    @Autowired
+    private DynamicRecordService dynamicRecordService;
+
+    @Autowired
+    private DynamicRecordDocumentService dynamicRecordDocumentService;
+
+    @Autowired
+    private TemplateFormValueServiceImp templateFormValueService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    private DynamicRecordTestTenant tenant;
+    private DynamicRecordTestTenant otherTenant;
+    private final List<Long> recordIds = new ArrayList<>();
+
+    @BeforeAll
+    void seed() {
+        tenant = new DynamicRecordTestTenant(jdbcTemplate, transactionManager, userRepository, "changes-test");
+        otherTenant = new DynamicRecordTestTenant(jdbcTemplate, transactionManager, userRepository, "changes-test-other");
+        Map<String, String> fields = new LinkedHashMap<>();
+        fields.put("name", "TEXT");
+        fields.put("volume", "NUMBER");
+        tenant.seed(fields);
+        otherTenant.seed(fields);
+        tenant.logIn();
+        for (int i = 1; i <= RECORDS; i++) {
+            recordIds.add(templateFormValueService.addValuesToForm(DynamicRecordTestTenant.LEAD_MENU_ID, null,
+                    tenant.values("name", "Merchant " + i, "volume", String.valueOf(i * 10))));
+        }
+    }
+
+    @AfterAll
+    void cleanUp() {
+        SecurityContextHolder.clearContext();
+        tenant.cleanUp();
+        otherTenant.cleanUp();
+    }
+
+    @BeforeEach
+    void logIn() {
+        tenant.logIn();
+    }
+
+    @Test
+    void deltaSyncAppliesChangesMadeAfterTheWatermark() {
+        Map<Long, Map<String, String>> copy = new HashMap<>();
+        String watermark = sync(copy, null);
+        assertEquals(grid(), copy, "First sync");
+        DynamicRecordChangesDTO idle = dynamicRecordService.getChanges(DynamicRecordTestTenant.LEAD_MENU_ID, tenant.companyId(), watermark, null, SYNC_SIZE);
+        assertTrue(idle.getRecords().isEmpty() && idle.getDeletedRecordIds().isEmpty() && !idle.isHasMore(), "Changes without a write: " + idle);
+
+        Long updated = recordIds.get(3);
+        Long deleted = recordIds.get(7);
+        templateFormValueService.addValuesToForm(DynamicRecordTestTenant.LEAD_MENU_ID, updated, tenant.values("volume", "4242"));
+        Long created = templateFormValueService.addValuesToForm(DynamicRecordTestTenant.LEAD_MENU_ID, null,
+                tenant.values("name", "Merchant created", "volume", "1"));
+        Long shortLived = templateFormValueService.addValuesToForm(DynamicRecordTestTenant.LEAD_MENU_ID, null,
+                tenant.values("name", "Merchant short-lived"));
+        templateFormValueService.deleteRecord(DynamicRecordTestTenant.LEAD_MENU_ID, deleted);
+        templateFormValueService.deleteRecord(DynamicRecordTestTenant.LEAD_MENU_ID, shortLived);
+        recordIds.remove(deleted);
+        recordIds.add(created);
+
+        List<Long> sentRecords = new ArrayList<>();
+        List<Long> sentDeletions = new ArrayList<>();
+        String since = watermark;
+        DynamicRecordChangesDTO changes;
+        do {
+            changes = dynamicRecordService.getChanges(DynamicRecordTestTenant.LEAD_MENU_ID, tenant.companyId(), since, null, SYNC_SIZE);
+            changes.getRecords().forEach(record -> sentRecords.add(record.getRecordId()));
+            sentDeletions.addAll(changes.getDeletedRecordIds());
+            apply(copy, changes);
+            since = changes.getWatermark();
+        } while (changes.isHasMore());
+
+        assertEquals(List.of(updated, created), sentRecords, "Only the records written after the watermark are sent");
+        assertEquals(List.of(deleted, shortLived), sentDeletions, "A record deleted after the watermark is sent by its deletion");
+        assertEquals("4242", copy.get(updated).get(tenant.key("volume")));
+        assertEquals(grid(), copy, "Copy after the delta sync");
+    }
+
+    @Test
+    void deletionsBeforeTheFirstSyncAreNotSent() {
+        Long deleted = templateFormValueService.addValuesToForm(DynamicRecordTestTenant.LEAD_MENU_ID, null,
+                tenant.values("name", "Merchant deleted before"));
+        templateFormValueService.deleteRecord(DynamicRecordTestTenant.LEAD_MENU_ID, deleted);
+
+        Map<Long, Map<String, String>> copy = new HashMap<>();
+        List<Long> sentDeletions = new ArrayList<>();
+        String since = null;
+        DynamicRecordChangesDTO changes;
+        do {
+            changes = dynamicRecordService.getChanges(DynamicRecordTestTenant.LEAD_MENU_ID, tenant.companyId(), since, null, SYNC_SIZE);
+            sentDeletions.addAll(changes.getDeletedRecordIds());
+            apply(copy, changes);
+            since = changes.getWatermark();
+        } while (changes.isHasMore());
+
+        assertTrue(sentDeletions.isEmpty(), "Deletions sent to an empty copy: " + sentDeletions);
+        assertEquals(grid(), copy);
+    }
+
+    @Test
+    void invalidRequestsAreRejected() {
+        String expired = new ChangeWatermark(0L, 0L, "2020-01-01T00:00").encode();
+        assertThrows(CustomExceptions.CustomValidationException.class, () -> dynamicRecordService.getChanges(
+                DynamicRecordTestTenant.LEAD_MENU_ID, tenant.companyId(), expired, null, SYNC_SIZE));
+        assertThrows(CustomExceptions.CustomValidationException.class, () -> dynamicRecordService.getChanges(
+                DynamicRecordTestTenant.LEAD_MENU_ID, tenant.companyId(), "not-a-watermark", null, SYNC_SIZE));
+        assertThrows(CustomExceptions.CustomValidationException.class, () -> dynamicRecordService.getChanges(
+                DynamicRecordTestTenant.LEAD_MENU_ID, tenant.companyId(), null, null, 0));
+    }
+
+    @Test
+    void changeNumberLockIsHeldPerTemplate() throws Exception {
+        CountDownLatch locked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Void> holder = CompletableFuture.runAsync(() -> lockChangeNumbers(tenant.templateId(), () -> {
+            locked.countDown();
+            await(release);
+        }));
+        try {
+            assertTrue(locked.await(LOCK_TIMEOUT_SECONDS, TimeUnit.SECONDS), "The first writer did not get the lock");
+
+            CompletableFuture.runAsync(() -> lockChangeNumbers(otherTenant.templateId(), () -> { }))
+                    .get(LOCK_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+            CompletableFuture<Void> sameTemplate = CompletableFuture.runAsync(() -> lockChangeNumbers(tenant.templateId(), () -> { }));
+            Thread.sleep(500);
+            assertTrue(!sameTemplate.isDone(), "A second writer of the template did not wait for the first to commit");
+            release.countDown();
+            sameTemplate.get(LOCK_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } finally {
+            release.countDown();
+            holder.get(LOCK_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Follows the watermark until every change is sent, applying each batch to the copy
+     */
+    private String sync(Map<Long, Map<String, String>> copy, String since) {
+        DynamicRecordChangesDTO changes;
+        do {
+            changes = dynamicRecordService.getChanges(DynamicRecordTestTenant.LEAD_MENU_ID, tenant.companyId(), since, null, SYNC_SIZE);
+            assertTrue(changes.getRecords().size() + changes.getDeletedRecordIds().size() <= SYNC_SIZE, "Batch larger than " + SYNC_SIZE);
+            apply(copy, changes);
+            since = changes.getWatermark();
+        } while (changes.isHasMore());
+        return since;
+    }
+
+    private static void apply(Map<Long, Map<String, String>> copy, DynamicRecordChangesDTO changes) {
+        changes.getRecords().forEach(record -> copy.put(record.getRecordId(), record.getFields()));
+        changes.getDeletedRecordIds().forEach(copy::remove);
+    }
+
+    private Map<Long, Map<String, String>> grid() {
+        DynamicRecordsRequestDTO request = tenant.request();
+        request.setSize(1_000);
+        Map<Long, Map<String, String>> records = new HashMap<>();
+        for (DynamicRecordDTO record : dynamicRecordService.getDynamicRecordsSimple(request).getRecords()) {
+            records.put(record.getRecordId(), record.getFields());
+        }
+        return records;
+    }
+
+    private void lockChangeNumbers(long templateId, Runnable whileLocked) {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            dynamicRecordDocumentService.lockChangeNumbers(List.of(templateId));
+            whileLocked.run();
+        });
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(LOCK_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
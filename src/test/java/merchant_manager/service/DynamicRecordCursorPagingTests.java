@@ -0,0 +1,202 @@
+package merchant_manager.service;
+
+import merchant_manager.customExceptions.CustomExceptions;
+import merchant_manager.models.DTO.DynamicRecordDTO;
+import merchant_manager.models.DTO.DynamicRecordsCursorPageDTO;
+import merchant_manager.models.DTO.DynamicRecordsRequestDTO;
+import merchant_manager.models.DTO.DynamicRecordsSimplePageDTO;
+import merchant_manager.models.DTO.RecordFilterDTO;
+import merchant_manager.models.DTO.RecordSortDTO;
+import merchant_manager.repository.UserRepository;
+import merchant_manager.service.implementation.TemplateFormValueServiceImp;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Walks cursor pages through DynamicRecordService and compares them with offset pages of the same request,
+ * on records with ties and missing values in every sort key. Records are written through addValuesToForm.
+ */
+@SpringBootTest
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class DynamicRecordCursorPagingTests {
+
+    private static final int RECORDS = 120;
+
+    @Autowired
+    private DynamicRecordService dynamicRecordService;
+
+    @Autowired
+    private TemplateFormValueServiceImp templateFormValueService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    private DynamicRecordTestTenant tenant;
+
+    @BeforeAll
+    void seed() {
+        tenant = new DynamicRecordTestTenant(jdbcTemplate, transactionManager, userRepository, "cursor-test");
+        Map<String, String> fields = new LinkedHashMap<>();
+        fields.put("name", "TEXT");
+        fields.put("status", "DROPDOWN");
+        fields.put("volume", "NUMBER");
+        fields.put("opened", "DATE");
+        tenant.seed(fields);
+        tenant.logIn();
+        for (int i = 1; i <= RECORDS; i++) {
+            templateFormValueService.addValuesToForm(DynamicRecordTestTenant.LEAD_MENU_ID, null, tenant.values(
+                    "name", String.format("Merchant %03d", i),
+                    "status", List.of("New", "Contacted", "Closed").get(i % 3),
+                    "volume", i % 11 == 0 ? null : String.valueOf(i % 17 * 10),
+                    "opened", i % 13 == 0 ? null : LocalDate.of(2024, 1, 1).plusDays(i % 40).toString()));
+        }
+        tenant.analyze();
+    }
+
+    @AfterAll
+    void cleanUp() {
+        SecurityContextHolder.clearContext();
+        tenant.cleanUp();
+    }
+
+    @BeforeEach
+    void logIn() {
+        tenant.logIn();
+    }
+
+    @Test
+    void cursorPagesMatchOffsetPages() {
+        List<DynamicRecordsRequestDTO> requests = List.of(
+                request(37, null, "ASC"),
+                request(25, "name", "DESC"),
+                request(7, "status", "ASC"),
+                request(33, "volume", "DESC"),
+                request(33, "volume", "ASC"),
+                request(16, "opened", "DESC"),
+                request(10, "name", "ASC", new RecordFilterDTO(tenant.key("status"), "EQUALS", "closed", null)),
+                request(13, "volume", "DESC", new RecordFilterDTO(tenant.key("name"), "CONTAINS", "1", null)),
+                sortedBy(29, new RecordSortDTO(tenant.key("status"), "DESC"), new RecordSortDTO(tenant.key("volume"), "DESC")),
+                sortedBy(41, new RecordSortDTO(tenant.key("opened"), "ASC"), new RecordSortDTO(tenant.key("name"), "DESC")));
+
+        for (DynamicRecordsRequestDTO request : requests) {
+            List<Long> offset = offsetWalk(request);
+            List<Long> cursor = cursorWalk(request, null);
+            assertTrue(!offset.isEmpty(), "No records for " + describe(request));
+            assertEquals(offset, cursor, "Cursor pages differ from offset pages for " + describe(request));
+        }
+    }
+
+    @Test
+    void cursorContinuesWhereThePreviousPageEnded() {
+        DynamicRecordsRequestDTO request = request(20, "name", "ASC");
+        List<Long> before = offsetWalk(request);
+
+        // A record sorting before the cursor appears after the first page: the walk neither repeats nor skips a record
+        List<Long> walked = cursorWalk(request, () -> templateFormValueService.addValuesToForm(DynamicRecordTestTenant.LEAD_MENU_ID, null,
+                tenant.values("name", "Merchant 000", "status", "New")));
+        Long inserted = offsetWalk(request).get(0);
+        try {
+            assertEquals(walked.size(), new HashSet<>(walked).size(), "A record was returned twice: " + walked);
+            assertTrue(!walked.contains(inserted), "The record inserted before the cursor was returned");
+            assertEquals(before, walked, "The walk skipped records after an insert before the cursor");
+        } finally {
+            templateFormValueService.deleteRecord(DynamicRecordTestTenant.LEAD_MENU_ID, inserted);
+        }
+    }
+
+    @Test
+    void sizeOutsideOneToOneThousandIsRejected() {
+        for (int size : new int[]{0, -1, 1_001}) {
+            DynamicRecordsRequestDTO request = request(size, "volume", "ASC");
+            assertThrows(CustomExceptions.CustomValidationException.class, () -> dynamicRecordService.getDynamicRecordsSimple(request), "size " + size);
+            assertThrows(CustomExceptions.CustomValidationException.class, () -> dynamicRecordService.getDynamicRecordsCursor(request), "size " + size);
+            assertThrows(CustomExceptions.CustomValidationException.class, () -> dynamicRecordService.countDynamicRecords(request), "size " + size);
+        }
+        DynamicRecordsRequestDTO negativePage = request(10, null, "ASC");
+        negativePage.setPage(-1);
+        assertThrows(CustomExceptions.CustomValidationException.class, () -> dynamicRecordService.getDynamicRecordsSimple(negativePage));
+
+        assertEquals(RECORDS, dynamicRecordService.getDynamicRecordsCursor(request(1_000, null, "ASC")).getRecords().size());
+    }
+
+    private List<Long> offsetWalk(DynamicRecordsRequestDTO request) {
+        List<Long> recordIds = new ArrayList<>();
+        for (int page = 0; ; page++) {
+            request.setPage(page);
+            DynamicRecordsSimplePageDTO result = dynamicRecordService.getDynamicRecordsSimple(request);
+            if (result.getRecords().isEmpty()) {
+                return recordIds;
+            }
+            result.getRecords().forEach(record -> recordIds.add(record.getRecordId()));
+        }
+    }
+
+    /**
+     * Follows nextCursor until the last page, running afterFirstPage once the first page is read
+     */
+    private List<Long> cursorWalk(DynamicRecordsRequestDTO request, Runnable afterFirstPage) {
+        List<Long> recordIds = new ArrayList<>();
+        Set<String> cursors = new HashSet<>();
+        request.setAfter(null);
+        while (true) {
+            DynamicRecordsCursorPageDTO page = dynamicRecordService.getDynamicRecordsCursor(request);
+            assertTrue(page.getRecords().size() <= request.getSize(), "Page larger than " + request.getSize());
+            page.getRecords().stream().map(DynamicRecordDTO::getRecordId).forEach(recordIds::add);
+            if (!page.isHasNext()) {
+                return recordIds;
+            }
+            assertTrue(cursors.add(page.getNextCursor()), "Cursor repeated for " + describe(request));
+            if (afterFirstPage != null && cursors.size() == 1) {
+                afterFirstPage.run();
+            }
+            request.setAfter(page.getNextCursor());
+        }
+    }
+
+    private DynamicRecordsRequestDTO request(int size, String sortField, String direction, RecordFilterDTO... filters) {
+        DynamicRecordsRequestDTO request = tenant.request();
+        request.setSize(size);
+        request.setSortBy(sortField != null ? tenant.key(sortField) : null);
+        request.setSortDirection(direction);
+        request.setFilters(filters.length > 0 ? List.of(filters) : null);
+        return request;
+    }
+
+    private DynamicRecordsRequestDTO sortedBy(int size, RecordSortDTO... sort) {
+        DynamicRecordsRequestDTO request = tenant.request();
+        request.setSize(size);
+        request.setSort(List.of(sort));
+        return request;
+    }
+
+    private static String describe(DynamicRecordsRequestDTO request) {
+        return "size " + request.getSize() + ", sortBy " + request.getSortBy() + " " + request.getSortDirection()
+                + ", sort " + request.getSort() + ", filters " + request.getFilters();
+    }
+}
@@ -0,0 +1,222 @@
+package merchant_manager.service;
+
+import merchant_manager.config.DynamicRecordProperties;
+import merchant_manager.customExceptions.CustomExceptions;
+import merchant_manager.models.DTO.DynamicRecordDTO;
+import merchant_manager.models.DTO.DynamicRecordsRequestDTO;
+import merchant_manager.models.DTO.DynamicRecordsSimplePageDTO;
+import merchant_manager.models.DTO.RecordFilterDTO;
+import merchant_manager.models.DTO.RecordFilterGroupDTO;
+import merchant_manager.models.enums.FilterGroupOperator;
+import merchant_manager.repository.UserRepository;
+import merchant_manager.service.implementation.TemplateFormValueServiceImp;
+import merchant_manager.util.RecordFilterGroups;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntPredicate;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Runs nested AND/OR/NOT filter groups through DynamicRecordService with each query engine and checks that the SQL
+ * and document engines return the records of the legacy engine, which all must match the expression evaluated here.
+ * The result cache is off so every engine computes its own answer.
+ */
+@SpringBootTest
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class DynamicRecordFilterGroupTests {
+
+    private static final int RECORDS = 90;
+    private static final List<String> STATUSES = List.of("New", "Contacted", "Closed");
+
+    @Autowired
+    private DynamicRecordService dynamicRecordService;
+
+    @Autowired
+    private DynamicRecordProperties dynamicRecordProperties;
+
+    @Autowired
+    private TemplateFormValueServiceImp templateFormValueService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    private DynamicRecordTestTenant tenant;
+    private final Map<Integer, Long> recordIds = new LinkedHashMap<>();
+    private String queryEngine;
+    private int resultCacheMaxEntries;
+
+    @BeforeAll
+    void seed() {
+        tenant = new DynamicRecordTestTenant(jdbcTemplate, transactionManager, userRepository, "filter-group-test");
+        Map<String, String> fields = new LinkedHashMap<>();
+        fields.put("name", "TEXT");
+        fields.put("status", "DROPDOWN");
+        fields.put("volume", "NUMBER");
+        fields.put("opened", "DATE");
+        tenant.seed(fields);
+        tenant.logIn();
+        for (int i = 1; i <= RECORDS; i++) {
+            recordIds.put(i, templateFormValueService.addValuesToForm(DynamicRecordTestTenant.LEAD_MENU_ID, null, tenant.values(
+                    "name", String.format("Merchant %02d", i),
+                    "status", status(i),
+                    "volume", volume(i) != null ? String.valueOf(volume(i)) : null,
+                    "opened", i % 5 == 0 ? null : LocalDate.of(2024, 1, 1).plusDays(i).toString())));
+        }
+        tenant.analyze();
+    }
+
+    @AfterAll
+    void cleanUp() {
+        SecurityContextHolder.clearContext();
+        tenant.cleanUp();
+    }
+
+    @BeforeEach
+    void setUp() {
+        tenant.logIn();
+        queryEngine = dynamicRecordProperties.getQueryEngine();
+        resultCacheMaxEntries = dynamicRecordProperties.getResultCacheMaxEntries();
+        dynamicRecordProperties.setResultCacheMaxEntries(0);
+    }
+
+    @AfterEach
+    void restoreProperties() {
+        dynamicRecordProperties.setQueryEngine(queryEngine);
+        dynamicRecordProperties.setResultCacheMaxEntries(resultCacheMaxEntries);
+    }
+
+    @Test
+    void enginesReturnTheRecordsOfTheLegacyEngine() {
+        assertMatches("new OR contacted",
+                group(FilterGroupOperator.OR, filter("status", "EQUALS", "new"), filter("status", "EQUALS", "Contacted")),
+                i -> !status(i).equals("Closed"));
+        assertMatches("volume > 500 AND (new OR contacted)",
+                group(FilterGroupOperator.AND, List.of(filter("volume", "GREATER_THAN", "500")),
+                        group(FilterGroupOperator.OR, filter("status", "EQUALS", "new"), filter("status", "EQUALS", "contacted"))),
+                i -> volume(i) != null && volume(i) > 500 && !status(i).equals("Closed"));
+        assertMatches("NOT closed",
+                group(FilterGroupOperator.NOT, filter("status", "EQUALS", "closed")),
+                i -> !status(i).equals("Closed"));
+        assertMatches("NOT (closed AND volume < 300)",
+                group(FilterGroupOperator.NOT, filter("status", "EQUALS", "closed"), filter("volume", "LESS_THAN", "300")),
+                i -> !(status(i).equals("Closed") && volume(i) != null && volume(i) < 300));
+        assertMatches("name contains 1 OR NOT (opened present)",
+                group(FilterGroupOperator.OR, List.of(filter("name", "CONTAINS", "1")),
+                        group(FilterGroupOperator.NOT, filter("opened", null, null))),
+                i -> String.format("%02d", i).contains("1") || i % 5 == 0);
+        assertMatches("new OR (contacted AND NOT volume > 400)",
+                group(FilterGroupOperator.OR, List.of(filter("status", "EQUALS", "new")),
+                        group(FilterGroupOperator.AND, List.of(filter("status", "EQUALS", "contacted")),
+                                group(FilterGroupOperator.NOT, filter("volume", "GREATER_THAN", "400")))),
+                i -> status(i).equals("New") || status(i).equals("Contacted") && !(volume(i) != null && volume(i) > 400));
+        assertMatches("empty OR group",
+                group(FilterGroupOperator.OR),
+                i -> true);
+    }
+
+    @Test
+    void groupIsAndedWithTheRequestFilters() {
+        DynamicRecordsRequestDTO request = request(group(FilterGroupOperator.OR,
+                filter("volume", "LESS_THAN", "150"), filter("volume", "GREATER_THAN", "750")));
+        request.setFilters(List.of(filter("status", "EQUALS", "new")));
+        List<Long> expected = expected(i -> status(i).equals("New") && volume(i) != null && (volume(i) < 150 || volume(i) > 750));
+
+        for (String engine : List.of("legacy", "sql", "document")) {
+            dynamicRecordProperties.setQueryEngine(engine);
+            assertEquals(expected, recordIds(request), engine);
+        }
+    }
+
+    @Test
+    void groupsBeyondTheLimitsAreRejected() {
+        RecordFilterGroupDTO deep = group(FilterGroupOperator.AND, filter("status", "EQUALS", "new"));
+        for (int depth = 1; depth <= RecordFilterGroups.MAX_DEPTH; depth++) {
+            deep = group(FilterGroupOperator.NOT, List.of(), deep);
+        }
+        DynamicRecordsRequestDTO tooDeep = request(deep);
+        assertThrows(CustomExceptions.CustomValidationException.class, () -> dynamicRecordService.getDynamicRecordsSimple(tooDeep));
+
+        List<RecordFilterDTO> filters = new ArrayList<>();
+        for (int i = 0; i <= RecordFilterGroups.MAX_FILTERS; i++) {
+            filters.add(filter("name", "CONTAINS", String.valueOf(i)));
+        }
+        DynamicRecordsRequestDTO tooMany = request(new RecordFilterGroupDTO(FilterGroupOperator.OR, filters, null));
+        assertThrows(CustomExceptions.CustomValidationException.class, () -> dynamicRecordService.getDynamicRecordsSimple(tooMany));
+    }
+
+    private void assertMatches(String description, RecordFilterGroupDTO group, IntPredicate matches) {
+        List<Long> expected = expected(matches);
+        dynamicRecordProperties.setQueryEngine("legacy");
+        List<Long> legacy = recordIds(request(group));
+        assertEquals(expected, legacy, "legacy: " + description);
+        for (String engine : List.of("sql", "document")) {
+            dynamicRecordProperties.setQueryEngine(engine);
+            assertEquals(legacy, recordIds(request(group)), engine + ": " + description);
+        }
+    }
+
+    /**
+     * Every matching record ID in name order; the names sort as the record numbers do
+     */
+    private List<Long> expected(IntPredicate matches) {
+        return IntStream.rangeClosed(1, RECORDS).filter(matches).mapToObj(recordIds::get).toList();
+    }
+
+    private List<Long> recordIds(DynamicRecordsRequestDTO request) {
+        DynamicRecordsSimplePageDTO page = dynamicRecordService.getDynamicRecordsSimple(request);
+        assertEquals(page.getRecords().size(), page.getTotalRecords().intValue(), "total of " + request.getFilterGroup());
+        return page.getRecords().stream().map(DynamicRecordDTO::getRecordId).toList();
+    }
+
+    private DynamicRecordsRequestDTO request(RecordFilterGroupDTO group) {
+        DynamicRecordsRequestDTO request = tenant.request();
+        request.setSize(RECORDS);
+        request.setSortBy(tenant.key("name"));
+        request.setFilterGroup(group);
+        return request;
+    }
+
+    private RecordFilterDTO filter(String field, String operator, String value) {
+        return new RecordFilterDTO(tenant.key(field), operator, value, null);
+    }
+
+    private static RecordFilterGroupDTO group(FilterGroupOperator operator, RecordFilterDTO... filters) {
+        return new RecordFilterGroupDTO(operator, List.of(filters), List.of());
+    }
+
+    private static RecordFilterGroupDTO group(FilterGroupOperator operator, List<RecordFilterDTO> filters, RecordFilterGroupDTO... groups) {
+        return new RecordFilterGroupDTO(operator, filters, List.of(groups));
+    }
+
+    private static String status(int i) {
+        return STATUSES.get(i % 3);
+    }
+
+    private static Integer volume(int i) {
+        return i % 7 == 0 ? null : i * 10;
+    }
+}
@@ -0,0 +1,186 @@
+package merchant_manager.service;
+
+import merchant_manager.config.DynamicRecordProperties;
+import merchant_manager.models.DTO.DynamicRecordDTO;
+import merchant_manager.models.DTO.DynamicRecordsRequestDTO;
+import merchant_manager.models.DTO.ImportJobDTO;
+import merchant_manager.models.DTO.ImportRowErrorDTO;
+import merchant_manager.models.DTO.RecordFilterDTO;
+import merchant_manager.models.enums.ImportStatus;
+import merchant_manager.repository.UserRepository;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Imports small CSV files through DynamicRecordImportService with a batch size of four rows, so a file spans
+ * several batches and ends with a partial one, and checks the reported row errors against the records written.
+ */
+@SpringBootTest
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class DynamicRecordImportTests {
+
+    private static final int BATCH_SIZE = 4;
+    private static final long IMPORT_TIMEOUT_MILLIS = 30_000;
+
+    @Autowired
+    private DynamicRecordImportService dynamicRecordImportService;
+
+    @Autowired
+    private DynamicRecordService dynamicRecordService;
+
+    @Autowired
+    private DynamicRecordProperties dynamicRecordProperties;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    private DynamicRecordTestTenant tenant;
+    private int batchSize;
+
+    @BeforeAll
+    void seed() {
+        tenant = new DynamicRecordTestTenant(jdbcTemplate, transactionManager, userRepository, "import-test");
+        Map<String, String> fields = new LinkedHashMap<>();
+        fields.put("name", "TEXT");
+        fields.put("volume", "NUMBER");
+        fields.put("opened", "DATE");
+        tenant.seed(fields);
+        batchSize = dynamicRecordProperties.getImportBatchSize();
+        dynamicRecordProperties.setImportBatchSize(BATCH_SIZE);
+    }
+
+    @AfterAll
+    void cleanUp() {
+        dynamicRecordProperties.setImportBatchSize(batchSize);
+        SecurityContextHolder.clearContext();
+        tenant.cleanUp();
+    }
+
+    @BeforeEach
+    void logIn() {
+        tenant.logIn();
+    }
+
+    @Test
+    void invalidRowsAreReportedAndTheOthersImported() {
+        StringBuilder csv = new StringBuilder("name,volume,opened,extra\n")
+                .append("Valid 1,10,2024-01-01,x\n")             // row 2
+                .append("Bad volume,abc,2024-01-02,x\n")         // row 3
+                .append("Bad date,30,yesterday,x\n")             // row 4
+                .append(",,,x\n");                               // row 5: only an unmapped cell
+        for (int i = 2; i <= 9; i++) {
+            csv.append("Valid ").append(i).append(',').append(i * 10).append(",2024-01-0").append(i).append(",x\n");
+        }
+        long before = total(null);
+
+        ImportJobDTO job = importAndWait(csv.toString());
+
+        assertEquals(ImportStatus.COMPLETED, job.getStatus(), job.getMessage());
+        assertEquals(List.of("extra"), job.getUnmappedHeaders());
+        assertEquals(12, job.getRowsRead());
+        assertEquals(3, job.getRowsFailed());
+        // Two full batches and a partial one
+        assertEquals(9, job.getRowsImported());
+        assertEquals(List.of(3L, 4L, 5L), job.getErrors().stream().map(ImportRowErrorDTO::getRow).toList());
+        assertEquals(tenant.key("volume") + ": 'abc' is not a number", job.getErrors().get(0).getMessage());
+        assertTrue(job.getErrors().get(1).getMessage().startsWith(tenant.key("opened") + ": 'yesterday' is not an ISO date"),
+                job.getErrors().get(1).getMessage());
+        assertEquals("The row has no value in a mapped column", job.getErrors().get(2).getMessage());
+
+        assertEquals(before + 9, total(null));
+        assertEquals(0, total(new RecordFilterDTO(tenant.key("name"), "STARTS_WITH", "bad", null)));
+        DynamicRecordDTO last = records(new RecordFilterDTO(tenant.key("name"), "EQUALS", "Valid 9", null)).get(0);
+        assertEquals("90", last.getFields().get(tenant.key("volume")));
+        assertEquals("2024-01-09", last.getFields().get(tenant.key("opened")));
+    }
+
+    @Test
+    void batchesWrittenBeforeAFailureStayImported() {
+        StringBuilder csv = new StringBuilder("name,volume\n");
+        for (int i = 1; i <= 9; i++) {
+            csv.append("Partial ").append(i).append(',').append(i).append('\n');
+        }
+        // Unreadable CSV: the parser stops here, with the ninth row still waiting for its batch
+        csv.append("\"Partial 10\"x,10\n");
+        csv.append("Partial 11,11\n");
+        long before = total(null);
+
+        ImportJobDTO job = importAndWait(csv.toString());
+
+        assertEquals(ImportStatus.FAILED, job.getStatus());
+        assertTrue(job.getMessage().startsWith("Import stopped after 8 imported rows"), job.getMessage());
+        assertEquals(9, job.getRowsRead());
+        assertEquals(8, job.getRowsImported());
+        assertEquals(before + 8, total(null));
+        assertEquals(8, total(new RecordFilterDTO(tenant.key("name"), "STARTS_WITH", "partial", null)));
+    }
+
+    @Test
+    void fileWithoutAMappedColumnFails() {
+        long before = total(null);
+
+        ImportJobDTO job = importAndWait("foo,bar\n1,2\n");
+
+        assertEquals(ImportStatus.FAILED, job.getStatus());
+        assertEquals("No column of the file matches the key or label of a template field", job.getMessage());
+        assertEquals(0, job.getRowsRead());
+        assertEquals(before, total(null));
+    }
+
+    private ImportJobDTO importAndWait(String csv) {
+        MockMultipartFile file = new MockMultipartFile("file", "records.csv", "text/csv", csv.getBytes(StandardCharsets.UTF_8));
+        String jobId = dynamicRecordImportService.startImport(DynamicRecordTestTenant.LEAD_MENU_ID, tenant.companyId(), file).getJobId();
+        long deadline = System.currentTimeMillis() + IMPORT_TIMEOUT_MILLIS;
+        while (System.currentTimeMillis() < deadline) {
+            ImportJobDTO job = dynamicRecordImportService.getImport(jobId);
+            if (job.getStatus() != ImportStatus.RUNNING) {
+                return job;
+            }
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        return fail("Import " + jobId + " did not finish in " + IMPORT_TIMEOUT_MILLIS + " ms");
+    }
+
+    private long total(RecordFilterDTO filter) {
+        return dynamicRecordService.getDynamicRecordsSimple(request(filter)).getTotalRecords();
+    }
+
+    private List<DynamicRecordDTO> records(RecordFilterDTO filter) {
+        return dynamicRecordService.getDynamicRecordsSimple(request(filter)).getRecords();
+    }
+
+    private DynamicRecordsRequestDTO request(RecordFilterDTO filter) {
+        DynamicRecordsRequestDTO request = tenant.request();
+        request.setFilters(filter != null ? List.of(filter) : null);
+        return request;
+    }
+}
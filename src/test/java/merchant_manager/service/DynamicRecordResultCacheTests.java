@@ -0,0 +1,145 @@
+package merchant_manager.service;
+
+import merchant_manager.models.DTO.DynamicRecordDTO;
+import merchant_manager.models.DTO.DynamicRecordsRequestDTO;
+import merchant_manager.models.DTO.RecordFilterDTO;
+import merchant_manager.repository.UserRepository;
+import merchant_manager.service.implementation.TemplateFormValueServiceImp;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that writing or deleting a record through TemplateFormValueService evicts the cached record IDs of its
+ * template, so the next page reads the change instead of the IDs computed before it.
+ */
+@SpringBootTest
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class DynamicRecordResultCacheTests {
+
+    private static final int RECORDS = 30;
+
+    @Autowired
+    private DynamicRecordService dynamicRecordService;
+
+    @Autowired
+    private DynamicRecordResultCacheService dynamicRecordResultCacheService;
+
+    @Autowired
+    private TemplateFormValueServiceImp templateFormValueService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    private DynamicRecordTestTenant tenant;
+
+    @BeforeAll
+    void seed() {
+        tenant = new DynamicRecordTestTenant(jdbcTemplate, transactionManager, userRepository, "cache-test");
+        Map<String, String> fields = new LinkedHashMap<>();
+        fields.put("name", "TEXT");
+        fields.put("status", "DROPDOWN");
+        tenant.seed(fields);
+        tenant.logIn();
+        for (int i = 1; i <= RECORDS; i++) {
+            templateFormValueService.addValuesToForm(DynamicRecordTestTenant.LEAD_MENU_ID, null, tenant.values(
+                    "name", "Merchant " + i, "status", i % 3 == 0 ? "New" : "Closed"));
+        }
+    }
+
+    @AfterAll
+    void cleanUp() {
+        SecurityContextHolder.clearContext();
+        tenant.cleanUp();
+    }
+
+    @BeforeEach
+    void logIn() {
+        tenant.logIn();
+    }
+
+    @Test
+    void addingARecordEvictsTheTemplatesResults() {
+        DynamicRecordsRequestDTO request = newRecords();
+        List<Long> before = recordIds(request);
+        assertEquals(RECORDS / 3, before.size());
+        assertNotNull(cached(request), "The page was not cached");
+
+        Long added = templateFormValueService.addValuesToForm(DynamicRecordTestTenant.LEAD_MENU_ID, null,
+                tenant.values("name", "Merchant added", "status", "New"));
+        try {
+            assertNull(cached(request), "Adding a record kept the template's cached results");
+            assertTrue(recordIds(request).contains(added), "The added record is missing from the next page");
+        } finally {
+            templateFormValueService.deleteRecord(DynamicRecordTestTenant.LEAD_MENU_ID, added);
+        }
+    }
+
+    @Test
+    void updatingARecordEvictsTheTemplatesResults() {
+        DynamicRecordsRequestDTO request = newRecords();
+        Long updated = recordIds(request).get(0);
+        assertNotNull(cached(request), "The page was not cached");
+
+        templateFormValueService.addValuesToForm(DynamicRecordTestTenant.LEAD_MENU_ID, updated, tenant.values("status", "Closed"));
+        try {
+            assertNull(cached(request), "Updating a record kept the template's cached results");
+            assertTrue(!recordIds(request).contains(updated), "The record no longer matching is still on the next page");
+        } finally {
+            templateFormValueService.addValuesToForm(DynamicRecordTestTenant.LEAD_MENU_ID, updated, tenant.values("status", "New"));
+        }
+    }
+
+    @Test
+    void deletingARecordEvictsTheTemplatesResults() {
+        Long deleted = templateFormValueService.addValuesToForm(DynamicRecordTestTenant.LEAD_MENU_ID, null,
+                tenant.values("name", "Merchant deleted", "status", "New"));
+        DynamicRecordsRequestDTO request = newRecords();
+        assertTrue(recordIds(request).contains(deleted));
+        assertNotNull(cached(request), "The page was not cached");
+
+        templateFormValueService.deleteRecord(DynamicRecordTestTenant.LEAD_MENU_ID, deleted);
+        assertNull(cached(request), "Deleting a record kept the template's cached results");
+        List<Long> after = recordIds(request);
+        assertTrue(!after.contains(deleted), "The deleted record is still on the next page");
+        assertEquals(RECORDS / 3, after.size());
+    }
+
+    private DynamicRecordsRequestDTO newRecords() {
+        DynamicRecordsRequestDTO request = tenant.request();
+        request.setSize(100);
+        request.setSortBy(tenant.key("name"));
+        request.setFilters(List.of(new RecordFilterDTO(tenant.key("status"), "EQUALS", "new", null)));
+        return request;
+    }
+
+    private List<Long> recordIds(DynamicRecordsRequestDTO request) {
+        return dynamicRecordService.getDynamicRecordsSimple(request).getRecords().stream().map(DynamicRecordDTO::getRecordId).toList();
+    }
+
+    private long[] cached(DynamicRecordsRequestDTO request) {
+        return dynamicRecordResultCacheService.getCachedRecordIds(tenant.templateId(), tenant.userId(), request);
+    }
+}
@@ -0,0 +1,146 @@
+package merchant_manager.service;
+
+import merchant_manager.models.DTO.AddValueRequest;
+import merchant_manager.models.DTO.DynamicRecordsRequestDTO;
+import merchant_manager.models.User;
+import merchant_manager.repository.UserRepository;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A user with a company of their own and a Lead template holding the given fields, for tests going through the services.
+ * Records are written through the services as that user; cleanUp removes them with everything seeded here.
+ * Field keys are global, so they carry the template ID.
+ */
+class DynamicRecordTestTenant {
+
+    static final long LEAD_MENU_ID = 4L;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final UserRepository userRepository;
+    private final String seededBy;
+    private final Map<String, String> keys = new LinkedHashMap<>();
+
+    private long userId;
+    private long companyId;
+    private long templateId;
+
+    DynamicRecordTestTenant(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                            UserRepository userRepository, String seededBy) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.userRepository = userRepository;
+        this.seededBy = seededBy;
+    }
+
+    /**
+     * Seeds the tenant after removing what an interrupted run may have left
+     *
+     * @param fieldTypes Field name to field type, in template order
+     */
+    void seed(Map<String, String> fieldTypes) {
+        cleanUp();
+        transactionTemplate.executeWithoutResult(status -> {
+            userId = jdbcTemplate.queryForObject(
+                    "INSERT INTO merchant_manager._user (username, role) VALUES (?, 'ROLE_USER') RETURNING id", Long.class, seededBy);
+            companyId = jdbcTemplate.queryForObject(
+                    "INSERT INTO merchant_manager.company (name, created_at, updated_at, created_by) VALUES (?, now(), now(), ?) RETURNING id",
+                    Long.class, seededBy, seededBy);
+            jdbcTemplate.update("INSERT INTO merchant_manager.user_company (user_id, company_id) VALUES (?, ?)", userId, companyId);
+            templateId = jdbcTemplate.queryForObject(
+                    "INSERT INTO merchant_manager.template_default (user_id, menu_id, company_id, created_at, updated_at, created_by) " +
+                    "VALUES (?, ?, ?, now(), now(), ?) RETURNING id",
+                    Long.class, userId, LEAD_MENU_ID, companyId, seededBy);
+            for (Map.Entry<String, String> field : fieldTypes.entrySet()) {
+                String key = "svc_" + templateId + "_" + field.getKey();
+                jdbcTemplate.update("INSERT INTO merchant_manager.template_form_default (template_id, key, label, type, created_at, updated_at, created_by) " +
+                        "VALUES (?, ?, ?, ?, now(), now(), ?)", templateId, key, field.getKey(), field.getValue(), seededBy);
+                keys.put(field.getKey(), key);
+            }
+        });
+    }
+
+    void cleanUp() {
+        transactionTemplate.executeWithoutResult(status -> {
+            String templates = "SELECT id FROM merchant_manager.template_default WHERE created_by = ?";
+            jdbcTemplate.update("DELETE FROM merchant_manager.dynamic_record WHERE template_id IN (" + templates + ")", seededBy);
+            jdbcTemplate.update("DELETE FROM merchant_manager.dynamic_record_tombstone WHERE template_id IN (" + templates + ")", seededBy);
+            jdbcTemplate.update("DELETE FROM merchant_manager.template_form_value_default WHERE template_form_default_id IN " +
+                    "(SELECT id FROM merchant_manager.template_form_default WHERE created_by = ?)", seededBy);
+            jdbcTemplate.update("DELETE FROM merchant_manager.template_form_default WHERE created_by = ?", seededBy);
+            jdbcTemplate.update("DELETE FROM merchant_manager.template_default WHERE created_by = ?", seededBy);
+            jdbcTemplate.update("DELETE FROM merchant_manager.lead WHERE created_by = ?", seededBy);
+            jdbcTemplate.update("DELETE FROM merchant_manager.company WHERE created_by = ?", seededBy);
+            jdbcTemplate.update("DELETE FROM merchant_manager._user WHERE username = ?", seededBy);
+        });
+        keys.clear();
+    }
+
+    /**
+     * Refreshes the planner statistics once the records are written, as the plan tests do after seeding.
+     * Until then a new user's values are estimated at a single row and cursor pages get nested loops taking seconds.
+     */
+    void analyze() {
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.execute("ANALYZE merchant_manager.template_form_value_default");
+            jdbcTemplate.execute("ANALYZE merchant_manager.dynamic_record");
+        });
+    }
+
+    /**
+     * Authenticates the tenant's user on the current thread, as the JWT filter does for a request
+     */
+    void logIn() {
+        User user = userRepository.findById(userId).orElseThrow();
+        SecurityContextHolder.getContext().setAuthentication(new UsernamePasswordAuthenticationToken(user, null, user.getAuthorities()));
+    }
+
+    String key(String field) {
+        return keys.get(field);
+    }
+
+    /**
+     * Default-template values for addValuesToForm, from alternating field names and values; null values are skipped
+     */
+    List<AddValueRequest> values(String... fieldsAndValues) {
+        List<AddValueRequest> values = new ArrayList<>();
+        for (int i = 0; i < fieldsAndValues.length; i += 2) {
+            if (fieldsAndValues[i + 1] != null) {
+                AddValueRequest value = new AddValueRequest();
+                value.setKey(key(fieldsAndValues[i]));
+                value.setValue(fieldsAndValues[i + 1]);
+                value.setIsDefault(true);
+                values.add(value);
+            }
+        }
+        return values;
+    }
+
+    DynamicRecordsRequestDTO request() {
+        DynamicRecordsRequestDTO request = new DynamicRecordsRequestDTO();
+        request.setMenuId(LEAD_MENU_ID);
+        request.setCompanyId(companyId);
+        return request;
+    }
+
+    long userId() {
+        return userId;
+    }
+
+    long companyId() {
+        return companyId;
+    }
+
+    long templateId() {
+        return templateId;
+    }
+}
@@ -0,0 +1,221 @@
+package merchant_manager.service;
+
+import merchant_manager.config.DynamicRecordProperties;
+import merchant_manager.customExceptions.CustomExceptions;
+import merchant_manager.models.DTO.DynamicRecordDTO;
+import merchant_manager.models.DTO.DynamicRecordsRequestDTO;
+import merchant_manager.models.DTO.DynamicRecordsSimplePageDTO;
+import merchant_manager.models.DTO.QueryJobDTO;
+import merchant_manager.models.enums.QueryJobStatus;
+import merchant_manager.repository.UserRepository;
+import merchant_manager.service.implementation.TemplateFormValueServiceImp;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Runs dynamic record queries as jobs through QueryJobService and checks their pages against the synchronous ones,
+ * the per-user limit on queued and running jobs, and that cancelling a running job stops its statement.
+ * A job is kept running by a transaction of the test holding an exclusive lock on the tables it reads.
+ */
+@SpringBootTest
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class QueryJobTests {
+
+    private static final int RECORDS = 45;
+    private static final int PAGE_SIZE = 10;
+    private static final long JOB_TIMEOUT_MILLIS = 30_000;
+
+    @Autowired
+    private QueryJobService queryJobService;
+
+    @Autowired
+    private DynamicRecordService dynamicRecordService;
+
+    @Autowired
+    private DynamicRecordProperties dynamicRecordProperties;
+
+    @Autowired
+    private TemplateFormValueServiceImp templateFormValueService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    private DynamicRecordTestTenant tenant;
+    private int queryJobsPerUser;
+    private int resultCacheMaxEntries;
+
+    @BeforeAll
+    void seed() {
+        tenant = new DynamicRecordTestTenant(jdbcTemplate, transactionManager, userRepository, "query-job-test");
+        Map<String, String> fields = new LinkedHashMap<>();
+        fields.put("name", "TEXT");
+        fields.put("volume", "NUMBER");
+        tenant.seed(fields);
+        tenant.logIn();
+        for (int i = 1; i <= RECORDS; i++) {
+            templateFormValueService.addValuesToForm(DynamicRecordTestTenant.LEAD_MENU_ID, null,
+                    tenant.values("name", String.format("Merchant %02d", i), "volume", i % 4 == 0 ? null : String.valueOf(i % 9 * 10)));
+        }
+        tenant.analyze();
+    }
+
+    @AfterAll
+    void cleanUp() {
+        SecurityContextHolder.clearContext();
+        tenant.cleanUp();
+    }
+
+    @BeforeEach
+    void setUp() {
+        tenant.logIn();
+        queryJobsPerUser = dynamicRecordProperties.getQueryJobsPerUser();
+        resultCacheMaxEntries = dynamicRecordProperties.getResultCacheMaxEntries();
+        // A cached answer would let a job complete without reading the locked tables
+        dynamicRecordProperties.setResultCacheMaxEntries(0);
+    }
+
+    @AfterEach
+    void restoreProperties() {
+        dynamicRecordProperties.setQueryJobsPerUser(queryJobsPerUser);
+        dynamicRecordProperties.setResultCacheMaxEntries(resultCacheMaxEntries);
+    }
+
+    @Test
+    void jobPagesMatchSynchronousPages() {
+        DynamicRecordsRequestDTO request = request();
+        QueryJobDTO job = waitFor(queryJobService.submitDynamicRecords(request).getJobId());
+
+        assertEquals(QueryJobStatus.COMPLETED, job.getStatus(), job.getMessage());
+        assertEquals(RECORDS, job.getTotalRecords());
+        for (int page = 0; page * PAGE_SIZE < RECORDS; page++) {
+            request.setPage(page);
+            DynamicRecordsSimplePageDTO expected = dynamicRecordService.getDynamicRecordsSimple(request);
+            DynamicRecordsSimplePageDTO actual = (DynamicRecordsSimplePageDTO) queryJobService.getResults(job.getJobId(), page, PAGE_SIZE);
+            assertEquals(recordIds(expected), recordIds(actual), "page " + page);
+            assertEquals(expected.getRecords(), actual.getRecords(), "page " + page);
+            assertEquals(expected.getTotalRecords(), actual.getTotalRecords(), "page " + page);
+        }
+
+        assertThrows(CustomExceptions.CustomValidationException.class, () -> queryJobService.getResults(job.getJobId(), 0, 1_001));
+        assertThrows(CustomExceptions.CustomValidationException.class, () -> queryJobService.getResults(job.getJobId(), -1, PAGE_SIZE));
+        assertThrows(CustomExceptions.ResourceNotFoundException.class, () -> queryJobService.getResults("not-a-job", 0, PAGE_SIZE));
+    }
+
+    @Test
+    void cancellingARunningJobStopsItsStatementAndFreesItsSlot() {
+        dynamicRecordProperties.setQueryJobsPerUser(1);
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            jdbcTemplate.execute("LOCK TABLE merchant_manager.template_form_value_default, merchant_manager.dynamic_record IN ACCESS EXCLUSIVE MODE");
+
+            String jobId = queryJobService.submitDynamicRecords(request()).getJobId();
+            await("the job waiting for the lock", () -> blockedStatements() == 1);
+            assertEquals(QueryJobStatus.RUNNING, queryJobService.getJob(jobId).getStatus());
+            assertThrows(CustomExceptions.CustomValidationException.class, () -> queryJobService.submitDynamicRecords(request()),
+                    "A second job was accepted over the limit of one");
+
+            queryJobService.cancelJob(jobId);
+            // Still under the lock: only the cancel can have stopped the statement
+            await("the cancelled statement to stop", () -> blockedStatements() == 0);
+            await("the cancelled job to be removed", () -> isRemoved(jobId));
+        });
+
+        // The job thread removes the job as it leaves the query, giving its slot back
+        assertEquals(QueryJobStatus.COMPLETED, waitFor(queryJobService.submitDynamicRecords(request()).getJobId()).getStatus());
+    }
+
+    @Test
+    void cancelledJobIsRemoved() {
+        dynamicRecordProperties.setQueryJobsPerUser(1);
+        QueryJobDTO job = queryJobService.submitDynamicRecords(request());
+        queryJobService.cancelJob(job.getJobId());
+
+        // At once when it was queued or done, once its thread stops when it was running
+        await("the cancelled job to be removed", () -> isRemoved(job.getJobId()));
+        assertEquals(QueryJobStatus.COMPLETED, waitFor(queryJobService.submitDynamicRecords(request()).getJobId()).getStatus());
+    }
+
+    /**
+     * Sessions waiting on a lock held by the connection of the current transaction
+     */
+    private int blockedStatements() {
+        return jdbcTemplate.queryForObject(
+                "SELECT count(*) FROM pg_stat_activity WHERE pg_backend_pid() = ANY (pg_blocking_pids(pid))", Integer.class);
+    }
+
+    private boolean isRemoved(String jobId) {
+        try {
+            queryJobService.getJob(jobId);
+            return false;
+        } catch (CustomExceptions.ResourceNotFoundException e) {
+            return true;
+        }
+    }
+
+    private QueryJobDTO waitFor(String jobId) {
+        long deadline = System.currentTimeMillis() + JOB_TIMEOUT_MILLIS;
+        while (System.currentTimeMillis() < deadline) {
+            QueryJobDTO job = queryJobService.getJob(jobId);
+            if (job.getStatus() != QueryJobStatus.QUEUED && job.getStatus() != QueryJobStatus.RUNNING) {
+                return job;
+            }
+            sleep();
+        }
+        return fail("Query job " + jobId + " did not finish in " + JOB_TIMEOUT_MILLIS + " ms");
+    }
+
+    private static void await(String description, BooleanSupplier condition) {
+        long deadline = System.currentTimeMillis() + JOB_TIMEOUT_MILLIS;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("Gave up waiting for " + description);
+            }
+            sleep();
+        }
+    }
+
+    private static void sleep() {
+        try {
+            Thread.sleep(20);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static List<Long> recordIds(DynamicRecordsSimplePageDTO page) {
+        return page.getRecords().stream().map(DynamicRecordDTO::getRecordId).toList();
+    }
+
+    private DynamicRecordsRequestDTO request() {
+        DynamicRecordsRequestDTO request = tenant.request();
+        request.setSize(PAGE_SIZE);
+        request.setSortBy(tenant.key("volume"));
+        request.setSortDirection("DESC");
+        return request;
+    }
+}
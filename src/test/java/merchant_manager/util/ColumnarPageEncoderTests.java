@@ -0,0 +1,123 @@
+package merchant_manager.util;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import merchant_manager.models.DTO.DynamicRecordDTO;
+import merchant_manager.models.DTO.DynamicRecordsColumnarPageDTO;
+import merchant_manager.models.DTO.DynamicRecordsSimplePageDTO;
+import merchant_manager.models.enums.CountMode;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Correctness and size of the columnar page format against the row format, on a page shaped
+ * like the 40-column merchant template: a few unique text columns, many low-cardinality
+ * status / type / flag columns, numbers, dates and sparsely filled optional columns.
+ * Serialization time is compared in merchant_manager.benchmark.ColumnarPageBenchmark.
+ */
+class ColumnarPageEncoderTests {
+
+    private static final int COLUMNS = 40;
+    private static final int ROWS = 100;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void roundTripsEveryValue() throws Exception {
+        DynamicRecordsSimplePageDTO page = merchantPage();
+
+        JsonNode json = objectMapper.readTree(objectMapper.writeValueAsBytes(ColumnarPageEncoder.encode(page, null)));
+
+        assertEquals(page.getRecords(), decode(json));
+        assertEquals(page.getTotalRecords(), json.get("totalRecords").asLong());
+        assertEquals("exact", json.get("countMode").asText());
+    }
+
+    @Test
+    void keepsRequestedColumnOrder() {
+        DynamicRecordsSimplePageDTO page = merchantPage();
+
+        DynamicRecordsColumnarPageDTO columnar = ColumnarPageEncoder.encode(page, List.of("status", "legal_name", "status", "unknown"));
+
+        assertEquals(List.of("status", "legal_name", "unknown"), columnar.getColumns());
+        assertNotNull(columnar.getValues().get(0).getDictionary(), "low-cardinality column should be dictionary-encoded");
+        assertNotNull(columnar.getValues().get(1).getValues(), "unique column should be sent as plain values");
+        assertEquals(Collections.singletonList(null), columnar.getValues().get(2).getDictionary());
+    }
+
+    @Test
+    void columnarPayloadIsSeveralTimesSmaller() throws Exception {
+        DynamicRecordsSimplePageDTO page = merchantPage();
+
+        int rowBytes = objectMapper.writeValueAsBytes(page).length;
+        int columnarBytes = objectMapper.writeValueAsBytes(ColumnarPageEncoder.encode(page, null)).length;
+
+        assertTrue(columnarBytes * 3 <= rowBytes,
+                "columnar payload should be at least 3x smaller: " + rowBytes + " vs " + columnarBytes);
+    }
+
+    private static List<DynamicRecordDTO> decode(JsonNode json) {
+        List<DynamicRecordDTO> records = new ArrayList<>();
+        for (JsonNode recordId : json.get("recordIds")) {
+            records.add(new DynamicRecordDTO(recordId.asLong(), new HashMap<>()));
+        }
+        for (int column = 0; column < json.get("columns").size(); column++) {
+            String key = json.get("columns").get(column).asText();
+            JsonNode values = json.get("values").get(column);
+            for (int row = 0; row < records.size(); row++) {
+                JsonNode value = values.has("codes")
+                        ? values.get("dictionary").get(values.get("codes").get(row).asInt())
+                        : values.get("values").get(row);
+                if (!value.isNull()) {
+                    records.get(row).getFields().put(key, value.asText());
+                }
+            }
+        }
+        return records;
+    }
+
+    private static DynamicRecordsSimplePageDTO merchantPage() {
+        Random random = new Random(7);
+        String[] statuses = {"New", "Contacted", "Underwriting", "Approved", "Declined"};
+        String[] types = {"Retail", "Restaurant", "E-commerce", "Services"};
+        String[] states = {"NY", "NJ", "CA", "TX", "FL", "IL"};
+
+        List<DynamicRecordDTO> records = new ArrayList<>();
+        for (int row = 0; row < ROWS; row++) {
+            long recordId = 100_000 + row;
+            Map<String, String> fields = new HashMap<>();
+            fields.put("legal_name", "Merchant Holdings " + recordId + " LLC");
+            fields.put("dba_name", "Store " + recordId);
+            fields.put("email", "owner" + recordId + "@example.com");
+            fields.put("phone", String.format("+1 212 555 %04d", random.nextInt(10_000)));
+            fields.put("street_address", random.nextInt(9_999) + " Main Street");
+            fields.put("tax_id", String.format("%02d-%07d", random.nextInt(100), random.nextInt(10_000_000)));
+            fields.put("monthly_volume", String.valueOf(random.nextInt(500_000)));
+            fields.put("average_ticket", String.valueOf(random.nextInt(900) + 10));
+            fields.put("opened_date", String.format("2024-%02d-%02d", random.nextInt(12) + 1, random.nextInt(28) + 1));
+            fields.put("zip_code", String.format("%05d", random.nextInt(100_000)));
+            for (int column = 0; column < 10; column++) {
+                fields.put("status_" + column, statuses[random.nextInt(statuses.length)]);
+            }
+            for (int column = 0; column < 6; column++) {
+                fields.put("business_type_" + column, types[random.nextInt(types.length)]);
+            }
+            fields.put("state", states[random.nextInt(states.length)]);
+            fields.put("city", states[random.nextInt(states.length)] + " City");
+            for (int column = 0; column < 8; column++) {
+                fields.put("accepts_option_" + column, random.nextBoolean() ? "Yes" : "No");
+            }
+            // Optional columns, mostly empty
+            for (int column = 0; column < COLUMNS - 34; column++) {
+                if (random.nextInt(5) == 0) {
+                    fields.put("optional_note_" + column, "Note " + random.nextInt(1_000));
+                }
+            }
+            records.add(new DynamicRecordDTO(recordId, fields));
+        }
+        return new DynamicRecordsSimplePageDTO(records, 12_345L, 0, ROWS, 124, true, CountMode.EXACT, null);
+    }
+}
@@ -0,0 +1,131 @@
+package merchant_manager.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Correctness of the prefix index against a brute-force scan; lookup latency at one million values
+ * is measured by merchant_manager.benchmark.PrefixIndexBenchmark.
+ */
+class PrefixIndexTests {
+
+    @Test
+    void matchesPrefixIgnoringCase() {
+        PrefixIndex index = new PrefixIndex();
+        index.load(List.of(
+                new PrefixIndex.Entry(1, 7, "Acme Corp"),
+                new PrefixIndex.Entry(2, 7, "acme supplies"),
+                new PrefixIndex.Entry(3, 7, "Acorn"),
+                new PrefixIndex.Entry(4, 7, "Beta"),
+                new PrefixIndex.Entry(5, 7, "")));
+
+        assertEquals(List.of(1L, 2L), recordIds(index.lookup("ACME", 7, 10)));
+        assertEquals(List.of(1L, 2L, 3L), recordIds(index.lookup("ac", 7, 10)));
+        assertEquals(List.of(1L), recordIds(index.lookup("a", 7, 1)));
+        assertEquals(List.of(), index.lookup("z", 7, 10));
+        assertEquals(4, index.size());
+    }
+
+    @Test
+    void returnsOnlyTheUsersValues() {
+        PrefixIndex index = new PrefixIndex();
+        index.load(List.of(
+                new PrefixIndex.Entry(1, 7, "Acme"),
+                new PrefixIndex.Entry(2, 8, "Acme"),
+                new PrefixIndex.Entry(3, 7, "Acme West")));
+
+        assertEquals(List.of(1L, 3L), recordIds(index.lookup("acme", 7, 10)));
+        assertEquals(List.of(2L), recordIds(index.lookup("acme", 8, 10)));
+    }
+
+    @Test
+    void findsTheUsersValuesBehindManyOfOtherUsers() {
+        List<PrefixIndex.Entry> entries = new ArrayList<>();
+        for (long recordId = 0; recordId < 200_000; recordId++) {
+            entries.add(new PrefixIndex.Entry(recordId, 8, "Acme " + recordId));
+        }
+        entries.add(new PrefixIndex.Entry(200_000, 7, "Acme Zeta"));
+        PrefixIndex index = new PrefixIndex();
+        index.load(entries);
+
+        assertEquals(List.of(200_000L), recordIds(index.lookup("acme", 7, 10)));
+        assertEquals(10, index.lookup("acme", 8, 10).size());
+    }
+
+    @Test
+    void writesShadowLoadedValues() {
+        PrefixIndex index = new PrefixIndex();
+        index.put(9, 7, "Early"); // written while the load was reading
+        index.load(List.of(
+                new PrefixIndex.Entry(1, 7, "Acme"),
+                new PrefixIndex.Entry(2, 7, "Apex"),
+                new PrefixIndex.Entry(9, 7, "Stale")));
+
+        index.put(1, 7, "Zenith");
+        index.remove(2);
+        index.put(3, 7, "Alpha");
+
+        assertEquals(List.of(3L), recordIds(index.lookup("a", 7, 10)));
+        assertEquals(List.of(1L), recordIds(index.lookup("zen", 7, 10)));
+        assertEquals(List.of(9L), recordIds(index.lookup("e", 7, 10)));
+        assertEquals(List.of(), index.lookup("stale", 7, 10));
+    }
+
+    @Test
+    void compactionKeepsLookupsUnchanged() {
+        Random random = new Random(42);
+        PrefixIndex index = new PrefixIndex();
+        Map<Long, String> expected = new HashMap<>();
+        List<PrefixIndex.Entry> entries = new ArrayList<>();
+        for (long recordId = 0; recordId < 20_000; recordId++) {
+            String value = word(random);
+            entries.add(new PrefixIndex.Entry(recordId, 7, value));
+            expected.put(recordId, value);
+        }
+        index.load(entries);
+
+        // Enough writes for several merges, each overwriting, adding or removing a record
+        for (int i = 0; i < 3 * PrefixIndex.COMPACT_AFTER + 17; i++) {
+            long recordId = random.nextInt(25_000);
+            if (random.nextInt(5) == 0) {
+                index.remove(recordId);
+                expected.remove(recordId);
+            } else {
+                String value = word(random);
+                index.put(recordId, 7, value);
+                expected.put(recordId, value);
+            }
+        }
+
+        for (String prefix : List.of("a", "Ba", "cab", "D", "eee")) {
+            assertEquals(bruteForce(expected, prefix, 25), recordIds(index.lookup(prefix, 7, 25)), prefix);
+        }
+    }
+
+    private static List<Long> recordIds(List<PrefixIndex.Entry> entries) {
+        return entries.stream().map(PrefixIndex.Entry::getRecordId).toList();
+    }
+
+    private static List<Long> bruteForce(Map<Long, String> values, String prefix, int limit) {
+        return values.entrySet().stream()
+                .filter(entry -> entry.getValue().regionMatches(true, 0, prefix, 0, prefix.length()))
+                .sorted(Comparator.comparing((Map.Entry<Long, String> entry) -> entry.getValue(), String.CASE_INSENSITIVE_ORDER)
+                        .thenComparing(Map.Entry::getKey))
+                .limit(limit)
+                .map(Map.Entry::getKey)
+                .toList();
+    }
+
+    // Short words over a five-letter alphabet with random case, so prefixes share long runs
+    private static String word(Random random) {
+        char[] letters = new char[3 + random.nextInt(6)];
+        for (int i = 0; i < letters.length; i++) {
+            char letter = (char) ('a' + random.nextInt(5));
+            letters[i] = random.nextBoolean() ? Character.toUpperCase(letter) : letter;
+        }
+        return new String(letters);
+    }
+}